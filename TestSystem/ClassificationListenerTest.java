@@ -0,0 +1,393 @@
+import cycling.*;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * A test of the classification listeners. Two listeners each keep a copy
+ * of every stage, checkpoint and race ranking, built only from the
+ * updates they are sent, while results are registered, passed one
+ * checkpoint at a time, deleted, and riders and stages removed. After
+ * every change each copy is compared with the rankings read from the
+ * portal, and both listeners are checked to have been given the very same
+ * updates. A listener that throws is checked not to stop the others or
+ * the change, and a removed listener to hear nothing more. Finally, the
+ * time taken by a change with and without listeners is printed.
+ * <p>
+ * Run with assertions enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class ClassificationListenerTest {
+
+    /**
+     * The times read from the portal wrap around at a day, while the
+     * times in the updates do not.
+     */
+    private static final long NANOS_PER_DAY = 86_400_000_000_000L;
+
+    /**
+     * A listener keeping a copy of every ranking from the updates it is
+     * sent: for each ranking, each rider's position and value.
+     */
+    private static class Mirror implements ClassificationListener {
+        private final Map<String, Map<Integer, long[]>> rankings = new HashMap<>();
+        private final List<ClassificationUpdate> updates = new ArrayList<>();
+
+        @Override
+        public void classificationChanged(ClassificationUpdate update) {
+            updates.add(update);
+            Map<Integer, long[]> ranking = rankings.computeIfAbsent(update.getType() + ":" + update.getID(), key -> new HashMap<>());
+            for (RankChange change : update.getChanges()) {
+                long[] previous = ranking.get(change.getRiderID());
+                assert change.getOldPosition() == (previous == null ? -1 : previous[0])
+                        : "The old position of rider " + change.getRiderID() + " is wrong.";
+                if (change.getNewPosition() < 0) {
+                    ranking.remove(change.getRiderID());
+                } else {
+                    ranking.put(change.getRiderID(), new long[]{change.getNewPosition(), change.getValue()});
+                }
+            }
+        }
+    }
+
+    /**
+     * Test method.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(2501);
+        for (int round = 0; round < 6; round++) {
+            CyclingPortalImpl portal = round % 2 == 0 ? new CyclingPortalImpl() : new ConcurrentCyclingPortalImpl();
+            int[] riderIds = createRiders(portal, 10 + random.nextInt(20));
+            int raceId = portal.createRace("Race", null);
+            int[] stageIds = createStages(portal, raceId, 3);
+            registerSome(portal, stageIds[0], riderIds, random);
+
+            Mirror first = new Mirror();
+            Mirror second = new Mirror();
+            portal.addClassificationListener(first);
+            seed(first, portal);
+            portal.addClassificationListener(second);
+            seed(second, portal);
+            check(portal, first, second);
+
+            for (int i = 0; i < 150; i++) {
+                int stageId = stageIds[random.nextInt(stageIds.length)];
+                int riderId = riderIds[random.nextInt(riderIds.length)];
+                if (!exists(portal, riderId)) {
+                    continue;
+                }
+                int choice = random.nextInt(10);
+                if (choice < 4) {
+                    if (portal.getRiderResultsInStage(stageId, riderId).length == 0) {
+                        try {
+                            portal.registerRiderResultsInStage(stageId, riderId, times(random));
+                        } catch (DuplicatedResultException e) {
+                            continue;
+                        }
+                    }
+                } else if (choice < 8) {
+                    int position = random.nextInt(4);
+                    try {
+                        portal.registerRiderPassing(stageId, riderId, position, times(random)[position]);
+                    } catch (DuplicatedResultException e) {
+                        continue;
+                    }
+                } else {
+                    portal.deleteRiderResultsInStage(stageId, riderId);
+                }
+                check(portal, first, second);
+            }
+            registerSome(portal, stageIds[1], riderIds, random);
+            check(portal, first, second);
+            portal.removeRider(riderIds[1]);
+            check(portal, first, second);
+            portal.removeStageById(stageIds[0]);
+            check(portal, first, second);
+        }
+
+        checkFailingListener(random);
+        timeChanges(random);
+        System.out.println("Classification listener test passed.");
+    }
+
+    /**
+     * Checks that a listener that throws does not stop the others being
+     * told, nor the change being made, and that a removed listener is told
+     * nothing more.
+     *
+     * @param random The source of the times.
+     */
+    private static void checkFailingListener(Random random) throws Exception {
+        PortalMetricsRegistry metrics = new PortalMetricsRegistry();
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        portal.setMetrics(metrics);
+        int[] riderIds = createRiders(portal, 5);
+        int raceId = portal.createRace("Race", null);
+        int stageId = createStages(portal, raceId, 1)[0];
+        Mirror mirror = new Mirror();
+        portal.addClassificationListener(update -> {
+            throw new IllegalStateException("Listener failed.");
+        });
+        portal.addClassificationListener(mirror);
+        portal.registerRiderResultsInStage(stageId, riderIds[0], times(random));
+        assert portal.getRidersRankInStage(stageId).length == 1;
+        assert !mirror.updates.isEmpty() : "A failing listener stopped the others being told.";
+        assert metrics.getExceptionCount("classificationChanged", "IllegalStateException") > 0;
+
+        portal.removeClassificationListener(mirror);
+        int heard = mirror.updates.size();
+        portal.registerRiderResultsInStage(stageId, riderIds[1], times(random));
+        assert mirror.updates.size() == heard : "A removed listener was told of a change.";
+        try {
+            portal.addClassificationListener(null);
+            assert false : "A null listener was accepted.";
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    /**
+     * Prints the time taken to register a result in a large field with no
+     * listeners and with many.
+     *
+     * @param random The source of the times.
+     */
+    private static void timeChanges(Random random) throws Exception {
+        for (int listeners : new int[]{0, 1, 100}) {
+            CyclingPortalImpl portal = new CyclingPortalImpl();
+            int[] riderIds = createRiders(portal, 2_000);
+            int raceId = portal.createRace("Large", null);
+            int stageId = createStages(portal, raceId, 1)[0];
+            int[] heard = new int[1];
+            for (int l = 0; l < listeners; l++) {
+                portal.addClassificationListener(update -> heard[0] += update.getChanges().size());
+            }
+            long start = System.nanoTime();
+            for (int riderId : riderIds) {
+                portal.registerRiderResultsInStage(stageId, riderId, times(random));
+            }
+            long nanos = System.nanoTime() - start;
+            System.out.printf("Registering %d results with %d listeners: %.1f us per result, %d changes heard.%n",
+                    riderIds.length, listeners, nanos / 1e3 / riderIds.length, heard[0]);
+        }
+    }
+
+    /**
+     * Gives a listener a copy of every ranking as it is now, as if it had
+     * been listening from the start.
+     *
+     * @param mirror The listener.
+     * @param portal The portal being listened to.
+     */
+    private static void seed(Mirror mirror, CyclingPortalImpl portal) throws Exception {
+        for (Map.Entry<String, long[][]> entry : rankings(portal).entrySet()) {
+            Map<Integer, long[]> ranking = new HashMap<>();
+            long[][] expected = entry.getValue();
+            for (int i = 0; i < expected[0].length; i++) {
+                ranking.put((int) expected[0][i], new long[]{i + 1, expected[1][i]});
+            }
+            mirror.rankings.put(entry.getKey(), ranking);
+        }
+    }
+
+    /**
+     * Compares the copies of the rankings kept by two listeners with the
+     * rankings read from the portal.
+     *
+     * @param portal The portal being listened to.
+     * @param first  The first listener.
+     * @param second The second listener, which must have been given the
+     *               same updates.
+     */
+    private static void check(CyclingPortalImpl portal, Mirror first, Mirror second) throws Exception {
+        assert first.updates.size() == second.updates.size();
+        for (int i = 0; i < first.updates.size(); i++) {
+            assert first.updates.get(i) == second.updates.get(i) : "The listeners were given different updates.";
+        }
+        for (Map.Entry<String, long[][]> entry : rankings(portal).entrySet()) {
+            Map<Integer, long[]> ranking = first.rankings.getOrDefault(entry.getKey(), Collections.emptyMap());
+            long[][] expected = entry.getValue();
+            assert ranking.size() == expected[0].length : "The ranking " + entry.getKey() + " has the wrong riders.";
+            for (int i = 0; i < expected[0].length; i++) {
+                long[] riderRank = ranking.get((int) expected[0][i]);
+                assert riderRank != null && riderRank[0] == i + 1 : "The ranking " + entry.getKey() + " is in the wrong order.";
+                assert expected[1][i] < 0 || riderRank[1] % NANOS_PER_DAY == expected[1][i] : "The ranking " + entry.getKey() + " has the wrong values.";
+            }
+        }
+    }
+
+    /**
+     * Reads every ranking in the portal: the riders in order, and their
+     * time in nanoseconds or their points, or -1 where the portal has no
+     * query for the value.
+     *
+     * @param portal The portal.
+     * @return The riders and values of each ranking, by type and ID.
+     */
+    private static Map<String, long[][]> rankings(CyclingPortalImpl portal) throws Exception {
+        Map<String, long[][]> rankings = new HashMap<>();
+        for (int raceId : portal.getRaceIds()) {
+            for (int stageId : portal.getRaceStages(raceId)) {
+                rankings.put("STAGE:" + stageId, ranking(portal.getRidersRankInStage(stageId),
+                        nanos(portal.getRankedAdjustedElapsedTimesInStage(stageId))));
+                for (int checkpointId : portal.getStageCheckpoints(stageId)) {
+                    rankings.put("CHECKPOINT:" + checkpointId, ranking(portal.getRidersRankAtCheckpoint(checkpointId), null));
+                }
+            }
+            int[] generalRank = portal.getRidersGeneralClassificationRank(raceId);
+            rankings.put("GENERAL:" + raceId, ranking(generalRank, nanos(portal.getGeneralClassificationTimesInRace(raceId))));
+            int[] pointsRank = portal.getRidersPointClassificationRank(raceId);
+            rankings.put("POINTS:" + raceId, ranking(pointsRank, inRankOrder(generalRank, portal.getRidersPointsInRace(raceId), pointsRank)));
+            int[] mountainRank = portal.getRidersMountainPointClassificationRank(raceId);
+            rankings.put("MOUNTAIN_POINTS:" + raceId, ranking(mountainRank, inRankOrder(generalRank, portal.getRidersMountainPointsInRace(raceId), mountainRank)));
+        }
+        return rankings;
+    }
+
+    /**
+     * Puts a ranking's riders and values together.
+     *
+     * @param riderIds The riders in order.
+     * @param values   Their values, or null if they are not known.
+     * @return The riders and values.
+     */
+    private static long[][] ranking(int[] riderIds, long[] values) {
+        long[][] ranking = new long[2][riderIds.length];
+        for (int i = 0; i < riderIds.length; i++) {
+            ranking[0][i] = riderIds[i];
+            ranking[1][i] = values == null ? -1 : values[i];
+        }
+        return ranking;
+    }
+
+    /**
+     * Converts times to nanoseconds.
+     *
+     * @param times The times.
+     * @return The times, in nanoseconds.
+     */
+    private static long[] nanos(LocalTime[] times) {
+        long[] nanos = new long[times.length];
+        for (int i = 0; i < times.length; i++) {
+            nanos[i] = times[i].toNanoOfDay();
+        }
+        return nanos;
+    }
+
+    /**
+     * Puts the riders' points, given in general classification order, in
+     * the order of another ranking.
+     *
+     * @param generalRank The rider IDs in general classification order.
+     * @param points      The riders' points, in general classification
+     *                    order.
+     * @param rank        The rider IDs in the order wanted.
+     * @return The points, in the order of rank.
+     */
+    private static long[] inRankOrder(int[] generalRank, int[] points, int[] rank) {
+        long[] rankedPoints = new long[rank.length];
+        for (int i = 0; i < rank.length; i++) {
+            for (int j = 0; j < generalRank.length; j++) {
+                if (generalRank[j] == rank[i]) {
+                    rankedPoints[i] = points[j];
+                }
+            }
+        }
+        return rankedPoints;
+    }
+
+    /**
+     * Registers results in a stage for some of the riders at once.
+     *
+     * @param portal   The portal holding the stage.
+     * @param stageId  The ID of the stage.
+     * @param riderIds The IDs of the riders.
+     * @param random   The source of the times.
+     */
+    private static void registerSome(CyclingPortalImpl portal, int stageId, int[] riderIds, Random random) throws Exception {
+        Map<Integer, LocalTime[]> results = new HashMap<>();
+        for (int riderId : riderIds) {
+            if (exists(portal, riderId) && random.nextBoolean() && portal.getRiderResultsInStage(stageId, riderId).length == 0) {
+                results.put(riderId, times(random));
+            }
+        }
+        try {
+            portal.registerStageResults(stageId, results);
+        } catch (DuplicatedResultException e) {
+            // A rider out on the stage is not a duplicate, so this is not expected.
+            throw new AssertionError(e);
+        }
+    }
+
+    /**
+     * Checks whether a rider is still in the portal.
+     *
+     * @param portal  The portal.
+     * @param riderId The ID of the rider.
+     * @return true if the rider exists.
+     */
+    private static boolean exists(CyclingPortalImpl portal, int riderId) throws Exception {
+        for (int teamId : portal.getTeams()) {
+            for (int teamRider : portal.getTeamRiders(teamId)) {
+                if (teamRider == riderId) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates a team of riders.
+     *
+     * @param portal The portal the riders are created in.
+     * @param count  The number of riders.
+     * @return The IDs of the riders.
+     */
+    private static int[] createRiders(CyclingPortalImpl portal, int count) throws Exception {
+        int teamId = portal.createTeam("Team", null);
+        int[] riderIds = new int[count];
+        for (int r = 0; r < count; r++) {
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+        }
+        return riderIds;
+    }
+
+    /**
+     * Creates stages with a sprint and a climb, ready for results.
+     *
+     * @param portal The portal the stages are created in.
+     * @param raceId The ID of the race the stages are added to.
+     * @param count  The number of stages.
+     * @return The IDs of the stages.
+     */
+    private static int[] createStages(CyclingPortalImpl portal, int raceId, int count) throws Exception {
+        int[] stageIds = new int[count];
+        for (int s = 0; s < count; s++) {
+            stageIds[s] = portal.addStageToRace(raceId, "Stage" + s, null, 150.0,
+                    LocalDateTime.of(2024, 7, 1, 12, 0).plusDays(s), StageType.values()[s % 3]);
+            portal.addIntermediateSprintToStage(stageIds[s], 40.0);
+            portal.addCategorizedClimbToStage(stageIds[s], 90.0, CheckpointType.C1, 5.0, 6.0);
+            portal.concludeStagePreparation(stageIds[s]);
+        }
+        return stageIds;
+    }
+
+    /**
+     * Makes up a rider's times in a stage, close enough together that
+     * riders often share a time or finish in a bunch.
+     *
+     * @param random The source of the times.
+     * @return The times, from the start time to the finish line.
+     */
+    private static LocalTime[] times(Random random) {
+        LocalTime start = LocalTime.of(12, 0);
+        return new LocalTime[]{start, start.plusMinutes(60 + random.nextInt(3)),
+                start.plusMinutes(150 + random.nextInt(3)), start.plusMinutes(220).plusSeconds(random.nextInt(8))};
+    }
+}
@@ -0,0 +1,112 @@
+import cycling.*;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A benchmark of rebuilding the classifications of a three-week tour.
+ * Every result of the tour is registered stage by stage, and then one
+ * rider's result at a time is deleted and registered again, each change
+ * followed by reading every stage's ranks and points and the race's
+ * classifications, so that the stage is ranked and scored again and the
+ * race's classifications are rebuilt from all its stages each time.
+ * <p>
+ * Usage: java ClassificationRebuildBenchmark [riders] [stages]
+ * [checkpoints] [rebuilds]. Run with assertions enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class ClassificationRebuildBenchmark {
+
+    private static final int RIDERS_PER_TEAM = 8;
+
+    /**
+     * Benchmark method.
+     *
+     * @param args the number of riders, stages, checkpoints per stage and
+     *             rebuilds, all optional
+     */
+    public static void main(String[] args) throws Exception {
+        int riderCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int stageCount = args.length > 1 ? Integer.parseInt(args[1]) : 21;
+        int checkpointCount = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int rebuilds = args.length > 3 ? Integer.parseInt(args[3]) : 2000;
+        Random random = new Random(1901);
+
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[] riderIds = new int[riderCount];
+        int teamId = -1;
+        for (int r = 0; r < riderCount; r++) {
+            if (r % RIDERS_PER_TEAM == 0) {
+                teamId = portal.createTeam("Team" + r / RIDERS_PER_TEAM, null);
+            }
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1985 + r % 15);
+        }
+        int raceId = portal.createRace("Tour", "Three weeks");
+        int[] stageIds = new int[stageCount];
+        for (int s = 0; s < stageCount; s++) {
+            stageIds[s] = portal.addStageToRace(raceId, "Stage" + s, null, 180.0,
+                    LocalDateTime.of(2024, 7, 1, 12, 0).plusDays(s), s % 3 == 0 ? StageType.FLAT : StageType.HIGH_MOUNTAIN);
+            for (int c = 0; c < checkpointCount; c++) {
+                if (c % 2 == 0) {
+                    portal.addIntermediateSprintToStage(stageIds[s], 15.0 * (c + 1));
+                } else {
+                    portal.addCategorizedClimbToStage(stageIds[s], 15.0 * (c + 1), CheckpointType.C1, 7.0, 10.0);
+                }
+            }
+            portal.concludeStagePreparation(stageIds[s]);
+        }
+
+        long start = System.nanoTime();
+        for (int stageId : stageIds) {
+            Map<Integer, LocalTime[]> results = new HashMap<>();
+            for (int riderId : riderIds) {
+                results.put(riderId, times(random, checkpointCount));
+            }
+            portal.registerStageResults(stageId, results);
+        }
+        long registerNanos = System.nanoTime() - start;
+
+        long checksum = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < rebuilds; i++) {
+            int stageId = stageIds[random.nextInt(stageCount)];
+            int riderId = riderIds[random.nextInt(riderCount)];
+            portal.deleteRiderResultsInStage(stageId, riderId);
+            portal.registerRiderResultsInStage(stageId, riderId, times(random, checkpointCount));
+            checksum += portal.getRidersRankInStage(stageId)[0];
+            checksum += portal.getRidersPointsInStage(stageId)[0];
+            checksum += portal.getRidersMountainPointsInStage(stageId)[0];
+            checksum += portal.getRidersPointClassificationRank(raceId)[0];
+            checksum += portal.getRidersMountainPointClassificationRank(raceId)[0];
+        }
+        long rebuildNanos = System.nanoTime() - start;
+        assert portal.getRidersGeneralClassificationRank(raceId).length == riderCount;
+
+        System.out.printf("Tour of %d riders, %d stages and %d checkpoints per stage%n", riderCount, stageCount, checkpointCount);
+        System.out.printf("Registered every result in %.1f ms.%n", registerNanos / 1e6);
+        System.out.printf("Rebuilt the classifications %d times in %.1f ms (%.1f us each, checksum %d).%n",
+                rebuilds, rebuildNanos / 1e6, rebuildNanos / 1e3 / rebuilds, checksum);
+    }
+
+    /**
+     * Makes up a rider's times in a stage.
+     *
+     * @param random          The source of the times.
+     * @param checkpointCount The number of checkpoints in the stage.
+     * @return The times, from the start time to the finish line.
+     */
+    private static LocalTime[] times(Random random, int checkpointCount) {
+        LocalTime[] times = new LocalTime[checkpointCount + 2];
+        LocalTime time = LocalTime.of(12, 0);
+        for (int i = 0; i < times.length; i++) {
+            times[i] = time;
+            time = time.plusSeconds(600 + random.nextInt(600));
+        }
+        return times;
+    }
+}
@@ -0,0 +1,274 @@
+import cycling.*;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A stress test for ConcurrentCyclingPortalImpl. One thread per stage
+ * registers every rider's results while reader threads keep querying the
+ * classifications. Once all the results are in, the classifications are
+ * compared against the same results registered one at a time on a single
+ * thread. Riders on the same points are ranked in the order they
+ * entered the race, which depends on how the writers interleaved, so
+ * they are compared in ID order. Several readers then query a race whose
+ * results have
+ * just changed at the same time, each of which must see the same
+ * classifications.
+ * <p>
+ * Run with assertions enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class ConcurrentPortalStressTest {
+
+    private static final int RACES = 4;
+    private static final int STAGES_PER_RACE = 3;
+    private static final int RIDERS = 200;
+    private static final int READERS = 4;
+    private static final StageType[] STAGE_TYPES = {StageType.FLAT, StageType.MEDIUM_MOUNTAIN, StageType.HIGH_MOUNTAIN};
+
+    /**
+     * Test method.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1410);
+        LocalTime[][][] results = new LocalTime[RACES * STAGES_PER_RACE][RIDERS][];
+        for (LocalTime[][] stageResults : results) {
+            for (int r = 0; r < RIDERS; r++) {
+                stageResults[r] = new LocalTime[]{
+                        LocalTime.of(0, random.nextInt(60), random.nextInt(60)),
+                        LocalTime.of(0, random.nextInt(60), random.nextInt(60)),
+                        LocalTime.of(0, random.nextInt(60), random.nextInt(60)),
+                        LocalTime.of(random.nextInt(5), random.nextInt(60), random.nextInt(60))};
+            }
+        }
+
+        ConcurrentCyclingPortalImpl portal = new ConcurrentCyclingPortalImpl();
+        int[] riderIds = createRiders(portal);
+        int[] raceIds = createRaces(portal);
+        int[] stageIds = allStages(portal, raceIds);
+
+        AtomicBoolean writing = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int s = 0; s < stageIds.length; s++) {
+            int stageIndex = s;
+            writers.add(new Thread(() -> {
+                List<Integer> order = new ArrayList<>();
+                for (int r = 0; r < RIDERS; r++) {
+                    order.add(r);
+                }
+                Collections.shuffle(order, new Random(stageIndex));
+                for (int r : order) {
+                    try {
+                        portal.registerRiderResultsInStage(stageIds[stageIndex], riderIds[r], results[stageIndex][r]);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            }));
+        }
+        List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < READERS; t++) {
+            readers.add(new Thread(() -> {
+                while (writing.get()) {
+                    for (int raceId : raceIds) {
+                        try {
+                            checkConsistent(portal, raceId);
+                        } catch (IDNotRecognisedException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        readers.forEach(Thread::start);
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writing.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        System.out.printf("Registered %d results with %d writers and %d readers in %d ms%n",
+                stageIds.length * RIDERS, writers.size(), readers.size(), (System.nanoTime() - start) / 1_000_000);
+        List<Object> concurrentSnapshot = snapshot(portal, raceIds, stageIds);
+
+        portal.deleteRiderResultsInStage(stageIds[0], riderIds[0]);
+        portal.registerRiderResultsInStage(stageIds[0], riderIds[0], results[0][0]);
+        List<List<Object>> readerSnapshots = Collections.synchronizedList(new ArrayList<>());
+        readers.clear();
+        for (int t = 0; t < READERS; t++) {
+            readers.add(new Thread(() -> {
+                try {
+                    readerSnapshots.add(snapshot(portal, raceIds, stageIds));
+                } catch (IDNotRecognisedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        readers.forEach(Thread::start);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assert (readerSnapshots.size() == READERS) : "A reader failed";
+        for (List<Object> readerSnapshot : readerSnapshots) {
+            assert (Arrays.deepEquals(readerSnapshot.toArray(), concurrentSnapshot.toArray()))
+                    : "Readers querying a changed race together saw different classifications";
+        }
+
+        portal.eraseCyclingPortal();
+        int[] sequentialRiderIds = createRiders(portal);
+        int[] sequentialRaceIds = createRaces(portal);
+        int[] sequentialStageIds = allStages(portal, sequentialRaceIds);
+        for (int s = 0; s < sequentialStageIds.length; s++) {
+            for (int r = 0; r < RIDERS; r++) {
+                portal.registerRiderResultsInStage(sequentialStageIds[s], sequentialRiderIds[r], results[s][r]);
+            }
+        }
+        List<Object> sequentialSnapshot = snapshot(portal, sequentialRaceIds, sequentialStageIds);
+
+        assert (Arrays.deepEquals(concurrentSnapshot.toArray(), sequentialSnapshot.toArray()))
+                : "Classifications after concurrent registration differ from sequential registration";
+        System.out.println("Concurrent and sequential classifications match.");
+    }
+
+    /**
+     * Checks that the classifications of a race read while results are
+     * being registered are internally consistent.
+     *
+     * @param portal The portal being queried.
+     * @param raceId The ID of the race being queried.
+     */
+    private static void checkConsistent(CyclingPortal portal, int raceId) throws IDNotRecognisedException {
+        int[] rank = portal.getRidersGeneralClassificationRank(raceId);
+        LocalTime[] times = portal.getGeneralClassificationTimesInRace(raceId);
+        assert (Arrays.stream(rank).distinct().count() == rank.length)
+                : "Rider appears twice in the general classification";
+        for (int i = 1; i < times.length; i++) {
+            assert (!times[i].isBefore(times[i - 1]))
+                    : "General classification times out of order";
+        }
+        int[] pointsRank = portal.getRidersPointClassificationRank(raceId);
+        assert (Arrays.stream(pointsRank).distinct().count() == pointsRank.length)
+                : "Rider appears twice in the points classification";
+    }
+
+    /**
+     * Collects every classification of the given races and stages.
+     *
+     * @param portal   The portal being queried.
+     * @param raceIds  The IDs of the races.
+     * @param stageIds The IDs of the stages.
+     * @return A list of the classification arrays.
+     */
+    private static List<Object> snapshot(CyclingPortalImpl portal, int[] raceIds, int[] stageIds) throws IDNotRecognisedException {
+        List<Object> snapshot = new ArrayList<>();
+        for (int raceId : raceIds) {
+            snapshot.add(portal.getRidersGeneralClassificationRank(raceId));
+            snapshot.add(portal.getGeneralClassificationTimesInRace(raceId));
+            snapshot.add(portal.getRidersPointsInRace(raceId));
+            snapshot.add(portal.getRidersMountainPointsInRace(raceId));
+            int[] generalRank = portal.getRidersGeneralClassificationRank(raceId);
+            snapshot.add(tiesInIdOrder(portal.getRidersPointClassificationRank(raceId),
+                    generalRank, portal.getRidersPointsInRace(raceId)));
+            snapshot.add(tiesInIdOrder(portal.getRidersMountainPointClassificationRank(raceId),
+                    generalRank, portal.getRidersMountainPointsInRace(raceId)));
+        }
+        for (int stageId : stageIds) {
+            snapshot.add(portal.getRidersRankInStage(stageId));
+            snapshot.add(portal.getTopRidersInStage(stageId, 10));
+            snapshot.add(portal.getRidersRankAtCheckpoint(portal.getStageCheckpoints(stageId)[1]));
+            snapshot.add(portal.getRankedAdjustedElapsedTimesInStage(stageId));
+            snapshot.add(portal.getRidersPointsInStage(stageId));
+            snapshot.add(portal.getRidersMountainPointsInStage(stageId));
+        }
+        return snapshot;
+    }
+
+    /**
+     * Puts the riders on the same points in a points ranking in ID order,
+     * leaving the rest of the ranking as it is.
+     *
+     * @param rank        The rider IDs, most points first.
+     * @param generalRank The rider IDs in general classification order.
+     * @param points      The riders' points, in general classification
+     *                    order.
+     * @return A copy of the ranking with each run of tied riders sorted.
+     */
+    private static int[] tiesInIdOrder(int[] rank, int[] generalRank, int[] points) {
+        Map<Integer, Integer> riderPoints = new HashMap<>();
+        for (int i = 0; i < generalRank.length; i++) {
+            riderPoints.put(generalRank[i], points[i]);
+        }
+        int[] sorted = rank.clone();
+        int first = 0;
+        for (int i = 1; i <= sorted.length; i++) {
+            if (i == sorted.length || !riderPoints.get(sorted[i]).equals(riderPoints.get(sorted[first]))) {
+                Arrays.sort(sorted, first, i);
+                first = i;
+            }
+        }
+        return sorted;
+    }
+
+    /**
+     * Creates a team and all the riders taking part in the test.
+     *
+     * @param portal The portal the riders are created in.
+     * @return The IDs of the riders.
+     */
+    private static int[] createRiders(CyclingPortal portal) throws Exception {
+        int teamId = portal.createTeam("StressTeam", null);
+        int[] riderIds = new int[RIDERS];
+        for (int r = 0; r < RIDERS; r++) {
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+        }
+        return riderIds;
+    }
+
+    /**
+     * Creates the races and their stages, each with an intermediate sprint
+     * and a climb, and concludes the preparation of every stage.
+     *
+     * @param portal The portal the races are created in.
+     * @return The IDs of the races.
+     */
+    private static int[] createRaces(CyclingPortal portal) throws Exception {
+        int[] raceIds = new int[RACES];
+        for (int i = 0; i < RACES; i++) {
+            raceIds[i] = portal.createRace("StressRace" + i, null);
+            for (int s = 0; s < STAGES_PER_RACE; s++) {
+                int stageId = portal.addStageToRace(raceIds[i], "StressRace" + i + "Stage" + s, null, 150,
+                        LocalDateTime.of(2023, 7, 1 + s, 12, 0), STAGE_TYPES[s % STAGE_TYPES.length]);
+                portal.addIntermediateSprintToStage(stageId, 50.0);
+                portal.addCategorizedClimbToStage(stageId, 100.0, CheckpointType.C1, 6.0, 8.0);
+                portal.concludeStagePreparation(stageId);
+            }
+        }
+        return raceIds;
+    }
+
+    /**
+     * Gets the stages of all the given races.
+     *
+     * @param portal  The portal being queried.
+     * @param raceIds The IDs of the races.
+     * @return The IDs of the stages, race by race.
+     */
+    private static int[] allStages(CyclingPortal portal, int[] raceIds) throws IDNotRecognisedException {
+        return Arrays.stream(raceIds).flatMap(raceId -> {
+            try {
+                return Arrays.stream(portal.getRaceStages(raceId));
+            } catch (IDNotRecognisedException e) {
+                throw new RuntimeException(e);
+            }
+        }).toArray();
+    }
+}
@@ -5,6 +5,8 @@ import java.net.IDN;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import javax.management.RuntimeErrorException;
 
@@ -423,6 +425,95 @@ public class CyclingPortalTestApp {
         } catch (IDNotRecognisedException e){
             throw new RuntimeException(e);
         }
+
+        Stage bunchSprint = new Stage(0, 0, "BunchSprint", "BunchSprintDesc", 100, LocalDateTime.of(2023, 7, 1, 12, 0), StageType.FLAT);
+        for (int i = 0; i < 250; i++) {
+            bunchSprint.addCompletionTime(i, LocalTime.of(4, 0).plusNanos(i * 500_000_000L));
+        }
+        bunchSprint.addCompletionTime(250, LocalTime.of(4, 5));
+        Map<Integer, LocalTime> bunchSprintTimes = bunchSprint.calculateAdjustedTimes();
+        for (int i = 0; i < 250; i++) {
+            assert (bunchSprintTimes.get(i).equals(LocalTime.of(4, 0)))
+                    : "Bunch sprint rider not given the time of the first rider in the bunch";
+        }
+        assert (bunchSprintTimes.get(250).equals(LocalTime.of(4, 5)))
+                : "Rider finishing more than a second behind the bunch was given the bunch time";
+
+        try {
+            CyclingPortalImpl firstPortal = new CyclingPortalImpl();
+            CyclingPortalImpl secondPortal = new CyclingPortalImpl();
+            int firstRaceId = firstPortal.createRace("FirstPortalRace", null);
+            assert (secondPortal.createRace("SecondPortalRace", null) == firstRaceId)
+                    : "Separate portals share race IDs";
+            firstPortal.saveCyclingPortal("IdAllocatorTest");
+            firstPortal.eraseCyclingPortal();
+            firstPortal.loadCyclingPortal("IdAllocatorTest");
+            assert (firstPortal.createRace("ReloadedPortalRace", null) != firstRaceId)
+                    : "Race ID reused after loading a saved portal";
+        } catch (IllegalNameException | InvalidNameException | IOException | ClassNotFoundException e) {
+            throw new RuntimeException(e);
+        }
+
+        try {
+            CyclingPortalImpl batchPortal = new CyclingPortalImpl();
+            CyclingPortalImpl singlePortal = new CyclingPortalImpl();
+            Map<Integer, LocalTime[]> batch = new HashMap<>();
+            for (CyclingPortalImpl portal : new CyclingPortalImpl[]{batchPortal, singlePortal}) {
+                int teamId = portal.createTeam("BatchTeam", null);
+                for (int i = 0; i < 3; i++) {
+                    portal.createRider(teamId, "BatchRider" + i, 1990);
+                }
+                int stageId = portal.addStageToRace(portal.createRace("BatchRace", null), "BatchStage", null, 100,
+                        LocalDateTime.of(2023, 7, 1, 12, 0), StageType.HIGH_MOUNTAIN);
+                portal.addCategorizedClimbToStage(stageId, 50.0, CheckpointType.C1, 6.0, 8.0);
+                portal.concludeStagePreparation(stageId);
+            }
+            batch.put(0, new LocalTime[]{LocalTime.of(12, 0), LocalTime.of(13, 10), LocalTime.of(15, 0)});
+            batch.put(1, new LocalTime[]{LocalTime.of(12, 0), LocalTime.of(13, 0), LocalTime.of(15, 5)});
+            batch.put(2, new LocalTime[]{LocalTime.of(12, 0), LocalTime.of(13, 5), LocalTime.of(14, 55)});
+            batch.put(7, new LocalTime[]{LocalTime.of(12, 0), LocalTime.of(13, 5), LocalTime.of(14, 55)});
+            try {
+                batchPortal.registerStageResults(0, batch);
+                assert false : "Batch containing an unknown rider was accepted";
+            } catch (IDNotRecognisedException e) {
+                assert (batchPortal.getRidersRankInStage(0).length == 0)
+                        : "Rejected batch left some of its results behind";
+            }
+            batch.remove(7);
+            batchPortal.registerStageResults(0, batch);
+            for (Map.Entry<Integer, LocalTime[]> result : batch.entrySet()) {
+                singlePortal.registerRiderResultsInStage(0, result.getKey(), result.getValue());
+            }
+            assert (Arrays.equals(batchPortal.getRidersRankInStage(0), singlePortal.getRidersRankInStage(0)))
+                    : "Batch and single registration rank the stage differently";
+            assert (Arrays.equals(batchPortal.getRidersMountainPointsInStage(0), new int[]{8, 10, 6}))
+                    : "Climb points not awarded from the times at the climb";
+        } catch (IllegalNameException | InvalidNameException | IDNotRecognisedException | InvalidLengthException |
+                 InvalidLocationException | InvalidStageStateException | InvalidStageTypeException |
+                 DuplicatedResultException | InvalidCheckpointTimesException e) {
+            throw new RuntimeException(e);
+        }
+
+        try {
+            CyclingPortalImpl longPortal = new CyclingPortalImpl();
+            int teamId = longPortal.createTeam("LongTeam", null);
+            int firstRider = longPortal.createRider(teamId, "UnderADay", 1990);
+            int secondRider = longPortal.createRider(teamId, "OverADay", 1990);
+            int stageId = longPortal.addStageToRace(longPortal.createRace("LongRace", null), "LongStage", null, 100,
+                    LocalDateTime.of(2023, 7, 1, 8, 0), StageType.FLAT);
+            longPortal.addIntermediateSprintToStage(stageId, 50.0);
+            longPortal.concludeStagePreparation(stageId);
+            longPortal.registerRiderResultsInStage(stageId, secondRider,
+                    LocalTime.of(8, 0), LocalTime.of(8, 0), LocalTime.of(8, 0, 30));
+            longPortal.registerRiderResultsInStage(stageId, firstRider,
+                    LocalTime.of(8, 0), LocalTime.of(8, 0), LocalTime.of(7, 59));
+            assert (Arrays.equals(longPortal.getRidersRankInStage(stageId), new int[]{firstRider, secondRider}))
+                    : "A total time over 24 hours wrapped around and was ranked first";
+        } catch (IllegalNameException | InvalidNameException | IDNotRecognisedException | InvalidLengthException |
+                 InvalidLocationException | InvalidStageStateException | InvalidStageTypeException |
+                 DuplicatedResultException | InvalidCheckpointTimesException e) {
+            throw new RuntimeException(e);
+        }
     }
 
 
@@ -0,0 +1,181 @@
+import cycling.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A benchmark of delta saves against full saves over a simulated Grand
+ * Tour. Each day one stage's results are registered and the portal is
+ * saved both ways; the delta's size and time should stay level while the
+ * full save keeps growing. The chain is then loaded and compared against
+ * the portal it was saved from, after a few riders, results, stages and
+ * a race have been removed or added along the way.
+ * <p>
+ * Usage: java DeltaSaveBenchmark [riders] [stages]. Run with assertions
+ * enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class DeltaSaveBenchmark {
+
+    private static final int RIDERS_PER_TEAM = 8;
+    private static final int CHECKPOINTS = 4;
+
+    /**
+     * Benchmark method.
+     *
+     * @param args the number of riders and the number of stages, both
+     *             optional
+     */
+    public static void main(String[] args) throws Exception {
+        int riderCount = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int stageCount = args.length > 1 ? Integer.parseInt(args[1]) : 21;
+        Path directory = Files.createTempDirectory("delta");
+        String snapshotFile = directory.resolve("tour.snapshot").toString();
+        String fullFile = directory.resolve("tour.full").toString();
+        Random random = new Random(1603);
+
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[] riderIds = new int[riderCount];
+        int teamId = -1;
+        for (int r = 0; r < riderCount; r++) {
+            if (r % RIDERS_PER_TEAM == 0) {
+                teamId = portal.createTeam("Team" + r / RIDERS_PER_TEAM, null);
+            }
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1985 + r % 15);
+        }
+        int raceId = portal.createRace("Tour", "Three weeks");
+        int[] stageIds = new int[stageCount];
+        for (int s = 0; s < stageCount; s++) {
+            stageIds[s] = portal.addStageToRace(raceId, "Stage" + s, null, 180.0,
+                    LocalDateTime.of(2024, 7, 1, 12, 0).plusDays(s), s % 3 == 0 ? StageType.FLAT : StageType.HIGH_MOUNTAIN);
+            for (int c = 0; c < CHECKPOINTS; c++) {
+                if (c % 2 == 0) {
+                    portal.addIntermediateSprintToStage(stageIds[s], 30.0 * (c + 1));
+                } else {
+                    portal.addCategorizedClimbToStage(stageIds[s], 30.0 * (c + 1), CheckpointType.C1, 7.0, 10.0);
+                }
+            }
+            portal.concludeStagePreparation(stageIds[s]);
+        }
+        portal.saveCyclingPortal(snapshotFile);
+        Set<Integer> activeRiders = new LinkedHashSet<>();
+        for (int riderId : riderIds) {
+            activeRiders.add(riderId);
+        }
+
+        long totalDelta = 0;
+        long totalFull = 0;
+        System.out.println("day  delta bytes  delta ms  full bytes  full ms");
+        for (int s = 0; s < stageCount; s++) {
+            Map<Integer, LocalTime[]> results = new HashMap<>();
+            for (int riderId : activeRiders) {
+                if (random.nextInt(200) != 0) {
+                    results.put(riderId, times(random));
+                }
+            }
+            portal.registerStageResults(stageIds[s], results);
+            if (s == stageCount / 3) {
+                portal.removeRider(riderIds[5]);
+                activeRiders.remove(riderIds[5]);
+                portal.deleteRiderResultsInStage(stageIds[0], riderIds[9]);
+                int newTeam = portal.createTeam("LateEntry", "Joined mid-race");
+                portal.createRider(newTeam, "Latecomer", 2001);
+            }
+            if (s == stageCount / 2) {
+                int prologueRace = portal.createRace("Prologue", null);
+                int prologue = portal.addStageToRace(prologueRace, "PrologueTT", null, 8.0,
+                        LocalDateTime.of(2024, 6, 30, 15, 0), StageType.TT);
+                portal.concludeStagePreparation(prologue);
+                portal.registerRiderResultsInStage(prologue, riderIds[0], LocalTime.of(15, 0), LocalTime.of(15, 9, 41));
+                int removedTeam = portal.getTeams()[1];
+                for (int riderId : portal.getTeamRiders(removedTeam)) {
+                    activeRiders.remove(riderId);
+                }
+                portal.removeTeam(removedTeam);
+            }
+
+            long start = System.nanoTime();
+            portal.saveDeltaCyclingPortal(snapshotFile);
+            long deltaNanos = System.nanoTime() - start;
+            long deltaBytes = new File(snapshotFile + "." + (s + 1)).length();
+            start = System.nanoTime();
+            PortalSnapshot.write(portal, Path.of(fullFile));
+            long fullNanos = System.nanoTime() - start;
+            long fullBytes = new File(fullFile).length();
+            totalDelta += deltaNanos;
+            totalFull += fullNanos;
+            System.out.printf("%3d  %11d  %8.2f  %10d  %7.2f%n", s + 1, deltaBytes, deltaNanos / 1e6, fullBytes, fullNanos / 1e6);
+        }
+        System.out.printf("Delta saves took %.1f ms in total, full saves %.1f ms.%n", totalDelta / 1e6, totalFull / 1e6);
+
+        CyclingPortalImpl loaded = new CyclingPortalImpl();
+        long start = System.nanoTime();
+        loaded.loadCyclingPortal(snapshotFile);
+        System.out.printf("Loaded the snapshot and %d deltas in %.1f ms.%n", stageCount, (System.nanoTime() - start) / 1e6);
+        assert describe(loaded).equals(describe(portal)) : "The delta chain does not match the portal.";
+
+        loaded.removeRaceByName("Prologue");
+        loaded.saveDeltaCyclingPortal(snapshotFile);
+        CyclingPortalImpl reloaded = new CyclingPortalImpl();
+        reloaded.loadCyclingPortal(snapshotFile);
+        assert describe(reloaded).equals(describe(loaded)) : "A delta saved after loading the chain does not match.";
+
+        portal.saveCyclingPortal(snapshotFile);
+        assert !new File(snapshotFile + ".1").exists() : "A full save did not delete the old chain.";
+        System.out.println("Loaded delta chains match the portals they were saved from.");
+    }
+
+    /**
+     * Makes up a rider's times in a stage.
+     *
+     * @param random The source of the times.
+     * @return The times, from the start time to the finish line.
+     */
+    private static LocalTime[] times(Random random) {
+        LocalTime[] times = new LocalTime[CHECKPOINTS + 2];
+        LocalTime time = LocalTime.of(12, 0);
+        for (int i = 0; i < times.length; i++) {
+            times[i] = time;
+            time = time.plusSeconds(1200 + random.nextInt(1200));
+        }
+        return times;
+    }
+
+    /**
+     * Describes everything that can be read from a portal, so that two
+     * portals can be compared.
+     *
+     * @param portal The portal being described.
+     * @return The description.
+     */
+    private static String describe(CyclingPortalImpl portal) throws Exception {
+        StringBuilder description = new StringBuilder();
+        for (int teamId : portal.getTeams()) {
+            description.append("team ").append(teamId).append(Arrays.toString(portal.getTeamRiders(teamId))).append('\n');
+        }
+        for (int raceId : portal.getRaceIds()) {
+            description.append(portal.viewRaceDetails(raceId)).append('\n');
+            for (int stageId : portal.getRaceStages(raceId)) {
+                description.append(Arrays.toString(portal.getStageCheckpoints(stageId)))
+                        .append(Arrays.toString(portal.getRidersRankInStage(stageId)))
+                        .append(Arrays.toString(portal.getRankedAdjustedElapsedTimesInStage(stageId)))
+                        .append(Arrays.toString(portal.getRidersMountainPointsInStage(stageId))).append('\n');
+            }
+            description.append(Arrays.toString(portal.getRidersGeneralClassificationRank(raceId)))
+                    .append(Arrays.toString(portal.getGeneralClassificationTimesInRace(raceId)))
+                    .append(Arrays.toString(portal.getRidersPointClassificationRank(raceId))).append('\n');
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,264 @@
+import cycling.*;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A comparison of the heap used by the per-rider result tables of a full
+ * three-week tour, held in HashMaps with boxed keys and values, against
+ * the same tables held in int-keyed maps. Both sets of tables are filled
+ * with the same results, the ones a rider, stage and checkpoint each used
+ * to keep, and the heap is measured after a garbage collection. The heap
+ * used by a whole portal holding the tour, which keeps the results of
+ * each stage in columns, is shown as well.
+ * <p>
+ * Usage: java HeapFootprintBenchmark [riders] [stages] [checkpoints]. Run
+ * with assertions enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class HeapFootprintBenchmark {
+
+    private static final int RIDERS_PER_TEAM = 8;
+
+    /**
+     * Benchmark method.
+     *
+     * @param args the number of riders, stages and checkpoints per stage,
+     *             all optional
+     */
+    public static void main(String[] args) throws Exception {
+        int riderCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int stageCount = args.length > 1 ? Integer.parseInt(args[1]) : 21;
+        int checkpointCount = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        Random random = new Random(1803);
+        long[][][] times = new long[stageCount][riderCount][];
+        for (int s = 0; s < stageCount; s++) {
+            for (int r = 0; r < riderCount; r++) {
+                times[s][r] = times(random, checkpointCount);
+            }
+        }
+
+        long before = usedHeap();
+        List<Object> boxed = boxedTables(times, checkpointCount);
+        long boxedBytes = usedHeap() - before;
+        assert boxed.size() == riderCount * 3 + stageCount * (2 + checkpointCount);
+        boxed = null;
+
+        before = usedHeap();
+        List<Object> primitive = primitiveTables(times, checkpointCount);
+        long primitiveBytes = usedHeap() - before;
+        assert primitive.size() == riderCount * 3 + stageCount * (2 + checkpointCount);
+        primitive = null;
+
+        before = usedHeap();
+        CyclingPortalImpl portal = tour(times, checkpointCount);
+        long portalBytes = usedHeap() - before;
+        assert portal.getRidersGeneralClassificationRank(portal.getRaceIds()[0]).length == riderCount;
+
+        System.out.printf("Tour of %d riders, %d stages and %d checkpoints per stage%n", riderCount, stageCount, checkpointCount);
+        System.out.printf("%-28s %10s%n", "", "heap KB");
+        System.out.printf("%-28s %10d%n", "HashMap result tables", boxedBytes / 1024);
+        System.out.printf("%-28s %10d%n", "Int-keyed result tables", primitiveBytes / 1024);
+        System.out.printf("%-28s %10d%n", "Whole portal", portalBytes / 1024);
+        System.out.printf("The int-keyed tables use %.0f%% of the heap of the HashMaps.%n", 100.0 * primitiveBytes / boxedBytes);
+    }
+
+    /**
+     * Builds the result tables of the tour with HashMaps: for each rider
+     * their stage points, checkpoint points and checkpoint times, and for
+     * each stage and checkpoint the riders' times.
+     *
+     * @param times           The riders' checkpoint times in every stage.
+     * @param checkpointCount The number of checkpoints per stage.
+     * @return Every table built.
+     */
+    private static List<Object> boxedTables(long[][][] times, int checkpointCount) {
+        List<Object> tables = new ArrayList<>();
+        int riderCount = times[0].length;
+        for (int r = 0; r < riderCount; r++) {
+            HashMap<Integer, Integer> stagePoints = new HashMap<>();
+            HashMap<Integer, Integer> checkpointPoints = new HashMap<>();
+            HashMap<Integer, long[]> checkpointTimes = new HashMap<>();
+            for (int s = 0; s < times.length; s++) {
+                stagePoints.put(s, points(r));
+                checkpointTimes.put(s, times[s][r]);
+                for (int c = 0; c < checkpointCount; c++) {
+                    checkpointPoints.put(s * checkpointCount + c, points(r + c));
+                }
+            }
+            tables.add(stagePoints);
+            tables.add(checkpointPoints);
+            tables.add(checkpointTimes);
+        }
+        for (long[][] stageTimes : times) {
+            HashMap<Integer, Long> completionTimes = new HashMap<>();
+            HashMap<Integer, Long> adjustedTimes = new HashMap<>();
+            for (int r = 0; r < riderCount; r++) {
+                completionTimes.put(r, total(stageTimes[r]));
+                adjustedTimes.put(r, total(stageTimes[r]));
+            }
+            tables.add(completionTimes);
+            tables.add(adjustedTimes);
+            for (int c = 0; c < checkpointCount; c++) {
+                HashMap<Integer, Long> checkpointTimes = new HashMap<>();
+                for (int r = 0; r < riderCount; r++) {
+                    checkpointTimes.put(r, stageTimes[r][c + 1]);
+                }
+                tables.add(checkpointTimes);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Builds the same result tables as {@link #boxedTables} with the
+     * int-keyed maps.
+     *
+     * @param times           The riders' checkpoint times in every stage.
+     * @param checkpointCount The number of checkpoints per stage.
+     * @return Every table built.
+     */
+    private static List<Object> primitiveTables(long[][][] times, int checkpointCount) {
+        List<Object> tables = new ArrayList<>();
+        int riderCount = times[0].length;
+        for (int r = 0; r < riderCount; r++) {
+            IntIntMap stagePoints = new IntIntMap();
+            IntIntMap checkpointPoints = new IntIntMap();
+            IntObjectMap<long[]> checkpointTimes = new IntObjectMap<>();
+            for (int s = 0; s < times.length; s++) {
+                stagePoints.put(s, points(r));
+                checkpointTimes.put(s, times[s][r]);
+                for (int c = 0; c < checkpointCount; c++) {
+                    checkpointPoints.put(s * checkpointCount + c, points(r + c));
+                }
+            }
+            tables.add(stagePoints);
+            tables.add(checkpointPoints);
+            tables.add(checkpointTimes);
+        }
+        for (long[][] stageTimes : times) {
+            IntLongMap completionTimes = new IntLongMap();
+            IntLongMap adjustedTimes = new IntLongMap();
+            for (int r = 0; r < riderCount; r++) {
+                completionTimes.put(r, total(stageTimes[r]));
+                adjustedTimes.put(r, total(stageTimes[r]));
+            }
+            tables.add(completionTimes);
+            tables.add(adjustedTimes);
+            for (int c = 0; c < checkpointCount; c++) {
+                IntLongMap checkpointTimes = new IntLongMap();
+                for (int r = 0; r < riderCount; r++) {
+                    checkpointTimes.put(r, stageTimes[r][c + 1]);
+                }
+                tables.add(checkpointTimes);
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Builds a portal holding the whole tour, with every result registered.
+     *
+     * @param times           The riders' checkpoint times in every stage.
+     * @param checkpointCount The number of checkpoints per stage.
+     * @return The portal.
+     */
+    private static CyclingPortalImpl tour(long[][][] times, int checkpointCount) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int riderCount = times[0].length;
+        int[] riderIds = new int[riderCount];
+        int teamId = -1;
+        for (int r = 0; r < riderCount; r++) {
+            if (r % RIDERS_PER_TEAM == 0) {
+                teamId = portal.createTeam("Team" + r / RIDERS_PER_TEAM, null);
+            }
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1985 + r % 15);
+        }
+        int raceId = portal.createRace("Tour", "Three weeks");
+        for (int s = 0; s < times.length; s++) {
+            int stageId = portal.addStageToRace(raceId, "Stage" + s, null, 180.0,
+                    LocalDateTime.of(2024, 7, 1, 12, 0).plusDays(s), s % 3 == 0 ? StageType.FLAT : StageType.HIGH_MOUNTAIN);
+            for (int c = 0; c < checkpointCount; c++) {
+                if (c % 2 == 0) {
+                    portal.addIntermediateSprintToStage(stageId, 15.0 * (c + 1));
+                } else {
+                    portal.addCategorizedClimbToStage(stageId, 15.0 * (c + 1), CheckpointType.C1, 7.0, 10.0);
+                }
+            }
+            portal.concludeStagePreparation(stageId);
+            Map<Integer, LocalTime[]> results = new HashMap<>();
+            for (int r = 0; r < riderCount; r++) {
+                LocalTime[] riderTimes = new LocalTime[times[s][r].length];
+                for (int t = 0; t < riderTimes.length; t++) {
+                    riderTimes[t] = LocalTime.ofNanoOfDay(times[s][r][t]);
+                }
+                results.put(riderIds[r], riderTimes);
+            }
+            portal.registerStageResults(stageId, results);
+        }
+        return portal;
+    }
+
+    /**
+     * Makes up a rider's times in a stage, in nanoseconds of the day.
+     *
+     * @param random          The source of the times.
+     * @param checkpointCount The number of checkpoints in the stage.
+     * @return The times, from the start time to the finish line.
+     */
+    private static long[] times(Random random, int checkpointCount) {
+        long[] times = new long[checkpointCount + 2];
+        long time = 12 * 3600L;
+        for (int i = 0; i < times.length; i++) {
+            times[i] = time * 1_000_000_000L;
+            time += 600 + random.nextInt(600);
+        }
+        return times;
+    }
+
+    /**
+     * Adds up a rider's times in a stage.
+     *
+     * @param times The rider's times.
+     * @return The total of the times.
+     */
+    private static long total(long[] times) {
+        long total = 0;
+        for (long time : times) {
+            total += time;
+        }
+        return total;
+    }
+
+    /**
+     * Makes up a number of points, small enough to be among the Integers
+     * that are cached rather than created.
+     *
+     * @param seed The number the points are made from.
+     * @return The points.
+     */
+    private static int points(int seed) {
+        return seed % 30;
+    }
+
+    /**
+     * Measures the heap in use after collecting the garbage.
+     *
+     * @return The number of bytes in use.
+     */
+    private static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
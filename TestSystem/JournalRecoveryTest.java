@@ -0,0 +1,292 @@
+import cycling.*;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A test of the write-ahead journal. A portal is changed with a journal
+ * open and then abandoned without being saved, as if the program had
+ * crashed, and a new portal recovered from the journal is compared against
+ * it. Recovery is also checked with a record cut short at the end of the
+ * journal, after compaction, and with a journal left over from before the
+ * last compaction. A change that cannot be written to the journal is
+ * checked to leave the portal unchanged. Finally, several threads
+ * register results at once to show that they share forces of the journal
+ * to disk.
+ * <p>
+ * Run with assertions enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class JournalRecoveryTest {
+
+    private static final int RIDERS = 60;
+    private static final int WRITER_RACES = 8;
+    private static final int WRITER_RIDERS = 100;
+
+    /**
+     * A change made to a portal.
+     */
+    private interface Change {
+        void make() throws Exception;
+    }
+
+    /**
+     * Test method.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws Exception {
+        Path directory = Files.createTempDirectory("journal");
+        String snapshotFile = directory.resolve("portal.snapshot").toString();
+        String journalFile = directory.resolve("portal.journal").toString();
+        Random random = new Random(1502);
+
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        portal.openJournal(snapshotFile, journalFile);
+        int[] riderIds = createRiders(portal);
+        int raceId = portal.createRace("Journal", null);
+        int[] stageIds = createStages(portal, raceId, "J");
+        registerResults(portal, stageIds[0], riderIds, random);
+        portal.removeRider(riderIds[7]);
+        portal.deleteRiderResultsInStage(stageIds[0], riderIds[3]);
+
+        // Crash: the portal is abandoned without being saved.
+        CyclingPortalImpl recovered = new CyclingPortalImpl();
+        recovered.openJournal(snapshotFile, journalFile);
+        assert describe(recovered).equals(describe(portal)) : "Recovery did not replay every change.";
+        recovered.closeJournal();
+
+        // A crash part-way through writing the last record.
+        long lengthBefore = new File(journalFile).length();
+        portal.registerRiderResultsInStage(stageIds[1], riderIds[0], times(stageIds[1], portal, random));
+        String beforeLastRecord = describe(recovered);
+        try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        recovered = new CyclingPortalImpl();
+        recovered.openJournal(snapshotFile, journalFile);
+        assert describe(recovered).equals(beforeLastRecord) : "A torn record was replayed.";
+        assert new File(journalFile).length() == lengthBefore : "The torn record was not cut off.";
+        portal = recovered;
+
+        // Compaction folds the journal into the snapshot.
+        registerResults(portal, stageIds[1], Arrays.copyOfRange(riderIds, 8, RIDERS), random);
+        long lengthFull = new File(journalFile).length();
+        Path staleJournal = directory.resolve("stale.journal");
+        Files.copy(Path.of(journalFile), staleJournal);
+        String atCompaction = describe(portal);
+        portal.compactJournal();
+        assert new File(journalFile).length() < lengthFull : "Compaction did not empty the journal.";
+        portal.createTeam("AfterCompaction", null);
+        String compacted = describe(portal);
+        portal.closeJournal();
+        recovered = new CyclingPortalImpl();
+        recovered.openJournal(snapshotFile, journalFile);
+        assert describe(recovered).equals(compacted) : "Recovery after compaction lost changes.";
+        recovered.closeJournal();
+
+        // A journal from before the compaction is already in the snapshot.
+        Files.copy(staleJournal, Path.of(journalFile), StandardCopyOption.REPLACE_EXISTING);
+        recovered = new CyclingPortalImpl();
+        recovered.openJournal(snapshotFile, journalFile);
+        assert describe(recovered).equals(atCompaction) : "A stale journal was replayed.";
+        recovered.closeJournal();
+
+        failedWrite(directory);
+        groupCommit(directory);
+        System.out.println("Journal recovery matches the portal it was written from.");
+    }
+
+    /**
+     * Makes changes after the journal's file has been closed underneath the
+     * portal, and checks that each one fails without changing the portal.
+     *
+     * @param directory The directory the journal is written in.
+     */
+    private static void failedWrite(Path directory) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        portal.openJournal(directory.resolve("failed.snapshot").toString(), directory.resolve("failed.journal").toString());
+        int[] riderIds = createRiders(portal);
+        int raceId = portal.createRace("Failed", null);
+        int[] stageIds = createStages(portal, raceId, "F");
+        LocalTime[] riderTimes = times(stageIds[0], portal, new Random(1503));
+        String before = describe(portal);
+        int[] teamIds = portal.getTeams();
+
+        portal.getJournal().close();
+        List<Change> changes = List.of(
+                () -> portal.createTeam("NotJournalled", null),
+                () -> portal.createRider(teamIds[0], "NotJournalled", 1990),
+                () -> portal.registerRiderResultsInStage(stageIds[0], riderIds[0], riderTimes),
+                () -> portal.removeRider(riderIds[1]),
+                () -> portal.removeStageById(stageIds[1]),
+                () -> portal.removeRaceById(raceId),
+                portal::eraseCyclingPortal);
+        for (Change change : changes) {
+            try {
+                change.make();
+                assert false : "A change was made without being journalled.";
+            } catch (UncheckedIOException e) {
+                // Expected.
+            }
+            assert describe(portal).equals(before) : "A change that could not be journalled was applied.";
+        }
+        portal.closeJournal();
+        portal.createTeam("AfterClose", null);
+        assert portal.getTeams().length == teamIds.length + 1;
+    }
+
+    /**
+     * Registers results from several threads at once, each in its own race,
+     * and checks that every result is recovered from the journal.
+     *
+     * @param directory The directory the journal is written in.
+     */
+    private static void groupCommit(Path directory) throws Exception {
+        String snapshotFile = directory.resolve("concurrent.snapshot").toString();
+        String journalFile = directory.resolve("concurrent.journal").toString();
+        ConcurrentCyclingPortalImpl portal = new ConcurrentCyclingPortalImpl();
+        portal.openJournal(snapshotFile, journalFile);
+        int teamId = portal.createTeam("Writers", null);
+        int[] riderIds = new int[WRITER_RIDERS];
+        for (int r = 0; r < WRITER_RIDERS; r++) {
+            riderIds[r] = portal.createRider(teamId, "Writer" + r, 1990);
+        }
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < WRITER_RACES; w++) {
+            int raceId = portal.createRace("Race" + w, null);
+            int stageId = createStages(portal, raceId, "W" + w)[0];
+            Random random = new Random(w);
+            writers.add(new Thread(() -> {
+                try {
+                    registerResults(portal, stageId, riderIds, random);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        long start = System.nanoTime();
+        writers.forEach(Thread::start);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        PortalJournal journal = portal.getJournal();
+        System.out.printf("%d records written with %d forces in %d ms%n",
+                journal.getRecordCount(), journal.getForceCount(), elapsed / 1_000_000);
+        assert journal.getForceCount() <= journal.getRecordCount();
+        String expected = describe(portal);
+        portal.closeJournal();
+
+        CyclingPortalImpl recovered = new CyclingPortalImpl();
+        recovered.openJournal(snapshotFile, journalFile);
+        assert describe(recovered).equals(expected) : "Concurrent results were not all recovered.";
+        recovered.closeJournal();
+    }
+
+    /**
+     * Creates a team of riders.
+     *
+     * @param portal The portal the riders are created in.
+     * @return The IDs of the riders.
+     */
+    private static int[] createRiders(CyclingPortalImpl portal) throws Exception {
+        int teamId = portal.createTeam("Journalists", "Recovered riders");
+        int[] riderIds = new int[RIDERS];
+        for (int r = 0; r < RIDERS; r++) {
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1980 + r % 20);
+        }
+        return riderIds;
+    }
+
+    /**
+     * Creates two stages with a climb and a sprint each, ready for results.
+     *
+     * @param portal The portal the stages are created in.
+     * @param raceId The ID of the race.
+     * @param prefix The start of the stage names.
+     * @return The IDs of the stages.
+     */
+    private static int[] createStages(CyclingPortalImpl portal, int raceId, String prefix) throws Exception {
+        int[] stageIds = new int[2];
+        for (int s = 0; s < stageIds.length; s++) {
+            stageIds[s] = portal.addStageToRace(raceId, prefix + "Stage" + s, "A stage", 150.0,
+                    LocalDateTime.of(2023, 7, 1 + s, 12, 0), StageType.MEDIUM_MOUNTAIN);
+            portal.addCategorizedClimbToStage(stageIds[s], 40.0, CheckpointType.C2, 5.5, 8.0);
+            portal.addIntermediateSprintToStage(stageIds[s], 90.0);
+            portal.concludeStagePreparation(stageIds[s]);
+        }
+        return stageIds;
+    }
+
+    /**
+     * Registers a result for each rider in a stage, one call per rider.
+     *
+     * @param portal   The portal the results are registered in.
+     * @param stageId  The ID of the stage.
+     * @param riderIds The IDs of the riders.
+     * @param random   The source of the times.
+     */
+    private static void registerResults(CyclingPortalImpl portal, int stageId, int[] riderIds, Random random) throws Exception {
+        for (int riderId : riderIds) {
+            portal.registerRiderResultsInStage(stageId, riderId, times(stageId, portal, random));
+        }
+    }
+
+    /**
+     * Makes up a rider's times in a stage.
+     *
+     * @param stageId The ID of the stage.
+     * @param portal  The portal the stage is in.
+     * @param random  The source of the times.
+     * @return The times, from the start time to the finish line.
+     */
+    private static LocalTime[] times(int stageId, CyclingPortalImpl portal, Random random) throws Exception {
+        LocalTime[] times = new LocalTime[portal.getStageCheckpoints(stageId).length + 2];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = LocalTime.of(random.nextInt(4), random.nextInt(60), random.nextInt(60));
+        }
+        return times;
+    }
+
+    /**
+     * Describes everything that can be read from a portal, so that two
+     * portals can be compared.
+     *
+     * @param portal The portal being described.
+     * @return The description.
+     */
+    private static String describe(CyclingPortalImpl portal) throws Exception {
+        StringBuilder description = new StringBuilder();
+        for (int teamId : portal.getTeams()) {
+            description.append("team ").append(teamId).append(Arrays.toString(portal.getTeamRiders(teamId))).append('\n');
+        }
+        for (int raceId : portal.getRaceIds()) {
+            description.append(portal.viewRaceDetails(raceId)).append('\n');
+            for (int stageId : portal.getRaceStages(raceId)) {
+                description.append(Arrays.toString(portal.getStageCheckpoints(stageId)))
+                        .append(Arrays.toString(portal.getRidersRankInStage(stageId)))
+                        .append(Arrays.toString(portal.getRankedAdjustedElapsedTimesInStage(stageId)))
+                        .append(Arrays.toString(portal.getRidersPointsInStage(stageId)))
+                        .append(Arrays.toString(portal.getRidersMountainPointsInStage(stageId))).append('\n');
+            }
+            description.append(Arrays.toString(portal.getRidersGeneralClassificationRank(raceId)))
+                    .append(Arrays.toString(portal.getGeneralClassificationTimesInRace(raceId)))
+                    .append(Arrays.toString(portal.getRidersPointClassificationRank(raceId)))
+                    .append(Arrays.toString(portal.getRidersMountainPointClassificationRank(raceId))).append('\n');
+        }
+        return description.toString();
+    }
+}
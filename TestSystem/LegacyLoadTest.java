@@ -0,0 +1,201 @@
+import cycling.*;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * A test of loading portals saved by the original CyclingPortalImpl, which
+ * used Java serialisation of its original Race, Stage, Checkpoint, Rider
+ * and Team classes.
+ * <p>
+ * TestSystem/OriginalCyclingPortal was saved by the original portal, by
+ * running this class against it with the arguments "write" and the
+ * location of the file. The test loads that file and checks that the
+ * loaded portal answers every query in the same way as the same portal
+ * built with the current code, and that it goes on allocating new IDs.
+ * It also loads TestSystem/CyclingPortalTest, saved by the original
+ * CyclingPortalTestApp.
+ * <p>
+ * Run with assertions enabled (-ea), with the TestSystem directory as the
+ * argument if it is not run from the project root.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class LegacyLoadTest {
+
+    private static final int RIDERS = 12;
+
+    /**
+     * Test method.
+     *
+     * @param args The TestSystem directory, or "write" and the location
+     *             of the file to save the portal to
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 2 && args[0].equals("write")) {
+            CyclingPortal portal = new CyclingPortalImpl();
+            build(portal);
+            portal.saveCyclingPortal(args[1]);
+            return;
+        }
+        String directory = args.length > 0 ? args[0] : "TestSystem";
+
+        CyclingPortal expected = new CyclingPortalImpl();
+        build(expected);
+        CyclingPortal loaded = new CyclingPortalImpl();
+        loaded.loadCyclingPortal(directory + "/OriginalCyclingPortal");
+        assert (describe(loaded).equals(describe(expected)))
+                : "Portal saved by the original portal loaded differently";
+
+        int[] stageIds = loaded.getRaceStages(loaded.getRaceIds()[0]);
+        try {
+            loaded.concludeStagePreparation(stageIds[0]);
+            assert false : "Stage waiting for results was loaded in preparation";
+        } catch (InvalidStageStateException e) {
+            // Expected.
+        }
+        int stageId = stageIds[3];
+        loaded.concludeStagePreparation(stageId);
+        int riderId = loaded.getTeamRiders(loaded.getTeams()[0])[0];
+        loaded.registerRiderResultsInStage(stageId, riderId, LocalTime.of(12, 0), LocalTime.of(15, 0));
+        assert (loaded.getRidersRankInStage(stageId).length == 1) : "Result not registered after loading";
+        int raceId = loaded.createRace("RaceAfterLoading", null);
+        assert (Arrays.stream(expected.getRaceIds()).noneMatch(id -> id == raceId))
+                : "Race ID reused after loading a portal saved by the original portal";
+
+        CyclingPortal testApp = new CyclingPortalImpl();
+        testApp.loadCyclingPortal(directory + "/CyclingPortalTest");
+        assert (testApp.getRaceIds().length > 0) : "CyclingPortalTest loaded without its races";
+        System.out.println("Portals saved by the original portal load correctly.");
+    }
+
+    /**
+     * Builds the portal saved in TestSystem/OriginalCyclingPortal: two
+     * races with sprints, climbs, a time trial, a stage still in
+     * preparation and riders finishing within a second of each other.
+     *
+     * @param portal The empty portal being built.
+     */
+    private static void build(CyclingPortal portal) throws Exception {
+        Random random = new Random(5092);
+        int teamId = portal.createTeam("OriginalTeam", "Saved by the original portal");
+        int otherTeamId = portal.createTeam("OtherTeam", null);
+        int[] riderIds = new int[RIDERS];
+        for (int r = 0; r < RIDERS; r++) {
+            riderIds[r] = portal.createRider(r % 3 == 0 ? otherTeamId : teamId, "Rider" + r, 1985 + r);
+        }
+
+        int raceId = portal.createRace("OriginalRace", "A race with every kind of stage");
+        int flat = portal.addStageToRace(raceId, "FlatStage", null, 180.0,
+                LocalDateTime.of(2023, 7, 1, 12, 0), StageType.FLAT);
+        portal.addIntermediateSprintToStage(flat, 90.0);
+        portal.addCategorizedClimbToStage(flat, 140.0, CheckpointType.C2, 5.0, 4.0);
+        int mountain = portal.addStageToRace(raceId, "MountainStage", "Summit finish", 160.0,
+                LocalDateTime.of(2023, 7, 2, 11, 0), StageType.HIGH_MOUNTAIN);
+        portal.addCategorizedClimbToStage(mountain, 60.0, CheckpointType.C1, 7.0, 9.0);
+        portal.addIntermediateSprintToStage(mountain, 100.0);
+        portal.addCategorizedClimbToStage(mountain, 158.0, CheckpointType.HC, 8.5, 14.0);
+        int timeTrial = portal.addStageToRace(raceId, "TimeTrial", null, 30.0,
+                LocalDateTime.of(2023, 7, 3, 14, 0), StageType.TT);
+        portal.addStageToRace(raceId, "StageInPreparation", null, 120.0,
+                LocalDateTime.of(2023, 7, 4, 12, 0), StageType.MEDIUM_MOUNTAIN);
+        for (int stageId : new int[]{flat, mountain, timeTrial}) {
+            portal.concludeStagePreparation(stageId);
+        }
+
+        int secondRaceId = portal.createRace("SecondRace", null);
+        int secondStage = portal.addStageToRace(secondRaceId, "SecondStage", null, 150.0,
+                LocalDateTime.of(2023, 8, 1, 12, 0), StageType.MEDIUM_MOUNTAIN);
+        portal.addCategorizedClimbToStage(secondStage, 120.0, CheckpointType.C3, 4.0, 3.0);
+        portal.concludeStagePreparation(secondStage);
+
+        for (int r = 0; r < RIDERS; r++) {
+            register(portal, flat, riderIds[r], 2, LocalTime.of(12, 0), r, random);
+            register(portal, mountain, riderIds[r], 3, LocalTime.of(11, 0), r, random);
+            register(portal, timeTrial, riderIds[r], 0, LocalTime.of(14, 0).plusMinutes(r), r, random);
+            if (r % 2 == 0) {
+                register(portal, secondStage, riderIds[r], 1, LocalTime.of(12, 0), r, random);
+            }
+        }
+    }
+
+    /**
+     * Registers a rider's result, with random times between checkpoints.
+     * Riders in pairs finish less than a second apart, so that they are
+     * bunched.
+     *
+     * @param portal      The portal the result is registered in.
+     * @param stageId     The ID of the stage.
+     * @param riderId     The ID of the rider.
+     * @param checkpoints The number of checkpoints in the stage.
+     * @param start       The rider's start time.
+     * @param r           The rider's index, used to pair them up.
+     * @param random      The source of the times.
+     */
+    private static void register(CyclingPortal portal, int stageId, int riderId, int checkpoints,
+                                 LocalTime start, int r, Random random) throws Exception {
+        LocalTime[] times = new LocalTime[checkpoints + 2];
+        times[0] = start;
+        for (int c = 1; c <= checkpoints; c++) {
+            times[c] = times[c - 1].plusMinutes(20 + random.nextInt(60)).plusSeconds(random.nextInt(60));
+        }
+        times[checkpoints + 1] = times[checkpoints].plusMinutes(30 + r / 2).plusNanos(r % 2 * 400_000_000L);
+        portal.registerRiderResultsInStage(stageId, riderId, times);
+    }
+
+    /**
+     * Collects the answer to every query of a portal about its teams,
+     * races, stages and classifications.
+     *
+     * @param portal The portal being queried.
+     * @return A list of the answers, with arrays written out as strings.
+     */
+    private static List<Object> describe(CyclingPortal portal) throws Exception {
+        List<Object> description = new ArrayList<>();
+        int[] teamIds = sorted(portal.getTeams());
+        description.add(Arrays.toString(teamIds));
+        List<Integer> riderIds = new ArrayList<>();
+        for (int teamId : teamIds) {
+            int[] teamRiders = sorted(portal.getTeamRiders(teamId));
+            description.add(Arrays.toString(teamRiders));
+            Arrays.stream(teamRiders).forEach(riderIds::add);
+        }
+        for (int raceId : sorted(portal.getRaceIds())) {
+            description.add(portal.viewRaceDetails(raceId));
+            description.add(Arrays.toString(portal.getRaceStages(raceId)));
+            for (int stageId : portal.getRaceStages(raceId)) {
+                description.add(portal.getStageLength(stageId));
+                description.add(Arrays.toString(portal.getStageCheckpoints(stageId)));
+                description.add(Arrays.toString(portal.getRidersRankInStage(stageId)));
+                description.add(Arrays.toString(portal.getRankedAdjustedElapsedTimesInStage(stageId)));
+                description.add(Arrays.toString(portal.getRidersPointsInStage(stageId)));
+                description.add(Arrays.toString(portal.getRidersMountainPointsInStage(stageId)));
+                for (int riderId : riderIds) {
+                    description.add(Arrays.toString(portal.getRiderResultsInStage(stageId, riderId)));
+                    description.add(portal.getRiderAdjustedElapsedTimeInStage(stageId, riderId));
+                }
+            }
+            description.add(Arrays.toString(portal.getRidersGeneralClassificationRank(raceId)));
+            description.add(Arrays.toString(portal.getGeneralClassificationTimesInRace(raceId)));
+            description.add(Arrays.toString(portal.getRidersPointsInRace(raceId)));
+            description.add(Arrays.toString(portal.getRidersMountainPointsInRace(raceId)));
+            description.add(Arrays.toString(portal.getRidersPointClassificationRank(raceId)));
+            description.add(Arrays.toString(portal.getRidersMountainPointClassificationRank(raceId)));
+        }
+        return description;
+    }
+
+    /**
+     * Sorts a copy of an array of IDs.
+     *
+     * @param ids The IDs.
+     * @return The IDs in ascending order.
+     */
+    private static int[] sorted(int[] ids) {
+        int[] copy = ids.clone();
+        Arrays.sort(copy);
+        return copy;
+    }
+}
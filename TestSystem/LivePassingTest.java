@@ -0,0 +1,381 @@
+import cycling.*;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * A test of registering results one passing at a time. The riders'
+ * passings of each point of a stage are fed to one portal in a shuffled
+ * order, with some riders' results registered whole and some deleted
+ * again, and after every passing the ranking and points of each
+ * checkpoint are compared with the passings made so far. Once every
+ * rider has finished, the stage and race rankings are compared with those
+ * of a second portal given the same results all at once. Riders still out
+ * on a stage are also checked to survive saving and loading the portal,
+ * a delta save and recovery from the journal, and to be removed cleanly
+ * from a loaded portal. Finally, the time taken to
+ * record a passing in a large field is printed.
+ * <p>
+ * Run with assertions enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class LivePassingTest {
+
+    private static final int POINTS = 4;
+
+    /**
+     * Test method.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(2402);
+        for (int round = 0; round < 6; round++) {
+            CyclingPortalImpl live = round % 2 == 0 ? new CyclingPortalImpl() : new ConcurrentCyclingPortalImpl();
+            CyclingPortalImpl batch = new CyclingPortalImpl();
+            int riderCount = 10 + random.nextInt(30);
+            int[] riderIds = createRiders(live, riderCount);
+            createRiders(batch, riderCount);
+            int raceId = live.createRace("Race", null);
+            batch.createRace("Race", null);
+            int stageCount = 1 + random.nextInt(3);
+            int[] stageIds = createStages(live, raceId, stageCount);
+            createStages(batch, raceId, stageCount);
+            for (int stageId : stageIds) {
+                raceStage(live, batch, stageId, riderIds, random);
+            }
+            assert Arrays.equals(live.getRidersGeneralClassificationRank(raceId), batch.getRidersGeneralClassificationRank(raceId));
+            assert Arrays.equals(live.getRidersPointsInRace(raceId), batch.getRidersPointsInRace(raceId));
+            assert Arrays.equals(live.getRidersMountainPointsInRace(raceId), batch.getRidersMountainPointsInRace(raceId));
+        }
+        checkErrors();
+        checkPersistence(random);
+        timeLargeField(random);
+        System.out.println("Live passing test passed.");
+    }
+
+    /**
+     * Feeds every rider's passings of a stage to the live portal, checking
+     * the checkpoints after each one, and registers the same results all
+     * at once in the batch portal.
+     *
+     * @param live     The portal given one passing at a time.
+     * @param batch    The portal given whole results.
+     * @param stageId  The ID of the stage in both portals.
+     * @param riderIds The IDs of the riders in both portals.
+     * @param random   The source of the times and the order.
+     */
+    private static void raceStage(CyclingPortalImpl live, CyclingPortalImpl batch, int stageId, int[] riderIds, Random random) throws Exception {
+        Map<Integer, LocalTime[]> results = new HashMap<>();
+        List<int[]> passings = new ArrayList<>();
+        for (int riderId : riderIds) {
+            results.put(riderId, times(random));
+            for (int position = 0; position < POINTS; position++) {
+                passings.add(new int[]{riderId, position});
+            }
+        }
+        Collections.shuffle(passings, random);
+        Map<Integer, LocalTime[]> passed = new HashMap<>();
+        for (int[] passing : passings) {
+            int riderId = passing[0];
+            LocalTime[] riderTimes = results.get(riderId);
+            LocalTime[] riderPassed = passed.computeIfAbsent(riderId, id -> new LocalTime[POINTS]);
+            if (riderPassed[passing[1]] != null) {
+                continue;
+            }
+            if (random.nextInt(40) == 0) {
+                live.registerRiderResultsInStage(stageId, riderId, riderTimes);
+                passed.put(riderId, riderTimes.clone());
+            } else {
+                riderPassed[passing[1]] = riderTimes[passing[1]];
+                boolean finished = live.registerRiderPassing(stageId, riderId, passing[1], riderTimes[passing[1]]);
+                assert finished == (count(riderPassed) == POINTS);
+                assert live.getRiderAdjustedElapsedTimeInStage(stageId, riderId) == null || finished;
+            }
+            if (random.nextInt(60) == 0) {
+                live.deleteRiderResultsInStage(stageId, riderId);
+                passed.remove(riderId);
+            }
+            checkCheckpoints(live, stageId, passed);
+        }
+        for (int riderId : riderIds) {
+            LocalTime[] riderPassed = passed.get(riderId);
+            for (int position = 0; position < POINTS; position++) {
+                if (riderPassed == null || riderPassed[position] == null) {
+                    live.registerRiderPassing(stageId, riderId, position, results.get(riderId)[position]);
+                    riderPassed = passed.computeIfAbsent(riderId, id -> new LocalTime[POINTS]);
+                    riderPassed[position] = results.get(riderId)[position];
+                }
+            }
+        }
+        checkCheckpoints(live, stageId, passed);
+        batch.registerStageResults(stageId, results);
+        assert Arrays.equals(live.getRidersRankInStage(stageId), batch.getRidersRankInStage(stageId));
+        assert Arrays.equals(live.getRankedAdjustedElapsedTimesInStage(stageId), batch.getRankedAdjustedElapsedTimesInStage(stageId));
+        assert Arrays.equals(live.getRidersPointsInStage(stageId), batch.getRidersPointsInStage(stageId));
+        assert Arrays.equals(live.getRidersMountainPointsInStage(stageId), batch.getRidersMountainPointsInStage(stageId));
+    }
+
+    /**
+     * Compares the ranking and points of each checkpoint of a stage with
+     * the passings made so far.
+     *
+     * @param portal  The portal holding the stage.
+     * @param stageId The ID of the stage.
+     * @param passed  The times each rider has passed each point at, with
+     *                null for the points they have not passed.
+     */
+    private static void checkCheckpoints(CyclingPortalImpl portal, int stageId, Map<Integer, LocalTime[]> passed) throws Exception {
+        int[] checkpointIds = portal.getStageCheckpoints(stageId);
+        for (int c = 0; c < checkpointIds.length; c++) {
+            int position = c + 1;
+            List<Integer> expected = new ArrayList<>();
+            for (Map.Entry<Integer, LocalTime[]> entry : passed.entrySet()) {
+                if (entry.getValue()[position] != null) {
+                    expected.add(entry.getKey());
+                }
+            }
+            expected.sort(Comparator.<Integer, LocalTime>comparing(riderId -> passed.get(riderId)[position])
+                    .thenComparing(riderId -> riderId));
+            int[] rank = portal.getRidersRankAtCheckpoint(checkpointIds[c]);
+            assert Arrays.equals(rank, expected.stream().mapToInt(i -> i).toArray())
+                    : "The ranking of checkpoint " + checkpointIds[c] + " is wrong.";
+            int[] points = portal.getRidersPointsAtCheckpoint(checkpointIds[c]);
+            assert points.length == rank.length;
+            for (int i = 1; i < points.length; i++) {
+                assert points[i] <= points[i - 1];
+            }
+        }
+    }
+
+    /**
+     * Checks that passings that cannot be recorded are refused.
+     */
+    private static void checkErrors() throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int riderId = createRiders(portal, 1)[0];
+        int raceId = portal.createRace("Race", null);
+        int stageId = portal.addStageToRace(raceId, "Stage", null, 150.0, LocalDateTime.of(2024, 7, 1, 12, 0), StageType.FLAT);
+        portal.addIntermediateSprintToStage(stageId, 40.0);
+        try {
+            portal.registerRiderPassing(stageId, riderId, 0, LocalTime.NOON);
+            assert false : "A passing was recorded before the stage was ready.";
+        } catch (InvalidStageStateException e) {
+            // Expected.
+        }
+        portal.concludeStagePreparation(stageId);
+        try {
+            portal.registerRiderPassing(stageId, riderId, 3, LocalTime.NOON);
+            assert false : "A passing after the finish line was recorded.";
+        } catch (InvalidCheckpointTimesException e) {
+            // Expected.
+        }
+        portal.registerRiderPassing(stageId, riderId, 1, LocalTime.of(13, 0));
+        try {
+            portal.registerRiderPassing(stageId, riderId, 1, LocalTime.of(13, 5));
+            assert false : "A rider passed the same checkpoint twice.";
+        } catch (DuplicatedResultException e) {
+            // Expected.
+        }
+        portal.registerRiderPassing(stageId, riderId, 0, LocalTime.NOON);
+        assert portal.registerRiderPassing(stageId, riderId, 2, LocalTime.of(14, 0));
+        try {
+            portal.registerRiderPassing(stageId, riderId, 1, LocalTime.of(13, 0));
+            assert false : "A passing was recorded for a rider with a result.";
+        } catch (DuplicatedResultException e) {
+            // Expected.
+        }
+        try {
+            portal.getRidersRankAtCheckpoint(-1);
+            assert false : "An unknown checkpoint was accepted.";
+        } catch (IDNotRecognisedException e) {
+            // Expected.
+        }
+
+        int secondRider = portal.createRider(portal.getTeams()[0], "Second", 1990);
+        int checkpointId = portal.getStageCheckpoints(stageId)[0];
+        portal.registerRiderPassing(stageId, secondRider, 1, LocalTime.of(12, 59));
+        assert Arrays.equals(portal.getRidersRankAtCheckpoint(checkpointId), new int[]{secondRider, riderId});
+        assert Arrays.equals(portal.getRidersPointsAtCheckpoint(checkpointId), new int[]{20, 17});
+        portal.removeRider(secondRider);
+        assert Arrays.equals(portal.getRidersRankAtCheckpoint(checkpointId), new int[]{riderId});
+    }
+
+    /**
+     * Checks that riders still out on a stage are kept by a snapshot, a
+     * delta and the journal.
+     *
+     * @param random The source of the times.
+     */
+    private static void checkPersistence(Random random) throws Exception {
+        File snapshot = File.createTempFile("passings", ".portal");
+        File journal = File.createTempFile("passings", ".journal");
+        journal.delete();
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[] riderIds = createRiders(portal, 12);
+        int raceId = portal.createRace("Race", null);
+        int stageId = createStages(portal, raceId, 1)[0];
+        int[] checkpointIds = portal.getStageCheckpoints(stageId);
+        int[] next = new int[riderIds.length];
+        for (int i = 0; i < 4; i++) {
+            passSome(portal, stageId, riderIds, next, random);
+        }
+        portal.saveCyclingPortal(snapshot.getPath());
+        passSome(portal, stageId, riderIds, next, random);
+        portal.saveDeltaCyclingPortal(snapshot.getPath());
+        CyclingPortalImpl loaded = new CyclingPortalImpl();
+        loaded.loadCyclingPortal(snapshot.getPath());
+        assertSameCheckpoints(portal, loaded, checkpointIds);
+        for (int r = 0; r < riderIds.length; r++) {
+            if (next[r] > 1 && next[r] < POINTS) {
+                loaded.removeRider(riderIds[r]);
+                for (int checkpointId : checkpointIds) {
+                    for (int riderId : loaded.getRidersRankAtCheckpoint(checkpointId)) {
+                        assert riderId != riderIds[r] : "A removed rider's passings were kept after loading.";
+                    }
+                }
+                break;
+            }
+        }
+
+        portal.openJournal(snapshot.getPath(), journal.getPath());
+        passSome(portal, stageId, riderIds, next, random);
+        CyclingPortalImpl recovered = new CyclingPortalImpl();
+        recovered.openJournal(snapshot.getPath(), journal.getPath());
+        assertSameCheckpoints(portal, recovered, checkpointIds);
+        recovered.closeJournal();
+        portal.closeJournal();
+        assert Arrays.equals(portal.getRidersRankInStage(stageId), recovered.getRidersRankInStage(stageId));
+
+        snapshot.delete();
+        journal.delete();
+        new File(snapshot.getPath() + ".1").delete();
+    }
+
+    /**
+     * Records a passing of the next point of the stage for some of the
+     * riders who have not finished.
+     *
+     * @param portal   The portal holding the stage.
+     * @param stageId  The ID of the stage.
+     * @param riderIds The IDs of the riders.
+     * @param next     The next point each rider is to pass, updated.
+     * @param random   The source of the times.
+     */
+    private static void passSome(CyclingPortalImpl portal, int stageId, int[] riderIds, int[] next, Random random) throws Exception {
+        for (int r = 0; r < riderIds.length; r++) {
+            if (next[r] < POINTS && random.nextBoolean()) {
+                portal.registerRiderPassing(stageId, riderIds[r], next[r], times(random)[next[r]]);
+                next[r]++;
+            }
+        }
+    }
+
+    /**
+     * Compares the checkpoint rankings of two portals.
+     *
+     * @param expected      The portal the rankings should match.
+     * @param actual        The portal being checked.
+     * @param checkpointIds The IDs of the checkpoints, the same in both.
+     */
+    private static void assertSameCheckpoints(CyclingPortalImpl expected, CyclingPortalImpl actual, int[] checkpointIds) throws Exception {
+        for (int checkpointId : checkpointIds) {
+            assert Arrays.equals(expected.getRidersRankAtCheckpoint(checkpointId), actual.getRidersRankAtCheckpoint(checkpointId))
+                    : "The ranking of checkpoint " + checkpointId + " was not kept.";
+        }
+    }
+
+    /**
+     * Prints the time taken to record a passing, and to read the
+     * checkpoint's leaders, while a large field passes a checkpoint.
+     *
+     * @param random The source of the times.
+     */
+    private static void timeLargeField(Random random) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[] riderIds = createRiders(portal, 20_000);
+        int raceId = portal.createRace("Large", null);
+        int stageId = createStages(portal, raceId, 1)[0];
+        int checkpointId = portal.getStageCheckpoints(stageId)[1];
+        long passingNanos = 0;
+        for (int riderId : riderIds) {
+            LocalTime[] riderTimes = times(random);
+            portal.registerRiderPassing(stageId, riderId, 0, riderTimes[0]);
+            long start = System.nanoTime();
+            portal.registerRiderPassing(stageId, riderId, 2, riderTimes[2]);
+            passingNanos += System.nanoTime() - start;
+        }
+        assert portal.getRidersRankAtCheckpoint(checkpointId).length == riderIds.length;
+        System.out.printf("Recording a climb passing among %d riders: %.1f us.%n",
+                riderIds.length, passingNanos / 1e3 / riderIds.length);
+    }
+
+    /**
+     * Counts the points of a stage a rider has passed.
+     *
+     * @param riderPassed The rider's times, null where not passed.
+     * @return The number of points passed.
+     */
+    private static int count(LocalTime[] riderPassed) {
+        int count = 0;
+        for (LocalTime time : riderPassed) {
+            if (time != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Creates a team of riders.
+     *
+     * @param portal The portal the riders are created in.
+     * @param count  The number of riders.
+     * @return The IDs of the riders.
+     */
+    private static int[] createRiders(CyclingPortalImpl portal, int count) throws Exception {
+        int teamId = portal.createTeam("Team", null);
+        int[] riderIds = new int[count];
+        for (int r = 0; r < count; r++) {
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+        }
+        return riderIds;
+    }
+
+    /**
+     * Creates stages with a sprint and a climb, ready for results.
+     *
+     * @param portal The portal the stages are created in.
+     * @param raceId The ID of the race the stages are added to.
+     * @param count  The number of stages.
+     * @return The IDs of the stages.
+     */
+    private static int[] createStages(CyclingPortalImpl portal, int raceId, int count) throws Exception {
+        int[] stageIds = new int[count];
+        for (int s = 0; s < count; s++) {
+            stageIds[s] = portal.addStageToRace(raceId, "Stage" + s, null, 150.0,
+                    LocalDateTime.of(2024, 7, 1, 12, 0).plusDays(s), StageType.values()[s % 3]);
+            portal.addIntermediateSprintToStage(stageIds[s], 40.0);
+            portal.addCategorizedClimbToStage(stageIds[s], 90.0, CheckpointType.C1, 5.0, 6.0);
+            portal.concludeStagePreparation(stageIds[s]);
+        }
+        return stageIds;
+    }
+
+    /**
+     * Makes up a rider's times in a stage, close enough together that
+     * riders often share a time at a checkpoint.
+     *
+     * @param random The source of the times.
+     * @return The times, from the start time to the finish line.
+     */
+    private static LocalTime[] times(Random random) {
+        LocalTime start = LocalTime.of(12, 0);
+        return new LocalTime[]{start, start.plusMinutes(60 + random.nextInt(3)),
+                start.plusMinutes(150 + random.nextInt(3)), start.plusMinutes(220).plusSeconds(random.nextInt(8))};
+    }
+}
@@ -0,0 +1,120 @@
+import cycling.*;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A short program that compares opening a snapshot as a memory-mapped
+ * archive with loading it into a portal, for archives of growing size.
+ * Opening the archive and answering one race's general classification
+ * should take about the same time however many seasons the archive holds.
+ * The archive's answers are checked against the loaded portal.
+ * <p>
+ * Run with assertions enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class MappedArchiveBenchmark {
+
+    private static final int RIDERS = 1000;
+    private static final int STAGES_PER_RACE = 21;
+
+    /**
+     * Benchmark method.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(1410);
+        System.out.printf("%8s %10s %12s %12s %12s%n", "seasons", "size KB", "load ms", "open ms", "open+GC ms");
+        for (int seasons : new int[]{1, 5, 20}) {
+            CyclingPortalImpl portal = createArchive(seasons, random);
+            File snapshot = File.createTempFile("archive", ".snapshot");
+            snapshot.deleteOnExit();
+            portal.saveCyclingPortal(snapshot.getPath());
+
+            long start = System.nanoTime();
+            CyclingPortalImpl loaded = new CyclingPortalImpl();
+            loaded.loadCyclingPortal(snapshot.getPath());
+            long load = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            MappedPortalArchive archive = MappedPortalArchive.open(snapshot.getPath());
+            long open = System.nanoTime() - start;
+            int lastRace = archive.getRaceIds()[archive.getRaceIds().length - 1];
+            int[] generalClassification = archive.getRidersGeneralClassificationRank(lastRace);
+            long openAndQuery = System.nanoTime() - start;
+            System.out.printf("%8d %10d %12.1f %12.2f %12.2f%n", seasons, snapshot.length() / 1024,
+                    load / 1e6, open / 1e6, openAndQuery / 1e6);
+
+            assert (Arrays.equals(generalClassification, loaded.getRidersGeneralClassificationRank(lastRace)))
+                    : "Archive and loaded portal rank the race differently";
+            generalClassification[0] = -1;
+            assert (Arrays.equals(archive.getRidersGeneralClassificationRank(lastRace), loaded.getRidersGeneralClassificationRank(lastRace)))
+                    : "Changing a returned ranking changed the archive's classification";
+            assert (Arrays.equals(archive.getGeneralClassificationTimesInRace(lastRace), loaded.getGeneralClassificationTimesInRace(lastRace)))
+                    : "Archive and loaded portal give different classification times";
+            for (int stageId : archive.getRaceStages(lastRace)) {
+                assert (Arrays.equals(archive.getRidersRankInStage(stageId), loaded.getRidersRankInStage(stageId)))
+                        : "Archive and loaded portal rank a stage differently";
+                assert (Arrays.equals(archive.getRankedAdjustedElapsedTimesInStage(stageId), loaded.getRankedAdjustedElapsedTimesInStage(stageId)))
+                        : "Archive and loaded portal adjust a stage differently";
+                assert (archive.getStage(stageId).getLength() == loaded.getStageLength(stageId))
+                        : "Stage not built from the archive";
+            }
+            assert (archive.getRider(RIDERS - 1).getName().equals("Rider" + (RIDERS - 1)))
+                    : "Rider not built from the archive";
+            assert (archive.load().getRaceIds().length == seasons)
+                    : "Archive did not load in full";
+        }
+    }
+
+    /**
+     * Creates a portal with one race per season, in which every rider has
+     * a result in every stage.
+     *
+     * @param seasons The number of seasons.
+     * @param random  The source of the riders' times.
+     * @return The portal.
+     */
+    private static CyclingPortalImpl createArchive(int seasons, Random random) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[] riderIds = new int[RIDERS];
+        int teamId = -1;
+        for (int r = 0; r < RIDERS; r++) {
+            if (r % 25 == 0) {
+                teamId = portal.createTeam("Team" + r / 25, null);
+            }
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1980 + r % 20);
+        }
+        for (int season = 0; season < seasons; season++) {
+            int raceId = portal.createRace("Tour" + (2000 + season), null);
+            for (int s = 0; s < STAGES_PER_RACE; s++) {
+                int stageId = portal.addStageToRace(raceId, "Tour" + (2000 + season) + "Stage" + s, null, 180,
+                        LocalDateTime.of(2000 + season, 7, 1, 12, 0).plusDays(s), StageType.values()[s % 4]);
+                if (s % 4 != StageType.TT.ordinal()) {
+                    portal.addIntermediateSprintToStage(stageId, 60.0);
+                }
+                portal.concludeStagePreparation(stageId);
+                Map<Integer, LocalTime[]> results = new HashMap<>();
+                int checkpoints = portal.getStageCheckpoints(stageId).length;
+                for (int riderId : riderIds) {
+                    LocalTime[] times = new LocalTime[checkpoints + 2];
+                    times[0] = LocalTime.of(12, 0);
+                    for (int t = 1; t < times.length; t++) {
+                        times[t] = times[t - 1].plusSeconds(3600 + random.nextInt(600));
+                    }
+                    results.put(riderId, times);
+                }
+                portal.registerStageResults(stageId, results);
+            }
+        }
+        return portal;
+    }
+}
@@ -0,0 +1,207 @@
+import cycling.*;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A test of the portal metrics. A portal wrapped in a MeteredCyclingPortal
+ * reporting to a PortalMetricsRegistry is used, including calls that
+ * fail, and the recorded call counts, exception counts, latencies and
+ * gauges are checked and the text snapshot printed. The methods of
+ * ExtendedCyclingPortal are checked to be counted as well. The time taken
+ * by a batch of rider rank queries with and without metrics is then
+ * compared, and the overhead of leaving the metrics on must stay below
+ * OVERHEAD_BOUND_NANOS a call.
+ * <p>
+ * Run with assertions enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class PortalMetricsTest {
+
+    private static final int RIDERS = 50;
+    private static final int QUERIES = 200_000;
+    private static final int ROUNDS = 7;
+    private static final long OVERHEAD_BOUND_NANOS = 1_000;
+
+    /**
+     * Test method.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws Exception {
+        PortalMetricsRegistry metrics = new PortalMetricsRegistry();
+        CyclingPortalImpl concurrent = new ConcurrentCyclingPortalImpl();
+        ExtendedCyclingPortal portal = MeteredCyclingPortal.wrap(concurrent, metrics);
+        int stageId = createStage(portal);
+
+        try {
+            portal.getRidersRankInStage(stageId + 100);
+            assert false : "An unknown stage was accepted.";
+        } catch (IDNotRecognisedException e) {
+            // Expected.
+        }
+        try {
+            portal.createRace("Metrics", null);
+            assert false : "A duplicated race name was accepted.";
+        } catch (IllegalNameException e) {
+            // Expected.
+        }
+        try {
+            portal.addIntermediateSprintToStage(stageId, 10.0);
+            assert false : "A checkpoint was added to a stage waiting for results.";
+        } catch (InvalidStageStateException e) {
+            // Expected.
+        }
+        for (int i = 0; i < 10; i++) {
+            portal.getRidersRankInStage(stageId);
+        }
+
+        assert metrics.getCallCount("registerRiderResultsInStage") == RIDERS : "Not every registration was counted.";
+        assert metrics.getCallCount("getRidersRankInStage") == 11 : "Failed calls were not counted.";
+        assert metrics.getCallCount("createRace") == 2;
+        assert metrics.getCallCount("getRaceIds") == 0 : "A call that was not made was counted.";
+        assert metrics.getExceptionCount("getRidersRankInStage", "IDNotRecognisedException") == 1;
+        assert metrics.getExceptionCount("createRace", "IllegalNameException") == 1;
+        assert metrics.getExceptionCount("addIntermediateSprintToStage", "InvalidStageStateException") == 1;
+        assert metrics.getExceptionCount("createRace", "InvalidNameException") == 0;
+        assert metrics.getGauge("races") == 1 && metrics.getGauge("stages") == 1;
+        assert metrics.getGauge("riders") == RIDERS && metrics.getGauge("checkpoints") == 2;
+        long median = metrics.getLatencyPercentile("registerRiderResultsInStage", 0.5);
+        long highest = metrics.getLatencyPercentile("registerRiderResultsInStage", 1.0);
+        assert median > 0 && median <= highest : "The latency percentiles are out of order.";
+
+        String snapshot = metrics.getSnapshot();
+        assert snapshot.contains("cycling_portal_riders " + RIDERS + "\n");
+        assert snapshot.contains("cycling_portal_calls_total{operation=\"getRidersRankInStage\"} 11\n");
+        assert snapshot.contains("cycling_portal_exceptions_total{operation=\"createRace\",exception=\"IllegalNameException\"} 1\n");
+        System.out.print(snapshot);
+
+        checkExtendedCalls(portal, metrics, stageId);
+
+        portal.eraseCyclingPortal();
+        assert metrics.getGauge("riders") == 0 : "The gauges do not follow the portal.";
+        metrics.reset();
+        assert metrics.getCallCount("createRace") == 0;
+
+        ExtendedCyclingPortal plain = new CyclingPortalImpl();
+        int plainStageId = createStage(plain);
+        ExtendedCyclingPortal metered = MeteredCyclingPortal.wrap(new CyclingPortalImpl(), metrics);
+        int meteredStageId = createStage(metered);
+        int plainRiderId = plain.getRidersRankInStage(plainStageId)[RIDERS / 2];
+        int meteredRiderId = metered.getRidersRankInStage(meteredStageId)[RIDERS / 2];
+        long plainBest = Long.MAX_VALUE;
+        long meteredBest = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long plainNanos = timeQueries(plain, plainStageId, plainRiderId);
+            long meteredNanos = timeQueries(metered, meteredStageId, meteredRiderId);
+            System.out.printf("%d rider rank queries: %.1f ns each without metrics, %.1f ns each with metrics.%n",
+                    QUERIES, (double) plainNanos / QUERIES, (double) meteredNanos / QUERIES);
+            if (round > 0) {
+                plainBest = Math.min(plainBest, plainNanos);
+                meteredBest = Math.min(meteredBest, meteredNanos);
+            }
+        }
+        long overhead = (meteredBest - plainBest) / QUERIES;
+        System.out.println("Metrics overhead: " + overhead + " ns a call.");
+        assert overhead < OVERHEAD_BOUND_NANOS : "The metrics overhead is " + overhead + " ns a call.";
+        assert metrics.getCallCount("getRiderRankInStage") == (long) ROUNDS * QUERIES;
+        System.out.println("Portal metrics test passed.");
+    }
+
+    /**
+     * Creates a stage with a result for every rider.
+     *
+     * @param portal The portal the stage is created in.
+     * @return The ID of the stage.
+     */
+    private static int createStage(CyclingPortal portal) throws Exception {
+        int teamId = portal.createTeam("Team", null);
+        int raceId = portal.createRace("Metrics", null);
+        int stageId = portal.addStageToRace(raceId, "Stage", null, 150.0, LocalDateTime.of(2024, 7, 1, 12, 0), StageType.FLAT);
+        portal.addIntermediateSprintToStage(stageId, 40.0);
+        portal.addCategorizedClimbToStage(stageId, 90.0, CheckpointType.C2, 5.0, 6.0);
+        portal.concludeStagePreparation(stageId);
+        for (int r = 0; r < RIDERS; r++) {
+            int riderId = portal.createRider(teamId, "Rider" + r, 1990);
+            LocalTime start = LocalTime.of(12, 0);
+            portal.registerRiderResultsInStage(stageId, riderId, start, start.plusMinutes(60).plusSeconds(r),
+                    start.plusMinutes(150).plusSeconds(r * 3), start.plusMinutes(220).plusSeconds(r * 7));
+        }
+        return stageId;
+    }
+
+    /**
+     * Checks that the methods of ExtendedCyclingPortal are reported too:
+     * registering passings and a whole stage's results, the top-k and
+     * single rider queries and the classification listeners.
+     *
+     * @param portal   The metered portal.
+     * @param metrics  The metrics the portal reports to.
+     * @param stageId  The stage created by createStage.
+     */
+    private static void checkExtendedCalls(ExtendedCyclingPortal portal, PortalMetricsRegistry metrics,
+                                           int stageId) throws Exception {
+        int raceId = portal.getRaceIds()[0];
+        int[] ranking = portal.getRidersRankInStage(stageId);
+        ClassificationListener listener = update -> { };
+        portal.addClassificationListener(listener);
+        assert portal.getTopRidersInStage(stageId, 3).length == 3;
+        assert portal.getRiderRankInStage(stageId, ranking[1]) == 2;
+        assert portal.getRiderTimeBehindLeaderInStage(stageId, ranking[0]) != null;
+        assert portal.getTopRidersInGeneralClassification(raceId, 3).length == 3;
+        assert portal.getRiderGeneralClassificationRank(raceId, ranking[0]) == 1;
+        assert portal.getRiderPointClassificationRank(raceId, ranking[0]) == 1;
+        int checkpointId = portal.getStageCheckpoints(stageId)[0];
+        assert portal.getRidersRankAtCheckpoint(checkpointId).length == RIDERS;
+
+        int secondStageId = portal.addStageToRace(raceId, "SecondStage", null, 120.0,
+                LocalDateTime.of(2024, 7, 2, 12, 0), StageType.FLAT);
+        portal.concludeStagePreparation(secondStageId);
+        LocalTime start = LocalTime.of(12, 0);
+        portal.registerRiderPassing(secondStageId, ranking[0], 0, start);
+        Map<Integer, LocalTime[]> results = new HashMap<>();
+        for (int r = 1; r < RIDERS; r++) {
+            results.put(ranking[r], new LocalTime[]{start, start.plusMinutes(180).plusSeconds(r)});
+        }
+        portal.registerStageResults(secondStageId, results);
+        try {
+            portal.registerStageResults(secondStageId + 100, results);
+            assert false : "Results were registered in an unknown stage.";
+        } catch (IDNotRecognisedException e) {
+            // Expected.
+        }
+        portal.removeClassificationListener(listener);
+
+        for (String operation : new String[]{"addClassificationListener", "removeClassificationListener",
+                "getTopRidersInStage", "getRiderRankInStage", "getRiderTimeBehindLeaderInStage",
+                "getTopRidersInGeneralClassification", "getRiderGeneralClassificationRank",
+                "getRiderPointClassificationRank", "getRidersRankAtCheckpoint", "registerRiderPassing"}) {
+            assert metrics.getCallCount(operation) == 1 : operation + " was not counted.";
+        }
+        assert metrics.getCallCount("registerStageResults") == 2;
+        assert metrics.getExceptionCount("registerStageResults", "IDNotRecognisedException") == 1;
+    }
+
+    /**
+     * Times a batch of rider rank queries.
+     *
+     * @param portal  The portal queried.
+     * @param stageId The stage ranked.
+     * @param riderId The rider whose rank is queried.
+     * @return The time taken, in nanoseconds.
+     */
+    private static long timeQueries(ExtendedCyclingPortal portal, int stageId, int riderId) throws Exception {
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) {
+            checksum += portal.getRiderRankInStage(stageId, riderId);
+        }
+        long nanos = System.nanoTime() - start;
+        assert checksum != 0;
+        return nanos;
+    }
+}
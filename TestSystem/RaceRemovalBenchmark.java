@@ -0,0 +1,67 @@
+import cycling.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A short program that measures the cost of removing a single race from a
+ * CyclingPortalImpl while an increasing number of unrelated races are
+ * loaded. The time per removal should stay roughly flat as the portal grows,
+ * since only the removed race's own stages and checkpoints are visited.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class RaceRemovalBenchmark {
+
+    private static final int STAGES_PER_RACE = 3;
+    private static final int CHECKPOINTS_PER_STAGE = 2;
+    private static final int REMOVALS = 2000;
+
+    /**
+     * Benchmark method.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        for (int unrelatedRaces : new int[]{100, 1000, 10000, 50000}) {
+            portal.eraseCyclingPortal();
+            for (int i = 0; i < unrelatedRaces; i++) {
+                createRace(portal, "Unrelated" + i);
+            }
+            // Warm up the removal path before timing it.
+            for (int i = 0; i < REMOVALS; i++) {
+                portal.removeRaceById(createRace(portal, "Warmup" + i));
+            }
+            long totalNanos = 0;
+            for (int i = 0; i < REMOVALS; i++) {
+                int raceId = createRace(portal, "Target" + i);
+                long start = System.nanoTime();
+                portal.removeRaceById(raceId);
+                totalNanos += System.nanoTime() - start;
+            }
+            System.out.printf("%6d unrelated races: %8.2f us per removeRaceById%n",
+                    unrelatedRaces, totalNanos / 1000.0 / REMOVALS);
+        }
+    }
+
+    /**
+     * Creates a race with a fixed number of stages, each with a fixed number
+     * of intermediate sprints.
+     *
+     * @param portal The portal the race is created in.
+     * @param name   The name of the race.
+     * @return The ID of the created race.
+     */
+    private static int createRace(CyclingPortalImpl portal, String name) throws Exception {
+        int raceId = portal.createRace(name, null);
+        for (int s = 0; s < STAGES_PER_RACE; s++) {
+            int stageId = portal.addStageToRace(raceId, name + "S" + s, null, 100,
+                    LocalDateTime.of(2023, 7, 1, 12, 0), StageType.FLAT);
+            for (int c = 0; c < CHECKPOINTS_PER_STAGE; c++) {
+                portal.addIntermediateSprintToStage(stageId, 10.0 * (c + 1));
+            }
+        }
+        return raceId;
+    }
+}
@@ -0,0 +1,169 @@
+import cycling.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Random;
+
+/**
+ * Generates synthetic result feeds in the format read by ResultImporter
+ * and measures how quickly they are imported. A portal with one race is
+ * set up, a feed with a result for every rider in every stage is written
+ * for it, with a small share of deliberately broken lines mixed in, and
+ * the feed is then imported into the portal.
+ * <p>
+ * Usage: ResultFeedGenerator [riders] [stages] [feed file]. Run with
+ * assertions enabled (-ea) to check that exactly the broken lines are
+ * rejected.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class ResultFeedGenerator {
+
+    private static final int CHECKPOINTS_PER_STAGE = 3;
+    private static final int BROKEN_LINE_EVERY = 1000;
+
+    /**
+     * Generator method.
+     *
+     * @param args the number of riders, the number of stages and the feed
+     *             file, all optional
+     */
+    public static void main(String[] args) throws Exception {
+        int riders = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int stages = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        File feed = args.length > 2 ? new File(args[2]) : File.createTempFile("results", ".csv");
+        if (args.length <= 2) {
+            feed.deleteOnExit();
+        }
+
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[] riderIds = createRiders(portal, riders);
+        int[] stageIds = createStages(portal, stages);
+
+        long start = System.nanoTime();
+        long broken;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(feed), StandardCharsets.UTF_8), 1 << 16)) {
+            broken = writeFeed(out, stageIds, riderIds, new Random(1410));
+        }
+        System.out.printf("Wrote %d results to %s (%d KB) in %d ms%n", (long) riders * stages, feed,
+                feed.length() / 1024, (System.nanoTime() - start) / 1_000_000);
+
+        long[] rejected = new long[1];
+        start = System.nanoTime();
+        long accepted = new ResultImporter(portal).importResults(feed.getPath(), (lineNumber, line, reason) -> rejected[0]++);
+        long nanos = System.nanoTime() - start;
+        System.out.printf("Imported %d results (%d rejected) in %d ms: %.0f records per second%n",
+                accepted, rejected[0], nanos / 1_000_000, (accepted + rejected[0]) * 1e9 / nanos);
+        assert (rejected[0] == broken) : "Expected " + broken + " rejected lines but got " + rejected[0];
+        assert (accepted + broken == (long) riders * stages) : "Not every valid result was imported";
+    }
+
+    /**
+     * Writes a feed with one result for every rider in every stage, stage
+     * by stage. Every so often a result is replaced by a broken line: an
+     * unknown rider, a missing checkpoint time or an unreadable time.
+     *
+     * @param out      Where the feed is written.
+     * @param stageIds The IDs of the stages.
+     * @param riderIds The IDs of the riders.
+     * @param random   The source of the riders' times.
+     * @return The number of broken lines written.
+     */
+    public static long writeFeed(Writer out, int[] stageIds, int[] riderIds, Random random) throws IOException {
+        out.write("# stageId,riderId,start,checkpoints...,finish\n");
+        long lines = 0;
+        long broken = 0;
+        StringBuilder line = new StringBuilder();
+        for (int stageId : stageIds) {
+            for (int riderId : riderIds) {
+                line.setLength(0);
+                line.append(stageId).append(',');
+                boolean isBroken = ++lines % BROKEN_LINE_EVERY == 0;
+                int fault = (int) (lines / BROKEN_LINE_EVERY % 3);
+                line.append(isBroken && fault == 0 ? -1 - riderId : riderId);
+                int seconds = 12 * 3600;
+                int times = CHECKPOINTS_PER_STAGE + 2 - (isBroken && fault == 1 ? 1 : 0);
+                for (int t = 0; t < times; t++) {
+                    line.append(',');
+                    if (isBroken && fault == 2 && t == 1) {
+                        line.append("noon");
+                    } else {
+                        appendTime(line, seconds);
+                    }
+                    seconds += 1800 + random.nextInt(1800);
+                }
+                out.append(line).append('\n');
+                if (isBroken) {
+                    broken++;
+                }
+            }
+        }
+        return broken;
+    }
+
+    /**
+     * Appends a time of day given in seconds as HH:MM:SS.
+     *
+     * @param line    The line being written.
+     * @param seconds The time in seconds after midnight.
+     */
+    private static void appendTime(StringBuilder line, int seconds) {
+        seconds %= 24 * 3600;
+        appendTwoDigits(line, seconds / 3600).append(':');
+        appendTwoDigits(line, seconds / 60 % 60).append(':');
+        appendTwoDigits(line, seconds % 60);
+    }
+
+    /**
+     * Appends a number below 100 as two digits.
+     *
+     * @param line   The line being written.
+     * @param number The number.
+     * @return The line.
+     */
+    private static StringBuilder appendTwoDigits(StringBuilder line, int number) {
+        return line.append((char) ('0' + number / 10)).append((char) ('0' + number % 10));
+    }
+
+    /**
+     * Creates a team and its riders.
+     *
+     * @param portal The portal the riders are created in.
+     * @param count  The number of riders.
+     * @return The IDs of the riders.
+     */
+    private static int[] createRiders(CyclingPortalImpl portal, int count) throws Exception {
+        int teamId = portal.createTeam("FeedTeam", null);
+        int[] riderIds = new int[count];
+        for (int r = 0; r < count; r++) {
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+        }
+        return riderIds;
+    }
+
+    /**
+     * Creates a race and its stages, each with a fixed number of
+     * checkpoints, ready for results.
+     *
+     * @param portal The portal the race is created in.
+     * @param count  The number of stages.
+     * @return The IDs of the stages.
+     */
+    private static int[] createStages(CyclingPortalImpl portal, int count) throws Exception {
+        int raceId = portal.createRace("FeedRace", null);
+        int[] stageIds = new int[count];
+        for (int s = 0; s < count; s++) {
+            stageIds[s] = portal.addStageToRace(raceId, "FeedStage" + s, null, 150,
+                    LocalDateTime.of(2023, 7, 1, 12, 0).plusDays(s), StageType.HIGH_MOUNTAIN);
+            portal.addIntermediateSprintToStage(stageIds[s], 40.0);
+            for (int c = 1; c < CHECKPOINTS_PER_STAGE; c++) {
+                portal.addCategorizedClimbToStage(stageIds[s], 40.0 + 40.0 * c, CheckpointType.C2, 7.0, 6.0);
+            }
+            portal.concludeStagePreparation(stageIds[s]);
+        }
+        return stageIds;
+    }
+}
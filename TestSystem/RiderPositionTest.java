@@ -0,0 +1,314 @@
+import cycling.*;
+
+import java.io.File;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A test of the rider position queries. Results are registered one at a
+ * time, and some deleted again, and after each change every rider's
+ * position and gap to the leader in the stage, general, points and
+ * mountain classifications are compared with the full rankings, in
+ * which riders on the same points must be in the order they entered the
+ * race, as the original portal ranked them. The
+ * same is done after removing a rider and a stage, and after saving and
+ * loading the portal, whose adjusted times, points and classification
+ * totals are worked out afresh and must match those kept up to date as
+ * the results changed. Finally, the time taken to find one rider's
+ * general classification position in a large field is printed, both
+ * with the position query and by searching the full ranking.
+ * <p>
+ * Run with assertions enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class RiderPositionTest {
+
+    /**
+     * Test method.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(2301);
+        for (int round = 0; round < 6; round++) {
+            CyclingPortalImpl portal = round % 2 == 0 ? new CyclingPortalImpl() : new ConcurrentCyclingPortalImpl();
+            int[] riderIds = createRiders(portal, 15 + random.nextInt(30));
+            int raceId = portal.createRace("Race", null);
+            int[] stageIds = createStages(portal, raceId, 2 + random.nextInt(3));
+            List<Integer> entries = new ArrayList<>();
+            for (int stageId : stageIds) {
+                for (int r = riderIds.length - 1; r >= 0; r--) {
+                    if (random.nextInt(8) == 0) {
+                        continue;
+                    }
+                    portal.registerRiderResultsInStage(stageId, riderIds[r], times(random));
+                    if (!entries.contains(riderIds[r])) {
+                        entries.add(riderIds[r]);
+                    }
+                    checkRace(portal, raceId, riderIds, entries);
+                    if (random.nextInt(10) == 0) {
+                        portal.deleteRiderResultsInStage(stageId, riderIds[r]);
+                        checkRace(portal, raceId, riderIds, entries);
+                    }
+                }
+            }
+            portal.removeRider(riderIds[0]);
+            entries.remove(Integer.valueOf(riderIds[0]));
+            checkRace(portal, raceId, riderIds, entries);
+            portal.removeStageById(stageIds[0]);
+            checkRace(portal, raceId, riderIds, entries);
+
+            File file = File.createTempFile("positions", ".portal");
+            portal.saveCyclingPortal(file.getPath());
+            CyclingPortalImpl loaded = new CyclingPortalImpl();
+            loaded.loadCyclingPortal(file.getPath());
+            file.delete();
+            checkRace(loaded, raceId, riderIds, entries);
+            for (int stageId : portal.getRaceStages(raceId)) {
+                assert Arrays.equals(loaded.getRankedAdjustedElapsedTimesInStage(stageId),
+                        portal.getRankedAdjustedElapsedTimesInStage(stageId))
+                        : "The adjusted times kept up to date differ from those worked out afresh.";
+                assert Arrays.equals(loaded.getRidersPointsInStage(stageId), portal.getRidersPointsInStage(stageId))
+                        : "The stage points kept up to date differ from those worked out afresh.";
+                assert Arrays.equals(loaded.getRidersMountainPointsInStage(stageId), portal.getRidersMountainPointsInStage(stageId))
+                        : "The mountain points kept up to date differ from those worked out afresh.";
+            }
+            assert Arrays.equals(loaded.getGeneralClassificationTimesInRace(raceId), portal.getGeneralClassificationTimesInRace(raceId))
+                    : "The general classification times kept up to date differ from those worked out afresh.";
+            assert Arrays.equals(loaded.getRidersPointsInRace(raceId), portal.getRidersPointsInRace(raceId))
+                    && Arrays.equals(loaded.getRidersMountainPointsInRace(raceId), portal.getRidersMountainPointsInRace(raceId))
+                    : "The points totals kept up to date differ from those worked out afresh.";
+        }
+
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int raceId = portal.createRace("Race", null);
+        try {
+            portal.getRiderGeneralClassificationRank(raceId, 0);
+            assert false : "An unknown rider was accepted.";
+        } catch (IDNotRecognisedException e) {
+            // Expected.
+        }
+
+        timeLargeField(random);
+        System.out.println("Rider position test passed.");
+    }
+
+    /**
+     * Compares every rider's positions and gaps with the full rankings of
+     * the race and its stages.
+     *
+     * @param portal   The portal holding the race.
+     * @param raceId   The ID of the race.
+     * @param riderIds The IDs of the riders, some of which may have been
+     *                 removed.
+     * @param entries  The IDs of the riders in the race, in the order they
+     *                 entered it.
+     */
+    private static void checkRace(CyclingPortalImpl portal, int raceId, int[] riderIds, List<Integer> entries) throws Exception {
+        for (int stageId : portal.getRaceStages(raceId)) {
+            int[] rank = portal.getRidersRankInStage(stageId);
+            LocalTime[] adjustedTimes = portal.getRankedAdjustedElapsedTimesInStage(stageId);
+            for (int riderId : riderIds) {
+                if (!exists(portal, riderId)) {
+                    continue;
+                }
+                int position = indexOf(rank, riderId);
+                assert portal.getRiderRankInStage(stageId, riderId) == (position < 0 ? -1 : position + 1);
+                LocalTime gap = portal.getRiderTimeBehindLeaderInStage(stageId, riderId);
+                assert position < 0 ? gap == null
+                        : gap.equals(LocalTime.MIDNIGHT.plus(Duration.between(adjustedTimes[0], adjustedTimes[position])));
+            }
+        }
+
+        int[] generalRank = portal.getRidersGeneralClassificationRank(raceId);
+        LocalTime[] generalTimes = portal.getGeneralClassificationTimesInRace(raceId);
+        int[] points = portal.getRidersPointsInRace(raceId);
+        int[] mountainPoints = portal.getRidersMountainPointsInRace(raceId);
+        int[] pointsRank = portal.getRidersPointClassificationRank(raceId);
+        int[] mountainRank = portal.getRidersMountainPointClassificationRank(raceId);
+        checkTieOrder(pointsRank, generalRank, points, entries);
+        checkTieOrder(mountainRank, generalRank, mountainPoints, entries);
+        for (int riderId : riderIds) {
+            if (!exists(portal, riderId)) {
+                continue;
+            }
+            int position = indexOf(generalRank, riderId);
+            assert portal.getRiderGeneralClassificationRank(raceId, riderId) == (position < 0 ? -1 : position + 1)
+                    : "The general classification position of rider " + riderId + " is wrong.";
+            LocalTime gap = portal.getRiderTimeBehindLeaderInRace(raceId, riderId);
+            assert position < 0 ? gap == null
+                    : gap.equals(LocalTime.MIDNIGHT.plus(Duration.between(generalTimes[0], generalTimes[position])));
+            if (position < 0) {
+                assert portal.getRiderPointClassificationRank(raceId, riderId) == -1;
+                assert portal.getRiderMountainPointsBehindLeaderInRace(raceId, riderId) == -1;
+                continue;
+            }
+            assert portal.getRiderPointClassificationRank(raceId, riderId) == indexOf(pointsRank, riderId) + 1
+                    : "The points classification position of rider " + riderId + " is wrong.";
+            assert portal.getRiderPointsBehindLeaderInRace(raceId, riderId) == max(points) - points[position];
+            assert portal.getRiderMountainPointClassificationRank(raceId, riderId) == indexOf(mountainRank, riderId) + 1
+                    : "The mountain classification position of rider " + riderId + " is wrong.";
+            assert portal.getRiderMountainPointsBehindLeaderInRace(raceId, riderId) == max(mountainPoints) - mountainPoints[position];
+        }
+    }
+
+    /**
+     * Checks that riders on the same points in a points ranking are in
+     * the order they entered the race.
+     *
+     * @param rank        The rider IDs, most points first.
+     * @param generalRank The rider IDs in general classification order.
+     * @param points      The riders' points, in general classification
+     *                    order.
+     * @param entries     The IDs of the riders in the race, in the order
+     *                    they entered it.
+     */
+    private static void checkTieOrder(int[] rank, int[] generalRank, int[] points, List<Integer> entries) {
+        assert rank.length == entries.size();
+        for (int i = 1; i < rank.length; i++) {
+            if (points[indexOf(generalRank, rank[i - 1])] == points[indexOf(generalRank, rank[i])]) {
+                assert entries.indexOf(rank[i - 1]) < entries.indexOf(rank[i])
+                        : "Riders on the same points are not in the order they entered the race.";
+            }
+        }
+    }
+
+    /**
+     * Checks whether a rider is still in the portal.
+     *
+     * @param portal  The portal.
+     * @param riderId The ID of the rider.
+     * @return true if the rider exists.
+     */
+    private static boolean exists(CyclingPortalImpl portal, int riderId) {
+        for (int teamId : portal.getTeams()) {
+            try {
+                if (indexOf(portal.getTeamRiders(teamId), riderId) >= 0) {
+                    return true;
+                }
+            } catch (IDNotRecognisedException e) {
+                throw new AssertionError(e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the largest number in an array.
+     *
+     * @param values The array, not empty.
+     * @return The largest value.
+     */
+    private static int max(int[] values) {
+        int max = values[0];
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        return max;
+    }
+
+    /**
+     * Finds a value in an array.
+     *
+     * @param values The array searched.
+     * @param value  The value looked for.
+     * @return The index of the value, or -1 if it is not in the array.
+     */
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a team of riders.
+     *
+     * @param portal The portal the riders are created in.
+     * @param count  The number of riders.
+     * @return The IDs of the riders.
+     */
+    private static int[] createRiders(CyclingPortalImpl portal, int count) throws Exception {
+        int teamId = portal.createTeam("Team", null);
+        int[] riderIds = new int[count];
+        for (int r = 0; r < count; r++) {
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+        }
+        return riderIds;
+    }
+
+    /**
+     * Creates stages with a sprint and a climb, ready for results.
+     *
+     * @param portal The portal the stages are created in.
+     * @param raceId The ID of the race the stages are added to.
+     * @param count  The number of stages.
+     * @return The IDs of the stages.
+     */
+    private static int[] createStages(CyclingPortalImpl portal, int raceId, int count) throws Exception {
+        int[] stageIds = new int[count];
+        for (int s = 0; s < count; s++) {
+            stageIds[s] = portal.addStageToRace(raceId, "Stage" + s, null, 150.0,
+                    LocalDateTime.of(2024, 7, 1, 12, 0).plusDays(s), StageType.values()[s % 3]);
+            portal.addIntermediateSprintToStage(stageIds[s], 40.0);
+            portal.addCategorizedClimbToStage(stageIds[s], 90.0, CheckpointType.C1, 5.0, 6.0);
+            portal.concludeStagePreparation(stageIds[s]);
+        }
+        return stageIds;
+    }
+
+    /**
+     * Makes up a rider's times in a stage, close enough together that
+     * riders often share a time or finish in a bunch.
+     *
+     * @param random The source of the times.
+     * @return The times, from the start time to the finish line.
+     */
+    private static LocalTime[] times(Random random) {
+        LocalTime start = LocalTime.of(12, 0);
+        return new LocalTime[]{start, start.plusMinutes(60 + random.nextInt(3)),
+                start.plusMinutes(150 + random.nextInt(3)), start.plusMinutes(220).plusSeconds(random.nextInt(8))};
+    }
+
+    /**
+     * Prints the time taken to find one rider's position in the general
+     * classification of a large field, after each of a series of changes.
+     *
+     * @param random The source of the times.
+     */
+    private static void timeLargeField(Random random) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[] riderIds = createRiders(portal, 20_000);
+        int raceId = portal.createRace("Large", null);
+        int stageId = createStages(portal, raceId, 1)[0];
+        for (int riderId : riderIds) {
+            portal.registerRiderResultsInStage(stageId, riderId, times(random));
+        }
+        long positionNanos = 0;
+        long searchNanos = 0;
+        int rounds = 200;
+        for (int i = 0; i < rounds; i++) {
+            int riderId = riderIds[random.nextInt(riderIds.length)];
+            portal.deleteRiderResultsInStage(stageId, riderId);
+            portal.registerRiderResultsInStage(stageId, riderId, times(random));
+            long start = System.nanoTime();
+            int position = portal.getRiderGeneralClassificationRank(raceId, riderId);
+            positionNanos += System.nanoTime() - start;
+            start = System.nanoTime();
+            int searched = indexOf(portal.getRidersGeneralClassificationRank(raceId), riderId) + 1;
+            searchNanos += System.nanoTime() - start;
+            assert position == searched;
+        }
+        System.out.printf("General classification position among %d riders: %.1f us with the query, %.1f us searching the ranking.%n",
+                riderIds.length, positionNanos / 1e3 / rounds, searchNanos / 1e3 / rounds);
+    }
+}
@@ -0,0 +1,114 @@
+import cycling.*;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * A short program that compares saving and loading a large portal as a
+ * binary snapshot with the Java serialisation format used before. Both
+ * files are loaded back and checked to give the same classifications.
+ * <p>
+ * Usage: SnapshotBenchmark [riders] [stages]. Run with assertions
+ * enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class SnapshotBenchmark {
+
+    private static final int STAGES_PER_RACE = 20;
+
+    /**
+     * Benchmark method.
+     *
+     * @param args the number of riders and the number of stages, both
+     *             optional
+     */
+    public static void main(String[] args) throws Exception {
+        int riders = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int stages = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        CyclingPortalImpl portal = createPortal(riders, stages, new Random(1410));
+        System.out.printf("Portal with %d riders and %d stages created%n", riders, stages);
+
+        File snapshot = File.createTempFile("portal", ".snapshot");
+        File legacy = File.createTempFile("portal", ".ser");
+        snapshot.deleteOnExit();
+        legacy.deleteOnExit();
+
+        long start = System.nanoTime();
+        portal.saveLegacyCyclingPortal(legacy.getPath());
+        long legacySave = System.nanoTime() - start;
+        start = System.nanoTime();
+        portal.saveCyclingPortal(snapshot.getPath());
+        long snapshotSave = System.nanoTime() - start;
+
+        CyclingPortalImpl fromLegacy = new CyclingPortalImpl();
+        start = System.nanoTime();
+        fromLegacy.loadCyclingPortal(legacy.getPath());
+        long legacyLoad = System.nanoTime() - start;
+        CyclingPortalImpl fromSnapshot = new CyclingPortalImpl();
+        start = System.nanoTime();
+        fromSnapshot.loadCyclingPortal(snapshot.getPath());
+        long snapshotLoad = System.nanoTime() - start;
+
+        System.out.printf("%-22s %10s %10s %10s%n", "", "save ms", "load ms", "size KB");
+        System.out.printf("%-22s %10d %10d %10d%n", "Java serialisation", legacySave / 1_000_000, legacyLoad / 1_000_000, legacy.length() / 1024);
+        System.out.printf("%-22s %10d %10d %10d%n", "Binary snapshot", snapshotSave / 1_000_000, snapshotLoad / 1_000_000, snapshot.length() / 1024);
+
+        for (int raceId : portal.getRaceIds()) {
+            assert (Arrays.equals(portal.getRidersGeneralClassificationRank(raceId), fromSnapshot.getRidersGeneralClassificationRank(raceId)))
+                    : "Snapshot changed the general classification";
+            assert (Arrays.equals(portal.getGeneralClassificationTimesInRace(raceId), fromSnapshot.getGeneralClassificationTimesInRace(raceId)))
+                    : "Snapshot changed the general classification times";
+            assert (Arrays.equals(portal.getRidersMountainPointClassificationRank(raceId), fromSnapshot.getRidersMountainPointClassificationRank(raceId)))
+                    : "Snapshot changed the mountain classification";
+            assert (Arrays.equals(fromLegacy.getRidersPointClassificationRank(raceId), fromSnapshot.getRidersPointClassificationRank(raceId)))
+                    : "Legacy file and snapshot load differently";
+        }
+    }
+
+    /**
+     * Creates a portal where every rider has a result in every stage.
+     *
+     * @param riders The number of riders.
+     * @param stages The number of stages, split into races.
+     * @param random The source of the riders' times.
+     * @return The portal.
+     */
+    private static CyclingPortalImpl createPortal(int riders, int stages, Random random) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int[] riderIds = new int[riders];
+        int teamId = -1;
+        for (int r = 0; r < riders; r++) {
+            if (r % 25 == 0) {
+                teamId = portal.createTeam("Team" + r / 25, "Team " + r / 25);
+            }
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1980 + r % 20);
+        }
+        int raceId = -1;
+        for (int s = 0; s < stages; s++) {
+            if (s % STAGES_PER_RACE == 0) {
+                raceId = portal.createRace("Race" + s / STAGES_PER_RACE, "Race " + s / STAGES_PER_RACE);
+            }
+            int stageId = portal.addStageToRace(raceId, "Stage" + s, null, 180,
+                    LocalDateTime.of(2023, 7, 1, 12, 0).plusDays(s), StageType.values()[s % 3]);
+            portal.addIntermediateSprintToStage(stageId, 60.0);
+            portal.addCategorizedClimbToStage(stageId, 120.0, CheckpointType.C1, 7.0, 8.0);
+            portal.concludeStagePreparation(stageId);
+            Map<Integer, LocalTime[]> results = new HashMap<>();
+            for (int riderId : riderIds) {
+                LocalTime start = LocalTime.of(12, 0);
+                LocalTime sprint = start.plusSeconds(3600 + random.nextInt(1800));
+                LocalTime climb = sprint.plusSeconds(3600 + random.nextInt(1800));
+                results.put(riderId, new LocalTime[]{start, sprint, climb, climb.plusSeconds(1800 + random.nextInt(1800))});
+            }
+            portal.registerStageResults(stageId, results);
+        }
+        return portal;
+    }
+}
@@ -0,0 +1,199 @@
+import cycling.*;
+
+import java.io.File;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A test of the top-k leaderboard queries. Random races are built with
+ * many riders on the same time or points, and every top-k query is
+ * compared with the start of the matching full ranking, both before and
+ * after the full ranking has been asked for. The portal is also saved
+ * and loaded, so that the leaders are read from orderings built afresh.
+ * Finally, in a large field, a top ten of the stage, general and points
+ * classifications asked for straight after a result is registered must
+ * be far cheaper than the full ranking, and the times are printed.
+ * <p>
+ * Run with assertions enabled (-ea).
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class TopRidersTest {
+
+    private static final int[] LIMITS = {0, 1, 3, 10, 40, 1000};
+
+    /**
+     * Test method.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) throws Exception {
+        Random random = new Random(2201);
+        for (int round = 0; round < 20; round++) {
+            CyclingPortalImpl portal = new CyclingPortalImpl();
+            int raceId = createRace(portal, random, 20 + random.nextInt(60), 1 + random.nextInt(4));
+            checkRace(portal, raceId, round % 2 == 0);
+            File file = File.createTempFile("top", ".portal");
+            portal.saveCyclingPortal(file.getPath());
+            CyclingPortalImpl loaded = new CyclingPortalImpl();
+            loaded.loadCyclingPortal(file.getPath());
+            file.delete();
+            checkRace(loaded, raceId, round % 2 == 1);
+        }
+
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        try {
+            portal.getTopRidersInStage(0, 10);
+            assert false : "An unknown stage was accepted.";
+        } catch (IDNotRecognisedException e) {
+            // Expected.
+        }
+        int raceId = createRace(portal, random, 10, 1);
+        try {
+            portal.getTopRidersInGeneralClassification(raceId, -1);
+            assert false : "A negative limit was accepted.";
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+
+        timeLargeField(random);
+        System.out.println("Top riders test passed.");
+    }
+
+    /**
+     * Compares every top-k query of a race with its full ranking.
+     *
+     * @param portal   The portal holding the race.
+     * @param raceId   The ID of the race.
+     * @param topFirst Whether the top-k queries are made before the full
+     *                 rankings.
+     */
+    private static void checkRace(CyclingPortalImpl portal, int raceId, boolean topFirst) throws Exception {
+        for (int limit : LIMITS) {
+            for (int stageId : portal.getRaceStages(raceId)) {
+                if (topFirst) {
+                    int[] top = portal.getTopRidersInStage(stageId, limit);
+                    checkPrefix(top, portal.getRidersRankInStage(stageId), limit, "stage");
+                } else {
+                    int[] full = portal.getRidersRankInStage(stageId);
+                    checkPrefix(portal.getTopRidersInStage(stageId, limit), full, limit, "stage");
+                }
+            }
+            int[] generalTop = portal.getTopRidersInGeneralClassification(raceId, limit);
+            checkPrefix(generalTop, portal.getRidersGeneralClassificationRank(raceId), limit, "general");
+            if (topFirst) {
+                int[] pointsTop = portal.getTopRidersInPointClassification(raceId, limit);
+                int[] mountainTop = portal.getTopRidersInMountainPointClassification(raceId, limit);
+                checkPrefix(pointsTop, portal.getRidersPointClassificationRank(raceId), limit, "points");
+                checkPrefix(mountainTop, portal.getRidersMountainPointClassificationRank(raceId), limit, "mountain");
+            } else {
+                int[] points = portal.getRidersPointClassificationRank(raceId);
+                int[] mountain = portal.getRidersMountainPointClassificationRank(raceId);
+                checkPrefix(portal.getTopRidersInPointClassification(raceId, limit), points, limit, "points");
+                checkPrefix(portal.getTopRidersInMountainPointClassification(raceId, limit), mountain, limit, "mountain");
+            }
+        }
+    }
+
+    /**
+     * Checks that a top-k result is the start of the full ranking.
+     *
+     * @param top   The top-k result.
+     * @param full  The full ranking.
+     * @param limit The limit the top-k result was asked for with.
+     * @param name  The name of the classification, for the message.
+     */
+    private static void checkPrefix(int[] top, int[] full, int limit, String name) {
+        int[] expected = Arrays.copyOf(full, Math.min(limit, full.length));
+        assert Arrays.equals(top, expected) : "The " + name + " top " + limit + " " + Arrays.toString(top)
+                + " is not the start of " + Arrays.toString(full);
+    }
+
+    /**
+     * Creates a race whose riders often share a time, so that many of
+     * them are ranked by their ID or general classification position.
+     *
+     * @param portal     The portal the race is created in.
+     * @param random     The source of the times.
+     * @param riderCount The number of riders.
+     * @param stageCount The number of stages.
+     * @return The ID of the race.
+     */
+    private static int createRace(CyclingPortalImpl portal, Random random, int riderCount, int stageCount) throws Exception {
+        int teamId = portal.createTeam("Team", null);
+        int[] riderIds = new int[riderCount];
+        for (int r = 0; r < riderCount; r++) {
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1990);
+        }
+        int raceId = portal.createRace("Race", null);
+        for (int s = 0; s < stageCount; s++) {
+            int stageId = portal.addStageToRace(raceId, "Stage" + s, null, 150.0,
+                    LocalDateTime.of(2024, 7, 1, 12, 0).plusDays(s), StageType.values()[s % 3]);
+            portal.addIntermediateSprintToStage(stageId, 40.0);
+            portal.addCategorizedClimbToStage(stageId, 90.0, CheckpointType.C1, 5.0, 6.0);
+            portal.concludeStagePreparation(stageId);
+            for (int riderId : riderIds) {
+                if (random.nextInt(10) == 0) {
+                    continue;
+                }
+                LocalTime start = LocalTime.of(12, 0);
+                portal.registerRiderResultsInStage(stageId, riderId, start,
+                        start.plusMinutes(60 + random.nextInt(3)),
+                        start.plusMinutes(150 + random.nextInt(3)),
+                        start.plusMinutes(220).plusSeconds(random.nextInt(8)));
+            }
+        }
+        return raceId;
+    }
+
+    /**
+     * Times a top ten and the full ranking of the stage, general and
+     * points classifications of a large field, each asked for straight
+     * after the race's results have changed, and checks that the top ten
+     * costs at most a fifth of the full ranking.
+     *
+     * @param random The source of the times.
+     */
+    private static void timeLargeField(Random random) throws Exception {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        int raceId = createRace(portal, random, 20_000, 1);
+        int stageId = portal.getRaceStages(raceId)[0];
+        int riderId = portal.getRidersRankInStage(stageId)[0];
+        LocalTime start = LocalTime.of(12, 0);
+        LocalTime[] times = {start, start.plusMinutes(60), start.plusMinutes(150), start.plusMinutes(219)};
+        String[] names = {"Stage", "General", "Points"};
+        long[] topNanos = new long[names.length];
+        long[] fullNanos = new long[names.length];
+        int rounds = 20;
+        for (int i = 0; i < 4 * rounds; i++) {
+            boolean measured = i >= 2 * rounds;
+            for (int c = 0; c < names.length; c++) {
+                portal.deleteRiderResultsInStage(stageId, riderId);
+                portal.registerRiderResultsInStage(stageId, riderId, times);
+                long queryStart = System.nanoTime();
+                if (i % 2 == 0) {
+                    int[] top = c == 0 ? portal.getTopRidersInStage(stageId, 10)
+                            : c == 1 ? portal.getTopRidersInGeneralClassification(raceId, 10)
+                            : portal.getTopRidersInPointClassification(raceId, 10);
+                    assert top.length == 10;
+                    topNanos[c] += measured ? System.nanoTime() - queryStart : 0;
+                } else {
+                    int[] full = c == 0 ? portal.getRidersRankInStage(stageId)
+                            : c == 1 ? portal.getRidersGeneralClassificationRank(raceId)
+                            : portal.getRidersPointClassificationRank(raceId);
+                    assert full.length > 10;
+                    fullNanos[c] += measured ? System.nanoTime() - queryStart : 0;
+                }
+            }
+        }
+        for (int c = 0; c < names.length; c++) {
+            System.out.printf("%s classification of %d riders: %.3f ms for the top ten, %.3f ms in full.%n",
+                    names[c], 20_000, topNanos[c] / 1e6 / rounds, fullNanos[c] / 1e6 / rounds);
+            assert topNanos[c] * 5 <= fullNanos[c]
+                    : names[c] + " top ten after a write is not far cheaper than the full ranking.";
+        }
+    }
+}
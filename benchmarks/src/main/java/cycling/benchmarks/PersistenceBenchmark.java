@@ -0,0 +1,96 @@
+package cycling.benchmarks;
+
+import cycling.CyclingPortalImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of saving a whole portal and loading it back, through
+ * saveCyclingPortal and loadCyclingPortal.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistenceBenchmark {
+
+    /**
+     * The files the portal is saved to and loaded from.
+     */
+    @State(Scope.Benchmark)
+    public static class SaveFiles {
+
+        Path directory;
+        String saved;
+        String scratch;
+
+        /**
+         * Creates the files, saving the portal once for the loads.
+         *
+         * @param state The portal.
+         */
+        @Setup(Level.Trial)
+        public void save(PortalState state) throws IOException {
+            directory = Files.createTempDirectory("benchmark");
+            saved = directory.resolve("saved.portal").toString();
+            scratch = directory.resolve("scratch.portal").toString();
+            state.portal.saveCyclingPortal(saved);
+        }
+
+        /**
+         * Deletes the files.
+         */
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            try (var paths = Files.list(directory)) {
+                for (Path path : (Iterable<Path>) paths::iterator) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+
+    /**
+     * Saves the portal.
+     *
+     * @param state The portal.
+     * @param files The file it is saved to.
+     */
+    @Benchmark
+    public void saveCyclingPortal(PortalState state, SaveFiles files) throws IOException {
+        state.portal.saveCyclingPortal(files.scratch);
+    }
+
+    /**
+     * Loads a saved portal.
+     *
+     * @param files The file it is loaded from.
+     * @return The loaded portal.
+     */
+    @Benchmark
+    public CyclingPortalImpl loadCyclingPortal(SaveFiles files) throws IOException, ClassNotFoundException {
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        portal.loadCyclingPortal(files.saved);
+        return portal;
+    }
+}
@@ -0,0 +1,123 @@
+package cycling.benchmarks;
+
+import cycling.CheckpointType;
+import cycling.CyclingPortalImpl;
+import cycling.StageType;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * PortalState class. A portal filled with races for the benchmarks to
+ * work on. Every rider has a result in every stage of every race, so the
+ * classifications are as large as the parameters allow. The size of the
+ * portal is set by the JMH parameters, which can be overridden on the
+ * command line, for example {@code -p riders=500 -p races=2}.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+public class PortalState {
+
+    private static final int RIDERS_PER_TEAM = 8;
+
+    @Param({"50", "200"})
+    public int riders;
+
+    @Param({"3", "21"})
+    public int stages;
+
+    @Param({"2", "10"})
+    public int checkpoints;
+
+    @Param({"1", "3"})
+    public int races;
+
+    CyclingPortalImpl portal;
+    int[] riderIds;
+    int[] raceIds;
+    int[][] stageIds;
+    Random random;
+
+    /**
+     * Builds the portal and registers every result.
+     */
+    @Setup
+    public void createPortal() throws Exception {
+        random = new Random(2001);
+        portal = new CyclingPortalImpl();
+        riderIds = new int[riders];
+        int teamId = -1;
+        for (int r = 0; r < riders; r++) {
+            if (r % RIDERS_PER_TEAM == 0) {
+                teamId = portal.createTeam("Team" + r / RIDERS_PER_TEAM, null);
+            }
+            riderIds[r] = portal.createRider(teamId, "Rider" + r, 1985 + r % 15);
+        }
+        raceIds = new int[races];
+        stageIds = new int[races][stages];
+        for (int race = 0; race < races; race++) {
+            raceIds[race] = portal.createRace("Race" + race, null);
+            for (int s = 0; s < stages; s++) {
+                int stageId = portal.addStageToRace(raceIds[race], "Race" + race + "Stage" + s, null, 180.0,
+                        LocalDateTime.of(2024, 7, 1, 12, 0).plusDays(s), StageType.values()[s % 3]);
+                for (int c = 0; c < checkpoints; c++) {
+                    if (c % 2 == 0) {
+                        portal.addIntermediateSprintToStage(stageId, 15.0 * (c + 1));
+                    } else {
+                        portal.addCategorizedClimbToStage(stageId, 15.0 * (c + 1), CheckpointType.C1, 7.0, 10.0);
+                    }
+                }
+                portal.concludeStagePreparation(stageId);
+                Map<Integer, LocalTime[]> results = new HashMap<>();
+                for (int riderId : riderIds) {
+                    results.put(riderId, times());
+                }
+                portal.registerStageResults(stageId, results);
+                stageIds[race][s] = stageId;
+            }
+        }
+    }
+
+    /**
+     * Picks a stage of the first race at random.
+     *
+     * @return The ID of the stage.
+     */
+    int anyStage() {
+        return stageIds[0][random.nextInt(stages)];
+    }
+
+    /**
+     * Picks a rider at random.
+     *
+     * @return The ID of the rider.
+     */
+    int anyRider() {
+        return riderIds[random.nextInt(riders)];
+    }
+
+    /**
+     * Makes up a rider's times in a stage, with the riders spread out
+     * enough that only some of them finish in a bunch.
+     *
+     * @return The times, from the start time to the finish line.
+     */
+    LocalTime[] times() {
+        LocalTime[] times = new LocalTime[checkpoints + 2];
+        LocalTime time = LocalTime.of(12, 0);
+        for (int i = 0; i < times.length; i++) {
+            times[i] = time;
+            time = time.plusSeconds(600 + random.nextInt(600)).plusNanos(random.nextInt(1_000_000_000));
+        }
+        return times;
+    }
+}
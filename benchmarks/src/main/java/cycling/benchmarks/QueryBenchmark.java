@@ -0,0 +1,93 @@
+package cycling.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of reading ranks and classifications from a portal whose
+ * results do not change, which is how the portal is used most of the
+ * time. The race-level classifications are read from a random race.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    /**
+     * Reads the riders' ranks in a stage.
+     *
+     * @param state The portal.
+     * @return The ranks.
+     */
+    @Benchmark
+    public int[] getRidersRankInStage(PortalState state) throws Exception {
+        return state.portal.getRidersRankInStage(state.anyStage());
+    }
+
+    /**
+     * Reads the riders' adjusted elapsed times in a stage.
+     *
+     * @param state The portal.
+     * @return The adjusted times, in rank order.
+     */
+    @Benchmark
+    public LocalTime[] getRankedAdjustedElapsedTimesInStage(PortalState state) throws Exception {
+        return state.portal.getRankedAdjustedElapsedTimesInStage(state.anyStage());
+    }
+
+    /**
+     * Reads the general classification of a race.
+     *
+     * @param state The portal.
+     * @return The classification.
+     */
+    @Benchmark
+    public int[] getRidersGeneralClassificationRank(PortalState state) throws Exception {
+        return state.portal.getRidersGeneralClassificationRank(anyRace(state));
+    }
+
+    /**
+     * Reads the points classification of a race.
+     *
+     * @param state The portal.
+     * @return The classification.
+     */
+    @Benchmark
+    public int[] getRidersPointClassificationRank(PortalState state) throws Exception {
+        return state.portal.getRidersPointClassificationRank(anyRace(state));
+    }
+
+    /**
+     * Reads the mountain classification of a race.
+     *
+     * @param state The portal.
+     * @return The classification.
+     */
+    @Benchmark
+    public int[] getRidersMountainPointClassificationRank(PortalState state) throws Exception {
+        return state.portal.getRidersMountainPointClassificationRank(anyRace(state));
+    }
+
+    /**
+     * Picks a race at random.
+     *
+     * @param state The portal.
+     * @return The ID of the race.
+     */
+    private static int anyRace(PortalState state) {
+        return state.raceIds[state.random.nextInt(state.races)];
+    }
+}
@@ -0,0 +1,56 @@
+package cycling.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of registering results. A stage is always full, so each
+ * operation deletes one rider's result and registers it again; both bring
+ * the stage's ranks, adjusted times, points and the race's general
+ * classification up to date. The second benchmark also reads a race-level
+ * classification afterwards, which has to be rebuilt after the change.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultsBenchmark {
+
+    /**
+     * Deletes and registers again one rider's result in a stage.
+     *
+     * @param state The portal.
+     */
+    @Benchmark
+    public void registerRiderResultsInStage(PortalState state) throws Exception {
+        int stageId = state.anyStage();
+        int riderId = state.anyRider();
+        state.portal.deleteRiderResultsInStage(stageId, riderId);
+        state.portal.registerRiderResultsInStage(stageId, riderId, state.times());
+    }
+
+    /**
+     * Deletes and registers again one rider's result in a stage, and then
+     * reads the points classification of the stage's race.
+     *
+     * @param state The portal.
+     * @param sink  Consumes the classification.
+     */
+    @Benchmark
+    public void registerThenRankPoints(PortalState state, Blackhole sink) throws Exception {
+        registerRiderResultsInStage(state);
+        sink.consume(state.portal.getRidersPointClassificationRank(state.raceIds[0]));
+    }
+}
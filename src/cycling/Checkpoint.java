@@ -1,14 +1,11 @@
 package cycling;
 
 import java.io.Serializable;
-import java.time.LocalTime;
-import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Checkpoint class. This class manages all the checkpoints within
- * CyclingPortal and the times and ranks that rider's got inside of
- * the checkpoints.
+ * CyclingPortal. The times and ranks that rider's got inside of the
+ * checkpoints are kept with the results of the checkpoint's stage.
  *
  * @author Edward Pratt, Alexander Hay
  * @version 1.0
@@ -22,9 +19,7 @@ public class Checkpoint implements Serializable {
     private Double averageGradient;
     private int stageId;
     private CheckpointType type;
-    private final HashMap<Integer, LocalTime> riderCompletionTimes = new HashMap<>();
 
-    static private final AtomicInteger currentId = new AtomicInteger(0);
     static private final int[] sprintCheckpointPoints = new int[]{20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
     static private final int[] mountainCheckpointHCPoints = new int[]{20, 15, 12, 10, 8, 6, 4, 2};
     static private final int[] mountainCheckpointC1Points = new int[]{10, 8, 6, 4, 2, 1};
@@ -32,7 +27,6 @@ public class Checkpoint implements Serializable {
     static private final int[] mountainCheckpointC3Points = new int[]{2, 1};
     static private final int[] mountainCheckpointC4Points = new int[]{1};
 
-
     /**
      * The first constructor method for this class, instantiates and
      * initialises all the non-static variables.
@@ -40,13 +34,14 @@ public class Checkpoint implements Serializable {
      * Assigns each of then non-static variables values when all the
      * details about the checkpoint has been specified.
      *
+     * @param checkpointId    The ID of the checkpoint.
      * @param stageId         The ID of the stage.
      * @param location        The location of the stage.
      * @param type            The type of stage.
      * @param length          The length of the stage.
      * @param averageGradient The average gradient of the stage.
      */
-    public Checkpoint(int stageId, Double location, CheckpointType type, Double length, Double averageGradient) {
+    public Checkpoint(int checkpointId, int stageId, Double location, CheckpointType type, Double length, Double averageGradient) {
         this.checkpointId = 0;
         this.location = 0.0;
         this.length = 0.0;
@@ -57,7 +52,7 @@ public class Checkpoint implements Serializable {
         this.length = length;
         this.averageGradient = averageGradient;
         this.type = type;
-        this.checkpointId = currentId.getAndIncrement();
+        this.checkpointId = checkpointId;
     }
 
     /**
@@ -67,10 +62,11 @@ public class Checkpoint implements Serializable {
      * Only assigns some of the variables values when the type, lenght
      * and average gradient have not been specified.
      *
-     * @param stageId  The ID of the stage.
-     * @param location The location of the stage.
+     * @param checkpointId The ID of the checkpoint.
+     * @param stageId      The ID of the stage.
+     * @param location     The location of the stage.
      */
-    public Checkpoint(int stageId, Double location) {
+    public Checkpoint(int checkpointId, int stageId, Double location) {
         this.checkpointId = 0;
         this.location = 0.0;
         this.length = 0.0;
@@ -78,7 +74,7 @@ public class Checkpoint implements Serializable {
         this.stageId = 0;
         this.stageId = stageId;
         this.location = location;
-        this.checkpointId = currentId.getAndIncrement();
+        this.checkpointId = checkpointId;
     }
 
     /**
@@ -211,16 +207,42 @@ public class Checkpoint implements Serializable {
     }
 
     /**
-     * Method that retrieves the completion/finish time of a
-     * rider for the checkpoint.
+     * GETTER method for the array of points given to the
+     * rider's each based on their respective position that
+     * they achieved in this checkpoint, according to its type.
+     * Intermediate sprints have no type set.
+     *
+     * @return The arrray of integers of the respective points
+     * for each of the riders based on their position.
+     */
+    public int[] getPoints() {
+        if (type == null) {
+            return sprintCheckpointPoints;
+        }
+        switch (type) {
+            case HC:
+                return mountainCheckpointHCPoints;
+            case C1:
+                return mountainCheckpointC1Points;
+            case C2:
+                return mountainCheckpointC2Points;
+            case C3:
+                return mountainCheckpointC3Points;
+            case C4:
+                return mountainCheckpointC4Points;
+            default:
+                return sprintCheckpointPoints;
+        }
+    }
+
+    /**
+     * Method that checks whether the checkpoint is a categorised
+     * climb, which awards mountain points.
      *
-     * @param riderId The ID of the rider who completed the
-     *                checkpoint.
-     * @return The finish time that the rider achieved from
-     * racing in the checkpoint.
+     * @return True if the checkpoint is a climb of any category.
      */
-    public LocalTime getRiderCompletionTimes(int riderId) {
-        return riderCompletionTimes.get(riderId);
+    public boolean isClimb() {
+        return type != null && type != CheckpointType.SPRINT;
     }
 
     /**
@@ -283,61 +305,4 @@ public class Checkpoint implements Serializable {
     public void setStageID(int stageId) {
         this.stageId = stageId;
     }
-
-    /**
-     * Method that adds and stores the rider ID and
-     * the finish time that the rider got for the
-     * checkpoint in a HashMap.
-     *
-     * @param riderId      The ID of the rider, who finished the
-     *                     checkpoint.
-     * @param completeTime The finish time that the rider got
-     *                     for the checkpoint.
-     */
-    public void addCompletionTime(int riderId, LocalTime completeTime) {
-        riderCompletionTimes.put(riderId, completeTime);
-    }
-
-    /**
-     * Method that deletes a rider's finish time
-     * from the HashMap of finish times.
-     *
-     * @param riderId The ID of the rider that is going
-     *                to be removed.
-     */
-    public void deleteCompletionTime(int riderId) {
-        riderCompletionTimes.remove(riderId);
-    }
-
-    /**
-     * Method that calculates all the riders' ranks that they
-     * achieved in the checkpoint by the finish times that they
-     * achieved during the race, sorted with the winner (fastest
-     * time) being the first in the array.
-     *
-     * @return An array of all the rider IDs, sorted based on the
-     * finish time they achieved in the checkpoint.
-     */
-    public int[] calculateRidersRankInCheckpoints() {
-//        LinkedList<Map.Entry<Integer, LocalTime>> timeList = new LinkedList<Map.Entry<Integer, LocalTime>>(riderCompletionTimes.entrySet());
-//        Collections.sort(timeList, (i1, i2) -> i1.getValue().compareTo(i2.getValue())); //Lambda function
-//        Collections.sort(timeList, Collections.reverseOrder()); //Really needs to be tested
-//        ArrayList<Integer> idList = new ArrayList<>();
-//        for (Map.Entry<Integer, LocalTime> entry : timeList){
-//            idList.add(entry.getKey());
-//        }
-//        return idList.stream().mapToInt(i -> i).toArray();
-
-        LinkedHashMap<Integer, LocalTime> sortedMap = new LinkedHashMap<>();
-        riderCompletionTimes.entrySet().stream().sorted(Map.Entry.comparingByValue()).forEachOrdered(x -> sortedMap.put(x.getKey(), x.getValue()));
-        return sortedMap.keySet().stream().mapToInt(i -> i).toArray();
-    }
-
-    /**
-     * Method that resets the ID counter. The ID counter creates
-     * a new ID for every single new rider that is created.
-     */
-    static public void atomicReset() {
-        currentId.set(0);
-    }
 }
@@ -0,0 +1,28 @@
+package cycling;
+
+/**
+ * The ClassificationListener interface. A listener added to a
+ * CyclingPortalImpl is told how the riders have moved in a ranking
+ * whenever results change it, so that it does not have to fetch and
+ * compare the whole ranking itself.
+ * <p>
+ * Each change is worked out once, however many listeners there are, and
+ * every listener is given the same update. Listeners are called on the
+ * thread that changed the results, after the change has been made and
+ * journalled, so they should be quick and must not change the portal.
+ * With a ConcurrentCyclingPortalImpl, updates for different races can
+ * arrive on different threads at the same time.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public interface ClassificationListener {
+
+    /**
+     * Called when a ranking has changed.
+     *
+     * @param update The riders whose position or value in the ranking has
+     *               changed.
+     */
+    void classificationChanged(ClassificationUpdate update);
+}
@@ -0,0 +1,341 @@
+package cycling;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntToLongFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * ClassificationNotifier class. This class holds the listeners of a
+ * portal and the rankings they were last told about. When results
+ * change, the portal hands it the new rankings; each is compared with
+ * the one last published, and the riders who have moved are sent to
+ * every listener as one shared update.
+ * <p>
+ * The riders at the front and, if the ranking is the same length, at the
+ * back that are in the same place with the same value are skipped by
+ * comparing the two rankings' arrays, so only the riders between them,
+ * those who can have moved, are looked up by ID. When the portal knows
+ * which riders' results have changed, as after registering or deleting
+ * results, it can instead hand over just those riders, and the new
+ * ranking is made from the one last published by moving them to their
+ * new places, without the portal ranking anyone else. The changes are
+ * kept in primitive arrays, and each {@link RankChange} is only made
+ * when a listener reads it.
+ * <p>
+ * Rankings are only kept while there are listeners. The rankings of
+ * different races can be published from different threads at the same
+ * time, but each ranking only from one thread at a time.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+final class ClassificationNotifier {
+
+    private final CopyOnWriteArrayList<ClassificationListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<Long, Ranking> published = new ConcurrentHashMap<>();
+
+    /**
+     * A ranking as it was last published: the riders in order, each with
+     * their time or points.
+     */
+    private static final class Ranking {
+        private final int[] riderIds;
+        private final long[] values;
+
+        private Ranking(int[] riderIds, long[] values) {
+            this.riderIds = riderIds;
+            this.values = values;
+        }
+    }
+
+    /**
+     * The riders who have moved in a ranking, kept in primitive arrays and
+     * read as a list of RankChange, each made when it is read.
+     */
+    private static final class Changes extends AbstractList<RankChange> implements RandomAccess {
+        private final int size;
+        private final int[] riderIds;
+        private final int[] oldPositions;
+        private final int[] newPositions;
+        private final long[] values;
+
+        private Changes(int size, int[] riderIds, int[] oldPositions, int[] newPositions, long[] values) {
+            this.size = size;
+            this.riderIds = riderIds;
+            this.oldPositions = oldPositions;
+            this.newPositions = newPositions;
+            this.values = values;
+        }
+
+        @Override
+        public RankChange get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("There is no change " + index + ".");
+            }
+            return new RankChange(riderIds[index], oldPositions[index], newPositions[index], values[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * Checks whether anyone is listening, so that the portal only works
+     * out rankings when they are wanted.
+     *
+     * @return true if there is at least one listener.
+     */
+    boolean hasListeners() {
+        return !listeners.isEmpty();
+    }
+
+    /**
+     * Adds a listener.
+     *
+     * @param listener The listener being added.
+     * @return true if it is the first listener, in which case the current
+     * rankings must be remembered before any are published.
+     */
+    boolean addListener(ClassificationListener listener) {
+        boolean first = listeners.isEmpty();
+        listeners.add(listener);
+        return first;
+    }
+
+    /**
+     * Removes a listener, forgetting every ranking once the last listener
+     * has gone.
+     *
+     * @param listener The listener being removed.
+     */
+    void removeListener(ClassificationListener listener) {
+        listeners.remove(listener);
+        if (listeners.isEmpty()) {
+            published.clear();
+        }
+    }
+
+    /**
+     * Remembers a ranking as it is now without telling the listeners, as
+     * when the first listener is added or the portal is loaded.
+     *
+     * @param type     The kind of ranking.
+     * @param id       The ID of the stage, checkpoint or race ranked.
+     * @param riderIds The riders in order.
+     * @param values   The time or points of each rider.
+     */
+    void remember(ClassificationType type, int id, int[] riderIds, long[] values) {
+        published.put(key(type, id), new Ranking(riderIds, values));
+    }
+
+    /**
+     * Forgets a ranking whose stage, checkpoint or race has been removed.
+     *
+     * @param type The kind of ranking.
+     * @param id   The ID of the stage, checkpoint or race ranked.
+     */
+    void forget(ClassificationType type, int id) {
+        published.remove(key(type, id));
+    }
+
+    /**
+     * Forgets every ranking, as when the portal is erased.
+     */
+    void forgetAll() {
+        published.clear();
+    }
+
+    /**
+     * Publishes a ranking. The riders who have moved since the ranking was
+     * last published, or whose value has changed, are worked out once and
+     * sent to every listener. A ranking never published before is compared
+     * with an empty one. A listener that throws does not stop the others
+     * being told; its exception is reported to the metrics.
+     *
+     * @param type     The kind of ranking.
+     * @param id       The ID of the stage, checkpoint or race ranked.
+     * @param riderIds The riders in order.
+     * @param values   The time or points of each rider.
+     * @param metrics  The metrics any listener's exception is reported to.
+     */
+    void publish(ClassificationType type, int id, int[] riderIds, long[] values, PortalMetrics metrics) {
+        Ranking previous = published.put(key(type, id), new Ranking(riderIds, values));
+        if (previous == null) {
+            previous = new Ranking(new int[0], new long[0]);
+        }
+        int[] oldRiderIds = previous.riderIds;
+        int first = 0;
+        while (first < riderIds.length && first < oldRiderIds.length
+                && riderIds[first] == oldRiderIds[first] && values[first] == previous.values[first]) {
+            first++;
+        }
+        int end = riderIds.length;
+        if (riderIds.length == oldRiderIds.length) {
+            while (end > first && riderIds[end - 1] == oldRiderIds[end - 1] && values[end - 1] == previous.values[end - 1]) {
+                end--;
+            }
+        }
+        int oldEnd = end + oldRiderIds.length - riderIds.length;
+        IntIntMap oldPositions = new IntIntMap(oldEnd - first);
+        for (int i = first; i < oldEnd; i++) {
+            oldPositions.put(oldRiderIds[i], i);
+        }
+        int capacity = end - first + oldEnd - first;
+        int[] changedRiders = new int[capacity];
+        int[] changedFrom = new int[capacity];
+        int[] changedTo = new int[capacity];
+        long[] changedValues = new long[capacity];
+        int count = 0;
+        IntIntMap newPositions = new IntIntMap(end - first);
+        for (int i = first; i < end; i++) {
+            newPositions.put(riderIds[i], i);
+            int old = oldPositions.getOrDefault(riderIds[i], -1);
+            if (old != i || previous.values[old] != values[i]) {
+                changedRiders[count] = riderIds[i];
+                changedFrom[count] = old < 0 ? -1 : old + 1;
+                changedTo[count] = i + 1;
+                changedValues[count++] = values[i];
+            }
+        }
+        for (int i = first; i < oldEnd; i++) {
+            if (!newPositions.containsKey(oldRiderIds[i])) {
+                changedRiders[count] = oldRiderIds[i];
+                changedFrom[count] = i + 1;
+                changedTo[count] = -1;
+                changedValues[count++] = 0;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        tell(new ClassificationUpdate(type, id, new Changes(count, changedRiders, changedFrom, changedTo, changedValues)), metrics);
+    }
+
+    /**
+     * Publishes a ranking in which only some riders can have moved or
+     * changed their value since it was last published. Those riders are
+     * taken out of the ranking last published and put back in their new
+     * places, and every other rider keeps their value and their order,
+     * moving up or down only to make room. A ranking never published
+     * before is taken to have been empty.
+     *
+     * @param type      The kind of ranking.
+     * @param id        The ID of the stage, checkpoint or race ranked.
+     * @param moved     The IDs of the riders who can have moved, without
+     *                  repeats.
+     * @param positions Finds a rider's new position, starting from 1, or
+     *                  -1 if they are no longer ranked.
+     * @param values    Finds the new time or points of a ranked rider.
+     * @param metrics   The metrics any listener's exception is reported
+     *                  to.
+     */
+    void publishMoved(ClassificationType type, int id, int[] moved, IntUnaryOperator positions,
+                      IntToLongFunction values, PortalMetrics metrics) {
+        Ranking previous = published.get(key(type, id));
+        int[] oldRiderIds = previous == null ? new int[0] : previous.riderIds;
+        long[] oldValues = previous == null ? new long[0] : previous.values;
+        IntIntMap movedIndexes = new IntIntMap(moved.length);
+        for (int m = 0; m < moved.length; m++) {
+            movedIndexes.put(moved[m], m);
+        }
+        int[] oldPositions = new int[moved.length];
+        Arrays.fill(oldPositions, -1);
+        int[] stayed = new int[oldRiderIds.length];
+        int stayedCount = 0;
+        for (int i = 0; i < oldRiderIds.length; i++) {
+            int m = movedIndexes.getOrDefault(oldRiderIds[i], -1);
+            if (m < 0) {
+                stayed[stayedCount++] = i;
+            } else {
+                oldPositions[m] = i;
+            }
+        }
+        long[] placed = new long[moved.length];
+        int placedCount = 0;
+        for (int m = 0; m < moved.length; m++) {
+            int position = positions.applyAsInt(moved[m]);
+            if (position > 0) {
+                placed[placedCount++] = ((long) (position - 1) << 32) | m;
+            }
+        }
+        Arrays.sort(placed, 0, placedCount);
+
+        int size = stayedCount + placedCount;
+        int[] riderIds = new int[size];
+        long[] newValues = new long[size];
+        int capacity = size + moved.length;
+        int[] changedRiders = new int[capacity];
+        int[] changedFrom = new int[capacity];
+        int[] changedTo = new int[capacity];
+        long[] changedValues = new long[capacity];
+        int count = 0;
+        int next = 0;
+        int p = 0;
+        for (int i = 0; i < size; i++) {
+            int old;
+            if (p < placedCount && (int) (placed[p] >>> 32) == i) {
+                int m = (int) placed[p++];
+                old = oldPositions[m];
+                riderIds[i] = moved[m];
+                newValues[i] = values.applyAsLong(moved[m]);
+                if (old == i && oldValues[old] == newValues[i]) {
+                    continue;
+                }
+            } else {
+                old = stayed[next++];
+                riderIds[i] = oldRiderIds[old];
+                newValues[i] = oldValues[old];
+                if (old == i) {
+                    continue;
+                }
+            }
+            changedRiders[count] = riderIds[i];
+            changedFrom[count] = old < 0 ? -1 : old + 1;
+            changedTo[count] = i + 1;
+            changedValues[count++] = newValues[i];
+        }
+        for (int m = 0; m < moved.length; m++) {
+            if (oldPositions[m] >= 0 && positions.applyAsInt(moved[m]) < 0) {
+                changedRiders[count] = moved[m];
+                changedFrom[count] = oldPositions[m] + 1;
+                changedTo[count] = -1;
+                changedValues[count++] = 0;
+            }
+        }
+        published.put(key(type, id), new Ranking(riderIds, newValues));
+        if (count > 0) {
+            tell(new ClassificationUpdate(type, id, new Changes(count, changedRiders, changedFrom, changedTo, changedValues)), metrics);
+        }
+    }
+
+    /**
+     * Sends an update to every listener. A listener that throws does not
+     * stop the others being told; its exception is reported to the
+     * metrics.
+     *
+     * @param update  The update.
+     * @param metrics The metrics any listener's exception is reported to.
+     */
+    private void tell(ClassificationUpdate update, PortalMetrics metrics) {
+        for (ClassificationListener listener : listeners) {
+            try {
+                listener.classificationChanged(update);
+            } catch (RuntimeException e) {
+                metrics.recordException("classificationChanged", e);
+            }
+        }
+    }
+
+    /**
+     * Makes the key a ranking is kept under.
+     */
+    private static long key(ClassificationType type, int id) {
+        return ((long) type.ordinal() << 32) | (id & 0xFFFFFFFFL);
+    }
+}
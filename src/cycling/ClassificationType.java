@@ -0,0 +1,40 @@
+package cycling;
+
+/**
+ * This enum is used to represent the rankings that a
+ * {@link ClassificationListener} is told about.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public enum ClassificationType {
+
+    /**
+     * The riders of a stage, ranked by their adjusted elapsed time.
+     */
+    STAGE,
+
+    /**
+     * The riders who have passed a checkpoint, ranked by the time they
+     * passed it.
+     */
+    CHECKPOINT,
+
+    /**
+     * The general classification of a race, ranked by total adjusted
+     * elapsed time.
+     */
+    GENERAL,
+
+    /**
+     * The points classification of a race, ranked by total points.
+     */
+    POINTS,
+
+    /**
+     * The mountain classification of a race, ranked by total mountain
+     * points.
+     */
+    MOUNTAIN_POINTS
+
+}
@@ -0,0 +1,67 @@
+package cycling;
+
+import java.util.List;
+
+/**
+ * ClassificationUpdate class. This class is what a
+ * {@link ClassificationListener} is given when a ranking changes: which
+ * ranking it is, and every rider whose position or value in it has
+ * changed. Riders who have not moved are left out, so the update is only
+ * as large as the change.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public final class ClassificationUpdate {
+
+    private final ClassificationType type;
+    private final int id;
+    private final List<RankChange> changes;
+
+    /**
+     * The constructor method for this class.
+     *
+     * @param type    The ranking that has changed.
+     * @param id      The ID of the stage, checkpoint or race ranked.
+     * @param changes The riders who have moved, which must not be changed
+     *                afterwards.
+     */
+    ClassificationUpdate(ClassificationType type, int id, List<RankChange> changes) {
+        this.type = type;
+        this.id = id;
+        this.changes = changes;
+    }
+
+    /**
+     * GETTER method for the ranking that has changed.
+     *
+     * @return The type of the ranking.
+     */
+    public ClassificationType getType() {
+        return type;
+    }
+
+    /**
+     * GETTER method for what is ranked: a stage ID for a
+     * {@link ClassificationType#STAGE} ranking, a checkpoint ID for a
+     * {@link ClassificationType#CHECKPOINT} ranking, and a race ID for the
+     * classifications of a race.
+     *
+     * @return The ID of the stage, checkpoint or race.
+     */
+    public int getID() {
+        return id;
+    }
+
+    /**
+     * GETTER method for the riders whose position or value has changed.
+     * The riders still ranked come first, in their new order, followed by
+     * any riders no longer ranked.
+     *
+     * @return An unmodifiable list of the changes, shared by every
+     * listener.
+     */
+    public List<RankChange> getChanges() {
+        return changes;
+    }
+}
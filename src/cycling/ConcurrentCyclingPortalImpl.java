@@ -0,0 +1,612 @@
+package cycling;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ConcurrentCyclingPortalImpl class. This class is a thread-safe
+ * implementation of the CyclingPortal interface, built on top of
+ * CyclingPortalImpl.
+ * <p>
+ * Methods that change the structure of the portal (creating or removing
+ * races, stages, checkpoints, teams and riders, as well as erasing,
+ * saving and loading) take the portal's write lock and run one at a time.
+ * Every other method takes the portal's read lock, so they can run
+ * together. Methods that register, delete or query the results of a stage
+ * or race also take a read-write lock for that race, as the stages of a
+ * race share its general classification. Results can therefore be
+ * registered in the stages of different races in parallel, and any number
+ * of threads can query the classifications of a race at once, only
+ * waiting for writes to that same race.
+ * <p>
+ * The portal brings the rankings and totals of a race up to date as each
+ * result is registered or deleted, so querying them changes nothing and
+ * queries only ever need the race's read lock.
+ * <p>
+ * When a journal is open, results registered in different races at the
+ * same time share a single force of the journal to disk.
+ * <p>
+ * Classification listeners are called while the race's write lock is
+ * held, so the updates for one race arrive one at a time and in order.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+@SuppressWarnings("try")
+public class ConcurrentCyclingPortalImpl extends CyclingPortalImpl {
+
+    private final ReentrantReadWriteLock portalLock = new ReentrantReadWriteLock();
+    private final ConcurrentHashMap<Integer, ReentrantReadWriteLock> raceLocks = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock unknownIdLock = new ReentrantReadWriteLock();
+
+    /**
+     * Held interface. The locks taken by one of the portal's methods,
+     * released when the try-with-resources block around the call to
+     * CyclingPortalImpl ends. The block never refers to the held locks,
+     * which is why the class suppresses javac's "try" lint warning.
+     *
+     * @author Edward Pratt, Alexander Hay
+     * @version 1.0
+     */
+    private interface Held extends AutoCloseable {
+
+        /**
+         * Releases the locks, in the reverse of the order they were taken.
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Takes the portal's read lock.
+     *
+     * @return The lock held, to be released by the caller.
+     */
+    private Held readingPortal() {
+        portalLock.readLock().lock();
+        return portalLock.readLock()::unlock;
+    }
+
+    /**
+     * Takes the portal's write lock. The race locks are discarded when it
+     * is released, as no thread can hold one then, so that the locks of
+     * removed races are not kept.
+     *
+     * @return The lock held, to be released by the caller.
+     */
+    private Held writingPortal() {
+        portalLock.writeLock().lock();
+        return () -> {
+            raceLocks.clear();
+            portalLock.writeLock().unlock();
+        };
+    }
+
+    /**
+     * Takes the portal's read lock and a race's read lock.
+     *
+     * @param raceId The ID of the race.
+     * @return The locks held, to be released by the caller.
+     */
+    private Held readingRace(int raceId) {
+        portalLock.readLock().lock();
+        return readRace(raceId);
+    }
+
+    /**
+     * Takes the portal's read lock and the read lock of the race that a
+     * stage is in, as in {@link #readingRace(int)}.
+     *
+     * @param stageId The ID of the stage.
+     * @return The locks held, to be released by the caller.
+     */
+    private Held readingStage(int stageId) {
+        portalLock.readLock().lock();
+        return readRace(raceOfStage(stageId));
+    }
+
+    /**
+     * Takes the portal's read lock and the read lock of the race that a
+     * checkpoint is in, as in {@link #readingRace(int)}.
+     *
+     * @param checkpointId The ID of the checkpoint.
+     * @return The locks held, to be released by the caller.
+     */
+    private Held readingCheckpoint(int checkpointId) {
+        portalLock.readLock().lock();
+        Checkpoint checkpoint = checkpoints.get(checkpointId);
+        return readRace(checkpoint == null ? -1 : raceOfStage(checkpoint.getStageID()));
+    }
+
+    /**
+     * Takes the portal's read lock and the write lock of the race that a
+     * stage is in.
+     *
+     * @param stageId The ID of the stage.
+     * @return The locks held, to be released by the caller.
+     */
+    private Held writingStage(int stageId) {
+        portalLock.readLock().lock();
+        ReentrantReadWriteLock race = raceLock(raceOfStage(stageId));
+        race.writeLock().lock();
+        return () -> {
+            race.writeLock().unlock();
+            portalLock.readLock().unlock();
+        };
+    }
+
+    /**
+     * Takes a race's read lock while holding the portal's read lock.
+     *
+     * @param raceId The ID of the race.
+     * @return The locks held, to be released by the caller.
+     */
+    private Held readRace(int raceId) {
+        ReentrantReadWriteLock race = raceLock(raceId);
+        race.readLock().lock();
+        return () -> {
+            race.readLock().unlock();
+            portalLock.readLock().unlock();
+        };
+    }
+
+    /**
+     * Gets the lock guarding the results of a race. Must be called while
+     * holding the portal's read lock. An unknown race gets a lock of its
+     * own, so that the call goes on to CyclingPortalImpl, which throws the
+     * exception.
+     *
+     * @param raceId The ID of the race.
+     * @return The lock for the race.
+     */
+    private ReentrantReadWriteLock raceLock(int raceId) {
+        if (!races.containsKey(raceId)) {
+            return unknownIdLock;
+        }
+        return raceLocks.computeIfAbsent(raceId, id -> new ReentrantReadWriteLock());
+    }
+
+    /**
+     * Finds the race that a stage is in. Must be called while holding the
+     * portal's read lock.
+     *
+     * @param stageId The ID of the stage.
+     * @return The ID of the stage's race, or -1 if the stage does not
+     * exist, which {@link #raceLock(int)} treats as an unknown race.
+     */
+    private int raceOfStage(int stageId) {
+        Stage stage = stages.get(stageId);
+        return stage == null ? -1 : stage.getRaceID();
+    }
+
+    @Override
+    public int[] getRaceIds() {
+        try (Held held = readingPortal()) {
+            return super.getRaceIds();
+        }
+    }
+
+    @Override
+    public int createRace(String name, String description) throws IllegalNameException, InvalidNameException {
+        try (Held held = writingPortal()) {
+            return super.createRace(name, description);
+        }
+    }
+
+    @Override
+    public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
+        try (Held held = readingPortal()) {
+            return super.viewRaceDetails(raceId);
+        }
+    }
+
+    @Override
+    public void removeRaceById(int raceId) throws IDNotRecognisedException {
+        try (Held held = writingPortal()) {
+            super.removeRaceById(raceId);
+        }
+    }
+
+    @Override
+    public int getNumberOfStages(int raceId) throws IDNotRecognisedException {
+        try (Held held = readingPortal()) {
+            return super.getNumberOfStages(raceId);
+        }
+    }
+
+    @Override
+    public int addStageToRace(int raceId, String stageName, String description, double length, LocalDateTime startTime, StageType type) throws IDNotRecognisedException, IllegalNameException, InvalidNameException, InvalidLengthException {
+        try (Held held = writingPortal()) {
+            return super.addStageToRace(raceId, stageName, description, length, startTime, type);
+        }
+    }
+
+    @Override
+    public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
+        try (Held held = readingPortal()) {
+            return super.getRaceStages(raceId);
+        }
+    }
+
+    @Override
+    public double getStageLength(int stageId) throws IDNotRecognisedException {
+        try (Held held = readingPortal()) {
+            return super.getStageLength(stageId);
+        }
+    }
+
+    @Override
+    public void removeStageById(int stageId) throws IDNotRecognisedException {
+        try (Held held = writingPortal()) {
+            super.removeStageById(stageId);
+        }
+    }
+
+    @Override
+    public int addCategorizedClimbToStage(int stageId, Double location, CheckpointType type, Double averageGradient, Double length) throws IDNotRecognisedException, InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
+        try (Held held = writingPortal()) {
+            return super.addCategorizedClimbToStage(stageId, location, type, averageGradient, length);
+        }
+    }
+
+    @Override
+    public int addIntermediateSprintToStage(int stageId, double location) throws IDNotRecognisedException, InvalidLocationException, InvalidStageStateException, InvalidStageTypeException {
+        try (Held held = writingPortal()) {
+            return super.addIntermediateSprintToStage(stageId, location);
+        }
+    }
+
+    @Override
+    public void removeCheckpoint(int checkpointId) throws IDNotRecognisedException, InvalidStageStateException {
+        try (Held held = writingPortal()) {
+            super.removeCheckpoint(checkpointId);
+        }
+    }
+
+    @Override
+    public void concludeStagePreparation(int stageId) throws IDNotRecognisedException, InvalidStageStateException {
+        try (Held held = writingPortal()) {
+            super.concludeStagePreparation(stageId);
+        }
+    }
+
+    @Override
+    public int[] getStageCheckpoints(int stageId) throws IDNotRecognisedException {
+        try (Held held = readingPortal()) {
+            return super.getStageCheckpoints(stageId);
+        }
+    }
+
+    @Override
+    public int createTeam(String name, String description) throws IllegalNameException, InvalidNameException {
+        try (Held held = writingPortal()) {
+            return super.createTeam(name, description);
+        }
+    }
+
+    @Override
+    public void removeTeam(int teamId) throws IDNotRecognisedException {
+        try (Held held = writingPortal()) {
+            super.removeTeam(teamId);
+        }
+    }
+
+    @Override
+    public int[] getTeams() {
+        try (Held held = readingPortal()) {
+            return super.getTeams();
+        }
+    }
+
+    @Override
+    public int[] getTeamRiders(int teamId) throws IDNotRecognisedException {
+        try (Held held = readingPortal()) {
+            return super.getTeamRiders(teamId);
+        }
+    }
+
+    @Override
+    public int createRider(int teamID, String name, int yearOfBirth) throws IDNotRecognisedException, IllegalArgumentException {
+        try (Held held = writingPortal()) {
+            return super.createRider(teamID, name, yearOfBirth);
+        }
+    }
+
+    @Override
+    public void removeRider(int riderId) throws IDNotRecognisedException {
+        try (Held held = writingPortal()) {
+            super.removeRider(riderId);
+        }
+    }
+
+    @Override
+    public void registerRiderResultsInStage(int stageId, int riderId, LocalTime... checkpointTimes) throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException, InvalidStageStateException {
+        try (Held held = writingStage(stageId)) {
+            super.registerRiderResultsInStage(stageId, riderId, checkpointTimes);
+        }
+    }
+
+    @Override
+    public boolean registerRiderPassing(int stageId, int riderId, int position, LocalTime time) throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException, InvalidStageStateException {
+        try (Held held = writingStage(stageId)) {
+            return super.registerRiderPassing(stageId, riderId, position, time);
+        }
+    }
+
+    @Override
+    public void registerStageResults(int stageId, Map<Integer, LocalTime[]> results) throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException, InvalidStageStateException {
+        try (Held held = writingStage(stageId)) {
+            super.registerStageResults(stageId, results);
+        }
+    }
+
+    @Override
+    public LocalTime[] getRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        try (Held held = readingStage(stageId)) {
+            return super.getRiderResultsInStage(stageId, riderId);
+        }
+    }
+
+    @Override
+    public LocalTime getRiderAdjustedElapsedTimeInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        try (Held held = readingStage(stageId)) {
+            return super.getRiderAdjustedElapsedTimeInStage(stageId, riderId);
+        }
+    }
+
+    @Override
+    public void deleteRiderResultsInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        try (Held held = writingStage(stageId)) {
+            super.deleteRiderResultsInStage(stageId, riderId);
+        }
+    }
+
+    @Override
+    public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+        try (Held held = readingStage(stageId)) {
+            return super.getRidersRankInStage(stageId);
+        }
+    }
+
+    @Override
+    public int[] getTopRidersInStage(int stageId, int limit) throws IDNotRecognisedException {
+        try (Held held = readingStage(stageId)) {
+            return super.getTopRidersInStage(stageId, limit);
+        }
+    }
+
+    @Override
+    public int getRiderRankInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        try (Held held = readingStage(stageId)) {
+            return super.getRiderRankInStage(stageId, riderId);
+        }
+    }
+
+    @Override
+    public LocalTime getRiderTimeBehindLeaderInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        try (Held held = readingStage(stageId)) {
+            return super.getRiderTimeBehindLeaderInStage(stageId, riderId);
+        }
+    }
+
+    @Override
+    public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
+        try (Held held = readingStage(stageId)) {
+            return super.getRankedAdjustedElapsedTimesInStage(stageId);
+        }
+    }
+
+    @Override
+    public int[] getRidersPointsInStage(int stageId) throws IDNotRecognisedException {
+        try (Held held = readingStage(stageId)) {
+            return super.getRidersPointsInStage(stageId);
+        }
+    }
+
+    @Override
+    public int[] getRidersMountainPointsInStage(int stageId) throws IDNotRecognisedException {
+        try (Held held = readingStage(stageId)) {
+            return super.getRidersMountainPointsInStage(stageId);
+        }
+    }
+
+    @Override
+    public int[] getRidersRankAtCheckpoint(int checkpointId) throws IDNotRecognisedException {
+        try (Held held = readingCheckpoint(checkpointId)) {
+            return super.getRidersRankAtCheckpoint(checkpointId);
+        }
+    }
+
+    @Override
+    public int[] getRidersPointsAtCheckpoint(int checkpointId) throws IDNotRecognisedException {
+        try (Held held = readingCheckpoint(checkpointId)) {
+            return super.getRidersPointsAtCheckpoint(checkpointId);
+        }
+    }
+
+    @Override
+    public void eraseCyclingPortal() {
+        try (Held held = writingPortal()) {
+            super.eraseCyclingPortal();
+        }
+    }
+
+    @Override
+    public void saveCyclingPortal(String filename) throws IOException {
+        try (Held held = writingPortal()) {
+            super.saveCyclingPortal(filename);
+        }
+    }
+
+    @Override
+    public void saveDeltaCyclingPortal(String filename) throws IOException {
+        try (Held held = writingPortal()) {
+            super.saveDeltaCyclingPortal(filename);
+        }
+    }
+
+    @Override
+    public void saveLegacyCyclingPortal(String filename) throws IOException {
+        try (Held held = writingPortal()) {
+            super.saveLegacyCyclingPortal(filename);
+        }
+    }
+
+    @Override
+    public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
+        try (Held held = writingPortal()) {
+            super.loadCyclingPortal(filename);
+        }
+    }
+
+    @Override
+    public void openJournal(String snapshotFile, String journalFile) throws IOException {
+        try (Held held = writingPortal()) {
+            super.openJournal(snapshotFile, journalFile);
+        }
+    }
+
+    @Override
+    public void compactJournal() throws IOException {
+        try (Held held = writingPortal()) {
+            super.compactJournal();
+        }
+    }
+
+    @Override
+    public void closeJournal() throws IOException {
+        try (Held held = writingPortal()) {
+            super.closeJournal();
+        }
+    }
+
+    @Override
+    public void addClassificationListener(ClassificationListener listener) {
+        try (Held held = writingPortal()) {
+            super.addClassificationListener(listener);
+        }
+    }
+
+    @Override
+    public void removeClassificationListener(ClassificationListener listener) {
+        try (Held held = writingPortal()) {
+            super.removeClassificationListener(listener);
+        }
+    }
+
+    @Override
+    public void removeRaceByName(String name) throws NameNotRecognisedException {
+        try (Held held = writingPortal()) {
+            super.removeRaceByName(name);
+        }
+    }
+
+    @Override
+    public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getRidersGeneralClassificationRank(raceId);
+        }
+    }
+
+    @Override
+    public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getGeneralClassificationTimesInRace(raceId);
+        }
+    }
+
+    @Override
+    public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getRidersPointsInRace(raceId);
+        }
+    }
+
+    @Override
+    public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getRidersMountainPointsInRace(raceId);
+        }
+    }
+
+    @Override
+    public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getRidersPointClassificationRank(raceId);
+        }
+    }
+
+    @Override
+    public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getRidersMountainPointClassificationRank(raceId);
+        }
+    }
+
+    @Override
+    public int[] getTopRidersInGeneralClassification(int raceId, int limit) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getTopRidersInGeneralClassification(raceId, limit);
+        }
+    }
+
+    @Override
+    public int[] getTopRidersInPointClassification(int raceId, int limit) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getTopRidersInPointClassification(raceId, limit);
+        }
+    }
+
+    @Override
+    public int[] getTopRidersInMountainPointClassification(int raceId, int limit) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getTopRidersInMountainPointClassification(raceId, limit);
+        }
+    }
+
+    @Override
+    public int getRiderGeneralClassificationRank(int raceId, int riderId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getRiderGeneralClassificationRank(raceId, riderId);
+        }
+    }
+
+    @Override
+    public LocalTime getRiderTimeBehindLeaderInRace(int raceId, int riderId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getRiderTimeBehindLeaderInRace(raceId, riderId);
+        }
+    }
+
+    @Override
+    public int getRiderPointClassificationRank(int raceId, int riderId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getRiderPointClassificationRank(raceId, riderId);
+        }
+    }
+
+    @Override
+    public int getRiderPointsBehindLeaderInRace(int raceId, int riderId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getRiderPointsBehindLeaderInRace(raceId, riderId);
+        }
+    }
+
+    @Override
+    public int getRiderMountainPointClassificationRank(int raceId, int riderId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getRiderMountainPointClassificationRank(raceId, riderId);
+        }
+    }
+
+    @Override
+    public int getRiderMountainPointsBehindLeaderInRace(int raceId, int riderId) throws IDNotRecognisedException {
+        try (Held held = readingRace(raceId)) {
+            return super.getRiderMountainPointsBehindLeaderInRace(raceId, riderId);
+        }
+    }
+}
@@ -1,32 +1,65 @@
 package cycling;
 
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
-import java.time.Duration;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * CyclingPortalImpl class. This class is an implementation of the
  * CyclingPortal interface.
+ * <p>
+ * The calls of a portal can be reported to metrics by wrapping it in a
+ * {@link MeteredCyclingPortal}.
+ * <p>
+ * Instead of polling the rankings, clients can add a
+ * {@link ClassificationListener}, which is told which riders have moved
+ * in a stage, checkpoint or race ranking whenever results change it.
  *
  * @author Edward Pratt, Alexander Hay
  * @version 1.0
  */
 
-public class CyclingPortalImpl implements CyclingPortal {
+public class CyclingPortalImpl implements ExtendedCyclingPortal {
 
     HashMap<Integer, Race> races = new HashMap<>();
     HashMap<Integer, Stage> stages = new HashMap<>();
     HashMap<Integer, Checkpoint> checkpoints = new HashMap<>();
     HashMap<Integer, Rider> riders = new HashMap<>();
     HashMap<Integer, Team> teams = new HashMap<>();
+    IdAllocator raceIdAllocator = new IdAllocator();
+    IdAllocator stageIdAllocator = new IdAllocator();
+    IdAllocator checkpointIdAllocator = new IdAllocator();
+    IdAllocator riderIdAllocator = new IdAllocator();
+    IdAllocator teamIdAllocator = new IdAllocator();
+    HashMap<String, Integer> raceNames = new HashMap<>();
+    HashMap<String, Integer> stageNames = new HashMap<>();
+    HashMap<String, Integer> teamNames = new HashMap<>();
+    HashMap<Integer, GeneralClassification> generalClassifications = new HashMap<>();
+    ConcurrentHashMap<Integer, Set<Integer>> passingStages = new ConcurrentHashMap<>();
+    PortalJournal journal;
+    Path journalSnapshot;
+    Set<Integer> changedRaces = ConcurrentHashMap.newKeySet();
+    Set<Integer> changedStages = ConcurrentHashMap.newKeySet();
+    Set<Integer> changedTeams = ConcurrentHashMap.newKeySet();
+    Set<Integer> changedRiders = ConcurrentHashMap.newKeySet();
+    Set<Integer> removedRaces = ConcurrentHashMap.newKeySet();
+    Set<Integer> removedStages = ConcurrentHashMap.newKeySet();
+    Set<Integer> removedTeams = ConcurrentHashMap.newKeySet();
+    Set<Integer> removedRiders = ConcurrentHashMap.newKeySet();
+    Path deltaBase;
+    int deltaCount;
+    long deltaBaseChecksum = -1;
+    volatile PortalMetrics metrics = PortalMetrics.NONE;
+    final ClassificationNotifier notifier = new ClassificationNotifier();
 
     /**
      * Get the races currently created in the platform.
@@ -64,13 +97,20 @@ public class CyclingPortalImpl implements CyclingPortal {
         } else if (name.contains(" ")) {
             throw new InvalidNameException("Invalid name, the race name cannot contain any white spaces.");
         }
-        for (Race i : races.values()) {
-            if (i.getRaceName().equals(name)) {
-                throw new IllegalNameException("The race name already exists.");
-            }
+        if (raceNames.containsKey(name)) {
+            throw new IllegalNameException("The race name already exists.");
         }
-        Race newRace = new Race(name, description);
+        int raceId = raceIdAllocator.getNextId();
+        journal(PortalJournal.CREATE_RACE, out -> {
+            PortalJournal.writeString(out, name);
+            PortalJournal.writeString(out, description);
+            out.writeInt(raceId);
+        });
+        Race newRace = new Race(raceIdAllocator.next(), name, description);
         races.put(newRace.getRaceID(), newRace);
+        raceNames.put(name, newRace.getRaceID());
+        generalClassifications.put(newRace.getRaceID(), new GeneralClassification());
+        changedRaces.add(newRace.getRaceID());
         return newRace.getRaceID();
     }
 
@@ -91,11 +131,8 @@ public class CyclingPortalImpl implements CyclingPortal {
     public String viewRaceDetails(int raceId) throws IDNotRecognisedException {
         int totalLength = 0;
         if (races.containsKey(raceId)) {
-
-            for (Stage stage : stages.values()) {
-                if (stage.getRaceID() == raceId) {
-                    totalLength += stage.getLength();
-                }
+            for (int stageId : races.get(raceId).getStageIDs()) {
+                totalLength += stages.get(stageId).getLength();
             }
             return ("ID:" + raceId + " Name:" + races.get(raceId).getRaceName() + " Description:" + races.get(raceId).getRaceDescription() + " Number of Stages:" + getNumberOfStages(raceId) + " Total Length:" + totalLength);
         } else {
@@ -117,20 +154,55 @@ public class CyclingPortalImpl implements CyclingPortal {
     @Override
     public void removeRaceById(int raceId) throws IDNotRecognisedException {
         if (races.containsKey(raceId)) {
-            races.remove(raceId);
-            for (Stage stage : stages.values()) {
-                if (stage.getRaceID() == raceId) {
-                    for (int checkpointId : stage.getCheckpointIDs()) {
-                        checkpoints.remove(checkpointId);
-                    }
-                    stages.remove(stage.getStageID());
-                }
-            }
+            journal(PortalJournal.REMOVE_RACE, out -> out.writeInt(raceId));
+            deleteRace(raceId);
         } else {
             throw new IDNotRecognisedException("Race ID does not exist.");
         }
     }
 
+    /**
+     * Removes a race that is known to exist, along with its stages,
+     * checkpoints and name index entries. Only the stages listed by
+     * the race are visited.
+     *
+     * @param raceId The ID of the race being removed.
+     */
+    void deleteRace(int raceId) {
+        Race race = races.remove(raceId);
+        removedRaces.add(raceId);
+        raceNames.remove(race.getRaceName());
+        for (int riderId : race.getRiderIDs()) {
+            riders.get(riderId).deleteRace(raceId);
+        }
+        for (int stageId : race.getStageIDs()) {
+            deleteStage(stages.get(stageId));
+        }
+        generalClassifications.remove(raceId);
+        notifier.forget(ClassificationType.GENERAL, raceId);
+        notifier.forget(ClassificationType.POINTS, raceId);
+        notifier.forget(ClassificationType.MOUNTAIN_POINTS, raceId);
+    }
+
+    /**
+     * Removes a stage that is known to exist, along with its checkpoints
+     * and the results of the riders who took part in it. Only the
+     * checkpoints listed by the stage and the riders with a result in
+     * the stage are visited.
+     *
+     * @param stage The stage being removed.
+     */
+    void deleteStage(Stage stage) {
+        for (int checkpointId : stage.getCheckpointIDs()) {
+            checkpoints.remove(checkpointId);
+            notifier.forget(ClassificationType.CHECKPOINT, checkpointId);
+        }
+        notifier.forget(ClassificationType.STAGE, stage.getStageID());
+        stageNames.remove(stage.getStageName());
+        stages.remove(stage.getStageID());
+        generalClassifications.get(stage.getRaceID()).removeStage(stage.getStageID());
+    }
+
     /**
      * The method queries the number of stages created for a race.
      * <p>
@@ -179,10 +251,8 @@ public class CyclingPortalImpl implements CyclingPortal {
         if (!races.containsKey(raceId)) {
             throw new IDNotRecognisedException("Race ID does not exist.");
         }
-        for (Stage i : stages.values()) {
-            if (i.getStageName().equals(stageName)) {
-                throw new IllegalNameException("The name of the stage already exists.");
-            }
+        if (stageNames.containsKey(stageName)) {
+            throw new IllegalNameException("The name of the stage already exists.");
         }
         if (stageName == null) {
             throw new InvalidNameException("Invalid name, the stage name cannot be null.");
@@ -196,11 +266,23 @@ public class CyclingPortalImpl implements CyclingPortal {
         if (length < 5) {
             throw new InvalidLengthException("The length of the stage cannot be less than 5km.");
         }
-        Stage newStage = new Stage(raceId, stageName, description, length, startTime, type);
+        int stageId = stageIdAllocator.getNextId();
+        journal(PortalJournal.ADD_STAGE, out -> {
+            out.writeInt(raceId);
+            PortalJournal.writeString(out, stageName);
+            PortalJournal.writeString(out, description);
+            out.writeDouble(length);
+            PortalJournal.writeDateTime(out, startTime);
+            PortalJournal.writeEnum(out, type);
+            out.writeInt(stageId);
+        });
+        Stage newStage = new Stage(stageIdAllocator.next(), raceId, stageName, description, length, startTime, type);
         Race race = races.get(raceId);
         race.addStage(newStage.getStageID());
         races.put(race.getRaceID(), race);
         stages.put(newStage.getStageID(), newStage);
+        stageNames.put(stageName, newStage.getStageID());
+        markChanged(newStage);
         return newStage.getStageID();
     }
 
@@ -261,19 +343,14 @@ public class CyclingPortalImpl implements CyclingPortal {
     public void removeStageById(int stageId) throws IDNotRecognisedException {
         if (stages.containsKey(stageId)) {
             int raceId = stages.get(stageId).getRaceID();
+            journal(PortalJournal.REMOVE_STAGE, out -> out.writeInt(stageId));
             races.get(raceId).deleteStage(stageId);
-            races.remove(stageId);
-            for (Rider rider : riders.values()) {
-                for (int checkpointId : stages.get(stageId).getCheckpointIDs()) {
-                    rider.deleteCheckpointTimes(checkpointId);
-                    rider.deleteCheckpointResults(checkpointId);
-                }
-                rider.deleteStageResults(stageId);
+            deleteStage(stages.get(stageId));
+            removedStages.add(stageId);
+            changedRaces.add(raceId);
+            if (notifier.hasListeners()) {
+                publishRace(raceId, false);
             }
-            for (int checkpointId : stages.get(stageId).getCheckpointIDs()) {
-                checkpoints.remove(checkpointId);
-            }
-            stages.remove(stageId);
         } else {
             throw new IDNotRecognisedException("Stage ID does not exist.");
         }
@@ -316,11 +393,21 @@ public class CyclingPortalImpl implements CyclingPortal {
         } else if (stages.get(stageId).getStageType().toString().equals("TT")) {
             throw new InvalidStageTypeException("Cannot add checkpoint to Time Trial.");
         }
-        Checkpoint newCheckpoint = new Checkpoint(stageId, location, type, length, averageGradient);
+        int checkpointId = checkpointIdAllocator.getNextId();
+        journal(PortalJournal.ADD_CLIMB, out -> {
+            out.writeInt(stageId);
+            PortalJournal.writeDouble(out, location);
+            PortalJournal.writeEnum(out, type);
+            PortalJournal.writeDouble(out, averageGradient);
+            PortalJournal.writeDouble(out, length);
+            out.writeInt(checkpointId);
+        });
+        Checkpoint newCheckpoint = new Checkpoint(checkpointIdAllocator.next(), stageId, location, type, length, averageGradient);
         Stage stage = stages.get(stageId);
         stage.addCheckpointID(newCheckpoint.getCheckpointID());
         checkpoints.put(newCheckpoint.getCheckpointID(), newCheckpoint);
         stages.put(stage.getStageID(), stage);
+        markChanged(stage);
         return newCheckpoint.getCheckpointID();
     }
 
@@ -356,11 +443,18 @@ public class CyclingPortalImpl implements CyclingPortal {
         } else if (stages.get(stageId).getStageType().toString().equals("TT")) {
             throw new InvalidStageTypeException("Cannot add checkpoint to Time Trial.");
         }
-        Checkpoint newCheckpoint = new Checkpoint(stageId, location);
+        int checkpointId = checkpointIdAllocator.getNextId();
+        journal(PortalJournal.ADD_SPRINT, out -> {
+            out.writeInt(stageId);
+            out.writeDouble(location);
+            out.writeInt(checkpointId);
+        });
+        Checkpoint newCheckpoint = new Checkpoint(checkpointIdAllocator.next(), stageId, location);
         Stage stage = stages.get(stageId);
         stage.addCheckpointID(newCheckpoint.getCheckpointID());
         checkpoints.put(newCheckpoint.getCheckpointID(), newCheckpoint);
         stages.put(stage.getStageID(), stage);
+        markChanged(stage);
         return newCheckpoint.getCheckpointID();
     }
 
@@ -385,12 +479,11 @@ public class CyclingPortalImpl implements CyclingPortal {
         if (stages.get(stage.getStageID()).getState().equals("waiting for results")) {
             throw new InvalidStageStateException("Cannot remove checkpoint when stage is 'waiting for results'.");
         }
+        journal(PortalJournal.REMOVE_CHECKPOINT, out -> out.writeInt(checkpointId));
         stage.deleteCheckpointID(checkpointId);
         stages.put(stage.getStageID(), stage);
-        for (Rider rider : riders.values()) {
-            rider.deleteCheckpointResults(checkpointId);
-        }
         checkpoints.remove(checkpointId);
+        markChanged(stage);
     }
 
     /**
@@ -412,9 +505,11 @@ public class CyclingPortalImpl implements CyclingPortal {
         } else if (stages.get(stageId).getState().equals("waiting for results")) {
             throw new InvalidStageStateException("The stage has already been set to 'waiting for results'.");
         }
+        journal(PortalJournal.CONCLUDE_STAGE, out -> out.writeInt(stageId));
         Stage stage = stages.get(stageId);
         stage.setState("waiting for results");
         stages.put(stage.getStageID(), stage);
+        markChanged(stage);
     }
 
     /**
@@ -463,13 +558,19 @@ public class CyclingPortalImpl implements CyclingPortal {
         } else if (name.contains(" ")) {
             throw new InvalidNameException("Invalid name, the team name cannot contain any white spaces.");
         }
-        for (Team i : teams.values()) {
-            if (i.getTeamName().equals(name)) {
-                throw new IllegalNameException("The name of the team already exists.");
-            }
+        if (teamNames.containsKey(name)) {
+            throw new IllegalNameException("The name of the team already exists.");
         }
-        Team newTeam = new Team(name, description);
+        int teamId = teamIdAllocator.getNextId();
+        journal(PortalJournal.CREATE_TEAM, out -> {
+            PortalJournal.writeString(out, name);
+            PortalJournal.writeString(out, description);
+            out.writeInt(teamId);
+        });
+        Team newTeam = new Team(teamIdAllocator.next(), name, description);
         teams.put(newTeam.getTeamID(), newTeam);
+        teamNames.put(name, newTeam.getTeamID());
+        changedTeams.add(newTeam.getTeamID());
         return newTeam.getTeamID();
     }
 
@@ -486,17 +587,29 @@ public class CyclingPortalImpl implements CyclingPortal {
     @Override
     public void removeTeam(int teamId) throws IDNotRecognisedException {
         if (teams.containsKey(teamId)) {
-            teams.remove(teamId);
-            for (Rider rider : riders.values()) {
-                if (rider.getTeamID() == teamId) {
-                    removeRider(rider.getRiderID());
-                }
-            }
+            int[] raceIds = racesEntered(teams.get(teamId).getRiders());
+            journal(PortalJournal.REMOVE_TEAM, out -> out.writeInt(teamId));
+            deleteTeam(teamId);
+            publishRaces(raceIds);
         } else {
             throw new IDNotRecognisedException("Team ID does not exist.");
         }
     }
 
+    /**
+     * Removes a team that is known to exist, along with its riders and
+     * all of their results.
+     *
+     * @param teamId The ID of the team being removed.
+     */
+    void deleteTeam(int teamId) {
+        for (int riderId : teams.get(teamId).getRiders()) {
+            deleteRider(riderId);
+        }
+        teamNames.remove(teams.remove(teamId).getTeamName());
+        removedTeams.add(teamId);
+    }
+
     /**
      * Get the list of teams' IDs in the system.
      * <p>
@@ -558,9 +671,17 @@ public class CyclingPortalImpl implements CyclingPortal {
         } else if (yearOfBirth < 1900) {
             throw new IllegalArgumentException("Invalid year of birth, the birth year of the rider cannot be less than 1900.");
         }
-        Rider newRider = new Rider(teamID, name, yearOfBirth);
+        int riderId = riderIdAllocator.getNextId();
+        journal(PortalJournal.CREATE_RIDER, out -> {
+            out.writeInt(teamID);
+            PortalJournal.writeString(out, name);
+            out.writeInt(yearOfBirth);
+            out.writeInt(riderId);
+        });
+        Rider newRider = new Rider(riderIdAllocator.next(), teamID, name, yearOfBirth);
         riders.put(newRider.getRiderID(), newRider);
         teams.get(teamID).addRider(newRider.getRiderID());
+        changedRiders.add(newRider.getRiderID());
         return newRider.getRiderID();
     }
 
@@ -578,24 +699,50 @@ public class CyclingPortalImpl implements CyclingPortal {
     @Override
     public void removeRider(int riderId) throws IDNotRecognisedException {
         if (riders.containsKey(riderId)) {
-            int teamId = riders.get(riderId).getTeamID();
-            teams.get(teamId).deleteRider(riderId);
-            for (Race race : races.values()) {
-                race.deleteRider(riderId);
-            }
-            for (Stage stage : stages.values()) {
-                stage.deleteCompletionTime(riderId);
-                stage.deleteAdjustedTime(riderId);
-            }
-            for (Checkpoint checkpoint : checkpoints.values()) {
-                checkpoint.deleteCompletionTime(riderId);
-            }
-            riders.remove(riderId);
+            int[] raceIds = racesEntered(riderId);
+            journal(PortalJournal.REMOVE_RIDER, out -> out.writeInt(riderId));
+            deleteRider(riderId);
+            publishRaces(raceIds);
         } else {
             throw new IDNotRecognisedException("Rider ID does not exist.");
         }
     }
 
+    /**
+     * Removes a rider that is known to exist, along with all of their
+     * results and passings. Only the stages of the rider's races, and the
+     * stages they have passed points of, are visited.
+     *
+     * @param riderId The ID of the rider being removed.
+     */
+    void deleteRider(int riderId) {
+        Rider rider = riders.get(riderId);
+        teams.get(rider.getTeamID()).deleteRider(riderId);
+        for (int raceId : rider.getRaceIDs()) {
+            races.get(raceId).deleteRider(riderId);
+            generalClassifications.get(raceId).removeRider(riderId);
+        }
+        for (int raceId : rider.getRaceIDs()) {
+            for (int stageId : races.get(raceId).getStageIDs()) {
+                Stage stage = stages.get(stageId);
+                if (stage.hasRiderResults(riderId)) {
+                    stage.deleteRiderResults(riderId);
+                    updateStageResults(stage);
+                }
+            }
+        }
+        Set<Integer> riderPassingStages = passingStages.remove(riderId);
+        if (riderPassingStages != null) {
+            for (int stageId : riderPassingStages) {
+                if (stages.containsKey(stageId)) {
+                    stages.get(stageId).discardPassings(riderId);
+                }
+            }
+        }
+        riders.remove(riderId);
+        removedRiders.add(riderId);
+    }
+
     /**
      * Record the times of a rider in a stage.
      * <p>
@@ -627,28 +774,196 @@ public class CyclingPortalImpl implements CyclingPortal {
             throw new IDNotRecognisedException("Stage ID does not exist.");
         } else if (!riders.containsKey(riderId)) {
             throw new IDNotRecognisedException("Rider ID does not exist.");
-        } else if (riders.get(riderId).hasStageResults(stageId)) {
+        } else if (stages.get(stageId).hasRiderResults(riderId)) {
             throw new DuplicatedResultException("The rider already has results for this stage.");
         } else if (checkpointTimes.length != (stages.get(stageId).getCheckpointIDs().length + 2)) {
             throw new InvalidCheckpointTimesException("The number of checkpoint times does not equal 2 more than the total number of checkpoints within the stage.");
         } else if (!stages.get(stageId).getState().equals("waiting for results")) {
             throw new InvalidStageStateException("Cannot add results to the stage when it is not in the 'waiting for results' state.");
         }
-        Rider currentRider = riders.get(riderId);
-        int raceId = stages.get(stageId).getRaceID();
-        List<Integer> currentAssociatedRiders = Arrays.stream(races.get(raceId).getRiderIDs()).boxed().collect(Collectors.toList());
-
-        if(!currentAssociatedRiders.contains(riderId)) {
-            races.get(raceId).addRider(riderId);}
-        currentRider.addCheckpointTimes(stageId, checkpointTimes);
-        stages.get(stageId).addCompletionTime(riderId, checkpointTimes[checkpointTimes.length - 1]);
-        for (int checkpointId : stages.get(stageId).getCheckpointIDs()) {
-            for (LocalTime checkpointTime : checkpointTimes) {
-                checkpoints.get(checkpointId).addCompletionTime(riderId, checkpointTime);
+        journal(PortalJournal.REGISTER_RESULTS, out -> {
+            out.writeInt(stageId);
+            out.writeInt(riderId);
+            PortalJournal.writeTimes(out, checkpointTimes);
+        });
+        addStageTimes(stages.get(stageId), riders.get(riderId), checkpointTimes);
+        int[] changedRiders = updateStageResults(stages.get(stageId));
+        markChanged(stages.get(stageId));
+        publishResults(stages.get(stageId), changedRiders);
+    }
+
+    /**
+     * Record the times of many riders in a stage at once, for example from
+     * the finish file of a whole stage.
+     * <p>
+     * Every result is validated before any of them is recorded, so either
+     * all the results are registered or, if any exception is thrown, none
+     * of them are and the state of this portal is unchanged. The stage's
+     * rankings, points and classifications are worked out once for the
+     * whole batch rather than once per rider.
+     *
+     * @param stageId The ID of the stage the results refer to.
+     * @param results The checkpoint times of each rider, by rider ID. Each
+     *                array holds the times at which the rider reached each
+     *                of the checkpoints of the stage, including the start
+     *                time and the finish line.
+     * @throws IDNotRecognisedException        If the ID does not match to any rider or
+     *                                         stage in the system.
+     * @throws DuplicatedResultException       Thrown if any of the riders already has
+     *                                         a result for the stage.
+     * @throws InvalidCheckpointTimesException Thrown if the length of any of the
+     *                                         arrays of times is not equal to n+2,
+     *                                         where n is the number of checkpoints in
+     *                                         the stage.
+     * @throws InvalidStageStateException      Thrown if the stage is not "waiting for
+     *                                         results".
+     */
+    @Override
+    public void registerStageResults(int stageId, Map<Integer, LocalTime[]> results) throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException, InvalidStageStateException {
+        Stage stage = stages.get(stageId);
+        if (stage == null) {
+            throw new IDNotRecognisedException("Stage ID does not exist.");
+        } else if (!stage.getState().equals("waiting for results")) {
+            throw new InvalidStageStateException("Cannot add results to the stage when it is not in the 'waiting for results' state.");
+        }
+        int expectedTimes = stage.getCheckpointIDs().length + 2;
+        for (Map.Entry<Integer, LocalTime[]> result : results.entrySet()) {
+            Rider rider = riders.get(result.getKey());
+            if (rider == null) {
+                throw new IDNotRecognisedException("Rider ID does not exist.");
+            } else if (stage.hasRiderResults(result.getKey())) {
+                throw new DuplicatedResultException("The rider already has results for this stage.");
+            } else if (result.getValue() == null || result.getValue().length != expectedTimes) {
+                throw new InvalidCheckpointTimesException("The number of checkpoint times does not equal 2 more than the total number of checkpoints within the stage.");
             }
         }
-        stages.get(stageId).addCompletionTime(riderId, currentRider.calculateRidersTotalElapsedTime(stageId));
-        riders.put(currentRider.getRiderID(), currentRider);
+        if (results.isEmpty()) {
+            return;
+        }
+        journal(PortalJournal.REGISTER_STAGE_RESULTS, out -> {
+            out.writeInt(stageId);
+            out.writeInt(results.size());
+            for (Map.Entry<Integer, LocalTime[]> result : results.entrySet()) {
+                out.writeInt(result.getKey());
+                PortalJournal.writeTimes(out, result.getValue());
+            }
+        });
+        if (results.size() > stage.getResults().size()) {
+            stage.getResults().invalidate();
+        }
+        for (Map.Entry<Integer, LocalTime[]> result : results.entrySet()) {
+            addStageTimes(stage, riders.get(result.getKey()), result.getValue());
+        }
+        int[] changedRiders = updateStageResults(stage);
+        markChanged(stage);
+        publishResults(stage, changedRiders);
+    }
+
+    /**
+     * Record a rider passing one point of a stage as it happens, instead of
+     * registering all of their times at once when they have finished. The
+     * points of a stage are numbered as the times given to
+     * {@link #registerRiderResultsInStage(int, int, LocalTime...)} are: 0 for
+     * the start time, 1 to n for the n checkpoints of the stage in order,
+     * and n+1 for the finish line.
+     * <p>
+     * A rider passing a checkpoint is put in their place at the checkpoint
+     * straight away, see {@link #getRidersRankAtCheckpoint(int)}. Once the
+     * rider has passed every point of the stage, in any order, their times
+     * are registered as their result in the stage, exactly as if they had
+     * been given to registerRiderResultsInStage, and the stage's rankings,
+     * points and classifications are brought up to date.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param stageId  The ID of the stage being raced.
+     * @param riderId  The ID of the rider.
+     * @param position The point of the stage the rider has passed.
+     * @param time     The time at which the rider passed the point.
+     * @return true if the rider has now passed every point of the stage and
+     * their result has been registered.
+     * @throws IDNotRecognisedException        If the ID does not match to any rider or
+     *                                         stage in the system.
+     * @throws DuplicatedResultException       Thrown if the rider already has a result
+     *                                         for the stage, or has already passed
+     *                                         the point.
+     * @throws InvalidCheckpointTimesException Thrown if the position is not between
+     *                                         0 and n+1, where n is the number of
+     *                                         checkpoints in the stage.
+     * @throws InvalidStageStateException      Thrown if the stage is not "waiting for
+     *                                         results".
+     */
+    @Override
+    public boolean registerRiderPassing(int stageId, int riderId, int position, LocalTime time) throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException, InvalidStageStateException {
+        if (!stages.containsKey(stageId)) {
+            throw new IDNotRecognisedException("Stage ID does not exist.");
+        } else if (!riders.containsKey(riderId)) {
+            throw new IDNotRecognisedException("Rider ID does not exist.");
+        } else if (stages.get(stageId).hasRiderResults(riderId)) {
+            throw new DuplicatedResultException("The rider already has results for this stage.");
+        } else if (position < 0 || position > stages.get(stageId).getCheckpointIDs().length + 1) {
+            throw new InvalidCheckpointTimesException("The position is not between the start and the finish line of the stage.");
+        } else if (!stages.get(stageId).getState().equals("waiting for results")) {
+            throw new InvalidStageStateException("Cannot add results to the stage when it is not in the 'waiting for results' state.");
+        } else if (stages.get(stageId).hasRiderPassed(riderId, position)) {
+            throw new DuplicatedResultException("The rider has already passed this point of the stage.");
+        }
+        journal(PortalJournal.REGISTER_PASSING, out -> {
+            out.writeInt(stageId);
+            out.writeInt(riderId);
+            out.writeInt(position);
+            out.writeLong(time.toNanoOfDay());
+        });
+        Stage stage = stages.get(stageId);
+        long[] riderTimes = stage.recordPassing(riderId, position, time.toNanoOfDay());
+        passingStages.computeIfAbsent(riderId, id -> ConcurrentHashMap.newKeySet()).add(stageId);
+        int[] changedRiders = null;
+        if (riderTimes != null) {
+            addStageTimes(stage, riders.get(riderId), riderTimes);
+            changedRiders = updateStageResults(stage);
+        }
+        markChanged(stage);
+        if (riderTimes != null) {
+            publishResults(stage, changedRiders);
+        } else if (notifier.hasListeners() && position >= 1 && position <= stage.getCheckpointIDs().length) {
+            publish(ClassificationType.CHECKPOINT, stage.getCheckpointIDs()[position - 1],
+                    stage.getRidersRankAtCheckpoint(position - 1), stage.getTimesAtCheckpoint(position - 1), false);
+        }
+        return riderTimes != null;
+    }
+
+    /**
+     * Records a rider's already validated times in a stage's results,
+     * entering the rider into the stage's race if this is their first
+     * result in it.
+     *
+     * @param stage           The stage the times are recorded in.
+     * @param rider           The rider whose times are recorded.
+     * @param checkpointTimes The rider's times, from the start time to the
+     *                        finish line.
+     */
+    void addStageTimes(Stage stage, Rider rider, LocalTime[] checkpointTimes) {
+        addStageTimes(stage, rider, Times.toNanos(checkpointTimes));
+    }
+
+    /**
+     * Records a rider's already validated times in a stage, given in
+     * nanoseconds of the day, in the same way as
+     * {@link #addStageTimes(Stage, Rider, LocalTime[])}.
+     *
+     * @param stage           The stage the times are recorded in.
+     * @param rider           The rider whose times are recorded.
+     * @param checkpointTimes The rider's times, from the start time to the
+     *                        finish line.
+     */
+    void addStageTimes(Stage stage, Rider rider, long[] checkpointTimes) {
+        int raceId = stage.getRaceID();
+        if (rider.addRace(raceId)) {
+            races.get(raceId).addRider(rider.getRiderID());
+            generalClassifications.get(raceId).addRider(rider.getRiderID());
+        }
+        stage.addRiderResults(rider.getRiderID(), checkpointTimes);
     }
 
     /**
@@ -676,21 +991,15 @@ public class CyclingPortalImpl implements CyclingPortal {
         } else if (!riders.containsKey(riderId)) {
             throw new IDNotRecognisedException("Rider ID does not exist.");
         }
-        Rider currentRider = riders.get(riderId);
-        if (currentRider.getCheckpointTimes(stageId) == null) {
+        long[] checkpointTimes = stages.get(stageId).getRiderTimes(riderId);
+        if (checkpointTimes == null) {
             return new LocalTime[0];
         }
-        LocalTime[] riderTimes = new LocalTime[currentRider.getCheckpointTimes(stageId).length + 1];
-        int i = 0;
-        for (LocalTime time : currentRider.getCheckpointTimes(stageId)) {
-            riderTimes[i] = time;
-            i += 1;
-        }
-        riderTimes[i] = currentRider.calculateRidersTotalElapsedTime(stageId);
-        Duration elapsed = (Duration.between(riderTimes[0], riderTimes[riderTimes.length - 2]));
-        LocalTime elapsedTotal = LocalTime.of(0, 0, 0);
-        elapsedTotal = elapsedTotal.plus(elapsed);
-        riderTimes[i] = elapsedTotal;
+        LocalTime[] riderTimes = new LocalTime[checkpointTimes.length + 1];
+        for (int i = 0; i < checkpointTimes.length; i++) {
+            riderTimes[i] = Times.toLocalTime(checkpointTimes[i]);
+        }
+        riderTimes[checkpointTimes.length] = Times.toLocalTime(checkpointTimes[checkpointTimes.length - 1] - checkpointTimes[0]);
         return riderTimes;
     }
 
@@ -723,13 +1032,7 @@ public class CyclingPortalImpl implements CyclingPortal {
         } else if (!riders.containsKey(riderId)) {
             throw new IDNotRecognisedException("Rider ID does not exist.");
         }
-        Stage currentStage = stages.get(stageId);
-        if (!currentStage.getStageType().toString().equals("TT")) {
-            currentStage.calculateRidersAdjustedTime(riderId);
-
-            return currentStage.getRiderAdjustedTimes(riderId);
-        }
-        return null;
+        return stages.get(stageId).getRiderAdjustedTimes(riderId);
     }
 
     /**
@@ -751,14 +1054,71 @@ public class CyclingPortalImpl implements CyclingPortal {
         if (!riders.containsKey(riderId)) {
             throw new IDNotRecognisedException("Rider ID does not exist.");
         }
-        Rider rider = riders.get(riderId);
+        journal(PortalJournal.DELETE_RESULTS, out -> {
+            out.writeInt(stageId);
+            out.writeInt(riderId);
+        });
+        Stage stage = stages.get(stageId);
+        boolean hadResult = stage.hasRiderResults(riderId);
+        stage.deleteRiderResults(riderId);
+        int[] changedRiders = updateStageResults(stage);
+        if (changedRiders != null && !hadResult) {
+            // A rider still out on the stage loses their passings instead.
+            changedRiders = Arrays.copyOf(changedRiders, changedRiders.length + 1);
+            changedRiders[changedRiders.length - 1] = riderId;
+        }
+        markChanged(stage);
+        publishResults(stage, changedRiders);
+    }
 
-        for (int checkpointId : stages.get(stageId).getCheckpointIDs()) {
+    /**
+     * Records that a stage's results have changed. The adjusted times of
+     * the riders bunched with the changed results and the points of the
+     * riders they moved in the scoring positions have already been
+     * brought up to date by the stage's results, so only those riders'
+     * totals in the race are moved. If the stage's adjusted times and
+     * points are not being kept up to date, as after loading or a large
+     * batch of results, they are all worked out in one pass instead.
+     * Either way, reading the results afterwards changes nothing.
+     *
+     * @param stage The stage whose results have changed.
+     * @return The IDs of the riders whose results, adjusted times or
+     * points in the stage have changed, or null if they were all worked
+     * out in one pass.
+     */
+    private int[] updateStageResults(Stage stage) {
+        GeneralClassification generalClassification = generalClassifications.get(stage.getRaceID());
+        StageResults results = stage.getResults();
+        if (results.isAdjusted() && results.isScored()) {
+            int[] changedRiders = results.takeChangedRiders();
+            generalClassification.updateRiders(stage.getStageID(), results, changedRiders);
+            return changedRiders;
+        }
+        stage.updateAdjustedTimes();
+        scoreStage(stage);
+        generalClassification.updateStage(stage.getStageID(), results);
+        return null;
+    }
 
-            rider.deleteCheckpointResults(checkpointId);
+    /**
+     * Awards the points of a stage and of its climbs to every rider with
+     * a result in the stage, based on their current ranks, unless they
+     * have been awarded and kept up to date since. Riders outside the
+     * scoring positions are given zero points.
+     *
+     * @param stage The stage being scored.
+     */
+    private void scoreStage(Stage stage) {
+        if (stage.getResults().isScored()) {
+            return;
+        }
+        int[] checkpointIds = stage.getCheckpointIDs();
+        int[][] checkpointPoints = new int[checkpointIds.length][];
+        for (int i = 0; i < checkpointIds.length; i++) {
+            Checkpoint checkpoint = checkpoints.get(checkpointIds[i]);
+            checkpointPoints[i] = checkpoint.isClimb() ? checkpoint.getPoints() : null;
         }
-        rider.deleteCheckpointTimes(stageId);
-        rider.deleteStageResults(stageId);
+        stage.scoreResults(checkpointPoints);
     }
 
     /**
@@ -782,6 +1142,85 @@ public class CyclingPortalImpl implements CyclingPortal {
         return currentStage.calculateRidersRankInStage();
     }
 
+    /**
+     * Get the leading riders in a stage, for leaderboards that only show
+     * the first few. The riders are in the same order as
+     * {@link #getRidersRankInStage(int)}, read from the start of the
+     * stage's finishing order, which is kept in order as results arrive,
+     * so a top ten of a large field costs far less than the whole
+     * ranking.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param stageId The ID of the stage being queried.
+     * @param limit   The maximum number of riders returned.
+     * @return The IDs of at most limit riders, winner first.
+     * @throws IDNotRecognisedException If the ID does not match any stage in the
+     *                                  system.
+     * @throws IllegalArgumentException If the limit is negative.
+     */
+    @Override
+    public int[] getTopRidersInStage(int stageId, int limit) throws IDNotRecognisedException {
+        if (!stages.containsKey(stageId)) {
+            throw new IDNotRecognisedException("Stage ID does not exist.");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit cannot be negative.");
+        }
+        return stages.get(stageId).getTopRiders(limit);
+    }
+
+    /**
+     * Get a rider's position in a stage, matching their place in
+     * {@link #getRidersRankInStage(int)}. The position is found in
+     * O(log n) time from an order-statistic tree of the elapsed times,
+     * without fetching and searching the whole ranking.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param stageId The ID of the stage being queried.
+     * @param riderId The ID of the rider.
+     * @return The rider's position, starting from 1, or -1 if there is no
+     * result registered for the rider in the stage.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  stage in the system.
+     */
+    @Override
+    public int getRiderRankInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        if (!stages.containsKey(stageId)) {
+            throw new IDNotRecognisedException("Stage ID does not exist.");
+        } else if (!riders.containsKey(riderId)) {
+            throw new IDNotRecognisedException("Rider ID does not exist.");
+        }
+        return stages.get(stageId).getRiderRank(riderId);
+    }
+
+    /**
+     * Get how far a rider's adjusted elapsed time in a stage is behind
+     * the stage winner's.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param stageId The ID of the stage being queried.
+     * @param riderId The ID of the rider.
+     * @return The gap to the winner. Return null if there is no result
+     * registered for the rider in the stage.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  stage in the system.
+     */
+    @Override
+    public LocalTime getRiderTimeBehindLeaderInStage(int stageId, int riderId) throws IDNotRecognisedException {
+        if (!stages.containsKey(stageId)) {
+            throw new IDNotRecognisedException("Stage ID does not exist.");
+        } else if (!riders.containsKey(riderId)) {
+            throw new IDNotRecognisedException("Rider ID does not exist.");
+        }
+        return stages.get(stageId).getRiderTimeBehindLeader(riderId);
+    }
+
     /**
      * Get the adjusted elapsed times of riders in a stage.
      * <p>
@@ -801,17 +1240,11 @@ public class CyclingPortalImpl implements CyclingPortal {
      */
     @Override
     public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
-
         if (!stages.containsKey(stageId)) {
             throw new IDNotRecognisedException("Stage ID does not exist.");
         }
 
-        Stage currentStage = stages.get(stageId);
-        int raceId = currentStage.getRaceID();
-        for (int riderId : races.get(raceId).getRiderIDs()) {
-            currentStage.addAdjustedTime(riderId, currentStage.calculateRidersAdjustedTime(riderId));
-        }
-        return currentStage.getRankedAdjustedElapsedTimesInStage();
+        return stages.get(stageId).getRankedAdjustedElapsedTimesInStage();
     }
 
     /**
@@ -833,31 +1266,7 @@ public class CyclingPortalImpl implements CyclingPortal {
         if (!stages.containsKey(stageId)) {
             throw new IDNotRecognisedException("Stage ID does not exist.");
         }
-        Stage currentStage = stages.get(stageId);
-        int[] sortedRiderIds = currentStage.calculateRidersRankInStage();
-        switch (currentStage.getStageType()) {
-            case FLAT:
-                for (int i = 0; i < sortedRiderIds.length && i < currentStage.getFlatStagePoints().length; i++) {
-                    riders.get(sortedRiderIds[i]).addStageResults(stageId, currentStage.getFlatStagePoints()[i]);
-                }
-                break;
-            case MEDIUM_MOUNTAIN:
-                for (int i = 0; i < sortedRiderIds.length && i < currentStage.getMediumMountainStagePoints().length; i++) {
-                    riders.get(sortedRiderIds[i]).addStageResults(stageId, currentStage.getMediumMountainStagePoints()[i]);
-                }
-                break;
-            case HIGH_MOUNTAIN:
-            case TT:
-                for (int i = 0; i < sortedRiderIds.length && i < currentStage.getHighMountainAndTTStagePoints().length; i++) {
-                    riders.get(sortedRiderIds[i]).addStageResults(stageId, currentStage.getHighMountainAndTTStagePoints()[i]);
-                }
-                break;
-        }
-        int[] ridersPoints = new int[sortedRiderIds.length];
-        for (int i = 0; i < sortedRiderIds.length; i++) {
-            ridersPoints[i] = riders.get(sortedRiderIds[i]).getStageResults(stageId);
-        }
-        return ridersPoints;
+        return stages.get(stageId).getRankedPoints();
     }
 
     /**
@@ -879,52 +1288,81 @@ public class CyclingPortalImpl implements CyclingPortal {
         if (!stages.containsKey(stageId)) {
             throw new IDNotRecognisedException("Stage ID does not exist.");
         }
-        Stage currentStage = stages.get(stageId);
-        int[] sortedStageRiderIds = currentStage.calculateRidersRankInStage();
-        for (int checkpointId : currentStage.getCheckpointIDs()) {
-            Checkpoint currentCheckpoint = checkpoints.get(checkpointId);
-            if (currentCheckpoint.getType() == null) {
-                continue;
-            }
-            int[] sortedCheckpointRiderIds = currentCheckpoint.calculateRidersRankInCheckpoints();
-            switch (currentCheckpoint.getType()) {
-                case SPRINT:
-                    for (int i = 0; i < sortedCheckpointRiderIds.length && i < currentCheckpoint.getIntermediateSprintPoints().length; i++) {
-                        riders.get(sortedCheckpointRiderIds[i]).addCheckpointResults(checkpointId, currentCheckpoint.getIntermediateSprintPoints()[i]);
-                    }
-                    break;
-                case HC:
-                    for (int i = 0; i < sortedCheckpointRiderIds.length && i < currentCheckpoint.getMountainClimbHCPoints().length; i++) {
-                        riders.get(sortedCheckpointRiderIds[i]).addCheckpointResults(checkpointId, currentCheckpoint.getMountainClimbHCPoints()[i]);
-                    }
-                    break;
-                case C1:
-                    for (int i = 0; i < sortedCheckpointRiderIds.length && i < currentCheckpoint.getMountainClimbC1Points().length; i++) {
-                        riders.get(sortedCheckpointRiderIds[i]).addCheckpointResults(checkpointId, currentCheckpoint.getMountainClimbC1Points()[i]);
-                    }
-                    break;
-                case C2:
-                    for (int i = 0; i < sortedCheckpointRiderIds.length && i < currentCheckpoint.getMountainClimbC2Points().length; i++) {
-                        riders.get(sortedCheckpointRiderIds[i]).addCheckpointResults(checkpointId, currentCheckpoint.getMountainClimbC2Points()[i]);
-                    }
-                    break;
-                case C3:
-                    for (int i = 0; i < sortedCheckpointRiderIds.length && i < currentCheckpoint.getMountainClimbC3Points().length; i++) {
-                        riders.get(sortedCheckpointRiderIds[i]).addCheckpointResults(checkpointId, currentCheckpoint.getMountainClimbC3Points()[i]);
-                    }
-                    break;
-                case C4:
-                    for (int i = 0; i < sortedCheckpointRiderIds.length && i < currentCheckpoint.getMountainClimbC4Points().length; i++) {
-                        riders.get(sortedCheckpointRiderIds[i]).addCheckpointResults(checkpointId, currentCheckpoint.getMountainClimbC4Points()[i]);
-                    }
-                    break;
-            }
+        return stages.get(stageId).getRankedMountainPoints();
+    }
+
+    /**
+     * Get the riders who have passed a checkpoint so far, in the order they
+     * passed it. This includes the riders still out on the stage, whose
+     * passings have been recorded with
+     * {@link #registerRiderPassing(int, int, int, LocalTime)}, as well as
+     * the riders with a result in the stage. Each passing is put in its
+     * place as it is recorded, so the ranking is never sorted again.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param checkpointId The ID of the checkpoint being queried.
+     * @return The IDs of the riders who have passed the checkpoint, earliest
+     * first. An empty list if no rider has passed it yet.
+     * @throws IDNotRecognisedException If the ID does not match any checkpoint
+     *                                  in the system.
+     */
+    @Override
+    public int[] getRidersRankAtCheckpoint(int checkpointId) throws IDNotRecognisedException {
+        if (!checkpoints.containsKey(checkpointId)) {
+            throw new IDNotRecognisedException("Checkpoint ID does not exist.");
+        }
+        Stage stage = stages.get(checkpoints.get(checkpointId).getStageID());
+        return stage.getRidersRankAtCheckpoint(checkpointPosition(stage, checkpointId));
+    }
+
+    /**
+     * Get the points each rider has earned at a checkpoint so far, by the
+     * order they passed it: the points of an intermediate sprint, or the
+     * mountain points of a categorised climb. A rider's points can change
+     * while the stage is being raced, as riders still out on the stage can
+     * pass the checkpoint in a faster time.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param checkpointId The ID of the checkpoint being queried.
+     * @return The points of each rider who has passed the checkpoint. These
+     * points match the riders returned by
+     * {@link #getRidersRankAtCheckpoint(int)}.
+     * @throws IDNotRecognisedException If the ID does not match any checkpoint
+     *                                  in the system.
+     */
+    @Override
+    public int[] getRidersPointsAtCheckpoint(int checkpointId) throws IDNotRecognisedException {
+        if (!checkpoints.containsKey(checkpointId)) {
+            throw new IDNotRecognisedException("Checkpoint ID does not exist.");
+        }
+        Checkpoint checkpoint = checkpoints.get(checkpointId);
+        Stage stage = stages.get(checkpoint.getStageID());
+        int[] checkpointPoints = checkpoint.getPoints();
+        int[] riderPoints = new int[stage.getRidersRankAtCheckpoint(checkpointPosition(stage, checkpointId)).length];
+        for (int i = 0; i < riderPoints.length && i < checkpointPoints.length; i++) {
+            riderPoints[i] = checkpointPoints[i];
         }
-        int[] ridersMountainPoints = new int[sortedStageRiderIds.length];
-        for (int i = 0; i < sortedStageRiderIds.length; i++) {
-            ridersMountainPoints[i] = riders.get(sortedStageRiderIds[i]).calculateRidersTotalMountainPoints();
+        return riderPoints;
+    }
+
+    /**
+     * Finds where a checkpoint comes in its stage.
+     *
+     * @param stage        The stage the checkpoint is in.
+     * @param checkpointId The ID of the checkpoint.
+     * @return The position of the checkpoint in the stage, starting from 0.
+     */
+    private int checkpointPosition(Stage stage, int checkpointId) {
+        int[] checkpointIds = stage.getCheckpointIDs();
+        int position = 0;
+        while (checkpointIds[position] != checkpointId) {
+            position++;
         }
-        return ridersMountainPoints;
+        return position;
     }
 
     /**
@@ -933,22 +1371,35 @@ public class CyclingPortalImpl implements CyclingPortal {
      */
     @Override
     public void eraseCyclingPortal() {
-        Race.atomicReset();
+        journal(PortalJournal.ERASE, out -> {
+        });
+        raceIdAllocator.reset();
         races.clear();
-        Stage.atomicReset();
+        stageIdAllocator.reset();
         stages.clear();
-        Checkpoint.atomicReset();
+        checkpointIdAllocator.reset();
         checkpoints.clear();
-        Rider.atomicReset();
+        riderIdAllocator.reset();
         riders.clear();
-        Team.atomicReset();
+        teamIdAllocator.reset();
         teams.clear();
+        raceNames.clear();
+        stageNames.clear();
+        teamNames.clear();
+        generalClassifications.clear();
+        passingStages.clear();
+        clearChanges();
+        deltaBase = null;
+        notifier.forgetAll();
     }
 
     /**
      * Method saves this MiniCyclingPortal contents into a serialised file,
      * with the filename given in the argument.
      * <p>
+     * The contents are written as a compact binary snapshot, see
+     * {@link PortalSnapshot}.
+     * <p>
      * The state of this MiniCyclingPortal must be unchanged if any
      * exceptions are thrown.
      *
@@ -958,12 +1409,107 @@ public class CyclingPortalImpl implements CyclingPortal {
      */
     @Override
     public void saveCyclingPortal(String filename) throws IOException {
+        writeSnapshot(Paths.get(filename), 0);
+    }
+
+    /**
+     * Method saves only the changes made to this MiniCyclingPortal since it
+     * was last saved to or loaded from the file given in the argument, as
+     * the next delta on top of that snapshot. See {@link PortalDelta}.
+     * <p>
+     * If the portal was last saved to or loaded from another file, or has
+     * been erased since, there is nothing to save the changes on top of,
+     * so the whole portal is saved as with saveCyclingPortal.
+     * <p>
+     * The state of this MiniCyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param filename Location of the snapshot the changes are saved on top
+     *                 of.
+     * @throws IOException If there is a problem experienced when trying to save the
+     *                     store contents to the file.
+     */
+    public void saveDeltaCyclingPortal(String filename) throws IOException {
+        Path path = Paths.get(filename);
+        if (!path.equals(deltaBase) || !Files.exists(path)) {
+            saveCyclingPortal(filename);
+            return;
+        }
+        if (deltaBaseChecksum < 0) {
+            deltaBaseChecksum = PortalSnapshot.checksum(path);
+        }
+        PortalDelta.deleteChain(path, deltaCount + 2);
+        PortalDelta.write(this, path, deltaCount + 1, deltaBaseChecksum);
+        deltaCount++;
+        clearChanges();
+    }
+
+    /**
+     * Writes a full snapshot of this portal, deleting the deltas saved on
+     * top of any earlier snapshot in the same place, and starts tracking
+     * changes from it.
+     *
+     * @param path              Location of the snapshot.
+     * @param journalGeneration The generation of the journal that continues
+     *                          from the snapshot.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    private void writeSnapshot(Path path, long journalGeneration) throws IOException {
+        long checksum = PortalSnapshot.write(this, path, journalGeneration);
+        PortalDelta.deleteChain(path, 1);
+        deltaBase = path;
+        deltaCount = 0;
+        deltaBaseChecksum = checksum;
+        clearChanges();
+    }
+
+    /**
+     * Marks a stage, and with it the stage's race, as changed since the
+     * portal was last saved.
+     *
+     * @param stage The stage that has changed.
+     */
+    private void markChanged(Stage stage) {
+        changedStages.add(stage.getStageID());
+        changedRaces.add(stage.getRaceID());
+    }
+
+    /**
+     * Forgets the changes made since the portal was last saved, once they
+     * have been saved or the portal has been replaced.
+     */
+    void clearChanges() {
+        changedRaces.clear();
+        changedStages.clear();
+        changedTeams.clear();
+        changedRiders.clear();
+        removedRaces.clear();
+        removedStages.clear();
+        removedTeams.clear();
+        removedRiders.clear();
+    }
+
+    /**
+     * Method saves this MiniCyclingPortal contents using Java serialisation
+     * of the current classes, along with the ID allocators. Only needed to
+     * hand a portal to tools that cannot read snapshots yet.
+     *
+     * @param filename Location of the file to be saved.
+     * @throws IOException If there is a problem experienced when trying to save the
+     *                     store contents to the file.
+     */
+    public void saveLegacyCyclingPortal(String filename) throws IOException {
         ArrayList<Object> objList = new ArrayList<>();
         objList.add(this.races);
         objList.add(this.stages);
         objList.add(this.checkpoints);
         objList.add(this.riders);
         objList.add(this.teams);
+        objList.add(this.raceIdAllocator);
+        objList.add(this.stageIdAllocator);
+        objList.add(this.checkpointIdAllocator);
+        objList.add(this.riderIdAllocator);
+        objList.add(this.teamIdAllocator);
         try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filename))) {
 
             out.writeObject(objList);
@@ -977,6 +1523,11 @@ public class CyclingPortalImpl implements CyclingPortal {
      * Method should load and replace this MiniCyclingPortal contents with the
      * serialised contents stored in the file given in the argument.
      * <p>
+     * Both binary snapshots and files saved with Java serialisation, by
+     * the original portal or by saveLegacyCyclingPortal, can be loaded
+     * (see {@link LegacyPortalFile}). Any deltas saved on top of a snapshot
+     * with saveDeltaCyclingPortal are applied to it.
+     * <p>
      * The state of this MiniCyclingPortal must be unchanged if any
      * exceptions are thrown.
      *
@@ -988,76 +1539,448 @@ public class CyclingPortalImpl implements CyclingPortal {
      */
     @Override
     public void loadCyclingPortal(String filename) throws IOException, ClassNotFoundException {
-        ArrayList<Object> objList;
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filename))) {
-            objList = (ArrayList<Object>) in.readObject();
-            this.races = (HashMap<Integer, Race>) objList.get(0);
-            this.stages = (HashMap<Integer, Stage>) objList.get(1);
-            this.checkpoints = (HashMap<Integer, Checkpoint>) objList.get(2);
-            this.riders = (HashMap<Integer, Rider>) objList.get(3);
-            this.teams = (HashMap<Integer, Team>) objList.get(4);
-        } catch (IOException ex) {
-            throw new IOException("File not recognised.");
+        Path path = Paths.get(filename);
+        if (PortalSnapshot.isSnapshot(path)) {
+            adopt(PortalDelta.readChain(path));
+            compactOpenJournal();
+            return;
         }
+        adopt(LegacyPortalFile.read(filename));
+        compactOpenJournal();
     }
 
     /**
-     * The method removes the race and all its related information, i.e., stages,
-     * checkpoints, and results.
+     * Starts recording every change to this portal in a write-ahead
+     * journal, so that the portal can be recovered after a crash. See
+     * {@link PortalJournal}.
      * <p>
-     * The state of this CyclingPortal must be unchanged if any
-     * exceptions are thrown.
+     * The contents of this portal are replaced by the snapshot, or erased
+     * if there is no snapshot yet, and then any changes recorded in the
+     * journal since the snapshot was written are replayed. From then on,
+     * each call that changes the portal only returns once the change is
+     * on disk.
      *
-     * @param name The name of the race to be removed.
-     * @throws NameNotRecognisedException If the name does not match to any race in
-     *                                    the system.
+     * @param snapshotFile Location of the snapshot the journal continues
+     *                     from. It is rewritten by {@link #compactJournal()}.
+     * @param journalFile  Location of the journal.
+     * @throws IOException If the snapshot or journal cannot be read, or the
+     *                     journal does not match the snapshot.
+     */
+    public void openJournal(String snapshotFile, String journalFile) throws IOException {
+        closeJournal();
+        Path snapshot = Paths.get(snapshotFile);
+        long generation = 0;
+        if (Files.exists(snapshot)) {
+            adopt(PortalSnapshot.read(snapshot));
+            generation = PortalSnapshot.readJournalGeneration(snapshot);
+        } else {
+            eraseCyclingPortal();
+        }
+        journal = PortalJournal.recover(Paths.get(journalFile), generation, this);
+        journalSnapshot = snapshot;
+    }
+
+    /**
+     * SETTER method for the metrics this portal reports to. Gauges are
+     * registered for the number of races, stages, checkpoints, teams and
+     * riders in the portal, and any exception thrown by a classification
+     * listener is reported. The calls themselves are reported by a
+     * {@link MeteredCyclingPortal}, which sets its metrics here.
+     *
+     * @param metrics The metrics to report to, or null to stop reporting.
+     */
+    public void setMetrics(PortalMetrics metrics) {
+        PortalMetrics newMetrics = metrics == null ? PortalMetrics.NONE : metrics;
+        newMetrics.registerGauge("races", () -> races.size());
+        newMetrics.registerGauge("stages", () -> stages.size());
+        newMetrics.registerGauge("checkpoints", () -> checkpoints.size());
+        newMetrics.registerGauge("teams", () -> teams.size());
+        newMetrics.registerGauge("riders", () -> riders.size());
+        this.metrics = newMetrics;
+    }
+
+    /**
+     * GETTER method for the metrics this portal reports to.
+     *
+     * @return The metrics, which are {@link PortalMetrics#NONE} unless
+     * others have been set.
+     */
+    public PortalMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Adds a listener to be told whenever results change a ranking: the
+     * finishing order of a stage, the passing order of a checkpoint, or
+     * the general, points or mountain classification of a race. Each
+     * change is worked out once and the same update is given to every
+     * listener, see {@link ClassificationListener}.
+     * <p>
+     * Only changes made after the listener is added are reported. Loading
+     * or erasing the portal is not reported as a change; the rankings are
+     * simply taken as they are afterwards.
+     *
+     * @param listener The listener to be added.
+     * @throws IllegalArgumentException If the listener is null.
      */
     @Override
-    public void removeRaceByName(String name) throws NameNotRecognisedException {
-        ArrayList<Race> allRaces = new ArrayList<>(races.values());
-        boolean nameExists = false;
-        for (Race allRace : allRaces) {
-            if (allRace.getRaceName().equals(name)) {
-                nameExists = true;
-                races.remove(allRace.getRaceID());
-            }
-            if (!nameExists) {
-                throw new NameNotRecognisedException("Race name does not exist.");
+    public void addClassificationListener(ClassificationListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("The listener cannot be null.");
+        }
+        if (notifier.addListener(listener)) {
+            rememberRankings();
+        }
+    }
+
+    /**
+     * Removes a listener added with
+     * {@link #addClassificationListener(ClassificationListener)}. Does
+     * nothing if the listener was not added. Once the last listener has
+     * been removed, the rankings are no longer worked out after each change.
+     *
+     * @param listener The listener to be removed.
+     */
+    @Override
+    public void removeClassificationListener(ClassificationListener listener) {
+        notifier.removeListener(listener);
+    }
+
+    /**
+     * Tells the listeners, if there are any, how a change to a stage's
+     * results has moved the riders in the stage, its checkpoints and its
+     * race's classifications. If the riders whose results changed are
+     * known, only they are looked up in the rankings, and the riders
+     * between them are moved along in the rankings last published, see
+     * {@link ClassificationNotifier#publishMoved}. Otherwise every ranking
+     * is read in full and compared with the one last published.
+     *
+     * @param stage         The stage whose results have changed.
+     * @param changedRiders The IDs of the riders whose results, adjusted
+     *                      times or points in the stage have changed, or
+     *                      null if they are not known.
+     */
+    private void publishResults(Stage stage, int[] changedRiders) {
+        if (!notifier.hasListeners()) {
+            return;
+        }
+        if (changedRiders == null) {
+            publishStage(stage, false);
+            publishRace(stage.getRaceID(), false);
+            return;
+        }
+        StageResults results = stage.getResults();
+        notifier.publishMoved(ClassificationType.STAGE, stage.getStageID(), changedRiders, results::positionOf,
+                riderId -> results.adjustedTimeAt(results.rowOf(riderId)), metrics);
+        int[] checkpointIds = stage.getCheckpointIDs();
+        for (int i = 0; i < checkpointIds.length; i++) {
+            int checkpoint = i;
+            notifier.publishMoved(ClassificationType.CHECKPOINT, checkpointIds[i], changedRiders,
+                    riderId -> stage.getRiderRankAtCheckpoint(checkpoint, riderId),
+                    riderId -> stage.getRiderTimeAtCheckpoint(checkpoint, riderId), metrics);
+        }
+        GeneralClassification generalClassification = generalClassifications.get(stage.getRaceID());
+        notifier.publishMoved(ClassificationType.GENERAL, stage.getRaceID(), changedRiders,
+                generalClassification::getRiderRank, generalClassification::getRiderTotalTime, metrics);
+        notifier.publishMoved(ClassificationType.POINTS, stage.getRaceID(), changedRiders,
+                generalClassification::getRiderPointsRank, generalClassification::getRiderTotalPoints, metrics);
+        notifier.publishMoved(ClassificationType.MOUNTAIN_POINTS, stage.getRaceID(), changedRiders,
+                generalClassification::getRiderMountainPointsRank, generalClassification::getRiderTotalMountainPoints, metrics);
+    }
+
+    /**
+     * Gathers the races that any of the given riders are entered in, so
+     * that the rankings they were part of can be published once they have
+     * been removed. Nothing is gathered if there are no listeners.
+     *
+     * @param riderIds The IDs of the riders about to be removed.
+     * @return The IDs of the races, without repeats, or an empty array if
+     * there are no listeners.
+     */
+    private int[] racesEntered(int... riderIds) {
+        if (!notifier.hasListeners()) {
+            return new int[0];
+        }
+        IntIntMap raceIds = new IntIntMap();
+        for (int riderId : riderIds) {
+            for (int raceId : riders.get(riderId).getRaceIDs()) {
+                raceIds.put(raceId, raceId);
             }
         }
+        return raceIds.keys();
     }
 
     /**
-     * The method sorts a HashMap based on the rider's total adjusted
-     * race times.
-     * <p>
-     * This is unrelated to the original MiniCyclingPortal and
-     * CyclingPortal methods.
+     * Tells the listeners, if there are any, how the rankings of some
+     * races and of all of their stages have changed. This is used after
+     * removing riders, which changes the rankings of every stage of the
+     * races they were entered in and of no other.
      *
-     * @param raceId The ID of the race being queried.
-     * @return A sorted hashmap of all the rider IDs and their respective total race times
-     * from all the races, with the first in the list being the winner (least time).
-     */
-    private LinkedHashMap<Integer, LocalTime> getRiderTotalAdjustedTimeSorted(int raceId) {
-        HashMap<Integer, LocalTime> riderTotalAdjustedTime = new HashMap<>();
-        int[] raceStages = races.get(raceId).getStageIDs();
-        int[] ridersInRace = races.get(raceId).getRiderIDs();
-
-        for (int riderId : ridersInRace) {
-            riderTotalAdjustedTime.put(riderId, LocalTime.of(0, 0, 0));
-        }
-        for (int stage : raceStages) {
-            for (int rider : ridersInRace) {
-                LocalTime stageTime = stages.get(stage).getRiderAdjustedTimes(rider);
-                if (stageTime == null){
-                    continue;
+     * @param raceIds The IDs of the races whose rankings may have changed.
+     */
+    private void publishRaces(int[] raceIds) {
+        if (notifier.hasListeners()) {
+            for (int raceId : raceIds) {
+                for (int stageId : races.get(raceId).getStageIDs()) {
+                    publishStage(stages.get(stageId), false);
                 }
-                riderTotalAdjustedTime.put(rider, riderTotalAdjustedTime.get(rider).plusHours(stageTime.getHour()).plusMinutes(stageTime.getMinute()).plusSeconds(stageTime.getSecond()));
+                publishRace(raceId, false);
+            }
+        }
+    }
+
+    /**
+     * Remembers every ranking in the portal as it is now, without telling
+     * the listeners, so that later changes are reported against it.
+     */
+    private void rememberRankings() {
+        notifier.forgetAll();
+        if (notifier.hasListeners()) {
+            for (Stage stage : stages.values()) {
+                publishStage(stage, true);
+            }
+            for (int raceId : races.keySet()) {
+                publishRace(raceId, true);
             }
         }
-        LinkedHashMap<Integer, LocalTime> sortedMap = new LinkedHashMap<>();
-        riderTotalAdjustedTime.entrySet().stream().sorted(Map.Entry.comparingByValue()).forEachOrdered(x -> sortedMap.put(x.getKey(), x.getValue()));
-        return sortedMap;
+    }
+
+    /**
+     * Publishes the finishing order of a stage and the passing order of
+     * each of its checkpoints.
+     *
+     * @param stage   The stage being ranked.
+     * @param quietly Whether to remember the rankings without telling the
+     *                listeners.
+     */
+    private void publishStage(Stage stage, boolean quietly) {
+        StageResults results = stage.getResults();
+        int[] order = results.rankedRows();
+        int[] riderIds = new int[order.length];
+        long[] adjustedTimes = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            riderIds[i] = results.riderAt(order[i]);
+            adjustedTimes[i] = results.adjustedTimeAt(order[i]);
+        }
+        publish(ClassificationType.STAGE, stage.getStageID(), riderIds, adjustedTimes, quietly);
+        int[] checkpointIds = stage.getCheckpointIDs();
+        for (int i = 0; i < checkpointIds.length; i++) {
+            publish(ClassificationType.CHECKPOINT, checkpointIds[i], stage.getRidersRankAtCheckpoint(i), stage.getTimesAtCheckpoint(i), quietly);
+        }
+    }
+
+    /**
+     * Publishes the general, points and mountain classifications of a
+     * race.
+     *
+     * @param raceId  The ID of the race being ranked.
+     * @param quietly Whether to remember the rankings without telling the
+     *                listeners.
+     */
+    private void publishRace(int raceId, boolean quietly) {
+        GeneralClassification generalClassification = generalClassifications.get(raceId);
+        publish(ClassificationType.GENERAL, raceId, generalClassification.getRankedRiderIDs(), generalClassification.getRankedNanos(), quietly);
+        publish(ClassificationType.POINTS, raceId, generalClassification.getPointsRankedRiderIDs(),
+                generalClassification.getRankedPoints(), quietly);
+        publish(ClassificationType.MOUNTAIN_POINTS, raceId, generalClassification.getMountainPointsRankedRiderIDs(),
+                generalClassification.getRankedMountainPoints(), quietly);
+    }
+
+    /**
+     * Publishes one ranking, or remembers it without telling the
+     * listeners.
+     *
+     * @param type     The kind of ranking.
+     * @param id       The ID of the stage, checkpoint or race ranked.
+     * @param riderIds The riders in order.
+     * @param values   The time or points of each rider.
+     * @param quietly  Whether to remember the ranking without telling the
+     *                 listeners.
+     */
+    private void publish(ClassificationType type, int id, int[] riderIds, long[] values, boolean quietly) {
+        if (quietly) {
+            notifier.remember(type, id, riderIds, values);
+        } else {
+            notifier.publish(type, id, riderIds, values, metrics);
+        }
+    }
+
+    /**
+     * Writes the whole portal to the journal's snapshot and empties the
+     * journal, so that recovery does not have to replay every change
+     * since the journal was opened.
+     *
+     * @throws IOException           If the snapshot or journal cannot be written.
+     * @throws IllegalStateException If no journal is open.
+     */
+    public void compactJournal() throws IOException {
+        if (journal == null) {
+            throw new IllegalStateException("No journal is open.");
+        }
+        long generation = journal.getGeneration() + 1;
+        writeSnapshot(journalSnapshot, generation);
+        journal.restart(generation);
+    }
+
+    /**
+     * Stops recording changes to this portal. Changes already made are on
+     * disk and are recovered the next time the journal is opened.
+     *
+     * @throws IOException If the journal cannot be closed.
+     */
+    public void closeJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+            journalSnapshot = null;
+        }
+    }
+
+    /**
+     * GETTER method for the journal changes to this portal are recorded
+     * in.
+     *
+     * @return The journal, or null if no journal is open.
+     */
+    public PortalJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Compacts the journal, if one is open, after the whole portal has been
+     * replaced by loading a file.
+     *
+     * @throws IOException If the snapshot or journal cannot be written.
+     */
+    private void compactOpenJournal() throws IOException {
+        if (journal != null) {
+            compactJournal();
+        }
+    }
+
+    /**
+     * Records a change about to be made to this portal in the journal, if
+     * one is open, and waits until the record is on disk. Every change is
+     * checked before it is journalled and only made once this returns, so
+     * if the journal cannot be written the portal is left unchanged.
+     *
+     * @param operation The call that made the change.
+     * @param payload   Writes the arguments of the call.
+     * @throws UncheckedIOException If the journal cannot be written.
+     */
+    private void journal(byte operation, PortalJournal.Payload payload) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.commit(journal.append(operation, payload));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Journal could not be written.", e);
+        }
+    }
+
+    /**
+     * Replaces the contents of this portal with those of another, such as
+     * a portal that has just been read from a snapshot.
+     *
+     * @param loaded The portal whose contents are taken over.
+     */
+    private void adopt(CyclingPortalImpl loaded) {
+        races = loaded.races;
+        stages = loaded.stages;
+        checkpoints = loaded.checkpoints;
+        riders = loaded.riders;
+        teams = loaded.teams;
+        raceIdAllocator = loaded.raceIdAllocator;
+        stageIdAllocator = loaded.stageIdAllocator;
+        checkpointIdAllocator = loaded.checkpointIdAllocator;
+        riderIdAllocator = loaded.riderIdAllocator;
+        teamIdAllocator = loaded.teamIdAllocator;
+        raceNames = loaded.raceNames;
+        stageNames = loaded.stageNames;
+        teamNames = loaded.teamNames;
+        generalClassifications = loaded.generalClassifications;
+        passingStages = loaded.passingStages;
+        clearChanges();
+        deltaBase = loaded.deltaBase;
+        deltaCount = loaded.deltaCount;
+        deltaBaseChecksum = loaded.deltaBaseChecksum;
+        rememberRankings();
+    }
+
+    /**
+     * Restores the ID allocators of a portal saved without them, so that
+     * no ID already in use is allocated again.
+     */
+    void restoreIdAllocators() {
+        raceIdAllocator = new IdAllocator();
+        races.keySet().forEach(raceIdAllocator::advancePast);
+        stageIdAllocator = new IdAllocator();
+        stages.keySet().forEach(stageIdAllocator::advancePast);
+        checkpointIdAllocator = new IdAllocator();
+        checkpoints.keySet().forEach(checkpointIdAllocator::advancePast);
+        riderIdAllocator = new IdAllocator();
+        riders.keySet().forEach(riderIdAllocator::advancePast);
+        teamIdAllocator = new IdAllocator();
+        teams.keySet().forEach(teamIdAllocator::advancePast);
+    }
+
+    /**
+     * Rebuilds the name indexes, the stages each rider has passings in and
+     * the general classifications from the entity HashMaps. These are not serialised, so this is called after
+     * the portal has been loaded.
+     */
+    void rebuildIndexes() {
+        raceNames.clear();
+        for (Race race : races.values()) {
+            raceNames.put(race.getRaceName(), race.getRaceID());
+        }
+        stageNames.clear();
+        for (Stage stage : stages.values()) {
+            stageNames.put(stage.getStageName(), stage.getStageID());
+        }
+        teamNames.clear();
+        for (Team team : teams.values()) {
+            teamNames.put(team.getTeamName(), team.getTeamID());
+        }
+        generalClassifications.clear();
+        for (Race race : races.values()) {
+            GeneralClassification generalClassification = new GeneralClassification();
+            for (int riderId : race.getRiderIDs()) {
+                generalClassification.addRider(riderId);
+            }
+            generalClassifications.put(race.getRaceID(), generalClassification);
+        }
+        passingStages.clear();
+        for (Stage stage : stages.values()) {
+            stage.getResults().invalidate();
+            stage.prepareResults();
+            updateStageResults(stage);
+            for (int riderId : stage.getRidersOnStage()) {
+                passingStages.computeIfAbsent(riderId, id -> ConcurrentHashMap.newKeySet()).add(stage.getStageID());
+            }
+        }
+    }
+
+    /**
+     * The method removes the race and all its related information, i.e., stages,
+     * checkpoints, and results.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param name The name of the race to be removed.
+     * @throws NameNotRecognisedException If the name does not match to any race in
+     *                                    the system.
+     */
+    @Override
+    public void removeRaceByName(String name) throws NameNotRecognisedException {
+        Integer raceId = raceNames.get(name);
+        if (raceId == null) {
+            throw new NameNotRecognisedException("Race name does not exist.");
+        }
+        journal(PortalJournal.REMOVE_RACE_BY_NAME, out -> PortalJournal.writeString(out, name));
+        deleteRace(raceId);
     }
 
     /**
@@ -1079,8 +2002,7 @@ public class CyclingPortalImpl implements CyclingPortal {
         if (!races.containsKey(raceId)) {
             throw new IDNotRecognisedException("Race ID does not exist.");
         } else {
-            LinkedHashMap<Integer, LocalTime> riderSortedTimes = getRiderTotalAdjustedTimeSorted(raceId);
-            return riderSortedTimes.keySet().stream().mapToInt(i -> i).toArray();
+            return generalClassifications.get(raceId).getRankedRiderIDs();
         }
     }
 
@@ -1107,7 +2029,7 @@ public class CyclingPortalImpl implements CyclingPortal {
         if (!races.containsKey(raceId)) {
             throw new IDNotRecognisedException("Race ID does not exist.");
         } else {
-            return getRiderTotalAdjustedTimeSorted(raceId).values().toArray(LocalTime[]::new);
+            return generalClassifications.get(raceId).getRankedTimes();
         }
     }
 
@@ -1129,35 +2051,8 @@ public class CyclingPortalImpl implements CyclingPortal {
     public int[] getRidersPointsInRace(int raceId) throws IDNotRecognisedException {
         if (!races.containsKey(raceId)) {
             throw new IDNotRecognisedException("Race ID does not exist.");
-        } else {
-            int[] ridersInRace = races.get(raceId).getRiderIDs();
-            int[] raceStages = races.get(raceId).getStageIDs();
-            LinkedHashMap<Integer, LocalTime> riderSortedTimes = getRiderTotalAdjustedTimeSorted(raceId);
-            LinkedHashMap<Integer, Integer> riderPoints = new LinkedHashMap<>();
-            for (int rider : ridersInRace) {
-                riderPoints.put(rider, 0);
-            }
-            for (int stage : raceStages) {
-                int[] riderRanks = getRidersRankInStage(stage);
-                int[] updatedRidersPoints = getRidersPointsInStage(stage);
-                LinkedHashMap<Integer, Integer> ranksAndPoints = new LinkedHashMap<>();
-                for (int i = 0; i < riderRanks.length; i++) {
-                    ranksAndPoints.put(riderRanks[i], updatedRidersPoints[i]);
-                }
-                for (int rider : riderSortedTimes.keySet()) {
-                    if(ranksAndPoints.get(rider) == null){
-                        continue;
-                    }
-                    riderPoints.put(rider, riderPoints.get(rider) + ranksAndPoints.get(rider));
-                }
-            }
-            int[] riderGeneralRank = getRidersGeneralClassificationRank(raceId);
-            ArrayList<Integer> riderPointsRank = new ArrayList<>();
-            for (int riderRank : riderGeneralRank){
-                riderPointsRank.add(riderPoints.get(riderRank));
-            }
-            return riderPointsRank.stream().mapToInt(i -> i).toArray();
         }
+        return generalClassifications.get(raceId).getRidersPoints();
     }
 
     /**
@@ -1179,37 +2074,8 @@ public class CyclingPortalImpl implements CyclingPortal {
     public int[] getRidersMountainPointsInRace(int raceId) throws IDNotRecognisedException {
         if (!races.containsKey(raceId)) {
             throw new IDNotRecognisedException("Race ID does not exist.");
-        } else {
-            int[] ridersInRace = races.get(raceId).getRiderIDs();
-            int[] raceStages = races.get(raceId).getStageIDs();
-            LinkedHashMap<Integer, LocalTime> riderSortedTimes = getRiderTotalAdjustedTimeSorted(raceId);
-            LinkedHashMap<Integer, Integer> riderPoints = new LinkedHashMap<>();
-            for (int rider : ridersInRace) {
-                riderPoints.put(rider, 0);
-            }
-            for (int stage : raceStages) {
-                int[] updatedRiderPoints = getRidersMountainPointsInStage(stage);
-                int[] riderRanks = getRidersRankInStage(stage);
-                HashMap<Integer,Integer> ranksAndPoints = new HashMap<>();
-                for (int i = 0; i < riderRanks.length; i++) {
-                    ranksAndPoints.put(riderRanks[i], updatedRiderPoints[i]);
-                }
-
-                for (int rider : riderSortedTimes.keySet()) {
-                    if(ranksAndPoints.get(rider) == null){
-                        continue;
-                    }
-                    riderPoints.put(rider, riderPoints.get(rider) + ranksAndPoints.get(rider));
-
-                }
-            }
-            int[] riderGeneralRank = getRidersGeneralClassificationRank(raceId);
-            ArrayList<Integer> riderPointsRank = new ArrayList<>();
-            for (int riderRank : riderGeneralRank){
-                riderPointsRank.add(riderPoints.get(riderRank));
-            }
-            return riderPointsRank.stream().mapToInt(i -> i).toArray();
         }
+        return generalClassifications.get(raceId).getRidersMountainPoints();
     }
 
     /**
@@ -1230,33 +2096,8 @@ public class CyclingPortalImpl implements CyclingPortal {
     public int[] getRidersPointClassificationRank(int raceId) throws IDNotRecognisedException {
         if (!races.containsKey(raceId)) {
             throw new IDNotRecognisedException("Race ID does not exist.");
-        } else {
-            int[] ridersInRace = races.get(raceId).getRiderIDs();
-            int[] raceStages = races.get(raceId).getStageIDs();
-            LinkedHashMap<Integer, LocalTime> riderSortedTimes = getRiderTotalAdjustedTimeSorted(raceId);
-            LinkedHashMap<Integer, Integer> riderPoints = new LinkedHashMap<>();
-            for (int rider : ridersInRace) {
-                riderPoints.put(rider, 0);
-            }
-            for (int stage : raceStages) {
-                int[] riderRanks = getRidersRankInStage(stage);
-                int[] updatedRidersPoints = getRidersPointsInStage(stage);
-                LinkedHashMap<Integer, Integer> ranksAndPoints = new LinkedHashMap<>();
-                for (int i = 0; i < riderRanks.length; i++) {
-                    ranksAndPoints.put(riderRanks[i], updatedRidersPoints[i]);
-                }
-                for (int rider : riderSortedTimes.keySet()) {
-                    if(ranksAndPoints.get(rider) == null){
-                        continue;
-                    }
-                    riderPoints.put(rider, riderPoints.get(rider) + ranksAndPoints.get(rider));
-                }
-            }
-            LinkedHashMap<Integer, Integer> sortedMap = new LinkedHashMap<>();
-            riderPoints.entrySet().stream().sorted(Map.Entry.comparingByValue(Comparator.reverseOrder())).forEachOrdered(x -> sortedMap.put(x.getKey(), x.getValue()));
-            return sortedMap.keySet().stream().mapToInt(i -> i).toArray();
-
         }
+        return generalClassifications.get(raceId).getPointsRankedRiderIDs();
     }
 
     /**
@@ -1277,35 +2118,254 @@ public class CyclingPortalImpl implements CyclingPortal {
     public int[] getRidersMountainPointClassificationRank(int raceId) throws IDNotRecognisedException {
         if (!races.containsKey(raceId)) {
             throw new IDNotRecognisedException("Race ID does not exist.");
-        } else {
-            int[] ridersInRace = races.get(raceId).getRiderIDs();
-            int[] raceStages = races.get(raceId).getStageIDs();
-            LinkedHashMap<Integer, LocalTime> riderSortedTimes = getRiderTotalAdjustedTimeSorted(raceId);
-            LinkedHashMap<Integer, Integer> riderPoints = new LinkedHashMap<>();
-            for (int rider : ridersInRace) {
-                riderPoints.put(rider, 0);
-            }
-            for (int stage : raceStages) {
-                int[] updatedRiderPoints = getRidersMountainPointsInStage(stage);
-                int[] riderRanks = getRidersRankInStage(stage);
-                HashMap<Integer,Integer> ranksAndPoints = new HashMap<>();
-                for (int i = 0; i < riderRanks.length; i++) {
-                    ranksAndPoints.put(riderRanks[i], updatedRiderPoints[i]);
-                }
+        }
+        return generalClassifications.get(raceId).getMountainPointsRankedRiderIDs();
+    }
 
-                for (int rider : riderSortedTimes.keySet()) {
-                    if(ranksAndPoints.get(rider) == null){
-                        continue;
-                    }
-                    riderPoints.put(rider, riderPoints.get(rider) + ranksAndPoints.get(rider));
+    /**
+     * Get the leading riders in the general classification of a race, in
+     * the same order as {@link #getRidersGeneralClassificationRank(int)}.
+     * The general classification is kept in order as results arrive, so
+     * only the leading riders are read.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId The ID of the race being queried.
+     * @param limit  The maximum number of riders returned.
+     * @return The IDs of at most limit riders, winner first.
+     * @throws IDNotRecognisedException If the ID does not match any race in the
+     *                                  system.
+     * @throws IllegalArgumentException If the limit is negative.
+     */
+    @Override
+    public int[] getTopRidersInGeneralClassification(int raceId, int limit) throws IDNotRecognisedException {
+        if (!races.containsKey(raceId)) {
+            throw new IDNotRecognisedException("Race ID does not exist.");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit cannot be negative.");
+        }
+        return generalClassifications.get(raceId).getRankedRiderIDs(limit);
+    }
 
-                }
-            }
-            LinkedHashMap<Integer, Integer> sortedMap = new LinkedHashMap<>();
-            riderPoints.entrySet().stream().sorted(Map.Entry.comparingByValue()).forEachOrdered(x -> sortedMap.put(x.getKey(), x.getValue()));
-            return sortedMap.keySet().stream().mapToInt(i -> i).toArray();
+    /**
+     * Get the leading riders in the points classification of a race, in
+     * the same order as {@link #getRidersPointClassificationRank(int)}.
+     * The points classification is kept in order as results arrive, so
+     * only the leading riders are read.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId The ID of the race being queried.
+     * @param limit  The maximum number of riders returned.
+     * @return The IDs of at most limit riders, winner first.
+     * @throws IDNotRecognisedException If the ID does not match any race in the
+     *                                  system.
+     * @throws IllegalArgumentException If the limit is negative.
+     */
+    @Override
+    public int[] getTopRidersInPointClassification(int raceId, int limit) throws IDNotRecognisedException {
+        if (!races.containsKey(raceId)) {
+            throw new IDNotRecognisedException("Race ID does not exist.");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit cannot be negative.");
+        }
+        return generalClassifications.get(raceId).getPointsRankedRiderIDs(limit);
+    }
+
+    /**
+     * Get the leading riders in the mountain classification of a race, in
+     * the same order as
+     * {@link #getRidersMountainPointClassificationRank(int)}. The leaders
+     * are read in the same way as by
+     * {@link #getTopRidersInPointClassification(int, int)}.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId The ID of the race being queried.
+     * @param limit  The maximum number of riders returned.
+     * @return The IDs of at most limit riders, winner first.
+     * @throws IDNotRecognisedException If the ID does not match any race in the
+     *                                  system.
+     * @throws IllegalArgumentException If the limit is negative.
+     */
+    @Override
+    public int[] getTopRidersInMountainPointClassification(int raceId, int limit) throws IDNotRecognisedException {
+        if (!races.containsKey(raceId)) {
+            throw new IDNotRecognisedException("Race ID does not exist.");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("The limit cannot be negative.");
+        }
+        return generalClassifications.get(raceId).getMountainPointsRankedRiderIDs(limit);
+    }
+
+    /**
+     * Get a rider's position in the general classification of a race,
+     * matching their place in
+     * {@link #getRidersGeneralClassificationRank(int)}. The position is
+     * found in O(log n) time from the running totals of the race, which
+     * are kept in order as results arrive.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The rider's position, starting from 1, or -1 if the rider
+     * has no result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    @Override
+    public int getRiderGeneralClassificationRank(int raceId, int riderId) throws IDNotRecognisedException {
+        if (!races.containsKey(raceId)) {
+            throw new IDNotRecognisedException("Race ID does not exist.");
+        } else if (!riders.containsKey(riderId)) {
+            throw new IDNotRecognisedException("Rider ID does not exist.");
+        }
+        return generalClassifications.get(raceId).getRiderRank(riderId);
+    }
+
+    /**
+     * Get how far a rider's total adjusted elapsed time in a race is
+     * behind the leader of the general classification.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The gap to the leader. Return null if the rider has no
+     * result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    @Override
+    public LocalTime getRiderTimeBehindLeaderInRace(int raceId, int riderId) throws IDNotRecognisedException {
+        if (!races.containsKey(raceId)) {
+            throw new IDNotRecognisedException("Race ID does not exist.");
+        } else if (!riders.containsKey(riderId)) {
+            throw new IDNotRecognisedException("Rider ID does not exist.");
+        }
+        return timeBehindLeader(raceId, riderId);
+    }
+
+    /**
+     * Get a rider's position in the points classification of a race,
+     * matching their place in {@link #getRidersPointClassificationRank(int)},
+     * in O(log n) time. Riders on the same points are ordered by when they
+     * entered the race.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The rider's position, starting from 1, or -1 if the rider
+     * has no result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    @Override
+    public int getRiderPointClassificationRank(int raceId, int riderId) throws IDNotRecognisedException {
+        if (!races.containsKey(raceId)) {
+            throw new IDNotRecognisedException("Race ID does not exist.");
+        } else if (!riders.containsKey(riderId)) {
+            throw new IDNotRecognisedException("Rider ID does not exist.");
         }
+        return generalClassifications.get(raceId).getRiderPointsRank(riderId);
+    }
 
+    /**
+     * Get how many points a rider is behind the leader of the points
+     * classification of a race.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The number of points behind the leader, or -1 if the rider
+     * has no result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    @Override
+    public int getRiderPointsBehindLeaderInRace(int raceId, int riderId) throws IDNotRecognisedException {
+        if (!races.containsKey(raceId)) {
+            throw new IDNotRecognisedException("Race ID does not exist.");
+        } else if (!riders.containsKey(riderId)) {
+            throw new IDNotRecognisedException("Rider ID does not exist.");
+        }
+        return Math.toIntExact(generalClassifications.get(raceId).getRiderPointsBehindLeader(riderId));
+    }
+
+    /**
+     * Get a rider's position in the mountain classification of a race,
+     * matching their place in
+     * {@link #getRidersMountainPointClassificationRank(int)}, in the same
+     * way as {@link #getRiderPointClassificationRank(int, int)}.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The rider's position, starting from 1, or -1 if the rider
+     * has no result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    @Override
+    public int getRiderMountainPointClassificationRank(int raceId, int riderId) throws IDNotRecognisedException {
+        if (!races.containsKey(raceId)) {
+            throw new IDNotRecognisedException("Race ID does not exist.");
+        } else if (!riders.containsKey(riderId)) {
+            throw new IDNotRecognisedException("Rider ID does not exist.");
+        }
+        return generalClassifications.get(raceId).getRiderMountainPointsRank(riderId);
+    }
+
+    /**
+     * Get how many mountain points a rider is behind the leader of the
+     * mountain classification of a race.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The number of mountain points behind the leader, or -1 if
+     * the rider has no result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    @Override
+    public int getRiderMountainPointsBehindLeaderInRace(int raceId, int riderId) throws IDNotRecognisedException {
+        if (!races.containsKey(raceId)) {
+            throw new IDNotRecognisedException("Race ID does not exist.");
+        } else if (!riders.containsKey(riderId)) {
+            throw new IDNotRecognisedException("Rider ID does not exist.");
+        }
+        return Math.toIntExact(generalClassifications.get(raceId).getRiderMountainPointsBehindLeader(riderId));
+    }
+
+    /**
+     * Finds how far a rider's total adjusted elapsed time in a race is
+     * behind the leader's.
+     *
+     * @param raceId  The ID of the race, which must exist.
+     * @param riderId The ID of the rider.
+     * @return The gap, or null if the rider has no result in the race.
+     */
+    private LocalTime timeBehindLeader(int raceId, int riderId) {
+        long gap = generalClassifications.get(raceId).getRiderTimeBehindLeader(riderId);
+        return gap < 0 ? null : Times.toLocalTime(gap);
     }
 }
 
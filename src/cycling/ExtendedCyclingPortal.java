@@ -0,0 +1,362 @@
+package cycling;
+
+import java.time.LocalTime;
+import java.util.Map;
+
+/**
+ * ExtendedCyclingPortal interface. This interface adds to CyclingPortal
+ * the methods for following a race as it happens: registering the results
+ * of a whole stage at once or each rider's passings as they are made,
+ * reading the leading riders and a single rider's position without
+ * fetching a whole ranking, and being told when a ranking changes.
+ * <p>
+ * Both CyclingPortalImpl and ConcurrentCyclingPortalImpl implement it, so
+ * a wrapper such as {@link MeteredCyclingPortal} can pass these methods
+ * on as well as those of CyclingPortal.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public interface ExtendedCyclingPortal extends CyclingPortal {
+
+    /**
+     * Record the times of many riders in a stage at once, for example from
+     * the finish file of a whole stage.
+     * <p>
+     * Every result is validated before any of them is recorded, so either
+     * all the results are registered or, if any exception is thrown, none
+     * of them are and the state of this portal is unchanged. The stage's
+     * rankings, points and classifications are worked out once for the
+     * whole batch rather than once per rider.
+     *
+     * @param stageId The ID of the stage the results refer to.
+     * @param results The checkpoint times of each rider, by rider ID. Each
+     *                array holds the times at which the rider reached each
+     *                of the checkpoints of the stage, including the start
+     *                time and the finish line.
+     * @throws IDNotRecognisedException        If the ID does not match to any rider or
+     *                                         stage in the system.
+     * @throws DuplicatedResultException       Thrown if any of the riders already has
+     *                                         a result for the stage.
+     * @throws InvalidCheckpointTimesException Thrown if the length of any of the
+     *                                         arrays of times is not equal to n+2,
+     *                                         where n is the number of checkpoints in
+     *                                         the stage.
+     * @throws InvalidStageStateException      Thrown if the stage is not "waiting for
+     *                                         results".
+     */
+    void registerStageResults(int stageId, Map<Integer, LocalTime[]> results) throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException, InvalidStageStateException;
+
+    /**
+     * Record a rider passing one point of a stage as it happens, instead of
+     * registering all of their times at once when they have finished. The
+     * points of a stage are numbered as the times given to
+     * {@link #registerRiderResultsInStage(int, int, LocalTime...)} are: 0 for
+     * the start time, 1 to n for the n checkpoints of the stage in order,
+     * and n+1 for the finish line.
+     * <p>
+     * A rider passing a checkpoint is put in their place at the checkpoint
+     * straight away, see {@link #getRidersRankAtCheckpoint(int)}. Once the
+     * rider has passed every point of the stage, in any order, their times
+     * are registered as their result in the stage, exactly as if they had
+     * been given to registerRiderResultsInStage, and the stage's rankings,
+     * points and classifications are brought up to date.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param stageId  The ID of the stage being raced.
+     * @param riderId  The ID of the rider.
+     * @param position The point of the stage the rider has passed.
+     * @param time     The time at which the rider passed the point.
+     * @return true if the rider has now passed every point of the stage and
+     * their result has been registered.
+     * @throws IDNotRecognisedException        If the ID does not match to any rider or
+     *                                         stage in the system.
+     * @throws DuplicatedResultException       Thrown if the rider already has a result
+     *                                         for the stage, or has already passed
+     *                                         the point.
+     * @throws InvalidCheckpointTimesException Thrown if the position is not between
+     *                                         0 and n+1, where n is the number of
+     *                                         checkpoints in the stage.
+     * @throws InvalidStageStateException      Thrown if the stage is not "waiting for
+     *                                         results".
+     */
+    boolean registerRiderPassing(int stageId, int riderId, int position, LocalTime time) throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException, InvalidStageStateException;
+
+    /**
+     * Get the leading riders in a stage, for leaderboards that only show
+     * the first few. The riders are in the same order as
+     * {@link #getRidersRankInStage(int)}, read from the start of the
+     * stage's finishing order, which is kept in order as results arrive,
+     * so a top ten of a large field costs far less than the whole
+     * ranking.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param stageId The ID of the stage being queried.
+     * @param limit   The maximum number of riders returned.
+     * @return The IDs of at most limit riders, winner first.
+     * @throws IDNotRecognisedException If the ID does not match any stage in the
+     *                                  system.
+     * @throws IllegalArgumentException If the limit is negative.
+     */
+    int[] getTopRidersInStage(int stageId, int limit) throws IDNotRecognisedException;
+
+    /**
+     * Get a rider's position in a stage, matching their place in
+     * {@link #getRidersRankInStage(int)}. The position is found in
+     * O(log n) time from an order-statistic tree of the elapsed times,
+     * without fetching and searching the whole ranking.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param stageId The ID of the stage being queried.
+     * @param riderId The ID of the rider.
+     * @return The rider's position, starting from 1, or -1 if there is no
+     * result registered for the rider in the stage.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  stage in the system.
+     */
+    int getRiderRankInStage(int stageId, int riderId) throws IDNotRecognisedException;
+
+    /**
+     * Get how far a rider's adjusted elapsed time in a stage is behind
+     * the stage winner's.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param stageId The ID of the stage being queried.
+     * @param riderId The ID of the rider.
+     * @return The gap to the winner. Return null if there is no result
+     * registered for the rider in the stage.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  stage in the system.
+     */
+    LocalTime getRiderTimeBehindLeaderInStage(int stageId, int riderId) throws IDNotRecognisedException;
+
+    /**
+     * Get the riders who have passed a checkpoint so far, in the order they
+     * passed it. This includes the riders still out on the stage, whose
+     * passings have been recorded with
+     * {@link #registerRiderPassing(int, int, int, LocalTime)}, as well as
+     * the riders with a result in the stage. Each passing is put in its
+     * place as it is recorded, so the ranking is never sorted again.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param checkpointId The ID of the checkpoint being queried.
+     * @return The IDs of the riders who have passed the checkpoint, earliest
+     * first. An empty list if no rider has passed it yet.
+     * @throws IDNotRecognisedException If the ID does not match any checkpoint
+     *                                  in the system.
+     */
+    int[] getRidersRankAtCheckpoint(int checkpointId) throws IDNotRecognisedException;
+
+    /**
+     * Get the points each rider has earned at a checkpoint so far, by the
+     * order they passed it: the points of an intermediate sprint, or the
+     * mountain points of a categorised climb. A rider's points can change
+     * while the stage is being raced, as riders still out on the stage can
+     * pass the checkpoint in a faster time.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param checkpointId The ID of the checkpoint being queried.
+     * @return The points of each rider who has passed the checkpoint. These
+     * points match the riders returned by
+     * {@link #getRidersRankAtCheckpoint(int)}.
+     * @throws IDNotRecognisedException If the ID does not match any checkpoint
+     *                                  in the system.
+     */
+    int[] getRidersPointsAtCheckpoint(int checkpointId) throws IDNotRecognisedException;
+
+    /**
+     * Get the leading riders in the general classification of a race, in
+     * the same order as {@link #getRidersGeneralClassificationRank(int)}.
+     * The general classification is kept in order as results arrive, so
+     * only the leading riders are read.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId The ID of the race being queried.
+     * @param limit  The maximum number of riders returned.
+     * @return The IDs of at most limit riders, winner first.
+     * @throws IDNotRecognisedException If the ID does not match any race in the
+     *                                  system.
+     * @throws IllegalArgumentException If the limit is negative.
+     */
+    int[] getTopRidersInGeneralClassification(int raceId, int limit) throws IDNotRecognisedException;
+
+    /**
+     * Get the leading riders in the points classification of a race, in
+     * the same order as {@link #getRidersPointClassificationRank(int)}.
+     * The points classification is kept in order as results arrive, so
+     * only the leading riders are read.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId The ID of the race being queried.
+     * @param limit  The maximum number of riders returned.
+     * @return The IDs of at most limit riders, winner first.
+     * @throws IDNotRecognisedException If the ID does not match any race in the
+     *                                  system.
+     * @throws IllegalArgumentException If the limit is negative.
+     */
+    int[] getTopRidersInPointClassification(int raceId, int limit) throws IDNotRecognisedException;
+
+    /**
+     * Get the leading riders in the mountain classification of a race, in
+     * the same order as
+     * {@link #getRidersMountainPointClassificationRank(int)}. The leaders
+     * are read in the same way as by
+     * {@link #getTopRidersInPointClassification(int, int)}.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId The ID of the race being queried.
+     * @param limit  The maximum number of riders returned.
+     * @return The IDs of at most limit riders, winner first.
+     * @throws IDNotRecognisedException If the ID does not match any race in the
+     *                                  system.
+     * @throws IllegalArgumentException If the limit is negative.
+     */
+    int[] getTopRidersInMountainPointClassification(int raceId, int limit) throws IDNotRecognisedException;
+
+    /**
+     * Get a rider's position in the general classification of a race,
+     * matching their place in
+     * {@link #getRidersGeneralClassificationRank(int)}. The position is
+     * found in O(log n) time from the running totals of the race, which
+     * are kept in order as results arrive.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The rider's position, starting from 1, or -1 if the rider
+     * has no result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    int getRiderGeneralClassificationRank(int raceId, int riderId) throws IDNotRecognisedException;
+
+    /**
+     * Get how far a rider's total adjusted elapsed time in a race is
+     * behind the leader of the general classification.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The gap to the leader. Return null if the rider has no
+     * result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    LocalTime getRiderTimeBehindLeaderInRace(int raceId, int riderId) throws IDNotRecognisedException;
+
+    /**
+     * Get a rider's position in the points classification of a race,
+     * matching their place in {@link #getRidersPointClassificationRank(int)},
+     * in O(log n) time. Riders on the same points are ordered by when they
+     * entered the race.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The rider's position, starting from 1, or -1 if the rider
+     * has no result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    int getRiderPointClassificationRank(int raceId, int riderId) throws IDNotRecognisedException;
+
+    /**
+     * Get how many points a rider is behind the leader of the points
+     * classification of a race.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The number of points behind the leader, or -1 if the rider
+     * has no result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    int getRiderPointsBehindLeaderInRace(int raceId, int riderId) throws IDNotRecognisedException;
+
+    /**
+     * Get a rider's position in the mountain classification of a race,
+     * matching their place in
+     * {@link #getRidersMountainPointClassificationRank(int)}, in the same
+     * way as {@link #getRiderPointClassificationRank(int, int)}.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The rider's position, starting from 1, or -1 if the rider
+     * has no result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    int getRiderMountainPointClassificationRank(int raceId, int riderId) throws IDNotRecognisedException;
+
+    /**
+     * Get how many mountain points a rider is behind the leader of the
+     * mountain classification of a race.
+     * <p>
+     * The state of this CyclingPortal must be unchanged if any
+     * exceptions are thrown.
+     *
+     * @param raceId  The ID of the race being queried.
+     * @param riderId The ID of the rider.
+     * @return The number of mountain points behind the leader, or -1 if
+     * the rider has no result in the race.
+     * @throws IDNotRecognisedException If the ID does not match to any rider or
+     *                                  race in the system.
+     */
+    int getRiderMountainPointsBehindLeaderInRace(int raceId, int riderId) throws IDNotRecognisedException;
+
+    /**
+     * Adds a listener to be told whenever results change a ranking: the
+     * finishing order of a stage, the passing order of a checkpoint, or
+     * the general, points or mountain classification of a race. Each
+     * change is worked out once and the same update is given to every
+     * listener, see {@link ClassificationListener}.
+     * <p>
+     * Only changes made after the listener is added are reported. Loading
+     * or erasing the portal is not reported as a change; the rankings are
+     * simply taken as they are afterwards.
+     *
+     * @param listener The listener to be added.
+     * @throws IllegalArgumentException If the listener is null.
+     */
+    void addClassificationListener(ClassificationListener listener);
+
+    /**
+     * Removes a listener added with
+     * {@link #addClassificationListener(ClassificationListener)}. Does
+     * nothing if the listener was not added. Once the last listener has
+     * been removed, the rankings are no longer worked out after each change.
+     *
+     * @param listener The listener to be removed.
+     */
+    void removeClassificationListener(ClassificationListener listener);
+}
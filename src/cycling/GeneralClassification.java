@@ -0,0 +1,560 @@
+package cycling;
+
+import java.time.LocalTime;
+
+/**
+ * GeneralClassification class. This class keeps the running totals of
+ * every rider in a race: their adjusted elapsed time, their points and
+ * their mountain points. The totals are updated stage by stage whenever
+ * a stage's results change, and each kind of total is kept in order in
+ * an order-statistic tree, see {@link RankTree}. The general
+ * classification can therefore be read without rebuilding or sorting the
+ * totals, and any rider's position or gap to the leader in any of the
+ * three classifications is found in O(log n) time, even while results
+ * are still arriving.
+ * <p>
+ * Riders on the same time are ordered by rider ID. Riders on the same
+ * points or mountain points are ordered by when they entered the race,
+ * that is by when their first result in it was registered, as the
+ * original portal ranked them.
+ * <p>
+ * The totals are brought up to date as each result is registered, and
+ * only for the riders whose adjusted time or points in the stage have
+ * changed, see {@link #updateRiders(int, StageResults, int[])}, so
+ * reading the classification never changes it.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class GeneralClassification {
+
+    private final IntIntMap entryOrder = new IntIntMap();
+    private final IntIntMap entrants = new IntIntMap();
+    private int entries;
+    private final Standing times = new Standing(false, null, null);
+    private final Standing points = new Standing(true, entryOrder, entrants);
+    private final Standing mountainPoints = new Standing(true, entryOrder, entrants);
+
+    /**
+     * The totals of one kind for every rider in the race, built up from
+     * each stage's contribution. The totals are ordered smallest first,
+     * or largest first for points. Ties are broken by the rider ID, or by
+     * the order the riders entered the race if that order is given: the
+     * tree then holds each rider's entry number in place of their ID.
+     */
+    private static class Standing {
+        private final boolean mostFirst;
+        private final IntIntMap entryOrder;
+        private final IntIntMap entrants;
+        private final IntLongMap riderTotals = new IntLongMap();
+        private final IntObjectMap<IntLongMap> stageContributions = new IntObjectMap<>();
+        private final RankTree ranking = new RankTree();
+
+        private Standing(boolean mostFirst, IntIntMap entryOrder, IntIntMap entrants) {
+            this.mostFirst = mostFirst;
+            this.entryOrder = entryOrder;
+            this.entrants = entrants;
+        }
+
+        private long keyOf(long total) {
+            return mostFirst ? -total : total;
+        }
+
+        /**
+         * Finds the number a rider is held under in the tree.
+         */
+        private int tieBreakOf(int riderId) {
+            return entryOrder == null ? riderId : entryOrder.getOrDefault(riderId, -1);
+        }
+
+        /**
+         * Gets the IDs of the first riders in the tree, in order.
+         */
+        private int[] riderIDs(int limit) {
+            int[] riderIds = ranking.getRiderIDs(limit);
+            if (entrants != null) {
+                for (int i = 0; i < riderIds.length; i++) {
+                    riderIds[i] = entrants.getOrDefault(riderIds[i], -1);
+                }
+            }
+            return riderIds;
+        }
+
+        /**
+         * Gets the totals of the first riders in the tree, in order.
+         */
+        private long[] totals(int limit) {
+            long[] totals = ranking.getKeys(limit);
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] = keyOf(totals[i]);
+            }
+            return totals;
+        }
+
+        private void addRider(int riderId) {
+            if (!riderTotals.containsKey(riderId)) {
+                riderTotals.put(riderId, 0);
+                ranking.add(0, tieBreakOf(riderId));
+            }
+        }
+
+        private void removeRider(int riderId) {
+            if (riderTotals.containsKey(riderId)) {
+                ranking.remove(keyOf(riderTotals.getOrDefault(riderId, 0)), tieBreakOf(riderId));
+                riderTotals.remove(riderId);
+            }
+            for (int slot = stageContributions.nextSlot(0); slot >= 0; slot = stageContributions.nextSlot(slot + 1)) {
+                stageContributions.valueAt(slot).remove(riderId);
+            }
+        }
+
+        /**
+         * Replaces the contribution of a stage to the riders' totals. Only
+         * the riders whose contribution has changed are moved in the
+         * ordering. If most of the riders have changed, such as when a
+         * whole stage is registered at once, the ordering is rebuilt in
+         * one go instead.
+         */
+        private void updateStage(int stageId, IntLongMap current) {
+            IntLongMap previous = stageContributions.get(stageId);
+            if (previous == null) {
+                previous = new IntLongMap();
+            }
+            IntLongMap deltas = new IntLongMap();
+            for (int slot = current.nextSlot(0); slot >= 0; slot = current.nextSlot(slot + 1)) {
+                int riderId = current.keyAt(slot);
+                long value = current.valueAt(slot);
+                long previousValue = previous.getOrDefault(riderId, 0);
+                if (!previous.containsKey(riderId) || previousValue != value) {
+                    deltas.put(riderId, value - previousValue);
+                }
+            }
+            for (int slot = previous.nextSlot(0); slot >= 0; slot = previous.nextSlot(slot + 1)) {
+                if (!current.containsKey(previous.keyAt(slot))) {
+                    deltas.put(previous.keyAt(slot), -previous.valueAt(slot));
+                }
+            }
+            if (current.isEmpty()) {
+                stageContributions.remove(stageId);
+            } else {
+                stageContributions.put(stageId, current);
+            }
+            if (deltas.size() > ranking.size() / 2) {
+                ranking.clear();
+                for (int slot = deltas.nextSlot(0); slot >= 0; slot = deltas.nextSlot(slot + 1)) {
+                    int riderId = deltas.keyAt(slot);
+                    if (riderTotals.containsKey(riderId)) {
+                        riderTotals.put(riderId, riderTotals.getOrDefault(riderId, 0) + deltas.valueAt(slot));
+                    }
+                }
+                for (int slot = riderTotals.nextSlot(0); slot >= 0; slot = riderTotals.nextSlot(slot + 1)) {
+                    ranking.add(keyOf(riderTotals.valueAt(slot)), tieBreakOf(riderTotals.keyAt(slot)));
+                }
+            } else {
+                for (int slot = deltas.nextSlot(0); slot >= 0; slot = deltas.nextSlot(slot + 1)) {
+                    addToTotal(deltas.keyAt(slot), deltas.valueAt(slot));
+                }
+            }
+        }
+
+        /**
+         * Replaces the contribution of a stage to one rider's total,
+         * repositioning the rider in the ordering if it has changed.
+         */
+        private void updateRider(int stageId, int riderId, boolean hasResult, long value) {
+            IntLongMap contributions = stageContributions.get(stageId);
+            if (contributions == null) {
+                if (!hasResult) {
+                    return;
+                }
+                contributions = new IntLongMap();
+                stageContributions.put(stageId, contributions);
+            }
+            long previous = contributions.getOrDefault(riderId, 0);
+            if (hasResult) {
+                contributions.put(riderId, value);
+            } else {
+                contributions.remove(riderId);
+                if (contributions.isEmpty()) {
+                    stageContributions.remove(stageId);
+                }
+            }
+            long delta = (hasResult ? value : 0) - previous;
+            if (delta != 0) {
+                addToTotal(riderId, delta);
+            }
+        }
+
+        /**
+         * Adds a (possibly negative) amount to a rider's total,
+         * repositioning the rider in the ordering.
+         */
+        private void addToTotal(int riderId, long delta) {
+            if (!riderTotals.containsKey(riderId)) {
+                return;
+            }
+            long total = riderTotals.getOrDefault(riderId, 0);
+            ranking.remove(keyOf(total), tieBreakOf(riderId));
+            riderTotals.put(riderId, total + delta);
+            ranking.add(keyOf(total + delta), tieBreakOf(riderId));
+        }
+
+        /**
+         * Finds a rider's position, with riders on the same total in the
+         * order of the tree.
+         */
+        private int positionOf(int riderId) {
+            if (!riderTotals.containsKey(riderId)) {
+                return -1;
+            }
+            long key = keyOf(riderTotals.getOrDefault(riderId, 0));
+            return ranking.countBefore(key, tieBreakOf(riderId)) + 1;
+        }
+
+        /**
+         * Finds how far a rider's total is behind the leader's.
+         */
+        private long behindLeader(int riderId) {
+            if (!riderTotals.containsKey(riderId)) {
+                return -1;
+            }
+            return keyOf(riderTotals.getOrDefault(riderId, 0)) - ranking.firstKey();
+        }
+    }
+
+    /**
+     * Adds a rider to the classification with totals of zero, after the
+     * riders already in it. Does nothing if the rider is already
+     * classified.
+     *
+     * @param riderId The ID of the rider being added.
+     */
+    public void addRider(int riderId) {
+        if (!entryOrder.containsKey(riderId)) {
+            entryOrder.put(riderId, entries);
+            entrants.put(entries++, riderId);
+        }
+        times.addRider(riderId);
+        points.addRider(riderId);
+        mountainPoints.addRider(riderId);
+    }
+
+    /**
+     * Removes a rider and all of their stage contributions from the
+     * classification.
+     *
+     * @param riderId The ID of the rider being removed.
+     */
+    public void removeRider(int riderId) {
+        times.removeRider(riderId);
+        points.removeRider(riderId);
+        mountainPoints.removeRider(riderId);
+        entrants.remove(entryOrder.getOrDefault(riderId, -1));
+        entryOrder.remove(riderId);
+    }
+
+    /**
+     * Replaces the contribution of a stage to the riders' total times,
+     * points and mountain points with those in its results. Only the
+     * riders whose results in the stage have changed are moved in the
+     * orderings.
+     *
+     * @param stageId The ID of the stage that has changed.
+     * @param results The results of the stage, with the adjusted elapsed
+     *                times and the points up to date.
+     */
+    void updateStage(int stageId, StageResults results) {
+        IntLongMap stageTimes = new IntLongMap(results.size());
+        IntLongMap stagePoints = new IntLongMap(results.size());
+        IntLongMap stageMountainPoints = new IntLongMap(results.size());
+        for (int row = 0; row < results.size(); row++) {
+            int riderId = results.riderAt(row);
+            stageTimes.put(riderId, results.adjustedTimeAt(row));
+            stagePoints.put(riderId, results.pointsAt(row));
+            stageMountainPoints.put(riderId, results.mountainPointsAt(row));
+        }
+        times.updateStage(stageId, stageTimes);
+        points.updateStage(stageId, stagePoints);
+        mountainPoints.updateStage(stageId, stageMountainPoints);
+    }
+
+    /**
+     * Replaces the contribution of a stage to some riders' total times,
+     * points and mountain points with those in its results, or removes it
+     * for riders who no longer have a result. Each rider is moved in each
+     * ordering in O(log n) time.
+     *
+     * @param stageId  The ID of the stage that has changed.
+     * @param results  The results of the stage, with the adjusted elapsed
+     *                 times and the points up to date.
+     * @param riderIds The IDs of the riders whose adjusted times, points
+     *                 or results have changed.
+     */
+    void updateRiders(int stageId, StageResults results, int[] riderIds) {
+        for (int riderId : riderIds) {
+            int row = results.rowOf(riderId);
+            boolean hasResult = row >= 0;
+            times.updateRider(stageId, riderId, hasResult, hasResult ? results.adjustedTimeAt(row) : 0);
+            points.updateRider(stageId, riderId, hasResult, hasResult ? results.pointsAt(row) : 0);
+            mountainPoints.updateRider(stageId, riderId, hasResult, hasResult ? results.mountainPointsAt(row) : 0);
+        }
+    }
+
+    /**
+     * Removes the contribution of a stage from the riders' totals.
+     *
+     * @param stageId The ID of the stage being removed.
+     */
+    public void removeStage(int stageId) {
+        updateStage(stageId, new StageResults(0));
+    }
+
+    /**
+     * Gets the IDs of the leading riders in the classification, winner
+     * (least time) first.
+     *
+     * @param limit The maximum number of riders returned.
+     * @return An array of at most limit rider IDs in classification order.
+     */
+    public int[] getRankedRiderIDs(int limit) {
+        return times.ranking.getRiderIDs(limit);
+    }
+
+    /**
+     * Gets the IDs of all the riders in the classification, winner
+     * (least time) first.
+     *
+     * @return An array of rider IDs in classification order.
+     */
+    public int[] getRankedRiderIDs() {
+        return getRankedRiderIDs(times.ranking.size());
+    }
+
+    /**
+     * Gets the total adjusted elapsed times of all the riders in the
+     * classification, in classification order.
+     *
+     * @return An array of total times matching {@link #getRankedRiderIDs()}.
+     */
+    public LocalTime[] getRankedTimes() {
+        long[] totals = getRankedNanos();
+        LocalTime[] rankedTimes = new LocalTime[totals.length];
+        for (int i = 0; i < totals.length; i++) {
+            rankedTimes[i] = Times.toLocalTime(totals[i]);
+        }
+        return rankedTimes;
+    }
+
+    /**
+     * Gets the total adjusted elapsed times of all the riders in the
+     * classification, in nanoseconds, in classification order.
+     *
+     * @return An array of total times matching {@link #getRankedRiderIDs()}.
+     */
+    long[] getRankedNanos() {
+        return times.ranking.getKeys(times.ranking.size());
+    }
+
+    /**
+     * Finds a rider's position in the general classification, matching
+     * their place in {@link #getRankedRiderIDs()}.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The position, starting from 1, or -1 if the rider is not
+     * classified.
+     */
+    public int getRiderRank(int riderId) {
+        return times.positionOf(riderId);
+    }
+
+    /**
+     * GETTER method for a rider's total adjusted elapsed time, as in
+     * {@link #getRankedNanos()}.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The total time, in nanoseconds, or 0 if the rider is not
+     * classified.
+     */
+    long getRiderTotalTime(int riderId) {
+        return times.riderTotals.getOrDefault(riderId, 0);
+    }
+
+    /**
+     * GETTER method for a rider's total points.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The points, or 0 if the rider is not classified.
+     */
+    long getRiderTotalPoints(int riderId) {
+        return points.riderTotals.getOrDefault(riderId, 0);
+    }
+
+    /**
+     * GETTER method for a rider's total mountain points.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The mountain points, or 0 if the rider is not classified.
+     */
+    long getRiderTotalMountainPoints(int riderId) {
+        return mountainPoints.riderTotals.getOrDefault(riderId, 0);
+    }
+
+    /**
+     * Finds how far a rider's total adjusted elapsed time is behind the
+     * leader's.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The gap, in nanoseconds, or -1 if the rider is not
+     * classified.
+     */
+    public long getRiderTimeBehindLeader(int riderId) {
+        return times.behindLeader(riderId);
+    }
+
+    /**
+     * Gets the riders' total points, in general classification order.
+     *
+     * @return An array of points matching {@link #getRankedRiderIDs()}.
+     */
+    public int[] getRidersPoints() {
+        return totalsOf(points);
+    }
+
+    /**
+     * Gets the riders' total mountain points, in general classification
+     * order.
+     *
+     * @return An array of mountain points matching
+     * {@link #getRankedRiderIDs()}.
+     */
+    public int[] getRidersMountainPoints() {
+        return totalsOf(mountainPoints);
+    }
+
+    /**
+     * Gets the IDs of the leading riders in the points classification,
+     * winner (most points) first. Riders on the same points are in the
+     * order they entered the race.
+     *
+     * @param limit The maximum number of riders returned.
+     * @return An array of at most limit rider IDs in classification order.
+     */
+    public int[] getPointsRankedRiderIDs(int limit) {
+        return points.riderIDs(limit);
+    }
+
+    /**
+     * Gets the IDs of all the riders in the points classification, winner
+     * (most points) first.
+     *
+     * @return An array of rider IDs in classification order.
+     */
+    public int[] getPointsRankedRiderIDs() {
+        return getPointsRankedRiderIDs(points.ranking.size());
+    }
+
+    /**
+     * Gets the total points of all the riders in the points
+     * classification, in classification order.
+     *
+     * @return An array of points matching
+     * {@link #getPointsRankedRiderIDs()}.
+     */
+    long[] getRankedPoints() {
+        return points.totals(points.ranking.size());
+    }
+
+    /**
+     * Gets the IDs of the leading riders in the mountain classification,
+     * winner (most mountain points) first. Riders on the same mountain
+     * points are in the order they entered the race.
+     *
+     * @param limit The maximum number of riders returned.
+     * @return An array of at most limit rider IDs in classification order.
+     */
+    public int[] getMountainPointsRankedRiderIDs(int limit) {
+        return mountainPoints.riderIDs(limit);
+    }
+
+    /**
+     * Gets the IDs of all the riders in the mountain classification,
+     * winner (most mountain points) first.
+     *
+     * @return An array of rider IDs in classification order.
+     */
+    public int[] getMountainPointsRankedRiderIDs() {
+        return getMountainPointsRankedRiderIDs(mountainPoints.ranking.size());
+    }
+
+    /**
+     * Gets the total mountain points of all the riders in the mountain
+     * classification, in classification order.
+     *
+     * @return An array of mountain points matching
+     * {@link #getMountainPointsRankedRiderIDs()}.
+     */
+    long[] getRankedMountainPoints() {
+        return mountainPoints.totals(mountainPoints.ranking.size());
+    }
+
+    /**
+     * Finds a rider's position in the points classification, matching
+     * their place in {@link #getPointsRankedRiderIDs(int)}.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The position, starting from 1, or -1 if the rider is not
+     * classified.
+     */
+    public int getRiderPointsRank(int riderId) {
+        return points.positionOf(riderId);
+    }
+
+    /**
+     * Finds how many points a rider is behind the leader by.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The number of points, or -1 if the rider is not classified.
+     */
+    public long getRiderPointsBehindLeader(int riderId) {
+        return points.behindLeader(riderId);
+    }
+
+    /**
+     * Finds a rider's position in the mountain classification, matching
+     * their place in {@link #getMountainPointsRankedRiderIDs(int)}.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The position, starting from 1, or -1 if the rider is not
+     * classified.
+     */
+    public int getRiderMountainPointsRank(int riderId) {
+        return mountainPoints.positionOf(riderId);
+    }
+
+    /**
+     * Finds how many mountain points a rider is behind the leader by.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The number of mountain points, or -1 if the rider is not
+     * classified.
+     */
+    public long getRiderMountainPointsBehindLeader(int riderId) {
+        return mountainPoints.behindLeader(riderId);
+    }
+
+    /**
+     * Gets the riders' totals of one kind, in general classification
+     * order.
+     *
+     * @param standing The totals.
+     * @return An array of totals matching {@link #getRankedRiderIDs()}.
+     */
+    private int[] totalsOf(Standing standing) {
+        int[] riderIds = getRankedRiderIDs();
+        int[] totals = new int[riderIds.length];
+        for (int i = 0; i < riderIds.length; i++) {
+            totals[i] = Math.toIntExact(standing.riderTotals.getOrDefault(riderIds[i], 0));
+        }
+        return totals;
+    }
+}
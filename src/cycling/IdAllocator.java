@@ -0,0 +1,71 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * IdAllocator class. This class hands out the IDs of one type of entity
+ * (races, stages, checkpoints, riders or teams) within a single portal.
+ * Each portal owns its own allocators, so independent portals in the same
+ * program never share or collide on IDs, and the allocators are saved and
+ * loaded along with the rest of the portal.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class IdAllocator implements Serializable {
+
+    private final AtomicInteger nextId = new AtomicInteger(0);
+
+    /**
+     * Allocates the next ID.
+     *
+     * @return The allocated ID.
+     */
+    public int next() {
+        return nextId.getAndIncrement();
+    }
+
+    /**
+     * Reserves a block of consecutive IDs in one step, for example for a
+     * bulk import. The IDs from the returned ID up to, but not including,
+     * the returned ID plus count are reserved for the caller.
+     *
+     * @param count The number of IDs to reserve.
+     * @return The first ID of the reserved block.
+     * @throws IllegalArgumentException If the count is negative.
+     */
+    public int reserve(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Cannot reserve a negative number of IDs.");
+        }
+        return nextId.getAndAdd(count);
+    }
+
+    /**
+     * GETTER method for the ID that will be allocated next.
+     *
+     * @return The next ID.
+     */
+    public int getNextId() {
+        return nextId.get();
+    }
+
+    /**
+     * Makes sure that an ID already in use is never allocated again, by
+     * moving the next ID past it if needed.
+     *
+     * @param usedId An ID that is already in use.
+     */
+    public void advancePast(int usedId) {
+        nextId.accumulateAndGet(usedId + 1, Math::max);
+    }
+
+    /**
+     * Method that resets the allocator, so that the next ID allocated
+     * is zero.
+     */
+    public void reset() {
+        nextId.set(0);
+    }
+}
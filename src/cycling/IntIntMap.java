@@ -0,0 +1,73 @@
+package cycling;
+
+/**
+ * IntIntMap class. A map from primitive int keys to primitive int
+ * values, used to find the row of each rider in a stage's results. See
+ * {@link IntKeyTable} for how the keys are stored.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class IntIntMap extends IntKeyTable {
+
+    private int[] values;
+
+    /**
+     * Creates an empty map.
+     */
+    public IntIntMap() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty map with room for the given number of keys.
+     *
+     * @param expectedSize The number of keys expected.
+     */
+    public IntIntMap(int expectedSize) {
+        super(expectedSize);
+    }
+
+    @Override
+    void createValues(int length) {
+        values = new int[length];
+    }
+
+    @Override
+    Object values() {
+        return values;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key          The key being enquired.
+     * @param defaultValue The value returned if the key is not in the map.
+     * @return The value of the key, or defaultValue.
+     */
+    public int getOrDefault(int key, int defaultValue) {
+        int slot = slotOf(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    /**
+     * GETTER method for the value held in a slot in use.
+     *
+     * @param slot The slot being enquired.
+     * @return The value in the slot.
+     */
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Sets the value of a key, adding the key if it is not in the map.
+     *
+     * @param key   The key being set.
+     * @param value The value of the key.
+     */
+    public void put(int key, int value) {
+        int slot = insert(key);
+        values[slot] = value;
+    }
+}
@@ -0,0 +1,312 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * IntKeyTable class. This is the shared part of the maps keyed by a
+ * primitive int (IntIntMap, IntLongMap and IntObjectMap), which hold the
+ * results of every rider without boxing the keys or creating an entry
+ * object per result.
+ * <p>
+ * The keys are kept in one int array using open addressing with linear
+ * probing, and each subclass keeps its values in an array of the same
+ * length, so that a key and its value share a slot. Integer.MIN_VALUE
+ * marks an empty slot; if it is used as a key, its value is kept in the
+ * extra slot at the end of the values array. Removed keys are filled in
+ * by shifting the keys after them back, so no markers are left behind.
+ * <p>
+ * The slots in use can be walked with {@link #nextSlot(int)}, for example
+ * {@code for (int s = map.nextSlot(0); s >= 0; s = map.nextSlot(s + 1))}.
+ * Like HashMap, the tables are not synchronised.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+abstract class IntKeyTable implements Serializable {
+
+    private static final int FREE_KEY = Integer.MIN_VALUE;
+    private static final int MINIMUM_CAPACITY = 4;
+
+    private int[] keys;
+    private int size;
+    private boolean hasFreeKey;
+
+    /**
+     * Creates a table with room for the given number of keys before it
+     * needs to grow.
+     *
+     * @param expectedSize The number of keys expected.
+     */
+    IntKeyTable(int expectedSize) {
+        keys = newKeys(capacityFor(expectedSize));
+        createValues(keys.length + 1);
+    }
+
+    /**
+     * Creates a table holding the same keys as another, in the same
+     * slots. The subclass copies the values.
+     *
+     * @param other The table being copied.
+     */
+    IntKeyTable(IntKeyTable other) {
+        keys = other.keys.clone();
+        size = other.size;
+        hasFreeKey = other.hasFreeKey;
+    }
+
+    /**
+     * Creates the values array, with one slot per key slot plus one for
+     * the value of Integer.MIN_VALUE.
+     *
+     * @param length The length of the new values array.
+     */
+    abstract void createValues(int length);
+
+    /**
+     * GETTER method for the values array, so that values can be moved
+     * between slots.
+     *
+     * @return The values array.
+     */
+    abstract Object values();
+
+    /**
+     * Empties the value in a slot, so that the table does not hold on to
+     * removed objects.
+     *
+     * @param slot The slot being emptied.
+     */
+    void clearValue(int slot) {
+    }
+
+    /**
+     * GETTER method for the number of keys in the table.
+     *
+     * @return The number of keys.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks whether the table has no keys.
+     *
+     * @return true if the table is empty.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks whether a key is in the table.
+     *
+     * @param key The key being enquired.
+     * @return true if the key has a value.
+     */
+    public boolean containsKey(int key) {
+        return slotOf(key) >= 0;
+    }
+
+    /**
+     * Removes every key from the table, keeping its capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        for (int slot = 0; slot <= keys.length; slot++) {
+            clearValue(slot);
+        }
+        size = 0;
+        hasFreeKey = false;
+    }
+
+    /**
+     * GETTER method for all the keys in the table, in slot order.
+     *
+     * @return An array of the keys.
+     */
+    public int[] keys() {
+        int[] result = new int[size];
+        int i = 0;
+        for (int slot = nextSlot(0); slot >= 0; slot = nextSlot(slot + 1)) {
+            result[i++] = keyAt(slot);
+        }
+        return result;
+    }
+
+    /**
+     * Finds the first slot in use at or after the given slot.
+     *
+     * @param slot The slot the search starts from.
+     * @return The slot, or -1 if there are no more slots in use.
+     */
+    public int nextSlot(int slot) {
+        for (; slot < keys.length; slot++) {
+            if (keys[slot] != FREE_KEY) {
+                return slot;
+            }
+        }
+        return slot == keys.length && hasFreeKey ? slot : -1;
+    }
+
+    /**
+     * GETTER method for the key held in a slot in use.
+     *
+     * @param slot The slot being enquired.
+     * @return The key in the slot.
+     */
+    public int keyAt(int slot) {
+        return slot == keys.length ? FREE_KEY : keys[slot];
+    }
+
+    /**
+     * Finds the slot holding a key.
+     *
+     * @param key The key being looked for.
+     * @return The slot of the key, or -1 if the key is not in the table.
+     */
+    int slotOf(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? keys.length : -1;
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            if (keys[slot] == FREE_KEY) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Finds the slot holding a key, adding the key if it is not already
+     * in the table. The table grows first if it is too full to take
+     * another key.
+     *
+     * @param key The key being looked for or added.
+     * @return The slot of the key.
+     */
+    int insert(int key) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            return keys.length;
+        }
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        for (; keys[slot] != FREE_KEY; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        if ((size + 1) * 3 > keys.length * 2) {
+            grow();
+            return insert(key);
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Removes a key from the table, shifting back any keys after it that
+     * would otherwise no longer be found.
+     *
+     * @param key The key being removed.
+     * @return true if the key was in the table.
+     */
+    public boolean remove(int key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return false;
+        }
+        size--;
+        if (slot == keys.length) {
+            hasFreeKey = false;
+            clearValue(slot);
+            return true;
+        }
+        Object values = values();
+        int mask = keys.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; keys[next] != FREE_KEY; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                System.arraycopy(values, next, values, gap, 1);
+                gap = next;
+            }
+        }
+        keys[gap] = FREE_KEY;
+        clearValue(gap);
+        return true;
+    }
+
+    /**
+     * Doubles the number of slots, moving every key and its value to its
+     * slot in the larger table.
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        Object oldValues = values();
+        keys = newKeys(oldKeys.length * 2);
+        createValues(keys.length + 1);
+        Object values = values();
+        int mask = keys.length - 1;
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            int key = oldKeys[oldSlot];
+            if (key != FREE_KEY) {
+                int slot = hash(key) & mask;
+                while (keys[slot] != FREE_KEY) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                System.arraycopy(oldValues, oldSlot, values, slot, 1);
+            }
+        }
+        System.arraycopy(oldValues, oldKeys.length, values, keys.length, 1);
+    }
+
+    /**
+     * Spreads the bits of a key, so that consecutive IDs do not fill
+     * neighbouring slots and form long runs.
+     *
+     * @param key The key being hashed.
+     * @return The hash of the key.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Finds the smallest power of two number of slots that can hold the
+     * given number of keys.
+     *
+     * @param expectedSize The number of keys expected.
+     * @return The number of slots.
+     */
+    private static int capacityFor(int expectedSize) {
+        int capacity = MINIMUM_CAPACITY;
+        while (expectedSize * 3 > capacity * 2) {
+            capacity *= 2;
+        }
+        return capacity;
+    }
+
+    /**
+     * Creates an array of empty key slots.
+     *
+     * @param capacity The number of slots.
+     * @return The array of keys.
+     */
+    private static int[] newKeys(int capacity) {
+        int[] keys = new int[capacity];
+        Arrays.fill(keys, FREE_KEY);
+        return keys;
+    }
+}
@@ -0,0 +1,84 @@
+package cycling;
+
+/**
+ * IntLongMap class. A map from primitive int keys to primitive long
+ * values, used for the times each stage adds to the riders' totals in
+ * the general classification. See {@link IntKeyTable} for how the keys
+ * are stored.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class IntLongMap extends IntKeyTable {
+
+    private long[] values;
+
+    /**
+     * Creates an empty map.
+     */
+    public IntLongMap() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty map with room for the given number of keys.
+     *
+     * @param expectedSize The number of keys expected.
+     */
+    public IntLongMap(int expectedSize) {
+        super(expectedSize);
+    }
+
+    /**
+     * Creates a copy of another map.
+     *
+     * @param other The map being copied.
+     */
+    public IntLongMap(IntLongMap other) {
+        super(other);
+        values = other.values.clone();
+    }
+
+    @Override
+    void createValues(int length) {
+        values = new long[length];
+    }
+
+    @Override
+    Object values() {
+        return values;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key          The key being enquired.
+     * @param defaultValue The value returned if the key is not in the map.
+     * @return The value of the key, or defaultValue.
+     */
+    public long getOrDefault(int key, long defaultValue) {
+        int slot = slotOf(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    /**
+     * GETTER method for the value held in a slot in use.
+     *
+     * @param slot The slot being enquired.
+     * @return The value in the slot.
+     */
+    public long valueAt(int slot) {
+        return values[slot];
+    }
+
+    /**
+     * Sets the value of a key, adding the key if it is not in the map.
+     *
+     * @param key   The key being set.
+     * @param value The value of the key.
+     */
+    public void put(int key, long value) {
+        int slot = insert(key);
+        values[slot] = value;
+    }
+}
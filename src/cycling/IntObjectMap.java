@@ -0,0 +1,80 @@
+package cycling;
+
+/**
+ * IntObjectMap class. A map from primitive int keys to objects, used for
+ * the riders' running totals in the general classification. See
+ * {@link IntKeyTable} for how the keys are stored.
+ *
+ * @param <V> The type of the values.
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class IntObjectMap<V> extends IntKeyTable {
+
+    private Object[] values;
+
+    /**
+     * Creates an empty map.
+     */
+    public IntObjectMap() {
+        this(0);
+    }
+
+    /**
+     * Creates an empty map with room for the given number of keys.
+     *
+     * @param expectedSize The number of keys expected.
+     */
+    public IntObjectMap(int expectedSize) {
+        super(expectedSize);
+    }
+
+    @Override
+    void createValues(int length) {
+        values = new Object[length];
+    }
+
+    @Override
+    Object values() {
+        return values;
+    }
+
+    @Override
+    void clearValue(int slot) {
+        values[slot] = null;
+    }
+
+    /**
+     * Gets the value of a key.
+     *
+     * @param key The key being enquired.
+     * @return The value of the key, or null if the key is not in the map.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        int slot = slotOf(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /**
+     * GETTER method for the value held in a slot in use.
+     *
+     * @param slot The slot being enquired.
+     * @return The value in the slot.
+     */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    /**
+     * Sets the value of a key, adding the key if it is not in the map.
+     *
+     * @param key   The key being set.
+     * @param value The value of the key.
+     */
+    public void put(int key, V value) {
+        int slot = insert(key);
+        values[slot] = value;
+    }
+}
@@ -0,0 +1,136 @@
+package cycling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram class. This class counts call durations in buckets
+ * whose width grows with the duration, in the manner of an HDR
+ * histogram, so that any percentile can be read back to within about 3%
+ * while recording a value costs a few shifts and one atomic increment.
+ * <p>
+ * Durations below 64 nanoseconds each have their own bucket. Above that,
+ * every power of two is split into 32 equal buckets, up to durations of
+ * about 18 minutes, and longer durations are counted in the last bucket.
+ * The histogram can be recorded into from many threads at once.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HIGHEST_BIT = 40;
+    private static final int BUCKET_COUNT = (HIGHEST_BIT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos The duration, in nanoseconds. Negative durations are
+     *              counted as zero.
+     */
+    void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        total.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * GETTER method for the number of durations recorded.
+     *
+     * @return The count.
+     */
+    long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * GETTER method for the sum of the durations recorded.
+     *
+     * @return The total, in nanoseconds.
+     */
+    long getTotal() {
+        return total.sum();
+    }
+
+    /**
+     * GETTER method for the longest duration recorded.
+     *
+     * @return The longest duration, in nanoseconds, or 0 if none.
+     */
+    long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Finds the duration that the given fraction of the recorded durations
+     * are no longer than. The answer is the top of the bucket it falls in,
+     * but never more than the longest duration recorded.
+     *
+     * @param fraction The fraction, from 0 to 1, such as 0.99.
+     * @return The duration, in nanoseconds, or 0 if none were recorded.
+     */
+    long getPercentile(double fraction) {
+        long[] counts = new long[BUCKET_COUNT];
+        long recorded = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts[bucket] = buckets.get(bucket);
+            recorded += counts[bucket];
+        }
+        if (recorded == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * recorded));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Finds the bucket a duration is counted in.
+     *
+     * @param value The duration, in nanoseconds, not negative.
+     * @return The index of the bucket.
+     */
+    static int bucketOf(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        if (shift > HIGHEST_BIT - SUB_BUCKET_BITS) {
+            return BUCKET_COUNT - 1;
+        }
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    /**
+     * Finds the longest duration counted in a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The duration, in nanoseconds.
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,334 @@
+package cycling;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * LegacyPortalFile class. This class reads the portals saved with Java
+ * serialisation, before binary snapshots (see {@link PortalSnapshot}),
+ * into a new CyclingPortalImpl.
+ * <p>
+ * Two layouts are read. Files saved by the original portal hold a list of
+ * the race, stage, checkpoint, rider and team HashMaps, in the original
+ * Race, Stage, Checkpoint, Rider and Team classes. Those classes have
+ * since changed, so their fields can no longer be read into the current
+ * classes. Each of them is instead read into a private class below with
+ * the same fields and serialVersionUID as the original, and the portal is
+ * then built from those, in the same way as a snapshot is read. Each
+ * rider's results are taken from the checkpoint times kept by the rider,
+ * as everything else the original classes saved was worked out from
+ * them.
+ * <p>
+ * Files saved by {@link CyclingPortalImpl#saveLegacyCyclingPortal(String)}
+ * hold the current classes, followed by the ID allocators, and are read
+ * as they are.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+final class LegacyPortalFile {
+
+    private static final Map<String, Class<?>> ORIGINAL_CLASSES = Map.of(
+            "cycling.Race", OriginalRace.class,
+            "cycling.Stage", OriginalStage.class,
+            "cycling.Checkpoint", OriginalCheckpoint.class,
+            "cycling.Rider", OriginalRider.class,
+            "cycling.Team", OriginalTeam.class);
+
+    private LegacyPortalFile() {
+    }
+
+    /**
+     * Reads a portal saved with Java serialisation into a new portal.
+     *
+     * @param filename Location of the file.
+     * @return A portal holding the contents of the file.
+     * @throws IOException            If the file cannot be read or is not a
+     *                                saved portal.
+     * @throws ClassNotFoundException If a class in the file cannot be
+     *                                found.
+     */
+    @SuppressWarnings("unchecked")
+    static CyclingPortalImpl read(String filename) throws IOException, ClassNotFoundException {
+        List<Object> saved;
+        try (ObjectInputStream in = new OriginalClassInputStream(new FileInputStream(filename))) {
+            saved = (List<Object>) in.readObject();
+        } catch (IOException ex) {
+            throw new IOException("File not recognised.");
+        }
+        try {
+            CyclingPortalImpl portal = new CyclingPortalImpl();
+            if (saved.size() == 5) {
+                readOriginal(portal, saved);
+                portal.restoreIdAllocators();
+            } else {
+                portal.races = (HashMap<Integer, Race>) saved.get(0);
+                portal.stages = (HashMap<Integer, Stage>) saved.get(1);
+                portal.checkpoints = (HashMap<Integer, Checkpoint>) saved.get(2);
+                portal.riders = (HashMap<Integer, Rider>) saved.get(3);
+                portal.teams = (HashMap<Integer, Team>) saved.get(4);
+                portal.raceIdAllocator = (IdAllocator) saved.get(5);
+                portal.stageIdAllocator = (IdAllocator) saved.get(6);
+                portal.checkpointIdAllocator = (IdAllocator) saved.get(7);
+                portal.riderIdAllocator = (IdAllocator) saved.get(8);
+                portal.teamIdAllocator = (IdAllocator) saved.get(9);
+            }
+            portal.rebuildIndexes();
+            return portal;
+        } catch (ClassCastException | IndexOutOfBoundsException | NullPointerException e) {
+            throw new IOException("File not recognised.");
+        }
+    }
+
+    /**
+     * Builds the contents of a portal from a file saved by the original
+     * portal. The ID allocators are left for the caller to restore. IDs
+     * kept in a list of an entity that no longer exists are skipped, as
+     * the original portal did not always remove them.
+     *
+     * @param portal The new portal being built.
+     * @param saved  The race, stage, checkpoint, rider and team HashMaps
+     *               read from the file.
+     * @throws IOException If a rider's times do not match the checkpoints
+     *                     of their stage.
+     */
+    @SuppressWarnings("unchecked")
+    private static void readOriginal(CyclingPortalImpl portal, List<Object> saved) throws IOException {
+        Map<Integer, OriginalRace> races = new TreeMap<>((Map<Integer, OriginalRace>) saved.get(0));
+        Map<Integer, OriginalStage> stages = (Map<Integer, OriginalStage>) saved.get(1);
+        Map<Integer, OriginalCheckpoint> checkpoints = (Map<Integer, OriginalCheckpoint>) saved.get(2);
+        Map<Integer, OriginalRider> riders = new TreeMap<>((Map<Integer, OriginalRider>) saved.get(3));
+        Map<Integer, OriginalTeam> teams = new TreeMap<>((Map<Integer, OriginalTeam>) saved.get(4));
+
+        for (OriginalTeam savedTeam : teams.values()) {
+            Team team = new Team(savedTeam.teamId, savedTeam.teamName, savedTeam.teamDescription);
+            portal.teams.put(team.getTeamID(), team);
+            for (int riderId : savedTeam.riderIds) {
+                OriginalRider savedRider = riders.get(riderId);
+                if (savedRider != null && savedRider.teamId == team.getTeamID()) {
+                    Rider rider = new Rider(riderId, team.getTeamID(), savedRider.name, savedRider.yearOfBirth);
+                    portal.riders.put(riderId, rider);
+                    team.addRider(riderId);
+                }
+            }
+        }
+
+        for (OriginalRace savedRace : races.values()) {
+            Race race = new Race(savedRace.raceId, savedRace.raceName, savedRace.raceDescription);
+            portal.races.put(race.getRaceID(), race);
+            for (int riderId : savedRace.riderIds) {
+                Rider rider = portal.riders.get(riderId);
+                if (rider != null && rider.addRace(race.getRaceID())) {
+                    race.addRider(riderId);
+                }
+            }
+            for (int stageId : savedRace.stageIds) {
+                OriginalStage savedStage = stages.get(stageId);
+                if (savedStage == null) {
+                    continue;
+                }
+                Stage stage = new Stage(stageId, race.getRaceID(), savedStage.stageName, savedStage.description,
+                        savedStage.length, savedStage.startTime, savedStage.type);
+                stage.setState(savedStage.state);
+                portal.stages.put(stageId, stage);
+                race.addStage(stageId);
+                for (int checkpointId : savedStage.checkpointIds) {
+                    OriginalCheckpoint savedCheckpoint = checkpoints.get(checkpointId);
+                    if (savedCheckpoint == null) {
+                        continue;
+                    }
+                    Checkpoint checkpoint = savedCheckpoint.type == null
+                            ? new Checkpoint(checkpointId, stageId, savedCheckpoint.location)
+                            : new Checkpoint(checkpointId, stageId, savedCheckpoint.location, savedCheckpoint.type,
+                            savedCheckpoint.length, savedCheckpoint.averageGradient);
+                    portal.checkpoints.put(checkpointId, checkpoint);
+                    stage.addCheckpointID(checkpointId);
+                }
+            }
+        }
+
+        for (OriginalRider savedRider : riders.values()) {
+            Rider rider = portal.riders.get(savedRider.riderId);
+            if (rider == null) {
+                continue;
+            }
+            for (Map.Entry<Integer, LocalTime[]> result : new TreeMap<>(savedRider.checkpointTimes).entrySet()) {
+                Stage stage = portal.stages.get(result.getKey());
+                if (stage == null) {
+                    continue;
+                } else if (result.getValue().length != stage.getCheckpointIDs().length + 2) {
+                    throw new IOException("File not recognised.");
+                }
+                if (rider.addRace(stage.getRaceID())) {
+                    portal.races.get(stage.getRaceID()).addRider(rider.getRiderID());
+                }
+                stage.addRiderResults(rider.getRiderID(), Times.toNanos(result.getValue()));
+            }
+        }
+    }
+
+    /**
+     * OriginalClassInputStream class. Reads the original Race, Stage,
+     * Checkpoint, Rider and Team classes into the classes below. A class
+     * is only treated as original if its serialVersionUID and fields match
+     * the original; any other version is read as itself.
+     *
+     * @author Edward Pratt, Alexander Hay
+     * @version 1.0
+     */
+    private static final class OriginalClassInputStream extends ObjectInputStream {
+
+        /**
+         * The constructor method for this class.
+         *
+         * @param in The stream the portal is read from.
+         * @throws IOException If the stream does not start like a
+         *                     serialised object.
+         */
+        private OriginalClassInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        /**
+         * Reads the description of a class, replacing it with the
+         * description of the matching class below if it describes one of
+         * the original classes.
+         *
+         * @return The description of the class the object is read into.
+         * @throws IOException            If the description cannot be read.
+         * @throws ClassNotFoundException If a class cannot be found.
+         */
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass descriptor = super.readClassDescriptor();
+            Class<?> original = ORIGINAL_CLASSES.get(descriptor.getName());
+            if (original == null) {
+                return descriptor;
+            }
+            ObjectStreamClass originalDescriptor = ObjectStreamClass.lookup(original);
+            if (descriptor.getSerialVersionUID() != originalDescriptor.getSerialVersionUID()
+                    || !sameFields(descriptor.getFields(), originalDescriptor.getFields())) {
+                return descriptor;
+            }
+            return originalDescriptor;
+        }
+
+        /**
+         * Checks whether two classes serialise the same fields, in the same
+         * order.
+         *
+         * @param fields         The fields of one class.
+         * @param originalFields The fields of the other.
+         * @return true if the names and types of the fields are the same.
+         */
+        private static boolean sameFields(ObjectStreamField[] fields, ObjectStreamField[] originalFields) {
+            if (fields.length != originalFields.length) {
+                return false;
+            }
+            for (int i = 0; i < fields.length; i++) {
+                if (!fields[i].getName().equals(originalFields[i].getName())
+                        || fields[i].getTypeCode() != originalFields[i].getTypeCode()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * OriginalRace class. The fields of the original Race class.
+     *
+     * @author Edward Pratt, Alexander Hay
+     * @version 1.0
+     */
+    private static final class OriginalRace implements Serializable {
+        private static final long serialVersionUID = 1684021285061567890L;
+        private int raceId;
+        private String raceName;
+        private String raceDescription;
+        private ArrayList<Integer> riderIds;
+        private ArrayList<Integer> stageIds;
+    }
+
+    /**
+     * OriginalStage class. The fields of the original Stage class.
+     *
+     * @author Edward Pratt, Alexander Hay
+     * @version 1.0
+     */
+    private static final class OriginalStage implements Serializable {
+        private static final long serialVersionUID = 931774159235413123L;
+        private int stageId;
+        private String stageName;
+        private String description;
+        private int raceId;
+        private Double length;
+        private String state;
+        private StageType type;
+        private LocalDateTime startTime;
+        private ArrayList<Integer> checkpointIds;
+        private HashMap<Integer, LocalTime> riderCompletionTimes;
+        private HashMap<Integer, LocalTime> riderAdjustedTimes;
+    }
+
+    /**
+     * OriginalCheckpoint class. The fields of the original Checkpoint
+     * class.
+     *
+     * @author Edward Pratt, Alexander Hay
+     * @version 1.0
+     */
+    private static final class OriginalCheckpoint implements Serializable {
+        private static final long serialVersionUID = -2226831103041387030L;
+        private int checkpointId;
+        private Double location;
+        private Double length;
+        private Double averageGradient;
+        private int stageId;
+        private CheckpointType type;
+        private HashMap<Integer, LocalTime> riderCompletionTimes;
+    }
+
+    /**
+     * OriginalRider class. The fields of the original Rider class.
+     *
+     * @author Edward Pratt, Alexander Hay
+     * @version 1.0
+     */
+    private static final class OriginalRider implements Serializable {
+        private static final long serialVersionUID = 2902826527081371204L;
+        private int riderId;
+        private String name;
+        private int yearOfBirth;
+        private int teamId;
+        private HashMap<Integer, Integer> stageResults;
+        private HashMap<Integer, Integer> checkpointResults;
+        private HashMap<Integer, LocalTime[]> checkpointTimes;
+    }
+
+    /**
+     * OriginalTeam class. The fields of the original Team class.
+     *
+     * @author Edward Pratt, Alexander Hay
+     * @version 1.0
+     */
+    private static final class OriginalTeam implements Serializable {
+        private static final long serialVersionUID = -3808221434351350437L;
+        private int teamId;
+        private String teamName;
+        private String teamDescription;
+        private ArrayList<Integer> riderIds;
+    }
+}
@@ -0,0 +1,480 @@
+package cycling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.*;
+
+/**
+ * MappedPortalArchive class. This class gives read-only access to a portal
+ * snapshot (see {@link PortalSnapshot}) by memory-mapping the file instead
+ * of loading it, so that an archive of many seasons can be opened almost
+ * instantly whatever its size.
+ * <p>
+ * Opening an archive only reads the index at the end of the snapshot.
+ * Races, stages and riders are only built from the file the first time
+ * they are asked for, and are then kept. Stage rankings and general
+ * classifications are worked out directly from the result columns in the
+ * mapped file, without building any entities at all. When the archive
+ * needs to be changed, {@link #load()} loads it into a full
+ * CyclingPortalImpl.
+ * <p>
+ * Only snapshots of version 2 or later can be mapped, as earlier versions
+ * have no index.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class MappedPortalArchive {
+
+    private static final int TRAILER_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final LinkedHashMap<Integer, Long> raceOffsets = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, ArrayList<Integer>> raceStageIds = new LinkedHashMap<>();
+    private final HashMap<Integer, StageEntry> stageEntries = new HashMap<>();
+    private final long teamsOffset;
+
+    private final HashMap<Integer, Race> races = new HashMap<>();
+    private final HashMap<Integer, Stage> stages = new HashMap<>();
+    private final HashMap<Integer, Rider> riders = new HashMap<>();
+    private final HashMap<Integer, Ranking> generalClassifications = new HashMap<>();
+    private HashMap<Integer, long[]> riderOffsets;
+
+    /**
+     * The position in the file and the details needed to rank a stage.
+     */
+    private static class StageEntry {
+        private final int raceId;
+        private final StageType type;
+        private final int offset;
+        private final int columnsOffset;
+
+        private StageEntry(int raceId, StageType type, int offset, int columnsOffset) {
+            this.raceId = raceId;
+            this.type = type;
+            this.offset = offset;
+            this.columnsOffset = columnsOffset;
+        }
+    }
+
+    /**
+     * The general classification of a race: the rider IDs in order and
+     * their total adjusted elapsed times.
+     */
+    private static class Ranking {
+        private final int[] riderIds;
+        private final long[] times;
+
+        private Ranking(int[] riderIds, long[] times) {
+            this.riderIds = riderIds;
+            this.times = times;
+        }
+    }
+
+    /**
+     * The constructor method for this class. Reads the snapshot's index.
+     *
+     * @param buffer The mapped snapshot.
+     * @throws IOException If the buffer is not a snapshot with an index.
+     */
+    private MappedPortalArchive(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < 2 * Integer.BYTES + TRAILER_SIZE || buffer.getInt(0) != PortalSnapshot.MAGIC
+                || buffer.getInt(buffer.limit() - Integer.BYTES) != PortalSnapshot.MAGIC) {
+            throw new IOException("File not recognised.");
+        } else if (buffer.getInt(Integer.BYTES) < 2 || buffer.getInt(Integer.BYTES) > PortalSnapshot.VERSION) {
+            throw new IOException("Snapshot version cannot be mapped.");
+        }
+        try {
+            PortalSnapshot.Reader index = reader(buffer.getLong(buffer.limit() - TRAILER_SIZE));
+            int raceCount = index.getInt();
+            for (int r = 0; r < raceCount; r++) {
+                int raceId = index.getInt();
+                raceOffsets.put(raceId, (long) offset(index.getLong()));
+                raceStageIds.put(raceId, new ArrayList<>());
+            }
+            int stageCount = index.getInt();
+            for (int s = 0; s < stageCount; s++) {
+                int stageId = index.getInt();
+                int raceId = index.getInt();
+                int type = index.getByte();
+                StageEntry entry = new StageEntry(raceId, type < 0 ? null : StageType.values()[type],
+                        offset(index.getLong()), offset(index.getLong()));
+                stageEntries.put(stageId, entry);
+                raceStageIds.get(raceId).add(stageId);
+            }
+            this.teamsOffset = offset(index.getLong());
+        } catch (RuntimeException e) {
+            throw new IOException("File not recognised.");
+        }
+    }
+
+    /**
+     * Opens a snapshot file as an archive. Positions in the mapped file
+     * are held as ints, so a snapshot of 2 GB or more cannot be mapped
+     * and must be loaded with {@link CyclingPortalImpl#loadCyclingPortal(String)}
+     * instead.
+     *
+     * @param filename Location of the snapshot.
+     * @return The archive.
+     * @throws IOException If the file cannot be mapped, is 2 GB or larger, or
+     *                     is not a snapshot with an index.
+     */
+    public static MappedPortalArchive open(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is " + channel.size() + " bytes; only snapshots smaller than 2 GB can be mapped.");
+            }
+            return new MappedPortalArchive(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Loads the whole archive into a portal that can be changed.
+     *
+     * @return A portal holding the contents of the archive.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    public CyclingPortalImpl load() throws IOException {
+        return PortalSnapshot.read(buffer.duplicate().position(0));
+    }
+
+    /**
+     * Get the races in the archive.
+     *
+     * @return An array of race IDs in the archive.
+     */
+    public int[] getRaceIds() {
+        return raceOffsets.keySet().stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Get the stages of a race, in the order they are held in the race.
+     *
+     * @param raceId The ID of the race being queried.
+     * @return An array of stage IDs.
+     * @throws IDNotRecognisedException If the ID does not match any race in the
+     *                                  archive.
+     */
+    public int[] getRaceStages(int raceId) throws IDNotRecognisedException {
+        ArrayList<Integer> stageIds = raceStageIds.get(raceId);
+        if (stageIds == null) {
+            throw new IDNotRecognisedException("Race ID does not exist.");
+        }
+        return stageIds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * GETTER method for a race, built from the file the first time it is
+     * asked for.
+     *
+     * @param raceId The ID of the race.
+     * @return The race.
+     * @throws IDNotRecognisedException If the ID does not match any race in the
+     *                                  archive.
+     */
+    public synchronized Race getRace(int raceId) throws IDNotRecognisedException {
+        Race race = races.get(raceId);
+        if (race == null) {
+            Long offset = raceOffsets.get(raceId);
+            if (offset == null) {
+                throw new IDNotRecognisedException("Race ID does not exist.");
+            }
+            try {
+                PortalSnapshot.Reader in = reader(offset);
+                race = new Race(in.getInt(), in.getString(), in.getString());
+                int riderCount = in.getInt();
+                for (int r = 0; r < riderCount; r++) {
+                    race.addRider(in.getInt());
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Archive is damaged.", e);
+            }
+            for (int stageId : raceStageIds.get(raceId)) {
+                race.addStage(stageId);
+            }
+            races.put(raceId, race);
+        }
+        return race;
+    }
+
+    /**
+     * GETTER method for a stage, built from the file the first time it is
+     * asked for. The stage holds its checkpoint IDs and the finish times of
+     * its riders.
+     *
+     * @param stageId The ID of the stage.
+     * @return The stage.
+     * @throws IDNotRecognisedException If the ID does not match any stage in the
+     *                                  archive.
+     */
+    public synchronized Stage getStage(int stageId) throws IDNotRecognisedException {
+        Stage stage = stages.get(stageId);
+        if (stage == null) {
+            StageEntry entry = stageEntry(stageId);
+            try {
+                PortalSnapshot.Reader in = reader(entry.offset);
+                in.getInt();
+                String name = in.getString();
+                String description = in.getString();
+                double length = in.getDouble();
+                long startSecond = in.getLong();
+                int startNano = in.getInt();
+                LocalDateTime startTime = startSecond == Long.MIN_VALUE ? null
+                        : LocalDateTime.ofEpochSecond(startSecond, startNano, ZoneOffset.UTC);
+                String state = in.getString();
+                in.getByte();
+                stage = new Stage(stageId, entry.raceId, name, description, length, startTime, entry.type);
+                stage.setState(state);
+                int checkpointCount = in.getInt();
+                for (int c = 0; c < checkpointCount; c++) {
+                    stage.addCheckpointID(in.getInt());
+                    in.skip(Double.BYTES + 1 + Double.BYTES + Double.BYTES);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Archive is damaged.", e);
+            }
+            int results = buffer.getInt(entry.columnsOffset);
+            int timesOffset = entry.columnsOffset + Integer.BYTES * (results + 1);
+            for (int i = 0; i < results; i++) {
+                stage.addCompletionTime(buffer.getInt(entry.columnsOffset + Integer.BYTES * (i + 1)),
+                        buffer.getLong(timesOffset + Long.BYTES * i));
+            }
+            stage.updateAdjustedTimes();
+            stages.put(stageId, stage);
+        }
+        return stage;
+    }
+
+    /**
+     * GETTER method for a rider, built from the file the first time it is
+     * asked for. The rider holds their name, year of birth and team, but
+     * not their results.
+     *
+     * @param riderId The ID of the rider.
+     * @return The rider.
+     * @throws IDNotRecognisedException If the ID does not match any rider in the
+     *                                  archive.
+     */
+    public synchronized Rider getRider(int riderId) throws IDNotRecognisedException {
+        Rider rider = riders.get(riderId);
+        if (rider == null) {
+            try {
+                if (riderOffsets == null) {
+                    riderOffsets = indexRiders();
+                }
+                long[] offset = riderOffsets.get(riderId);
+                if (offset == null) {
+                    throw new IDNotRecognisedException("Rider ID does not exist.");
+                }
+                PortalSnapshot.Reader in = reader(offset[0]);
+                rider = new Rider(in.getInt(), (int) offset[1], in.getString(), in.getInt());
+            } catch (IOException e) {
+                throw new IllegalStateException("Archive is damaged.", e);
+            }
+            riders.put(riderId, rider);
+        }
+        return rider;
+    }
+
+    /**
+     * Get the riders finished position in a stage, read straight from the
+     * stage's result columns.
+     *
+     * @param stageId The ID of the stage being queried.
+     * @return A list of riders ID sorted by their elapsed time.
+     * @throws IDNotRecognisedException If the ID does not match any stage in the
+     *                                  archive.
+     */
+    public int[] getRidersRankInStage(int stageId) throws IDNotRecognisedException {
+        int columnsOffset = stageEntry(stageId).columnsOffset;
+        int[] riderIds = new int[buffer.getInt(columnsOffset)];
+        for (int i = 0; i < riderIds.length; i++) {
+            riderIds[i] = buffer.getInt(columnsOffset + Integer.BYTES * (i + 1));
+        }
+        return riderIds;
+    }
+
+    /**
+     * Get the adjusted elapsed times of riders in a stage, worked out from
+     * the stage's result columns.
+     *
+     * @param stageId The ID of the stage being queried.
+     * @return The ranked list of adjusted elapsed times sorted by their finish
+     * time.
+     * @throws IDNotRecognisedException If the ID does not match any stage in the
+     *                                  archive.
+     */
+    public LocalTime[] getRankedAdjustedElapsedTimesInStage(int stageId) throws IDNotRecognisedException {
+        long[] adjustedTimes = adjustedTimes(stageEntry(stageId));
+        LocalTime[] times = new LocalTime[adjustedTimes.length];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = Times.toLocalTime(adjustedTimes[i]);
+        }
+        return times;
+    }
+
+    /**
+     * Get the general classification rank of riders in a race, worked out
+     * from the result columns of the race's stages.
+     *
+     * @param raceId The ID of the race being queried.
+     * @return A ranked list of riders' IDs sorted ascending by the sum of their
+     * adjusted elapsed times in all stages of the race.
+     * @throws IDNotRecognisedException If the ID does not match any race in the
+     *                                  archive.
+     */
+    public int[] getRidersGeneralClassificationRank(int raceId) throws IDNotRecognisedException {
+        return generalClassification(raceId).riderIds.clone();
+    }
+
+    /**
+     * Get the general classification times of riders in a race, worked out
+     * from the result columns of the race's stages.
+     *
+     * @param raceId The ID of the race being queried.
+     * @return A list of riders' times sorted by the sum of their adjusted elapsed
+     * times in all stages of the race.
+     * @throws IDNotRecognisedException If the ID does not match any race in the
+     *                                  archive.
+     */
+    public LocalTime[] getGeneralClassificationTimesInRace(int raceId) throws IDNotRecognisedException {
+        return Times.toLocalTimes(generalClassification(raceId).times);
+    }
+
+    /**
+     * Adds up the adjusted times of every rider in a race, and ranks them
+     * by total time, ties broken by rider ID. The archive cannot change,
+     * so each race is only ranked the first time it is asked for.
+     *
+     * @param raceId The ID of the race.
+     * @return The general classification of the race.
+     * @throws IDNotRecognisedException If the ID does not match any race in the
+     *                                  archive.
+     */
+    private synchronized Ranking generalClassification(int raceId) throws IDNotRecognisedException {
+        Ranking ranking = generalClassifications.get(raceId);
+        if (ranking == null) {
+            IntLongMap totals = new IntLongMap();
+            for (int riderId : getRace(raceId).getRiderIDs()) {
+                totals.put(riderId, 0);
+            }
+            for (int stageId : raceStageIds.get(raceId)) {
+                StageEntry entry = stageEntries.get(stageId);
+                long[] adjustedTimes = adjustedTimes(entry);
+                for (int i = 0; i < adjustedTimes.length; i++) {
+                    int riderId = buffer.getInt(entry.columnsOffset + Integer.BYTES * (i + 1));
+                    totals.put(riderId, totals.getOrDefault(riderId, 0) + adjustedTimes[i]);
+                }
+            }
+            RankTree order = new RankTree();
+            for (int slot = totals.nextSlot(0); slot >= 0; slot = totals.nextSlot(slot + 1)) {
+                order.add(totals.valueAt(slot), totals.keyAt(slot));
+            }
+            ranking = new Ranking(order.getRiderIDs(order.size()), order.getKeys(order.size()));
+            generalClassifications.put(raceId, ranking);
+        }
+        return ranking;
+    }
+
+    /**
+     * Works out the adjusted times of a stage in one sweep over its finish
+     * time column, in the same way as {@link Stage#updateAdjustedTimes()}.
+     *
+     * @param entry The stage.
+     * @return The adjusted times in nanoseconds, in finishing order.
+     */
+    private long[] adjustedTimes(StageEntry entry) {
+        int results = buffer.getInt(entry.columnsOffset);
+        int timesOffset = entry.columnsOffset + Integer.BYTES * (results + 1);
+        long[] adjustedTimes = new long[results];
+        long previousTime = 0;
+        long adjustedTime = 0;
+        for (int i = 0; i < results; i++) {
+            long riderTime = buffer.getLong(timesOffset + Long.BYTES * i);
+            adjustedTime = Times.adjustedTime(riderTime, previousTime, adjustedTime, entry.type != StageType.TT && i > 0);
+            adjustedTimes[i] = adjustedTime;
+            previousTime = riderTime;
+        }
+        return adjustedTimes;
+    }
+
+    /**
+     * Finds the position of every rider in the file by reading through the
+     * teams, which is done once, the first time a rider is asked for.
+     *
+     * @return The position and team ID of each rider, by rider ID.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    private HashMap<Integer, long[]> indexRiders() throws IOException {
+        HashMap<Integer, long[]> offsets = new HashMap<>();
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) teamsOffset);
+        PortalSnapshot.Reader in = new PortalSnapshot.Reader(view);
+        int teamCount = in.getInt();
+        for (int t = 0; t < teamCount; t++) {
+            int teamId = in.getInt();
+            in.getString();
+            in.getString();
+            int riderCount = in.getInt();
+            for (int r = 0; r < riderCount; r++) {
+                long offset = view.position();
+                int riderId = in.getInt();
+                in.getString();
+                in.getInt();
+                offsets.put(riderId, new long[]{offset, teamId});
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Finds the index entry of a stage.
+     *
+     * @param stageId The ID of the stage.
+     * @return The stage's index entry.
+     * @throws IDNotRecognisedException If the ID does not match any stage in the
+     *                                  archive.
+     */
+    private StageEntry stageEntry(int stageId) throws IDNotRecognisedException {
+        StageEntry entry = stageEntries.get(stageId);
+        if (entry == null) {
+            throw new IDNotRecognisedException("Stage ID does not exist.");
+        }
+        return entry;
+    }
+
+    /**
+     * Checks that a position read from the index lies inside the mapped
+     * file.
+     *
+     * @param offset The position read from the index.
+     * @return The position, as an int.
+     * @throws IOException If the position is outside the file.
+     */
+    private int offset(long offset) throws IOException {
+        if (offset < 0 || offset >= buffer.limit()) {
+            throw new IOException("File not recognised.");
+        }
+        return (int) offset;
+    }
+
+    /**
+     * Creates a reader starting at a position in the file.
+     *
+     * @param offset The position to start reading from.
+     * @return The reader.
+     */
+    private PortalSnapshot.Reader reader(long offset) {
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) offset);
+        return new PortalSnapshot.Reader(view);
+    }
+}
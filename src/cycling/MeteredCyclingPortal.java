@@ -0,0 +1,122 @@
+package cycling;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * MeteredCyclingPortal class. This class wraps any CyclingPortal so that
+ * every call made through it is reported to a {@link PortalMetrics}: how
+ * long the call took, and the exception it threw if it failed. The
+ * operation each call is reported under is the name of the method called,
+ * so the portal itself holds no metering code and the names cannot drift
+ * from the methods.
+ * <p>
+ * The wrapper implements the same interface as the portal it wraps:
+ * CyclingPortal, or ExtendedCyclingPortal for a portal that also records
+ * passings and stage results in batches, answers top-k and single rider
+ * queries and takes classification listeners, so that those calls are
+ * reported too. The calls are timed around the whole call of the wrapped
+ * portal, so for a ConcurrentCyclingPortalImpl the time spent waiting for
+ * its locks is included.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public final class MeteredCyclingPortal implements InvocationHandler {
+
+    private final CyclingPortal portal;
+    private final PortalMetrics metrics;
+
+    private MeteredCyclingPortal(CyclingPortal portal, PortalMetrics metrics) {
+        this.portal = portal;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Wraps a portal so that every call of a CyclingPortal method made
+     * through the wrapper is reported to the metrics. If the portal is a
+     * CyclingPortalImpl, the metrics are also set on it, so that its
+     * gauges are registered and failing classification listeners are
+     * reported.
+     *
+     * @param portal  The portal being wrapped.
+     * @param metrics The metrics the calls are reported to.
+     * @return A CyclingPortal that passes every call on to the portal.
+     * @throws IllegalArgumentException If the portal or the metrics are null.
+     */
+    public static CyclingPortal wrap(CyclingPortal portal, PortalMetrics metrics) {
+        return wrap(CyclingPortal.class, portal, metrics);
+    }
+
+    /**
+     * Wraps a portal so that every call of an ExtendedCyclingPortal method
+     * made through the wrapper is reported to the metrics, including
+     * registering stage results and passings, the top-k and single rider
+     * queries and adding or removing classification listeners. The
+     * metrics are set on the portal as by
+     * {@link #wrap(CyclingPortal, PortalMetrics)}.
+     *
+     * @param portal  The portal being wrapped.
+     * @param metrics The metrics the calls are reported to.
+     * @return An ExtendedCyclingPortal that passes every call on to the
+     * portal.
+     * @throws IllegalArgumentException If the portal or the metrics are null.
+     */
+    public static ExtendedCyclingPortal wrap(ExtendedCyclingPortal portal, PortalMetrics metrics) {
+        return wrap(ExtendedCyclingPortal.class, portal, metrics);
+    }
+
+    /**
+     * Creates the wrapper, implementing the given interface of the portal.
+     *
+     * @param type    The interface the wrapper implements.
+     * @param portal  The portal being wrapped.
+     * @param metrics The metrics the calls are reported to.
+     * @param <T>     The type of the interface.
+     * @return The wrapper.
+     * @throws IllegalArgumentException If the portal or the metrics are null.
+     */
+    private static <T extends CyclingPortal> T wrap(Class<T> type, T portal, PortalMetrics metrics) {
+        if (portal == null || metrics == null) {
+            throw new IllegalArgumentException("The portal and the metrics cannot be null.");
+        }
+        if (portal instanceof CyclingPortalImpl) {
+            ((CyclingPortalImpl) portal).setMetrics(metrics);
+        }
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+                new Class<?>[]{type}, new MeteredCyclingPortal(portal, metrics)));
+    }
+
+    /**
+     * Passes a call on to the wrapped portal, timing it and reporting it
+     * to the metrics along with any exception it throws. The methods of
+     * Object, such as toString, are passed on without being reported.
+     *
+     * @param proxy  The wrapper the call was made on.
+     * @param method The method called.
+     * @param args   The arguments of the call.
+     * @return The result of the call.
+     * @throws Throwable The exception thrown by the wrapped portal.
+     */
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(portal, args);
+        }
+        String operation = method.getName();
+        long start = System.nanoTime();
+        try {
+            return method.invoke(portal, args);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                metrics.recordException(operation, (Exception) cause);
+            }
+            throw cause;
+        } finally {
+            metrics.recordCall(operation, System.nanoTime() - start);
+        }
+    }
+}
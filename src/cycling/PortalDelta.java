@@ -0,0 +1,382 @@
+package cycling;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Set;
+
+/**
+ * PortalDelta class. This class saves only the parts of a
+ * CyclingPortalImpl that have changed since it was last saved, as a chain
+ * of delta files on top of a full snapshot (see {@link PortalSnapshot}),
+ * and loads a snapshot together with its chain.
+ * <p>
+ * During a stage race usually only one stage's results change between
+ * saves, so a delta holds just the teams, riders, races and stages that
+ * were created or changed, and the IDs of those that were removed. Saving
+ * a delta therefore takes time in proportion to the change rather than to
+ * the whole portal.
+ * <p>
+ * The deltas of a snapshot saved at "portal.snap" are "portal.snap.1",
+ * "portal.snap.2" and so on, and are applied in that order when the
+ * snapshot is loaded. Each delta holds the CRC32 checksum of the snapshot
+ * it was saved on top of. Saving a full snapshot deletes the old chain,
+ * and a delta left over from an older snapshot, for example by a crash
+ * part-way through that deletion, does not match the checksum and is
+ * ignored along with any deltas after it.
+ * <p>
+ * The file layout, in order, is:
+ * <pre>
+ * int magic, int version, int sequence, long snapshotChecksum
+ * int nextId x 5        (races, stages, checkpoints, riders, teams)
+ * int removed riders, riderIds..., then likewise teams, stages, races
+ * int teams,  then per team:  id, name, description
+ * int riders, then per rider: id, int teamId, name, int yearOfBirth
+ * int races,  then per race:  id, name, description, int riders,
+ *                             riderIds..., int stages, stageIds...
+ * int stages, then per stage: int raceId, int stageId, then the stage
+ *                             as it is written in a snapshot
+ * int magic
+ * </pre>
+ * A changed stage is always written whole, with its checkpoints and every
+ * result, and replaces the stage as it was. From version 2, the stages are
+ * written as in a version 4 snapshot, with the riders still out on them;
+ * version 1 deltas hold the stages as in a version 3 snapshot.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public final class PortalDelta {
+
+    static final int MAGIC = 0x43594344;
+    static final int VERSION = 2;
+
+    private PortalDelta() {
+    }
+
+    /**
+     * Gets the location of a delta in the chain of a snapshot.
+     *
+     * @param snapshot The location of the snapshot.
+     * @param sequence The position of the delta in the chain, from 1.
+     * @return The location of the delta.
+     */
+    static Path deltaPath(Path snapshot, int sequence) {
+        return snapshot.resolveSibling(snapshot.getFileName() + "." + sequence);
+    }
+
+    /**
+     * Writes the changes made to a portal since it was last saved as the
+     * next delta in the chain of a snapshot. The delta is written to a
+     * temporary file next to the target, which then replaces the target.
+     *
+     * @param portal           The portal being saved.
+     * @param snapshot         The location of the snapshot.
+     * @param sequence         The position of the delta in the chain, from 1.
+     * @param snapshotChecksum The CRC32 checksum of the snapshot.
+     * @throws IOException If the file cannot be written.
+     */
+    static void write(CyclingPortalImpl portal, Path snapshot, int sequence, long snapshotChecksum) throws IOException {
+        Path path = deltaPath(snapshot, sequence);
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            PortalSnapshot.Writer out = new PortalSnapshot.Writer(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(sequence);
+            out.putLong(snapshotChecksum);
+            out.putInt(portal.raceIdAllocator.getNextId());
+            out.putInt(portal.stageIdAllocator.getNextId());
+            out.putInt(portal.checkpointIdAllocator.getNextId());
+            out.putInt(portal.riderIdAllocator.getNextId());
+            out.putInt(portal.teamIdAllocator.getNextId());
+            putIds(out, portal.removedRiders);
+            putIds(out, portal.removedTeams);
+            putIds(out, portal.removedStages);
+            putIds(out, portal.removedRaces);
+
+            ArrayList<Team> changedTeams = new ArrayList<>();
+            for (int teamId : portal.changedTeams) {
+                if (portal.teams.containsKey(teamId)) {
+                    changedTeams.add(portal.teams.get(teamId));
+                }
+            }
+            out.putInt(changedTeams.size());
+            for (Team team : changedTeams) {
+                out.putInt(team.getTeamID());
+                out.putString(team.getTeamName());
+                out.putString(team.getTeamDescription());
+            }
+
+            ArrayList<Rider> changedRiders = new ArrayList<>();
+            for (int riderId : portal.changedRiders) {
+                if (portal.riders.containsKey(riderId)) {
+                    changedRiders.add(portal.riders.get(riderId));
+                }
+            }
+            out.putInt(changedRiders.size());
+            for (Rider rider : changedRiders) {
+                out.putInt(rider.getRiderID());
+                out.putInt(rider.getTeamID());
+                out.putString(rider.getName());
+                out.putInt(rider.getYearOfBirth());
+            }
+
+            ArrayList<Race> changedRaces = new ArrayList<>();
+            for (int raceId : portal.changedRaces) {
+                if (portal.races.containsKey(raceId)) {
+                    changedRaces.add(portal.races.get(raceId));
+                }
+            }
+            out.putInt(changedRaces.size());
+            for (Race race : changedRaces) {
+                out.putInt(race.getRaceID());
+                out.putString(race.getRaceName());
+                out.putString(race.getRaceDescription());
+                putIds(out, race.getRiderIDs());
+                putIds(out, race.getStageIDs());
+            }
+
+            ArrayList<Stage> changedStages = new ArrayList<>();
+            for (int stageId : portal.changedStages) {
+                if (portal.stages.containsKey(stageId)) {
+                    changedStages.add(portal.stages.get(stageId));
+                }
+            }
+            out.putInt(changedStages.size());
+            for (Stage stage : changedStages) {
+                out.putInt(stage.getRaceID());
+                out.putInt(stage.getStageID());
+                PortalSnapshot.writeStage(out, portal, stage);
+            }
+            out.putInt(MAGIC);
+            out.flush();
+            channel.force(false);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Deletes the deltas of a snapshot from a position in its chain onwards.
+     *
+     * @param snapshot The location of the snapshot.
+     * @param from     The position of the first delta deleted, from 1.
+     * @throws IOException If a delta cannot be deleted.
+     */
+    static void deleteChain(Path snapshot, int from) throws IOException {
+        for (int sequence = from; Files.deleteIfExists(deltaPath(snapshot, sequence)); sequence++) {
+            // keep deleting until the end of the chain
+        }
+    }
+
+    /**
+     * Reads a snapshot and applies its chain of deltas, into a new portal.
+     * The portal is set up so that its next delta continues the chain.
+     *
+     * @param snapshot The location of the snapshot.
+     * @return A portal holding the contents of the snapshot and its deltas.
+     * @throws IOException If a file cannot be read or is not a snapshot or
+     *                     delta of a supported version.
+     */
+    static CyclingPortalImpl readChain(Path snapshot) throws IOException {
+        CyclingPortalImpl portal = PortalSnapshot.read(snapshot);
+        long snapshotChecksum = 0;
+        int applied = 0;
+        if (Files.exists(deltaPath(snapshot, 1))) {
+            snapshotChecksum = PortalSnapshot.checksum(snapshot);
+            while (Files.exists(deltaPath(snapshot, applied + 1))
+                    && apply(deltaPath(snapshot, applied + 1), applied + 1, snapshotChecksum, portal)) {
+                applied++;
+            }
+            if (applied > 0) {
+                portal.rebuildIndexes();
+            }
+        }
+        portal.clearChanges();
+        portal.deltaBase = snapshot;
+        portal.deltaCount = applied;
+        portal.deltaBaseChecksum = applied > 0 ? snapshotChecksum : -1;
+        return portal;
+    }
+
+    /**
+     * Applies a delta to a portal. The portal's indexes must be rebuilt
+     * once every delta in the chain has been applied.
+     *
+     * @param path             The location of the delta.
+     * @param sequence         The position the delta should have in the chain.
+     * @param snapshotChecksum The CRC32 checksum of the snapshot.
+     * @param portal           The portal the delta is applied to.
+     * @return False, leaving the portal unchanged, if the delta belongs to
+     * another snapshot or another position in the chain.
+     * @throws IOException If the file cannot be read or is not a delta of a
+     *                     supported version.
+     */
+    private static boolean apply(Path path, int sequence, long snapshotChecksum, CyclingPortalImpl portal) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            PortalSnapshot.Reader in = new PortalSnapshot.Reader(channel);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("File not recognised.");
+            }
+            int version = in.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Delta version not supported.");
+            } else if (in.getInt() != sequence || in.getLong() != snapshotChecksum) {
+                return false;
+            }
+            try {
+                portal.raceIdAllocator.advancePast(in.getInt() - 1);
+                portal.stageIdAllocator.advancePast(in.getInt() - 1);
+                portal.checkpointIdAllocator.advancePast(in.getInt() - 1);
+                portal.riderIdAllocator.advancePast(in.getInt() - 1);
+                portal.teamIdAllocator.advancePast(in.getInt() - 1);
+                for (int riderId : getIds(in)) {
+                    if (portal.riders.containsKey(riderId)) {
+                        portal.deleteRider(riderId);
+                    }
+                }
+                for (int teamId : getIds(in)) {
+                    if (portal.teams.containsKey(teamId)) {
+                        portal.deleteTeam(teamId);
+                    }
+                }
+                for (int stageId : getIds(in)) {
+                    Stage stage = portal.stages.get(stageId);
+                    if (stage != null) {
+                        portal.races.get(stage.getRaceID()).deleteStage(stageId);
+                        portal.deleteStage(stage);
+                    }
+                }
+                for (int raceId : getIds(in)) {
+                    if (portal.races.containsKey(raceId)) {
+                        portal.deleteRace(raceId);
+                    }
+                }
+
+                int teamCount = in.getInt();
+                for (int t = 0; t < teamCount; t++) {
+                    Team team = new Team(in.getInt(), in.getString(), in.getString());
+                    Team previous = portal.teams.put(team.getTeamID(), team);
+                    if (previous != null) {
+                        for (int riderId : previous.getRiders()) {
+                            team.addRider(riderId);
+                        }
+                    }
+                }
+                int riderCount = in.getInt();
+                for (int r = 0; r < riderCount; r++) {
+                    int riderId = in.getInt();
+                    Rider rider = new Rider(riderId, in.getInt(), in.getString(), in.getInt());
+                    Team team = PortalSnapshot.known(portal.teams.get(rider.getTeamID()));
+                    Rider previous = portal.riders.put(riderId, rider);
+                    if (previous != null) {
+                        for (int raceId : previous.getRaceIDs()) {
+                            rider.addRace(raceId);
+                        }
+                        Team previousTeam = portal.teams.get(previous.getTeamID());
+                        if (previousTeam != null) {
+                            previousTeam.deleteRider(riderId);
+                        }
+                    }
+                    team.addRider(riderId);
+                }
+
+                int raceCount = in.getInt();
+                Race[] changedRaces = new Race[raceCount];
+                int[][] stageOrders = new int[raceCount][];
+                for (int r = 0; r < raceCount; r++) {
+                    Race race = new Race(in.getInt(), in.getString(), in.getString());
+                    Race previous = portal.races.put(race.getRaceID(), race);
+                    if (previous == null) {
+                        portal.generalClassifications.put(race.getRaceID(), new GeneralClassification());
+                    } else {
+                        for (int riderId : previous.getRiderIDs()) {
+                            race.addRider(riderId);
+                        }
+                        for (int stageId : previous.getStageIDs()) {
+                            race.addStage(stageId);
+                        }
+                    }
+                    for (int riderId : getIds(in)) {
+                        if (PortalSnapshot.known(portal.riders.get(riderId)).addRace(race.getRaceID())) {
+                            race.addRider(riderId);
+                        }
+                    }
+                    changedRaces[r] = race;
+                    stageOrders[r] = getIds(in);
+                }
+
+                int stageCount = in.getInt();
+                for (int s = 0; s < stageCount; s++) {
+                    Race race = PortalSnapshot.known(portal.races.get(in.getInt()));
+                    Stage stage = portal.stages.get(in.getInt());
+                    if (stage != null) {
+                        race.deleteStage(stage.getStageID());
+                        portal.deleteStage(stage);
+                    }
+                    PortalSnapshot.readStage(in, portal, race, version >= 2 ? PortalSnapshot.VERSION : 3);
+                }
+                for (int r = 0; r < raceCount; r++) {
+                    for (int stageId : changedRaces[r].getStageIDs()) {
+                        changedRaces[r].deleteStage(stageId);
+                    }
+                    for (int stageId : stageOrders[r]) {
+                        changedRaces[r].addStage(stageId);
+                    }
+                }
+                if (in.getInt() != MAGIC) {
+                    throw new IOException("File not recognised.");
+                }
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IOException("File not recognised.");
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes a set of IDs, preceded by their number.
+     *
+     * @param out The delta being written.
+     * @param ids The IDs.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void putIds(PortalSnapshot.Writer out, Set<Integer> ids) throws IOException {
+        out.putInt(ids.size());
+        for (int id : ids) {
+            out.putInt(id);
+        }
+    }
+
+    /**
+     * Writes an array of IDs, preceded by their number.
+     *
+     * @param out The delta being written.
+     * @param ids The IDs.
+     * @throws IOException If the file cannot be written.
+     */
+    private static void putIds(PortalSnapshot.Writer out, int[] ids) throws IOException {
+        out.putInt(ids.length);
+        for (int id : ids) {
+            out.putInt(id);
+        }
+    }
+
+    /**
+     * Reads IDs written by putIds.
+     *
+     * @param in The delta being read.
+     * @return The IDs.
+     * @throws IOException If the file cannot be read.
+     */
+    private static int[] getIds(PortalSnapshot.Reader in) throws IOException {
+        int[] ids = new int[in.getInt()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = in.getInt();
+        }
+        return ids;
+    }
+}
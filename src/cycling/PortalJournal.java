@@ -0,0 +1,616 @@
+package cycling;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * PortalJournal class. This class is an append-only journal of the calls
+ * that change a CyclingPortalImpl, so that no result is lost if the
+ * program stops between two full saves.
+ * <p>
+ * Each change is checked, then written to the journal as one record, and
+ * only made to the portal once the record is on disk, so a change that
+ * cannot be journalled is not made at all. Writing a record to disk means
+ * forcing the file, which is slow, so calls that finish at the same time
+ * share a single force: the first caller to need one writes out every
+ * record appended so far, and the others wait for it instead of forcing
+ * the file again.
+ * <p>
+ * After a crash, the portal is recovered by loading the last snapshot
+ * and replaying the journal on top of it. Compaction writes a new
+ * snapshot and starts an empty journal. Each journal has a generation,
+ * stored in its header and in the header of the snapshot it continues
+ * from, so that a journal that has already been folded into a snapshot is
+ * never replayed again.
+ * <p>
+ * The file starts with an int magic number, an int version and a long
+ * generation. Each record is an int length, the record itself (a byte
+ * for the call, then its arguments) and an int CRC32 of the record. A
+ * record that is cut short or fails its checksum marks the end of the
+ * journal, as it can only have been left by a crash part-way through a
+ * write.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class PortalJournal implements Closeable {
+
+    static final int MAGIC = 0x4359434A;
+    static final int VERSION = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+
+    static final byte CREATE_RACE = 1;
+    static final byte REMOVE_RACE = 2;
+    static final byte REMOVE_RACE_BY_NAME = 3;
+    static final byte ADD_STAGE = 4;
+    static final byte REMOVE_STAGE = 5;
+    static final byte ADD_CLIMB = 6;
+    static final byte ADD_SPRINT = 7;
+    static final byte REMOVE_CHECKPOINT = 8;
+    static final byte CONCLUDE_STAGE = 9;
+    static final byte CREATE_TEAM = 10;
+    static final byte REMOVE_TEAM = 11;
+    static final byte CREATE_RIDER = 12;
+    static final byte REMOVE_RIDER = 13;
+    static final byte REGISTER_RESULTS = 14;
+    static final byte REGISTER_STAGE_RESULTS = 15;
+    static final byte DELETE_RESULTS = 16;
+    static final byte ERASE = 17;
+    static final byte REGISTER_PASSING = 18;
+
+    /**
+     * Writes the arguments of a call to a record.
+     */
+    interface Payload {
+
+        /**
+         * Writes the arguments.
+         *
+         * @param out The record being written.
+         * @throws IOException If the record cannot be written.
+         */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private final Path path;
+    private FileChannel channel;
+    private long generation;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition forced = lock.newCondition();
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream();
+    private final DataOutputStream recordOut = new DataOutputStream(record);
+    private final CRC32 checksum = new CRC32();
+    private long appended;
+    private long synced;
+    private long forces;
+    private boolean forcing;
+    private IOException failure;
+
+    /**
+     * The constructor method for this class.
+     *
+     * @param path       The location of the journal.
+     * @param channel    The journal file, positioned at its end.
+     * @param generation The generation of the journal.
+     */
+    private PortalJournal(Path path, FileChannel channel, long generation) {
+        this.path = path;
+        this.channel = channel;
+        this.generation = generation;
+    }
+
+    /**
+     * Opens the journal that continues from a snapshot, replaying it into
+     * the portal first. A journal from an older generation, which has
+     * already been folded into the snapshot, and a missing journal are
+     * both replaced by an empty one. A damaged record at the end of the
+     * journal is cut off.
+     *
+     * @param path       The location of the journal.
+     * @param generation The journal generation of the snapshot the portal
+     *                   was loaded from.
+     * @param portal     The portal the journal is replayed into. It must
+     *                   not be journalling while it is replayed into.
+     * @return The journal, ready for new records.
+     * @throws IOException If the journal cannot be read or written, is newer
+     *                     than the snapshot or does not match it.
+     */
+    static PortalJournal recover(Path path, long generation, CyclingPortalImpl portal) throws IOException {
+        if (Files.exists(path)) {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                long journalGeneration = readHeader(channel);
+                if (journalGeneration > generation) {
+                    throw new IOException("Journal is newer than the snapshot.");
+                } else if (journalGeneration == generation) {
+                    long end = replay(channel, portal);
+                    channel.truncate(end);
+                    channel.position(end);
+                    return new PortalJournal(path, channel, generation);
+                }
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            channel.close();
+        }
+        return new PortalJournal(path, create(path, generation), generation);
+    }
+
+    /**
+     * Creates an empty journal, replacing any journal already there.
+     *
+     * @param path       The location of the journal.
+     * @param generation The generation of the new journal.
+     * @return The journal file, positioned at its end.
+     * @throws IOException If the journal cannot be written.
+     */
+    private static FileChannel create(Path path, long generation) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(generation).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    /**
+     * Reads the header of a journal.
+     *
+     * @param channel The journal file.
+     * @return The generation of the journal.
+     * @throws IOException If the file is not a journal.
+     */
+    private static long readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+            throw new IOException("File not recognised.");
+        } else if (header.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Journal version not supported.");
+        }
+        return header.getLong(2 * Integer.BYTES);
+    }
+
+    /**
+     * Replays every complete record of a journal into a portal.
+     *
+     * @param channel The journal file.
+     * @param portal  The portal the records are replayed into.
+     * @return The position just after the last complete record.
+     * @throws IOException If the journal cannot be read or a record cannot be
+     *                     replayed.
+     */
+    private static long replay(FileChannel channel, CyclingPortalImpl portal) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel.position(HEADER_SIZE)), 1 << 16));
+        long end = HEADER_SIZE;
+        CRC32 checksum = new CRC32();
+        while (true) {
+            byte[] body;
+            try {
+                int length = in.readInt();
+                if (length <= 0 || length > channel.size() - end) {
+                    return end;
+                }
+                body = new byte[length];
+                in.readFully(body);
+                checksum.reset();
+                checksum.update(body);
+                if (in.readInt() != (int) checksum.getValue()) {
+                    return end;
+                }
+            } catch (EOFException e) {
+                return end;
+            }
+            try {
+                apply(new DataInputStream(new ByteArrayInputStream(body)), portal);
+            } catch (Exception e) {
+                throw new IOException("Journal does not match the snapshot.", e);
+            }
+            end += Integer.BYTES + body.length + Integer.BYTES;
+        }
+    }
+
+    /**
+     * Makes the call recorded in a record.
+     *
+     * @param in     The record.
+     * @param portal The portal the call is made on.
+     * @throws Exception If the call fails, or does not give the ID it gave
+     *                   when it was recorded.
+     */
+    private static void apply(DataInputStream in, CyclingPortalImpl portal) throws Exception {
+        byte operation = in.readByte();
+        switch (operation) {
+            case CREATE_RACE:
+                checkId(portal.createRace(readString(in), readString(in)), in);
+                break;
+            case REMOVE_RACE:
+                portal.removeRaceById(in.readInt());
+                break;
+            case REMOVE_RACE_BY_NAME:
+                portal.removeRaceByName(readString(in));
+                break;
+            case ADD_STAGE:
+                checkId(portal.addStageToRace(in.readInt(), readString(in), readString(in), in.readDouble(),
+                        readDateTime(in), readEnum(in, StageType.values())), in);
+                break;
+            case REMOVE_STAGE:
+                portal.removeStageById(in.readInt());
+                break;
+            case ADD_CLIMB:
+                checkId(portal.addCategorizedClimbToStage(in.readInt(), readDouble(in),
+                        readEnum(in, CheckpointType.values()), readDouble(in), readDouble(in)), in);
+                break;
+            case ADD_SPRINT:
+                checkId(portal.addIntermediateSprintToStage(in.readInt(), in.readDouble()), in);
+                break;
+            case REMOVE_CHECKPOINT:
+                portal.removeCheckpoint(in.readInt());
+                break;
+            case CONCLUDE_STAGE:
+                portal.concludeStagePreparation(in.readInt());
+                break;
+            case CREATE_TEAM:
+                checkId(portal.createTeam(readString(in), readString(in)), in);
+                break;
+            case REMOVE_TEAM:
+                portal.removeTeam(in.readInt());
+                break;
+            case CREATE_RIDER:
+                checkId(portal.createRider(in.readInt(), readString(in), in.readInt()), in);
+                break;
+            case REMOVE_RIDER:
+                portal.removeRider(in.readInt());
+                break;
+            case REGISTER_RESULTS:
+                portal.registerRiderResultsInStage(in.readInt(), in.readInt(), readTimes(in));
+                break;
+            case REGISTER_STAGE_RESULTS: {
+                int stageId = in.readInt();
+                int count = in.readInt();
+                Map<Integer, LocalTime[]> results = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    results.put(in.readInt(), readTimes(in));
+                }
+                portal.registerStageResults(stageId, results);
+                break;
+            }
+            case DELETE_RESULTS:
+                portal.deleteRiderResultsInStage(in.readInt(), in.readInt());
+                break;
+            case ERASE:
+                portal.eraseCyclingPortal();
+                break;
+            case REGISTER_PASSING:
+                portal.registerRiderPassing(in.readInt(), in.readInt(), in.readInt(), LocalTime.ofNanoOfDay(in.readLong()));
+                break;
+            default:
+                throw new IOException("Journal record not recognised.");
+        }
+    }
+
+    /**
+     * Appends a record to the journal. The record is not on disk until
+     * {@link #commit(long)} has been called with the returned number.
+     *
+     * @param operation The call being recorded.
+     * @param payload   Writes the arguments of the call.
+     * @return The sequence number of the record.
+     * @throws IOException If the journal has failed or been closed.
+     */
+    long append(byte operation, Payload payload) throws IOException {
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw failure;
+            } else if (channel == null) {
+                throw new IOException("Journal is closed.");
+            }
+            record.reset();
+            recordOut.writeByte(operation);
+            payload.write(recordOut);
+            checksum.reset();
+            checksum.update(record.toByteArray());
+            DataOutputStream out = new DataOutputStream(pending);
+            out.writeInt(record.size());
+            record.writeTo(out);
+            out.writeInt((int) checksum.getValue());
+            return ++appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until a record, and every record before it, is on disk. If no
+     * other caller is already writing the journal out, this caller writes
+     * out every record appended so far and forces the file once for all of
+     * them.
+     *
+     * @param sequence The sequence number of the record.
+     * @throws IOException If the journal cannot be written.
+     */
+    void commit(long sequence) throws IOException {
+        lock.lock();
+        try {
+            while (synced < sequence) {
+                if (failure != null) {
+                    throw failure;
+                } else if (forcing) {
+                    forced.awaitUninterruptibly();
+                    continue;
+                }
+                forcing = true;
+                ByteBuffer batch = ByteBuffer.wrap(pending.toByteArray());
+                pending.reset();
+                long batchEnd = appended;
+                IOException writeFailure = null;
+                lock.unlock();
+                try {
+                    while (batch.hasRemaining()) {
+                        channel.write(batch);
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    writeFailure = e;
+                } finally {
+                    lock.lock();
+                }
+                forcing = false;
+                if (writeFailure != null) {
+                    failure = writeFailure;
+                } else {
+                    synced = batchEnd;
+                    forces++;
+                }
+                forced.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the journal with an empty one of the given generation, once
+     * a snapshot of that generation holding everything in this journal has
+     * been written. No records may be appended while this runs.
+     *
+     * @param newGeneration The generation of the new journal.
+     * @throws IOException If the new journal cannot be written.
+     */
+    void restart(long newGeneration) throws IOException {
+        lock.lock();
+        try {
+            channel.close();
+            channel = create(path, newGeneration);
+            generation = newGeneration;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * GETTER method for the generation of the journal.
+     *
+     * @return The generation.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * GETTER method for the number of records written to the journal since
+     * it was opened.
+     *
+     * @return The number of records.
+     */
+    public long getRecordCount() {
+        lock.lock();
+        try {
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * GETTER method for the number of times the journal has been forced to
+     * disk since it was opened. With several callers committing at once,
+     * this is lower than the number of records.
+     *
+     * @return The number of forces.
+     */
+    public long getForceCount() {
+        lock.lock();
+        try {
+            return forces;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the journal file. Records already committed are on disk.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks that a replayed call gave the ID it gave when it was recorded.
+     *
+     * @param id The ID given by the replayed call.
+     * @param in The record, positioned at the recorded ID.
+     * @throws IOException If the IDs differ.
+     */
+    private static void checkId(int id, DataInputStream in) throws IOException {
+        if (id != in.readInt()) {
+            throw new IOException("Journal does not match the snapshot.");
+        }
+    }
+
+    /**
+     * Writes a string that may be null.
+     *
+     * @param out   The record being written.
+     * @param value The string.
+     * @throws IOException If the record cannot be written.
+     */
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    /**
+     * Reads a string written by {@link #writeString}.
+     *
+     * @param in The record being read.
+     * @return The string.
+     * @throws IOException If the record is cut short.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    /**
+     * Writes a double that may be null.
+     *
+     * @param out   The record being written.
+     * @param value The double.
+     * @throws IOException If the record cannot be written.
+     */
+    static void writeDouble(DataOutputStream out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    /**
+     * Reads a double written by {@link #writeDouble}.
+     *
+     * @param in The record being read.
+     * @return The double.
+     * @throws IOException If the record is cut short.
+     */
+    private static Double readDouble(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    /**
+     * Writes an enum constant that may be null, as its ordinal.
+     *
+     * @param out   The record being written.
+     * @param value The constant.
+     * @throws IOException If the record cannot be written.
+     */
+    static void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+        out.writeByte(value == null ? -1 : value.ordinal());
+    }
+
+    /**
+     * Reads an enum constant written by {@link #writeEnum}.
+     *
+     * @param in     The record being read.
+     * @param values The constants of the enum.
+     * @param <E>    The enum.
+     * @return The constant.
+     * @throws IOException If the record is cut short.
+     */
+    private static <E> E readEnum(DataInputStream in, E[] values) throws IOException {
+        int ordinal = in.readByte();
+        return ordinal < 0 ? null : values[ordinal];
+    }
+
+    /**
+     * Writes a date and time that may be null.
+     *
+     * @param out   The record being written.
+     * @param value The date and time.
+     * @throws IOException If the record cannot be written.
+     */
+    static void writeDateTime(DataOutputStream out, LocalDateTime value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeLong(value.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(value.getNano());
+        }
+    }
+
+    /**
+     * Reads a date and time written by {@link #writeDateTime}.
+     *
+     * @param in The record being read.
+     * @return The date and time.
+     * @throws IOException If the record is cut short.
+     */
+    private static LocalDateTime readDateTime(DataInputStream in) throws IOException {
+        return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+    }
+
+    /**
+     * Writes a rider's times in a stage.
+     *
+     * @param out   The record being written.
+     * @param times The times.
+     * @throws IOException If the record cannot be written.
+     */
+    static void writeTimes(DataOutputStream out, LocalTime[] times) throws IOException {
+        out.writeInt(times.length);
+        for (LocalTime time : times) {
+            out.writeLong(time.toNanoOfDay());
+        }
+    }
+
+    /**
+     * Reads a rider's times written by {@link #writeTimes}.
+     *
+     * @param in The record being read.
+     * @return The times.
+     * @throws IOException If the record is cut short.
+     */
+    private static LocalTime[] readTimes(DataInputStream in) throws IOException {
+        LocalTime[] times = new LocalTime[in.readInt()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = LocalTime.ofNanoOfDay(in.readLong());
+        }
+        return times;
+    }
+}
@@ -0,0 +1,66 @@
+package cycling;
+
+import java.util.function.LongSupplier;
+
+/**
+ * The PortalMetrics interface. A {@link MeteredCyclingPortal} reports
+ * every call of the portal it wraps to a PortalMetrics: how long the call
+ * took, and the exception it threw if it failed. A CyclingPortalImpl also
+ * registers gauges for the number of races, stages, checkpoints, teams
+ * and riders it holds, which are read whenever the metrics are exported.
+ * <p>
+ * Calls are reported on the thread that made them, so an implementation
+ * used with a ConcurrentCyclingPortalImpl must be thread-safe, and it
+ * should be quick, as it is on the path of every call. {@link #NONE}
+ * discards everything and is used until other metrics are set;
+ * {@link PortalMetricsRegistry} keeps them in memory and exports them as
+ * text.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public interface PortalMetrics {
+
+    /**
+     * Metrics that record nothing.
+     */
+    PortalMetrics NONE = new PortalMetrics() {
+        @Override
+        public void recordCall(String operation, long nanos) {
+        }
+
+        @Override
+        public void recordException(String operation, Exception exception) {
+        }
+
+        @Override
+        public void registerGauge(String name, LongSupplier value) {
+        }
+    };
+
+    /**
+     * Records one call of a portal method, whether it returned or threw.
+     *
+     * @param operation The name of the method called.
+     * @param nanos     How long the call took, in nanoseconds.
+     */
+    void recordCall(String operation, long nanos);
+
+    /**
+     * Records that a call of a portal method threw an exception. The call
+     * itself is recorded by {@link #recordCall(String, long)} as well.
+     *
+     * @param operation The name of the method called.
+     * @param exception The exception thrown.
+     */
+    void recordException(String operation, Exception exception);
+
+    /**
+     * Registers a value to be read whenever the metrics are exported,
+     * replacing any registered before under the same name.
+     *
+     * @param name  The name of the value, such as "races".
+     * @param value Reads the current value.
+     */
+    void registerGauge(String name, LongSupplier value);
+}
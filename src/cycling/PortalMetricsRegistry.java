@@ -0,0 +1,198 @@
+package cycling;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * PortalMetricsRegistry class. This class keeps the metrics of a portal
+ * in memory: for each portal method, a latency histogram of its calls
+ * (which also gives the number of calls) and the number of exceptions it
+ * threw of each type, along with the registered gauges.
+ * <p>
+ * The metrics can be exported at any time as a text snapshot in the
+ * Prometheus text format, for example to be written to a file or a log,
+ * without any network service. Latencies are exported in seconds as the
+ * 50th, 90th, 99th and 99.9th percentiles, the count, the sum and the
+ * maximum of each method's calls.
+ * <p>
+ * Recording a call costs a hash lookup, a few shifts and some atomic
+ * increments, so the registry can be left on. It can be used by many
+ * threads at once.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class PortalMetricsRegistry implements PortalMetrics {
+
+    private static final String PREFIX = "cycling_portal_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final ConcurrentHashMap<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, LongAdder>> exceptions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public void recordCall(String operation, long nanos) {
+        LatencyHistogram histogram = latencies.get(operation);
+        if (histogram == null) {
+            histogram = latencies.computeIfAbsent(operation, name -> new LatencyHistogram());
+        }
+        histogram.record(nanos);
+    }
+
+    @Override
+    public void recordException(String operation, Exception exception) {
+        exceptions.computeIfAbsent(operation, name -> new ConcurrentHashMap<>())
+                .computeIfAbsent(exception.getClass().getSimpleName(), name -> new LongAdder())
+                .increment();
+    }
+
+    @Override
+    public void registerGauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * GETTER method for the number of calls of a portal method.
+     *
+     * @param operation The name of the method.
+     * @return The number of calls recorded, including those that threw.
+     */
+    public long getCallCount(String operation) {
+        LatencyHistogram histogram = latencies.get(operation);
+        return histogram == null ? 0 : histogram.getCount();
+    }
+
+    /**
+     * GETTER method for the number of exceptions of one type thrown by a
+     * portal method.
+     *
+     * @param operation     The name of the method.
+     * @param exceptionType The simple class name of the exception, such as
+     *                      "IDNotRecognisedException".
+     * @return The number of exceptions recorded.
+     */
+    public long getExceptionCount(String operation, String exceptionType) {
+        Map<String, LongAdder> counts = exceptions.get(operation);
+        LongAdder count = counts == null ? null : counts.get(exceptionType);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * GETTER method for a latency percentile of a portal method's calls.
+     *
+     * @param operation The name of the method.
+     * @param fraction  The fraction of calls, from 0 to 1, such as 0.99.
+     * @return The latency that fraction of the calls took no longer than,
+     * in nanoseconds, or 0 if the method has not been called.
+     */
+    public long getLatencyPercentile(String operation, double fraction) {
+        LatencyHistogram histogram = latencies.get(operation);
+        return histogram == null ? 0 : histogram.getPercentile(fraction);
+    }
+
+    /**
+     * GETTER method for the current value of a gauge.
+     *
+     * @param name The name the gauge was registered under.
+     * @return The value, or 0 if there is no such gauge.
+     */
+    public long getGauge(String name) {
+        LongSupplier gauge = gauges.get(name);
+        return gauge == null ? 0 : gauge.getAsLong();
+    }
+
+    /**
+     * Forgets every call and exception recorded so far. The gauges are
+     * kept.
+     */
+    public void reset() {
+        latencies.clear();
+        exceptions.clear();
+    }
+
+    /**
+     * Exports the metrics as a text snapshot.
+     *
+     * @return The metrics in the Prometheus text format.
+     */
+    public String getSnapshot() {
+        StringWriter out = new StringWriter();
+        try {
+            writeSnapshot(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes the metrics as a text snapshot, with the gauges, methods and
+     * exception types each in name order.
+     *
+     * @param out Where the snapshot is written.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public void writeSnapshot(Writer out) throws IOException {
+        for (Map.Entry<String, LongSupplier> gauge : new TreeMap<>(gauges).entrySet()) {
+            String name = PREFIX + gauge.getKey();
+            out.write("# TYPE " + name + " gauge\n");
+            out.write(name + " " + gauge.getValue().getAsLong() + "\n");
+        }
+
+        Map<String, LatencyHistogram> sortedLatencies = new TreeMap<>(latencies);
+        out.write("# TYPE " + PREFIX + "calls_total counter\n");
+        for (Map.Entry<String, LatencyHistogram> latency : sortedLatencies.entrySet()) {
+            out.write(PREFIX + "calls_total" + label(latency.getKey()) + " " + latency.getValue().getCount() + "\n");
+        }
+        out.write("# TYPE " + PREFIX + "call_seconds summary\n");
+        for (Map.Entry<String, LatencyHistogram> latency : sortedLatencies.entrySet()) {
+            String operation = latency.getKey();
+            LatencyHistogram histogram = latency.getValue();
+            for (double quantile : QUANTILES) {
+                out.write(PREFIX + "call_seconds{operation=\"" + operation + "\",quantile=\"" + quantile + "\"} "
+                        + seconds(histogram.getPercentile(quantile)) + "\n");
+            }
+            out.write(PREFIX + "call_seconds_count" + label(operation) + " " + histogram.getCount() + "\n");
+            out.write(PREFIX + "call_seconds_sum" + label(operation) + " " + seconds(histogram.getTotal()) + "\n");
+            out.write(PREFIX + "call_seconds_max" + label(operation) + " " + seconds(histogram.getMax()) + "\n");
+        }
+
+        out.write("# TYPE " + PREFIX + "exceptions_total counter\n");
+        for (Map.Entry<String, ConcurrentHashMap<String, LongAdder>> operation : new TreeMap<>(exceptions).entrySet()) {
+            for (Map.Entry<String, LongAdder> count : new TreeMap<>(operation.getValue()).entrySet()) {
+                out.write(PREFIX + "exceptions_total{operation=\"" + operation.getKey() + "\",exception=\""
+                        + count.getKey() + "\"} " + count.getValue().sum() + "\n");
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Formats the label naming a portal method.
+     *
+     * @param operation The name of the method.
+     * @return The label, in braces.
+     */
+    private static String label(String operation) {
+        return "{operation=\"" + operation + "\"}";
+    }
+
+    /**
+     * Formats a duration in seconds.
+     *
+     * @param nanos The duration, in nanoseconds.
+     * @return The duration in seconds, to the nanosecond.
+     */
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
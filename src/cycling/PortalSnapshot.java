@@ -0,0 +1,683 @@
+package cycling;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * PortalSnapshot class. This class saves and loads the contents of a
+ * CyclingPortalImpl in a compact, versioned binary format, written and
+ * read through NIO channels.
+ * <p>
+ * Only the data entered into the portal is stored: the teams and their
+ * riders, the races and their stages and checkpoints, and each rider's
+ * checkpoint times. IDs are stored as ints and times as compact
+ * differences (see below). Everything that can be worked out from the results (finish
+ * times, adjusted times, ranks, points and classifications) is rebuilt
+ * when the snapshot is loaded, so it never has to be written.
+ * <p>
+ * The file layout, in order, is:
+ * <pre>
+ * int magic, int version
+ * long journalGeneration  (from version 3)
+ * int nextId x 5        (races, stages, checkpoints, riders, teams)
+ * int teams,  then per team:  id, name, description, int riders,
+ *                             then per rider: id, name, int yearOfBirth
+ * int races,  then per race:  id, name, description, int riders, riderIds,
+ *                             int stages, then per stage:
+ *                             id, name, description, double length,
+ *                             startTime, state, byte type, int checkpoints,
+ *                             then per checkpoint: id, double location,
+ *                             byte type, double length, double gradient,
+ *                             then int results, byte time unit,
+ *                             then per result: var riderId, var times,
+ *                             var time deltas...,
+ *                             then int results, int riderIds...,
+ *                             long finishTimes...,
+ *                             then int riders out on the stage,
+ *                             then per rider: var riderId,
+ *                             var times...
+ * index                       int races, then per race: id, long offset,
+ *                             int stages, then per stage: id, raceId,
+ *                             byte type, long offset, long columnsOffset,
+ *                             long teamsOffset
+ * long indexOffset, int magic
+ * </pre>
+ * Strings are an int byte count (-1 for null) followed by UTF-8 bytes.
+ * Values marked var are variable-length: seven bits per byte, with the top
+ * bit set on every byte but the last, and signed values zig-zag encoded.
+ * A rider's times are written as the difference from the previous time
+ * (the first from midnight), in whole seconds if every time in the stage
+ * is a whole second and in nanoseconds otherwise, so most times take
+ * only two or three bytes.
+ * <p>
+ * From version 2, each stage also ends with two fixed-width columns: the
+ * IDs of the riders in finishing order and their finish (elapsed) times
+ * in nanoseconds. The index at the end of the file gives the position of
+ * every race and stage. Together they let {@link MappedPortalArchive}
+ * open a snapshot without reading it and answer ranking queries straight
+ * from the mapped file. Loading a snapshot skips both. Version 1
+ * snapshots can still be loaded.
+ * <p>
+ * From version 3, the header also holds the generation of the journal
+ * (see {@link PortalJournal}) that continues from the snapshot, so that a
+ * journal already folded into the snapshot is never replayed again.
+ * <p>
+ * From version 4, each stage ends with the times of the riders still out
+ * on it, who have passed some of the points of the stage but have no
+ * result yet (see {@link CyclingPortalImpl#registerRiderPassing}). Each
+ * rider has one time per point of the stage, in nanoseconds of the day,
+ * or -1 for a point they have not passed.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public final class PortalSnapshot {
+
+    static final int MAGIC = 0x43594350;
+    static final int VERSION = 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int SECONDS = 0;
+    private static final int NANOS = 1;
+
+    private PortalSnapshot() {
+    }
+
+    /**
+     * Checks whether a file starts like a snapshot written by this class.
+     *
+     * @param path The location of the file.
+     * @return True if the file starts with the snapshot magic number.
+     * @throws IOException If the file cannot be read.
+     */
+    public static boolean isSnapshot(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(4);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the magic number is complete
+            }
+            return !header.hasRemaining() && header.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Reads the journal generation of a snapshot.
+     *
+     * @param path The location of the snapshot.
+     * @return The journal generation, or 0 for snapshots older than
+     * version 3.
+     * @throws IOException If the file cannot be read or is not a snapshot.
+     */
+    public static long readJournalGeneration(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Reader in = new Reader(channel);
+            if (in.getInt() != MAGIC) {
+                throw new IOException("File not recognised.");
+            }
+            return in.getInt() >= 3 ? in.getLong() : 0;
+        }
+    }
+
+    /**
+     * Writes a snapshot of a portal that is not followed by a journal.
+     *
+     * @param portal The portal being saved.
+     * @param path   The location of the snapshot.
+     * @return The CRC32 checksum of the snapshot.
+     * @throws IOException If the file cannot be written.
+     */
+    public static long write(CyclingPortalImpl portal, Path path) throws IOException {
+        return write(portal, path, 0);
+    }
+
+    /**
+     * Writes a snapshot of a portal. The snapshot is written to a temporary
+     * file next to the target, which then replaces the target, so an
+     * existing snapshot is never left half overwritten.
+     *
+     * @param portal            The portal being saved.
+     * @param path              The location of the snapshot.
+     * @param journalGeneration The generation of the journal that continues
+     *                          from this snapshot.
+     * @return The CRC32 checksum of the snapshot, which identifies it to the
+     * deltas saved on top of it (see {@link PortalDelta}).
+     * @throws IOException If the file cannot be written.
+     */
+    public static long write(CyclingPortalImpl portal, Path path, long journalGeneration) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long checksum;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Writer out = new Writer(channel);
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putLong(journalGeneration);
+            out.putInt(portal.raceIdAllocator.getNextId());
+            out.putInt(portal.stageIdAllocator.getNextId());
+            out.putInt(portal.checkpointIdAllocator.getNextId());
+            out.putInt(portal.riderIdAllocator.getNextId());
+            out.putInt(portal.teamIdAllocator.getNextId());
+
+            long teamsOffset = out.position();
+            out.putInt(portal.teams.size());
+            for (Team team : portal.teams.values()) {
+                out.putInt(team.getTeamID());
+                out.putString(team.getTeamName());
+                out.putString(team.getTeamDescription());
+                int[] riderIds = team.getRiders();
+                out.putInt(riderIds.length);
+                for (int riderId : riderIds) {
+                    Rider rider = portal.riders.get(riderId);
+                    out.putInt(riderId);
+                    out.putString(rider.getName());
+                    out.putInt(rider.getYearOfBirth());
+                }
+            }
+
+            ArrayList<long[]> raceIndex = new ArrayList<>();
+            ArrayList<long[]> stageIndex = new ArrayList<>();
+            out.putInt(portal.races.size());
+            for (Race race : portal.races.values()) {
+                raceIndex.add(new long[]{race.getRaceID(), out.position()});
+                out.putInt(race.getRaceID());
+                out.putString(race.getRaceName());
+                out.putString(race.getRaceDescription());
+                int[] riderIds = race.getRiderIDs();
+                out.putInt(riderIds.length);
+                for (int riderId : riderIds) {
+                    out.putInt(riderId);
+                }
+                int[] stageIds = race.getStageIDs();
+                out.putInt(stageIds.length);
+                for (int stageId : stageIds) {
+                    Stage stage = portal.stages.get(stageId);
+                    long offset = out.position();
+                    long columnsOffset = writeStage(out, portal, stage);
+                    stageIndex.add(new long[]{stageId, race.getRaceID(),
+                            stage.getStageType() == null ? -1 : stage.getStageType().ordinal(), offset, columnsOffset});
+                }
+            }
+
+            long indexOffset = out.position();
+            out.putInt(raceIndex.size());
+            for (long[] entry : raceIndex) {
+                out.putInt((int) entry[0]);
+                out.putLong(entry[1]);
+            }
+            out.putInt(stageIndex.size());
+            for (long[] entry : stageIndex) {
+                out.putInt((int) entry[0]);
+                out.putInt((int) entry[1]);
+                out.putByte((int) entry[2]);
+                out.putLong(entry[3]);
+                out.putLong(entry[4]);
+            }
+            out.putLong(teamsOffset);
+            out.putLong(indexOffset);
+            out.putInt(MAGIC);
+            out.flush();
+            channel.force(false);
+            checksum = out.getChecksum();
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return checksum;
+    }
+
+    /**
+     * Works out the CRC32 checksum of a whole file, as returned by
+     * {@link #write(CyclingPortalImpl, Path, long)} for a snapshot.
+     *
+     * @param path The location of the file.
+     * @return The checksum.
+     * @throws IOException If the file cannot be read.
+     */
+    static long checksum(Path path) throws IOException {
+        CRC32 checksum = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                checksum.update(buffer);
+                buffer.clear();
+            }
+        }
+        return checksum.getValue();
+    }
+
+    /**
+     * Writes a stage, its checkpoints and its results.
+     *
+     * @param out    The snapshot being written.
+     * @param portal The portal being saved.
+     * @param stage  The stage being written.
+     * @return The position of the stage's result columns in the file.
+     * @throws IOException If the file cannot be written.
+     */
+    static long writeStage(Writer out, CyclingPortalImpl portal, Stage stage) throws IOException {
+        out.putInt(stage.getStageID());
+        out.putString(stage.getStageName());
+        out.putString(stage.getDescription());
+        out.putDouble(stage.getLength());
+        LocalDateTime startTime = stage.getStartTime();
+        out.putLong(startTime == null ? Long.MIN_VALUE : startTime.toEpochSecond(ZoneOffset.UTC));
+        out.putInt(startTime == null ? 0 : startTime.getNano());
+        out.putString(stage.getState());
+        out.putByte(stage.getStageType() == null ? -1 : stage.getStageType().ordinal());
+        int[] checkpointIds = stage.getCheckpointIDs();
+        out.putInt(checkpointIds.length);
+        for (int checkpointId : checkpointIds) {
+            Checkpoint checkpoint = portal.checkpoints.get(checkpointId);
+            out.putInt(checkpointId);
+            out.putDouble(checkpoint.getLocation());
+            out.putByte(checkpoint.getType() == null ? -1 : checkpoint.getType().ordinal());
+            out.putDouble(checkpoint.getLength());
+            out.putDouble(checkpoint.getAverageGradient());
+        }
+        int[] riderIds = stage.getRiderIDs();
+        long[][] riderTimes = new long[riderIds.length][];
+        long unit = NANOS_PER_SECOND;
+        for (int i = 0; i < riderIds.length; i++) {
+            riderTimes[i] = stage.getRiderTimes(riderIds[i]);
+            for (long time : riderTimes[i]) {
+                if (time % NANOS_PER_SECOND != 0) {
+                    unit = 1;
+                }
+            }
+        }
+        out.putInt(riderIds.length);
+        out.putByte(unit == 1 ? NANOS : SECONDS);
+        for (int i = 0; i < riderIds.length; i++) {
+            out.putVarLong(riderIds[i]);
+            out.putVarLong(riderTimes[i].length);
+            long previous = 0;
+            for (long time : riderTimes[i]) {
+                long current = time / unit;
+                out.putVarLong(current - previous);
+                previous = current;
+            }
+        }
+
+        long columnsOffset = out.position();
+        int[] rankedRiderIds = stage.calculateRidersRankInStage();
+        out.putInt(rankedRiderIds.length);
+        for (int riderId : rankedRiderIds) {
+            out.putInt(riderId);
+        }
+        for (int riderId : rankedRiderIds) {
+            out.putLong(stage.getRiderCompletionNanos(riderId));
+        }
+
+        int[] passingRiderIds = stage.getRidersOnStage();
+        out.putInt(passingRiderIds.length);
+        for (int riderId : passingRiderIds) {
+            out.putVarLong(riderId);
+            for (long time : stage.getRiderPassings(riderId)) {
+                out.putVarLong(time);
+            }
+        }
+        return columnsOffset;
+    }
+
+    /**
+     * Reads a snapshot into a new portal.
+     *
+     * @param path The location of the snapshot.
+     * @return A portal holding the contents of the snapshot.
+     * @throws IOException If the file cannot be read or is not a snapshot
+     *                     of a supported version.
+     */
+    public static CyclingPortalImpl read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(new Reader(channel));
+        }
+    }
+
+    /**
+     * Reads a snapshot held in a buffer, such as a mapped file, into a new
+     * portal.
+     *
+     * @param buffer The snapshot, from its first byte.
+     * @return A portal holding the contents of the snapshot.
+     * @throws IOException If the buffer is not a snapshot of a supported
+     *                     version.
+     */
+    public static CyclingPortalImpl read(ByteBuffer buffer) throws IOException {
+        return read(new Reader(buffer));
+    }
+
+    /**
+     * Reads a snapshot into a new portal.
+     *
+     * @param in The snapshot being read.
+     * @return A portal holding the contents of the snapshot.
+     * @throws IOException If the snapshot cannot be read or is not of a
+     *                     supported version.
+     */
+    private static CyclingPortalImpl read(Reader in) throws IOException {
+        if (in.getInt() != MAGIC) {
+            throw new IOException("File not recognised.");
+        }
+        int version = in.getInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Snapshot version not supported.");
+        } else if (version >= 3) {
+            in.getLong();
+        }
+        CyclingPortalImpl portal = new CyclingPortalImpl();
+        try {
+            portal.raceIdAllocator.advancePast(in.getInt() - 1);
+            portal.stageIdAllocator.advancePast(in.getInt() - 1);
+            portal.checkpointIdAllocator.advancePast(in.getInt() - 1);
+            portal.riderIdAllocator.advancePast(in.getInt() - 1);
+            portal.teamIdAllocator.advancePast(in.getInt() - 1);
+
+            int teamCount = in.getInt();
+            for (int t = 0; t < teamCount; t++) {
+                Team team = new Team(in.getInt(), in.getString(), in.getString());
+                portal.teams.put(team.getTeamID(), team);
+                int riderCount = in.getInt();
+                for (int r = 0; r < riderCount; r++) {
+                    Rider rider = new Rider(in.getInt(), team.getTeamID(), in.getString(), in.getInt());
+                    portal.riders.put(rider.getRiderID(), rider);
+                    team.addRider(rider.getRiderID());
+                }
+            }
+
+            int raceCount = in.getInt();
+            for (int r = 0; r < raceCount; r++) {
+                Race race = new Race(in.getInt(), in.getString(), in.getString());
+                portal.races.put(race.getRaceID(), race);
+                int riderCount = in.getInt();
+                for (int i = 0; i < riderCount; i++) {
+                    Rider rider = known(portal.riders.get(in.getInt()));
+                    rider.addRace(race.getRaceID());
+                    race.addRider(rider.getRiderID());
+                }
+                int stageCount = in.getInt();
+                for (int s = 0; s < stageCount; s++) {
+                    readStage(in, portal, race, version);
+                }
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IOException("File not recognised.");
+        }
+        portal.rebuildIndexes();
+        return portal;
+    }
+
+    /**
+     * Reads a stage, its checkpoints and its results.
+     *
+     * @param in      The snapshot being read.
+     * @param portal  The portal being loaded.
+     * @param race    The race the stage is in.
+     * @param version The version of the snapshot.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    static void readStage(Reader in, CyclingPortalImpl portal, Race race, int version) throws IOException {
+        int stageId = in.getInt();
+        String name = in.getString();
+        String description = in.getString();
+        double length = in.getDouble();
+        long startSecond = in.getLong();
+        int startNano = in.getInt();
+        LocalDateTime startTime = startSecond == Long.MIN_VALUE ? null
+                : LocalDateTime.ofEpochSecond(startSecond, startNano, ZoneOffset.UTC);
+        String state = in.getString();
+        int type = in.getByte();
+        Stage stage = new Stage(stageId, race.getRaceID(), name, description, length, startTime,
+                type < 0 ? null : StageType.values()[type]);
+        stage.setState(state);
+        portal.stages.put(stageId, stage);
+        race.addStage(stageId);
+
+        int checkpointCount = in.getInt();
+        for (int c = 0; c < checkpointCount; c++) {
+            int checkpointId = in.getInt();
+            double location = in.getDouble();
+            int checkpointType = in.getByte();
+            double checkpointLength = in.getDouble();
+            double averageGradient = in.getDouble();
+            Checkpoint checkpoint = checkpointType < 0
+                    ? new Checkpoint(checkpointId, stageId, location)
+                    : new Checkpoint(checkpointId, stageId, location, CheckpointType.values()[checkpointType], checkpointLength, averageGradient);
+            portal.checkpoints.put(checkpointId, checkpoint);
+            stage.addCheckpointID(checkpointId);
+        }
+
+        int resultCount = in.getInt();
+        long unit = in.getByte() == NANOS ? 1 : NANOS_PER_SECOND;
+        for (int r = 0; r < resultCount; r++) {
+            Rider rider = known(portal.riders.get((int) in.getVarLong()));
+            long[] times = new long[(int) in.getVarLong()];
+            long time = 0;
+            for (int t = 0; t < times.length; t++) {
+                time += in.getVarLong();
+                times[t] = time * unit;
+            }
+            portal.addStageTimes(stage, rider, times);
+        }
+        if (version >= 2) {
+            in.skip((long) in.getInt() * (Integer.BYTES + Long.BYTES));
+        }
+        if (version >= 4) {
+            int passingCount = in.getInt();
+            for (int r = 0; r < passingCount; r++) {
+                int riderId = (int) in.getVarLong();
+                for (int position = 0; position < checkpointCount + 2; position++) {
+                    long time = in.getVarLong();
+                    if (time != StagePassings.NOT_PASSED) {
+                        stage.recordPassing(riderId, position, time);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that an ID read from a file refers to something already read.
+     *
+     * @param entity The race, team or rider found for the ID, or null.
+     * @param <T>    The type of the entity.
+     * @return The entity.
+     * @throws IOException If the ID is not known, as the file is corrupt.
+     */
+    static <T> T known(T entity) throws IOException {
+        if (entity == null) {
+            throw new IOException("File not recognised.");
+        }
+        return entity;
+    }
+
+    /**
+     * Writes primitive values to a channel through a reusable buffer,
+     * keeping a checksum of everything written.
+     */
+    static class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32 checksum = new CRC32();
+        private long flushed;
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                flushed += channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        long position() {
+            return flushed + buffer.position();
+        }
+
+        long getChecksum() {
+            return checksum.getValue();
+        }
+
+        void putByte(int value) throws IOException {
+            ensure(1);
+            buffer.put((byte) value);
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putVarLong(long value) throws IOException {
+            ensure(10);
+            long zigZag = (value << 1) ^ (value >> 63);
+            while ((zigZag & ~0x7FL) != 0) {
+                buffer.put((byte) ((zigZag & 0x7F) | 0x80));
+                zigZag >>>= 7;
+            }
+            buffer.put((byte) zigZag);
+        }
+
+        void putDouble(Double value) throws IOException {
+            ensure(8);
+            buffer.putDouble(value == null ? 0.0 : value);
+        }
+
+        void putString(String value) throws IOException {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            int written = 0;
+            while (written < bytes.length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), bytes.length - written);
+                buffer.put(bytes, written, chunk);
+                written += chunk;
+            }
+        }
+    }
+
+    /**
+     * Reads primitive values from a buffer, refilling it from a channel if
+     * there is one.
+     */
+    static class Reader {
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buffer;
+
+        Reader(ReadableByteChannel channel) {
+            this.channel = channel;
+            this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            buffer.limit(0);
+        }
+
+        Reader(ByteBuffer buffer) {
+            this.channel = null;
+            this.buffer = buffer;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes || channel == null) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    throw new EOFException("File not recognised.");
+                }
+            }
+            buffer.flip();
+        }
+
+        int getByte() throws IOException {
+            ensure(1);
+            return buffer.get();
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return buffer.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return buffer.getLong();
+        }
+
+        void skip(long bytes) throws IOException {
+            while (bytes > 0) {
+                ensure(1);
+                int chunk = (int) Math.min(buffer.remaining(), bytes);
+                if (chunk == 0) {
+                    throw new EOFException("File not recognised.");
+                }
+                buffer.position(buffer.position() + chunk);
+                bytes -= chunk;
+            }
+        }
+
+        long getVarLong() throws IOException {
+            long zigZag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                ensure(1);
+                byte b = buffer.get();
+                zigZag |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return (zigZag >>> 1) ^ -(zigZag & 1);
+                }
+            }
+            throw new IOException("File not recognised.");
+        }
+
+        double getDouble() throws IOException {
+            ensure(8);
+            return buffer.getDouble();
+        }
+
+        String getString() throws IOException {
+            int length = getInt();
+            if (length < 0) {
+                return null;
+            }
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                ensure(1);
+                int chunk = Math.min(buffer.remaining(), length - read);
+                if (chunk == 0) {
+                    throw new EOFException("File not recognised.");
+                }
+                buffer.get(bytes, read, chunk);
+                read += chunk;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
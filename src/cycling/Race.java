@@ -2,7 +2,6 @@ package cycling;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Race class. This class manages all the races within CyclingPortal
@@ -21,23 +20,22 @@ public class Race implements Serializable {
     private final ArrayList<Integer> riderIds;
     private final ArrayList<Integer> stageIds;
 
-    static private final AtomicInteger currentId = new AtomicInteger(0);
-
     /**
      * The constructor method for this class. Instantiates and initialises
      * all the non-static variables of this class.
      *
+     * @param raceId          The ID of the race.
      * @param raceName        The name of the race.
      * @param raceDescription The description of the race.
      */
-    public Race(String raceName, String raceDescription) {
+    public Race(int raceId, String raceName, String raceDescription) {
         this.raceName = "";
         this.raceDescription = "";
         this.raceName = raceName;
         this.raceDescription = raceDescription;
         this.riderIds = new ArrayList<Integer>();
         this.stageIds = new ArrayList<Integer>();
-        this.raceId = currentId.getAndIncrement();
+        this.raceId = raceId;
     }
 
     /**
@@ -141,7 +139,7 @@ public class Race implements Serializable {
      *                removed from the list.
      */
     public void deleteStage(int stageId) {
-        stageIds.remove(stageId);
+        stageIds.remove(Integer.valueOf(stageId));
     }
 
     /**
@@ -165,14 +163,6 @@ public class Race implements Serializable {
      *                participating in the race.
      */
     public void deleteRider(int riderId) {
-        riderIds.remove(riderId);
-    }
-
-    /**
-     * Method that resets the ID counter. The ID counter creates
-     * a new ID for every single new rider that is created.
-     */
-    static public void atomicReset() {
-        currentId.set(0);
+        riderIds.remove(Integer.valueOf(riderId));
     }
 }
@@ -0,0 +1,85 @@
+package cycling;
+
+import java.time.LocalTime;
+
+/**
+ * RankChange class. This class describes how one rider has moved in a
+ * ranking: their position before and after the change, and their new
+ * time or points.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public final class RankChange {
+
+    private final int riderId;
+    private final int oldPosition;
+    private final int newPosition;
+    private final long value;
+
+    /**
+     * The constructor method for this class.
+     *
+     * @param riderId     The ID of the rider.
+     * @param oldPosition The rider's position before the change, starting
+     *                    from 1, or -1 if they were not ranked.
+     * @param newPosition The rider's position after the change, starting
+     *                    from 1, or -1 if they are no longer ranked.
+     * @param value       The rider's new time, in nanoseconds, or points.
+     */
+    RankChange(int riderId, int oldPosition, int newPosition, long value) {
+        this.riderId = riderId;
+        this.oldPosition = oldPosition;
+        this.newPosition = newPosition;
+        this.value = value;
+    }
+
+    /**
+     * GETTER method for the ID of the rider who has moved.
+     *
+     * @return The ID of the rider.
+     */
+    public int getRiderID() {
+        return riderId;
+    }
+
+    /**
+     * GETTER method for the rider's position before the change.
+     *
+     * @return The position, starting from 1, or -1 if the rider was not
+     * ranked.
+     */
+    public int getOldPosition() {
+        return oldPosition;
+    }
+
+    /**
+     * GETTER method for the rider's position after the change.
+     *
+     * @return The position, starting from 1, or -1 if the rider is no
+     * longer ranked.
+     */
+    public int getNewPosition() {
+        return newPosition;
+    }
+
+    /**
+     * GETTER method for the rider's new value in the ranking: their time
+     * in nanoseconds in the stage, checkpoint and general rankings, and
+     * their points in the points and mountain classifications.
+     *
+     * @return The new value, or 0 if the rider is no longer ranked.
+     */
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * GETTER method for the rider's new time in a ranking by time.
+     *
+     * @return The new time, or null if the rider is no longer ranked.
+     */
+    public LocalTime getTime() {
+        return newPosition < 0 ? null : Times.toLocalTime(value);
+    }
+}
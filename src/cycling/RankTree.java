@@ -0,0 +1,383 @@
+package cycling;
+
+import java.util.Arrays;
+
+/**
+ * RankTree class. This class is an order-statistic tree of riders, each
+ * with a long key such as a time or a points total, ordered by key and
+ * then by rider ID. Every node counts the riders below it, so a rider's
+ * position can be found by walking down the tree, in O(log n) time, and
+ * adding, removing or moving a rider takes O(log n) time as well.
+ * <p>
+ * The tree is a treap: a binary search tree whose nodes also have a
+ * random priority and are kept in heap order by it, which keeps the
+ * tree balanced on average. The nodes are kept in primitive arrays, like
+ * the columns of StageResults, and removed nodes are reused. Node 0 is
+ * an empty marker that every missing child points to.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+final class RankTree {
+
+    private static final int NIL = 0;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] riderIds;
+    private int[] left;
+    private int[] right;
+    private int[] sizes;
+    private int[] priorities;
+    private int root = NIL;
+    private int nodeCount = 1;
+    private int freeList = NIL;
+    private int seed = 0x2545F491;
+    private int splitLess;
+    private int splitRest;
+    private boolean removed;
+
+    /**
+     * The constructor method of this class, creating an empty tree.
+     */
+    RankTree() {
+        keys = new long[INITIAL_CAPACITY];
+        riderIds = new int[INITIAL_CAPACITY];
+        left = new int[INITIAL_CAPACITY];
+        right = new int[INITIAL_CAPACITY];
+        sizes = new int[INITIAL_CAPACITY];
+        priorities = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * GETTER method for the number of riders in the tree.
+     *
+     * @return The number of riders.
+     */
+    int size() {
+        return sizes[root];
+    }
+
+    /**
+     * Removes every rider from the tree.
+     */
+    void clear() {
+        root = NIL;
+        nodeCount = 1;
+        freeList = NIL;
+    }
+
+    /**
+     * Adds a rider to the tree. The rider must not already be in it with
+     * the same key.
+     *
+     * @param key     The rider's key.
+     * @param riderId The ID of the rider.
+     */
+    void add(long key, int riderId) {
+        int node = newNode(key, riderId);
+        split(root, key, riderId);
+        int rest = splitRest;
+        root = merge(merge(splitLess, node), rest);
+    }
+
+    /**
+     * Removes a rider from the tree.
+     *
+     * @param key     The rider's key, as it was added.
+     * @param riderId The ID of the rider.
+     * @return true if the rider was in the tree with that key.
+     */
+    boolean remove(long key, int riderId) {
+        removed = false;
+        root = remove(root, key, riderId);
+        return removed;
+    }
+
+    /**
+     * Counts the riders ordered before a key and rider ID, whether or not
+     * that rider is in the tree. A rider's position, starting from 1, is
+     * one more than the count for their own key and ID.
+     *
+     * @param key     The key.
+     * @param riderId The rider ID, used to order riders with equal keys.
+     * @return The number of riders before them.
+     */
+    int countBefore(long key, int riderId) {
+        int count = 0;
+        int node = root;
+        while (node != NIL) {
+            if (before(node, key, riderId)) {
+                count += sizes[left[node]] + 1;
+                node = right[node];
+            } else {
+                node = left[node];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * GETTER method for the key of the first rider in the tree.
+     *
+     * @return The smallest key.
+     * @throws IllegalStateException If the tree is empty.
+     */
+    long firstKey() {
+        if (root == NIL) {
+            throw new IllegalStateException("The tree is empty.");
+        }
+        int node = root;
+        while (left[node] != NIL) {
+            node = left[node];
+        }
+        return keys[node];
+    }
+
+    /**
+     * GETTER method for the rider in a position of the tree, found by
+     * walking down the tree in O(log n) time.
+     *
+     * @param position The position, starting from 0.
+     * @return The ID of the rider in that position.
+     */
+    int riderAt(int position) {
+        return riderIds[nodeAt(position)];
+    }
+
+    /**
+     * GETTER method for the key in a position of the tree, found by
+     * walking down the tree in O(log n) time.
+     *
+     * @param position The position, starting from 0.
+     * @return The key of the rider in that position.
+     */
+    long keyAt(int position) {
+        return keys[nodeAt(position)];
+    }
+
+    /**
+     * GETTER method for the IDs of the first riders in the tree.
+     *
+     * @param limit The maximum number of riders returned.
+     * @return At most limit rider IDs, in order.
+     */
+    int[] getRiderIDs(int limit) {
+        int[] result = new int[Math.min(limit, size())];
+        int i = 0;
+        for (int node : inOrder(result.length)) {
+            result[i++] = riderIds[node];
+        }
+        return result;
+    }
+
+    /**
+     * GETTER method for the keys of the first riders in the tree.
+     *
+     * @param limit The maximum number of keys returned.
+     * @return At most limit keys, in order.
+     */
+    long[] getKeys(int limit) {
+        long[] result = new long[Math.min(limit, size())];
+        int i = 0;
+        for (int node : inOrder(result.length)) {
+            result[i++] = keys[node];
+        }
+        return result;
+    }
+
+    /**
+     * Walks the tree in order without recursion, collecting the first
+     * nodes.
+     *
+     * @param count The number of nodes collected, at most the size.
+     * @return The nodes, in order.
+     */
+    private int[] inOrder(int count) {
+        int[] nodes = new int[count];
+        int[] stack = new int[32];
+        int depth = 0;
+        int node = root;
+        int i = 0;
+        while (i < count) {
+            while (node != NIL) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, depth * 2);
+                }
+                stack[depth++] = node;
+                node = left[node];
+            }
+            node = stack[--depth];
+            nodes[i++] = node;
+            node = right[node];
+        }
+        return nodes;
+    }
+
+    /**
+     * Finds the node in a position of the tree.
+     *
+     * @param position The position, starting from 0.
+     * @return The node.
+     * @throws IndexOutOfBoundsException If there is no rider in that
+     *                                   position.
+     */
+    private int nodeAt(int position) {
+        if (position < 0 || position >= size()) {
+            throw new IndexOutOfBoundsException("There is no rider in position " + position + ".");
+        }
+        int node = root;
+        while (position != sizes[left[node]]) {
+            if (position < sizes[left[node]]) {
+                node = left[node];
+            } else {
+                position -= sizes[left[node]] + 1;
+                node = right[node];
+            }
+        }
+        return node;
+    }
+
+    /**
+     * Checks whether a node is ordered before a key and rider ID.
+     *
+     * @param node    The node.
+     * @param key     The key.
+     * @param riderId The rider ID.
+     * @return true if the node comes first.
+     */
+    private boolean before(int node, long key, int riderId) {
+        return keys[node] < key || (keys[node] == key && riderIds[node] < riderId);
+    }
+
+    /**
+     * Splits a subtree into the nodes before a key and rider ID, left in
+     * splitLess, and the rest, left in splitRest.
+     *
+     * @param node    The root of the subtree.
+     * @param key     The key.
+     * @param riderId The rider ID.
+     */
+    private void split(int node, long key, int riderId) {
+        if (node == NIL) {
+            splitLess = NIL;
+            splitRest = NIL;
+        } else if (before(node, key, riderId)) {
+            split(right[node], key, riderId);
+            right[node] = splitLess;
+            resize(node);
+            splitLess = node;
+        } else {
+            split(left[node], key, riderId);
+            left[node] = splitRest;
+            resize(node);
+            splitRest = node;
+        }
+    }
+
+    /**
+     * Joins two subtrees, every node of the first coming before every
+     * node of the second.
+     *
+     * @param first  The root of the first subtree.
+     * @param second The root of the second subtree.
+     * @return The root of the joined subtree.
+     */
+    private int merge(int first, int second) {
+        if (first == NIL) {
+            return second;
+        }
+        if (second == NIL) {
+            return first;
+        }
+        if (priorities[first] > priorities[second]) {
+            right[first] = merge(right[first], second);
+            resize(first);
+            return first;
+        }
+        left[second] = merge(first, left[second]);
+        resize(second);
+        return second;
+    }
+
+    /**
+     * Removes a rider from a subtree, setting removed if they were found.
+     *
+     * @param node    The root of the subtree.
+     * @param key     The rider's key.
+     * @param riderId The ID of the rider.
+     * @return The new root of the subtree.
+     */
+    private int remove(int node, long key, int riderId) {
+        if (node == NIL) {
+            return NIL;
+        }
+        if (keys[node] == key && riderIds[node] == riderId) {
+            int joined = merge(left[node], right[node]);
+            left[node] = freeList;
+            freeList = node;
+            removed = true;
+            return joined;
+        }
+        if (before(node, key, riderId)) {
+            right[node] = remove(right[node], key, riderId);
+        } else {
+            left[node] = remove(left[node], key, riderId);
+        }
+        resize(node);
+        return node;
+    }
+
+    /**
+     * Recounts the riders below a node from its children.
+     *
+     * @param node The node.
+     */
+    private void resize(int node) {
+        sizes[node] = sizes[left[node]] + sizes[right[node]] + 1;
+    }
+
+    /**
+     * Creates a node with no children and a random priority, reusing a
+     * removed node if there is one.
+     *
+     * @param key     The rider's key.
+     * @param riderId The ID of the rider.
+     * @return The node.
+     */
+    private int newNode(long key, int riderId) {
+        int node;
+        if (freeList != NIL) {
+            node = freeList;
+            freeList = left[node];
+        } else {
+            if (nodeCount == keys.length) {
+                grow();
+            }
+            node = nodeCount++;
+        }
+        keys[node] = key;
+        riderIds[node] = riderId;
+        left[node] = NIL;
+        right[node] = NIL;
+        sizes[node] = 1;
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        priorities[node] = seed;
+        return node;
+    }
+
+    /**
+     * Doubles the number of nodes the arrays can hold.
+     */
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        riderIds = Arrays.copyOf(riderIds, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+    }
+}
@@ -0,0 +1,293 @@
+package cycling;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ResultImporter class. This class reads rider results from a text feed
+ * and registers them in a CyclingPortalImpl, so that a timing vendor's
+ * feed does not have to be entered one call at a time.
+ * <p>
+ * Each line of the feed holds one rider's result in one stage, as comma
+ * separated values: the stage ID, the rider ID and then the rider's times
+ * (start, each checkpoint, finish) written as HH:MM:SS, optionally with a
+ * fraction of a second. Blank lines and lines starting with '#' are
+ * skipped. For example:
+ * <pre>
+ * # stageId,riderId,start,checkpoints...,finish
+ * 0,12,12:00:00,12:47:31,14:10:05
+ * </pre>
+ * The feed is read one line at a time. Consecutive results for the same
+ * stage are collected into batches of a bounded size and registered
+ * together with {@link CyclingPortalImpl#registerStageResults}, so memory
+ * use does not grow with the size of the feed. Reading only continues
+ * once the previous batch has been registered, so a slow portal slows the
+ * reader down rather than letting results pile up.
+ * <p>
+ * A line that cannot be registered is passed to a RejectHandler together
+ * with the exception explaining why, and the import carries on with the
+ * next line.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+public class ResultImporter {
+
+    /**
+     * Receives the lines of a feed that could not be registered.
+     */
+    public interface RejectHandler {
+
+        /**
+         * Called once for every rejected line.
+         *
+         * @param lineNumber The number of the line in the feed, starting
+         *                   from 1.
+         * @param line       The text of the line.
+         * @param reason     The exception explaining why the line was
+         *                   rejected.
+         */
+        void reject(long lineNumber, String line, Exception reason);
+    }
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final CyclingPortalImpl portal;
+    private final int batchSize;
+
+    private final LinkedHashMap<Integer, LocalTime[]> batch = new LinkedHashMap<>();
+    private final HashMap<Integer, Long> batchLineNumbers = new HashMap<>();
+    private final HashMap<Integer, String> batchLines = new HashMap<>();
+    private int batchStageId;
+    private long accepted;
+
+    /**
+     * The constructor method for this class, using the default batch size.
+     *
+     * @param portal The portal the results are registered in.
+     */
+    public ResultImporter(CyclingPortalImpl portal) {
+        this(portal, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * The constructor method for this class.
+     *
+     * @param portal    The portal the results are registered in.
+     * @param batchSize The largest number of results registered together.
+     * @throws IllegalArgumentException If the batch size is not positive.
+     */
+    public ResultImporter(CyclingPortalImpl portal, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+        this.portal = portal;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Imports all the results in a feed file.
+     *
+     * @param filename The location of the feed file.
+     * @param rejects  The handler told about every rejected line.
+     * @return The number of results registered.
+     * @throws IOException If the file cannot be read.
+     */
+    public long importResults(String filename, RejectHandler rejects) throws IOException {
+        try (InputStream in = new FileInputStream(filename)) {
+            return importResults(in, rejects);
+        }
+    }
+
+    /**
+     * Imports all the results in a feed. The stream is read to the end but
+     * not closed.
+     *
+     * @param in      The stream the feed is read from.
+     * @param rejects The handler told about every rejected line.
+     * @return The number of results registered.
+     * @throws IOException If the stream cannot be read.
+     */
+    public long importResults(InputStream in, RejectHandler rejects) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+        accepted = 0;
+        long lineNumber = 0;
+        String line;
+        try {
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty() || line.charAt(0) == '#') {
+                    continue;
+                }
+                try {
+                    addLine(lineNumber, line, rejects);
+                } catch (IDNotRecognisedException | InvalidCheckpointTimesException | DuplicatedResultException e) {
+                    rejects.reject(lineNumber, line, e);
+                }
+            }
+            flush(rejects);
+        } finally {
+            batch.clear();
+            batchLineNumbers.clear();
+            batchLines.clear();
+        }
+        return accepted;
+    }
+
+    /**
+     * Parses a line of the feed and adds it to the current batch, first
+     * registering the batch if it is full or belongs to another stage.
+     *
+     * @param lineNumber The number of the line in the feed.
+     * @param line       The text of the line.
+     * @param rejects    The handler told about every rejected line.
+     * @throws IDNotRecognisedException        If the stage or rider ID cannot be read.
+     * @throws InvalidCheckpointTimesException If any of the times cannot be read.
+     * @throws DuplicatedResultException       If the rider already has a result
+     *                                         for the stage in the current batch.
+     */
+    private void addLine(long lineNumber, String line, RejectHandler rejects) throws IDNotRecognisedException, InvalidCheckpointTimesException, DuplicatedResultException {
+        String[] fields = line.split(",");
+        if (fields.length < 4) {
+            throw new InvalidCheckpointTimesException("A result needs at least a start time and a finish time.");
+        }
+        int stageId = parseId(fields[0], "Stage ID could not be read.");
+        int riderId = parseId(fields[1], "Rider ID could not be read.");
+        LocalTime[] times = new LocalTime[fields.length - 2];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = parseTime(fields[i + 2].trim());
+        }
+        if (!batch.isEmpty() && (stageId != batchStageId || batch.size() >= batchSize)) {
+            flush(rejects);
+        }
+        if (batch.containsKey(riderId)) {
+            throw new DuplicatedResultException("The rider already has results for this stage.");
+        }
+        batchStageId = stageId;
+        batch.put(riderId, times);
+        batchLineNumbers.put(riderId, lineNumber);
+        batchLines.put(riderId, line);
+    }
+
+    /**
+     * Registers the current batch. If the batch as a whole is rejected, the
+     * results at fault are picked out and rejected, and the rest of the
+     * batch is registered without them.
+     *
+     * @param rejects The handler told about every rejected line.
+     */
+    private void flush(RejectHandler rejects) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            portal.registerStageResults(batchStageId, batch);
+            accepted += batch.size();
+        } catch (IDNotRecognisedException | DuplicatedResultException | InvalidCheckpointTimesException | InvalidStageStateException batchException) {
+            Iterator<Map.Entry<Integer, LocalTime[]>> results = batch.entrySet().iterator();
+            while (results.hasNext()) {
+                Map.Entry<Integer, LocalTime[]> result = results.next();
+                try {
+                    checkResult(batchStageId, result.getKey(), result.getValue());
+                } catch (IDNotRecognisedException | DuplicatedResultException | InvalidCheckpointTimesException e) {
+                    rejects.reject(batchLineNumbers.get(result.getKey()), batchLines.get(result.getKey()), e);
+                    results.remove();
+                }
+            }
+            try {
+                portal.registerStageResults(batchStageId, batch);
+                accepted += batch.size();
+            } catch (IDNotRecognisedException | DuplicatedResultException | InvalidCheckpointTimesException | InvalidStageStateException e) {
+                for (int riderId : batch.keySet()) {
+                    rejects.reject(batchLineNumbers.get(riderId), batchLines.get(riderId), e);
+                }
+            }
+        }
+        batch.clear();
+        batchLineNumbers.clear();
+        batchLines.clear();
+    }
+
+    /**
+     * Checks one result of a rejected batch against the portal, to find out
+     * whether it is one of the results at fault.
+     *
+     * @param stageId The ID of the stage.
+     * @param riderId The ID of the rider.
+     * @param times   The rider's times.
+     * @throws IDNotRecognisedException        If the stage or rider does not exist.
+     * @throws DuplicatedResultException       If the rider already has a result
+     *                                         for the stage.
+     * @throws InvalidCheckpointTimesException If the number of times does not
+     *                                         match the stage's checkpoints.
+     */
+    private void checkResult(int stageId, int riderId, LocalTime[] times) throws IDNotRecognisedException, DuplicatedResultException, InvalidCheckpointTimesException {
+        if (portal.getRiderResultsInStage(stageId, riderId).length > 0) {
+            throw new DuplicatedResultException("The rider already has results for this stage.");
+        } else if (times.length != portal.getStageCheckpoints(stageId).length + 2) {
+            throw new InvalidCheckpointTimesException("The number of checkpoint times does not equal 2 more than the total number of checkpoints within the stage.");
+        }
+    }
+
+    /**
+     * Reads an ID from a field of the feed.
+     *
+     * @param field   The text of the field.
+     * @param message The message of the exception thrown if it is not an ID.
+     * @return The ID.
+     * @throws IDNotRecognisedException If the field is not a whole number.
+     */
+    private static int parseId(String field, String message) throws IDNotRecognisedException {
+        try {
+            return Integer.parseInt(field.trim());
+        } catch (NumberFormatException e) {
+            throw new IDNotRecognisedException(message);
+        }
+    }
+
+    /**
+     * Reads a time from a field of the feed. Times written exactly as
+     * HH:MM:SS are read directly, anything else is left to LocalTime.
+     *
+     * @param field The text of the field.
+     * @return The time.
+     * @throws InvalidCheckpointTimesException If the field is not a time.
+     */
+    private static LocalTime parseTime(String field) throws InvalidCheckpointTimesException {
+        if (field.length() == 8 && field.charAt(2) == ':' && field.charAt(5) == ':') {
+            int hour = twoDigits(field, 0);
+            int minute = twoDigits(field, 3);
+            int second = twoDigits(field, 6);
+            if (hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60) {
+                return LocalTime.of(hour, minute, second);
+            }
+        }
+        try {
+            return LocalTime.parse(field);
+        } catch (DateTimeParseException e) {
+            throw new InvalidCheckpointTimesException("Checkpoint time could not be read.");
+        }
+    }
+
+    /**
+     * Reads two decimal digits.
+     *
+     * @param text  The text being read.
+     * @param start The position of the first digit.
+     * @return The number, or -1 if either character is not a digit.
+     */
+    private static int twoDigits(String text, int start) {
+        int tens = text.charAt(start) - '0';
+        int units = text.charAt(start + 1) - '0';
+        if (tens < 0 || tens > 9 || units < 0 || units > 9) {
+            return -1;
+        }
+        return tens * 10 + units;
+    }
+}
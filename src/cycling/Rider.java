@@ -1,15 +1,16 @@
 package cycling;
 
 import java.io.Serializable;
-import java.time.LocalTime;
-import java.util.HashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.HashSet;
 
 /**
  * Rider class. This class manages all the rider's within CyclingPortal
- * and the results that the rider's get from each stage as well as the
- * mountain points that they collect from each checkpoint they score
- * during a race.
+ * and the races that the rider's take part in. The times and points
+ * that the rider's get from each stage are kept with the results of
+ * the stage.
+ * <p>
+ * A rider can take part in several races at once, so the methods that
+ * read or change the rider's races are synchronised.
  *
  * @author Edward Pratt, Alexander Hay
  * @version 1.0
@@ -21,32 +22,27 @@ public class Rider implements Serializable {
     private String name;
     private int yearOfBirth;
     private int teamId;
-    private final HashMap<Integer, Integer> stageResults;
-    private final HashMap<Integer, Integer> checkpointResults;
-    private final HashMap<Integer, LocalTime[]> checkpointTimes;
-
-    static private final AtomicInteger currentId = new AtomicInteger(0);
+    private final HashSet<Integer> raceIds;
 
     /**
      * The constructor method of this class, instantiates and initialises
      * all the non-static variables.
      *
+     * @param riderId     The ID of the rider.
      * @param teamId      The ID of the team that the rider is part of.
      * @param name        The name of the rider.
      * @param yearOfBirth The year of birth for the rider.
      */
-    public Rider(int teamId, String name, int yearOfBirth) {
+    public Rider(int riderId, int teamId, String name, int yearOfBirth) {
         this.riderId = 0;
         this.name = "";
         this.yearOfBirth = 0;
         this.teamId = 0;
-        this.stageResults = new HashMap<>();
-        this.checkpointTimes = new HashMap<>();
-        this.checkpointResults = new HashMap<>();
+        this.raceIds = new HashSet<>();
         this.teamId = teamId;
         this.name = name;
         this.yearOfBirth = yearOfBirth;
-        this.riderId = currentId.getAndIncrement();
+        this.riderId = riderId;
     }
 
     /**
@@ -89,46 +85,14 @@ public class Rider implements Serializable {
     }
 
     /**
-     * Gets the rider's results from the stage
-     * that is being enquired.
-     *
-     * @param stageId The ID of the stage that is
-     *                enquired.
-     * @return The results that the rider got from
-     * the stage.
-     */
-    public int getStageResults(int stageId) {
-        return stageResults.get(stageId);
-    }
-
-    public boolean hasStageResults(int stageId) {
-        return stageResults.containsKey(stageId);
-    }
-
-    /**
-     * Gets the rider's results from the checkpoint
-     * that is being enquired.
-     *
-     * @param checkpointId The ID of the checkpoint
-     *                     that is enquired.
-     * @return The results that the rider got from
-     * the checkpoint.
-     */
-    public int getCheckpointResults(int checkpointId) {
-        return checkpointResults.get(checkpointId);
-    }
-
-    /**
-     * Gets the array of all the times of the checkpoints
-     * from the stage that the rider raced in.
+     * GETTER method for the IDs of all the races that
+     * the rider has taken part in.
      *
-     * @param stageId The ID of the stage that is
-     *                enquired.
-     * @return Array of all the times that the rider's
-     * checkpoint times from the stage.
+     * @return An array of the race IDs that the rider
+     * has results in.
      */
-    public LocalTime[] getCheckpointTimes(int stageId) {
-        return checkpointTimes.get(stageId);
+    public synchronized int[] getRaceIDs() {
+        return raceIds.stream().mapToInt(i -> i).toArray();
     }
 
     /**
@@ -171,120 +135,23 @@ public class Rider implements Serializable {
     }
 
     /**
-     * Method that stores the ID of a stage and the result
-     * that the rider got from racing in the stage inside the
-     * HashMap.
-     *
-     * @param stageId The ID of the stage that the rider raced in.
-     * @param result  The result the rider got from the race.
-     */
-    public void addStageResults(int stageId, int result) {
-        stageResults.put(stageId, result);
-    }
-
-
-    /**
-     * Method that stores the ID of the checkpoint and the mountain
-     * points that the rider accumulated from racing in the checkpoint
-     * inside the HashMap.
+     * Method that records that the rider has taken part in a race.
      *
-     * @param checkpointId The ID of the checkpoint that the rider
-     *                     raced in.
-     * @param result       The amount of mountain points accumulated from the
-     *                     checkpoint.
-     */
-    public void addCheckpointResults(int checkpointId, int result) {
-        this.checkpointResults.put(checkpointId, result);
-    }
-
-    /**
-     * Method that stores the ID of the stage and all the times that
-     * the rider got from all of the checkpoints in the stage inside
-     * the HashMap.
-     *
-     * @param stageId         The ID of the stage that the rider raced in.
-     * @param checkpointTimes An array of the times that the rider
-     *                        scored for each of the checkpoints.
-     */
-    public void addCheckpointTimes(int stageId, LocalTime[] checkpointTimes) {
-        this.checkpointTimes.put(stageId, checkpointTimes);
-    }
-
-    /**
-     * Method that deletes the stage results that the rider achieved
-     * from the HashMap.
-     *
-     * @param stageId The ID of the stage that the rider participated
-     *                in.
-     */
-    public void deleteStageResults(int stageId) {
-        stageResults.remove(stageId);
-
-    }
-
-    /**
-     * Methods that deletes the checkpoint results that the rider
-     * achieved from the HashMap.
-     *
-     * @param checkpointId The ID of the checkpoint that the rider
-     *                     participated in.
-     */
-    public void deleteCheckpointResults(int checkpointId) {
-        checkpointResults.remove(checkpointId);
-    }
-
-    /**
-     * Method that deletes the checkpoint times that the rider
-     * scored from the HashMap.
-     *
-     * @param stageId The ID of the stage that the rider
-     *                participated in.
-     */
-    public void deleteCheckpointTimes(int stageId) {
-        checkpointTimes.remove(stageId);
-    }
-
-    /**
-     * Method that calculates the rider's total elapsed time
-     * from the stage enquired by finding the sum of all the
-     * checkpoint times.
-     *
-     * @param stageId The stage ID that the rider participated
-     *                in.
-     * @return The total time it took for the rider to complete
-     * the stage.
+     * @param raceId The ID of the race that the rider raced in.
+     * @return True if the race was not already recorded for the
+     * rider.
      */
-    public LocalTime calculateRidersTotalElapsedTime(int stageId) {
-        LocalTime totalTime = LocalTime.of(0, 0, 0);
-        for (LocalTime checkpointTime : getCheckpointTimes(stageId)) {
-            totalTime = totalTime.plusHours(checkpointTime.getHour()).plusMinutes(checkpointTime.getMinute()).plusSeconds(checkpointTime.getSecond());
-        }
-        return totalTime;
+    public synchronized boolean addRace(int raceId) {
+        return raceIds.add(raceId);
     }
 
     /**
-     * Method that calculates the total amount of mountain
-     * points that the rider gains from the all the checkpoints
-     * within the race.
+     * Method that removes a race from the races that the rider
+     * has taken part in.
      *
-     * @param checkpointIds An array of all the checkpoint IDs
-     *                      within the race.
-     * @return The total amount of mountain points that the rider
-     * has accumulated from the race.
-     */
-    public int calculateRidersTotalMountainPoints() {
-        int totalMountainPoints = 0;
-        for (int checkpointId : checkpointResults.keySet()) {
-            totalMountainPoints += checkpointResults.get(checkpointId);
-        }
-        return totalMountainPoints;
-    }
-
-    /**
-     * Method that resets the ID counter. The ID counter creates
-     * a new ID for every single new rider that is created.
+     * @param raceId The ID of the race being removed.
      */
-    static public void atomicReset() {
-        currentId.set(0);
+    public synchronized void deleteRace(int raceId) {
+        raceIds.remove(raceId);
     }
 }
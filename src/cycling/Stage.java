@@ -4,7 +4,6 @@ import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Stage class. This class implements the StageInterface as well as
@@ -25,10 +24,9 @@ public class Stage implements StageInterface, Serializable {
     private StageType type;
     private LocalDateTime startTime;
     private ArrayList<Integer> checkpointIds;
-    private HashMap<Integer, LocalTime> riderCompletionTimes;
-    private HashMap<Integer, LocalTime> riderAdjustedTimes = new HashMap<>();
+    private StageResults results;
+    private StagePassings passings;
 
-    static private final AtomicInteger currentId = new AtomicInteger(0);
     static private final int[] flatStagePoints = new int[]{50, 30, 20, 18, 16, 14, 12, 10, 8, 7, 6, 5, 4, 3, 2};
     static private final int[] mediumMountainStagePoints = new int[]{30, 25, 22, 19, 17, 15, 13, 11, 9, 7, 6, 5, 4, 3, 2};
     static private final int[] HighMountainAndTTStagePoints = new int[]{20, 17, 15, 13, 11, 10, 9, 8, 7, 6, 5, 4, 3, 2, 1};
@@ -37,6 +35,8 @@ public class Stage implements StageInterface, Serializable {
      * The constructor method for the class, instantiates and initialises
      * all the non-static variables
      *
+     * @param stageId     The ID of the stage.
+     * @param raceId      The ID of the race that the stage is in.
      * @param stageName   The name of the stage.
      * @param description The description for the stage.
      * @param length      The total length of the stage.
@@ -44,20 +44,20 @@ public class Stage implements StageInterface, Serializable {
      * @param type        The type of stage that the stage will be in the
      *                    race.
      */
-    public Stage(int raceId, String stageName, String description, double length, LocalDateTime startTime, StageType type) {
+    public Stage(int stageId, int raceId, String stageName, String description, double length, LocalDateTime startTime, StageType type) {
         this.stageId = 0;
 
         this.state = "";
         this.raceId = raceId;
         this.checkpointIds = new ArrayList<>();
-        this.riderCompletionTimes = new HashMap<>();
+        this.results = new StageResults(0);
         this.stageName = stageName;
         this.description = description;
         this.length = length;
         this.startTime = startTime;
         this.type = type;
 
-        this.stageId = currentId.getAndIncrement();
+        this.stageId = stageId;
     }
 
     /**
@@ -150,6 +150,16 @@ public class Stage implements StageInterface, Serializable {
         return checkpointIds.stream().mapToInt(i -> i).toArray();
     }
 
+    /**
+     * GETTER method for the array of rider IDs who have a
+     * result registered in the stage.
+     *
+     * @return The array of rider IDs with a result in the stage.
+     */
+    public int[] getRiderIDs() {
+        return results.getRiderIDs();
+    }
+
     /**
      * GETTER method for the array of points given to the
      * riders' respective positions for the flat stage type.
@@ -185,6 +195,25 @@ public class Stage implements StageInterface, Serializable {
         return HighMountainAndTTStagePoints;
     }
 
+    /**
+     * GETTER method for the array of points given to the
+     * riders' respective positions for the type of this
+     * stage.
+     *
+     * @return The array of integers of the respective points
+     * for each of the riders based on their position.
+     */
+    public int[] getStagePoints() {
+        switch (type) {
+            case FLAT:
+                return flatStagePoints;
+            case MEDIUM_MOUNTAIN:
+                return mediumMountainStagePoints;
+            default:
+                return HighMountainAndTTStagePoints;
+        }
+    }
+
     /**
      * GETTER method for collecting the rider's time to
      * complete the stage.
@@ -194,7 +223,45 @@ public class Stage implements StageInterface, Serializable {
      * the stage.
      */
     public LocalTime getRiderCompletionTimes(int riderId) {
-        return riderCompletionTimes.get(riderId);
+        int row = results.rowOf(riderId);
+        return row < 0 ? null : Times.toLocalTime(results.elapsedTimeAt(row));
+    }
+
+    /**
+     * GETTER method for collecting the rider's time to
+     * complete the stage, in nanoseconds. The time is not
+     * limited to 24 hours.
+     *
+     * @param riderId The ID of the rider being enquired, who
+     *                must have a result in the stage.
+     * @return The time that it took for the rider to complete
+     * the stage.
+     */
+    public long getRiderCompletionNanos(int riderId) {
+        return results.elapsedTimeAt(results.rowOf(riderId));
+    }
+
+    /**
+     * Checks whether a rider has a result in the stage.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return true if the rider has a result in the stage.
+     */
+    public boolean hasRiderResults(int riderId) {
+        return results.rowOf(riderId) >= 0;
+    }
+
+    /**
+     * GETTER method for the rider's times in the stage, from
+     * the start time to the finish line.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return A new array of the rider's times in nanoseconds
+     * of the day, or null if the rider has no result in the stage.
+     */
+    public long[] getRiderTimes(int riderId) {
+        int row = results.rowOf(riderId);
+        return row < 0 ? null : results.getTimes(row);
     }
 
     /**
@@ -206,7 +273,39 @@ public class Stage implements StageInterface, Serializable {
      * to clear the stage.
      */
     public LocalTime getRiderAdjustedTimes(int riderId) {
-        return riderAdjustedTimes.get(riderId);
+        updateAdjustedTimes();
+        int row = results.rowOf(riderId);
+        return row < 0 ? null : Times.toLocalTime(results.adjustedTimeAt(row));
+    }
+
+    /**
+     * GETTER method for the rider's position in the stage, matching
+     * their place in {@link #calculateRidersRankInStage()}. The position
+     * is found in O(log n) time, without ranking the whole stage.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The position, starting from 1, or -1 if the rider
+     * has no result in the stage.
+     */
+    public int getRiderRank(int riderId) {
+        return results.positionOf(riderId);
+    }
+
+    /**
+     * GETTER method for how far the rider's adjusted elapsed time
+     * is behind the stage winner's.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The gap, or null if the rider has no result in the
+     * stage.
+     */
+    public LocalTime getRiderTimeBehindLeader(int riderId) {
+        int row = results.rowOf(riderId);
+        if (row < 0) {
+            return null;
+        }
+        updateAdjustedTimes();
+        return Times.toLocalTime(results.adjustedTimeAt(row) - results.adjustedTimeAt(results.leaderRow()));
     }
 
     /**
@@ -304,61 +403,146 @@ public class Stage implements StageInterface, Serializable {
      *                     removed.
      */
     public void deleteCheckpointID(int checkpointId) {
-        checkpointIds.remove(checkpointId);
+        checkpointIds.remove(Integer.valueOf(checkpointId));
     }
 
     /**
-     * Adds a rider's finish time for the stage to the hashmap
-     * of other riders' finish times.
+     * Adds a rider's result to the stage, replacing any result they
+     * already have. The rider's elapsed time is the sum of all their
+     * times, each counted in whole seconds.
      *
-     * @param riderId      The ID of the rider put into the hashmap.
-     * @param completeTime The finish time of the rider also
-     *                     being stored in the hashmap.
+     * @param riderId    The ID of the rider.
+     * @param riderTimes The rider's times from the start time to the
+     *                   finish line, in nanoseconds of the day. The
+     *                   times are copied.
+     */
+    public void addRiderResults(int riderId, long[] riderTimes) {
+        StageResults stageResults = resultsFor(riderTimes.length - 2);
+        if (passings != null) {
+            passings.resultChanged(riderId, getRiderTimes(riderId), riderTimes);
+        }
+        stageResults.add(riderId, riderTimes, StageResults.elapsedTime(riderTimes));
+    }
+
+    /**
+     * Adds a rider's finish time for the stage, for when the
+     * rider's checkpoint times are not known.
+     *
+     * @param riderId      The ID of the rider.
+     * @param completeTime The finish time of the rider.
      */
     public void addCompletionTime(int riderId, LocalTime completeTime) {
-        riderCompletionTimes.put(riderId, completeTime);
+        addCompletionTime(riderId, completeTime.toNanoOfDay());
+    }
+
+    /**
+     * Adds a rider's finish time for the stage, in nanoseconds,
+     * for when the rider's checkpoint times are not known. The
+     * rider's checkpoint times are left at zero.
+     *
+     * @param riderId      The ID of the rider.
+     * @param completeTime The finish time of the rider.
+     */
+    public void addCompletionTime(int riderId, long completeTime) {
+        StageResults stageResults = resultsFor(checkpointIds.size());
+        if (passings != null) {
+            passings.resultChanged(riderId, getRiderTimes(riderId), new long[checkpointIds.size() + 2]);
+        }
+        stageResults.add(riderId, null, completeTime);
     }
 
     /**
-     * Deletes a rider's ID and their finish time in the
-     * hashmap.
+     * Deletes a rider's result from the stage, along with any
+     * points of the stage they have passed without finishing.
      *
-     * @param riderId The ID of the rider, whose finish
-     *                time is being deleted from the hashmap.
+     * @param riderId The ID of the rider, whose result is
+     *                being deleted.
      */
-    public void deleteCompletionTime(int riderId) {
-        riderCompletionTimes.remove(riderId);
+    public void deleteRiderResults(int riderId) {
+        if (passings != null) {
+            passings.resultChanged(riderId, getRiderTimes(riderId), null);
+        }
+        results.remove(riderId);
     }
 
     /**
-     * Adds a rider's adjusted finish time to the hashmap.
+     * Checks whether a rider has passed a point of the stage,
+     * either as part of a result or while still out on the stage.
      *
-     * @param riderId      The ID of the rider put into the hashmap.
-     * @param adjustedTime The adjusted finish time of the rider
-     *                     also being stored in the hashmap.
+     * @param riderId  The ID of the rider being enquired.
+     * @param position The point of the stage: 0 for the start,
+     *                 1 to n for the checkpoints and n + 1 for
+     *                 the finish line.
+     * @return true if the rider's time at the point is known.
      */
-    public void addAdjustedTime(int riderId, LocalTime adjustedTime) {
-        riderAdjustedTimes.put(riderId, adjustedTime);
+    public boolean hasRiderPassed(int riderId, int position) {
+        return hasRiderResults(riderId) || (passings != null && passings.hasPassed(riderId, position));
     }
 
     /**
-     * Deletes a rider's ID and their adjusted finish time
-     * in the hashmap.
+     * Records a rider passing a point of the stage as it happens.
+     * The rider is put in their place at the checkpoint straight
+     * away, but their result is only added once the returned
+     * times are given to {@link #addRiderResults(int, long[])}.
      *
-     * @param riderId The ID of the rider, whose adjusted
-     *                finish time is being deleted from the hashmap.
+     * @param riderId  The ID of the rider, who has not passed
+     *                 the point yet.
+     * @param position The point of the stage, numbered as in
+     *                 {@link #hasRiderPassed(int, int)}.
+     * @param time     The time the rider passed the point, in
+     *                 nanoseconds of the day.
+     * @return A new array of the rider's times from the start
+     * time to the finish line, once every point of the stage has
+     * been passed, or null while some are still to come.
      */
-    public void deleteAdjustedTime(int riderId) {
-        riderAdjustedTimes.remove(riderId);
+    public long[] recordPassing(int riderId, int position, long time) {
+        if (passings == null) {
+            passings = new StagePassings(checkpointIds.size());
+            passings.prepareOrders(results);
+        }
+        return passings.record(riderId, position, time);
+    }
+
+    /**
+     * GETTER method for the array of rider IDs who have passed
+     * some of the points of the stage but have no result yet.
+     *
+     * @return The array of rider IDs still out on the stage.
+     */
+    public int[] getRidersOnStage() {
+        return passings == null ? new int[0] : passings.getRiderIDs();
+    }
+
+    /**
+     * GETTER method for the times of a rider still out on the
+     * stage.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return A new array of the rider's times from the start
+     * time to the finish line, in nanoseconds of the day, with
+     * {@link StagePassings#NOT_PASSED} for the points they have
+     * not passed, or null if the rider is not out on the stage.
+     */
+    public long[] getRiderPassings(int riderId) {
+        return passings == null ? null : passings.getTimes(riderId);
+    }
+
+    /**
+     * Forgets the points of the stage that a rider has passed
+     * without finishing. The rider's result, if they have one,
+     * is kept.
+     *
+     * @param riderId The ID of the rider.
+     * @return true if the rider was still out on the stage.
+     */
+    public boolean discardPassings(int riderId) {
+        return passings != null && passings.remove(riderId);
     }
 
     /**
      * Method that calculates the rider's adjusted time based on
-     * other rider finish times. This calculates the rider's adjusted
-     * time by checking each consecutive rider, who has a finish time
-     * within 1 second faster (smaller) than their previous rider.
-     * Both times will then be set to the smallest of the two (the
-     * fastest).
+     * other rider finish times. The adjusted time is taken from the
+     * stage-wide pass in {@link #calculateAdjustedTimes()}.
      *
      * @param riderId The ID of the rider, which there finish
      *                time is being adjusted.
@@ -366,41 +550,206 @@ public class Stage implements StageInterface, Serializable {
      */
     @Override
     public LocalTime calculateRidersAdjustedTime(int riderId) {
-        LocalTime chosenRiderTime = riderCompletionTimes.get(riderId);
-        for (int tempRiderId : riderCompletionTimes.keySet()) {
-            LocalTime riderTime = riderCompletionTimes.get(tempRiderId);
-            if (riderId != tempRiderId && chosenRiderTime.isAfter(riderTime.plusSeconds(-1)) && chosenRiderTime.isBefore(riderTime)) {
-                chosenRiderTime = calculateRidersAdjustedTime(riderId);
-                riderAdjustedTimes.put(riderId, riderTime);
-                break;
-            }
-            riderAdjustedTimes.put(riderId, chosenRiderTime);
+        return getRiderAdjustedTimes(riderId);
+    }
+
+    /**
+     * Method that calculates the adjusted times of every rider with
+     * a result in the stage. If a rider finishes less than one second
+     * after the previous rider, their adjusted time is that of the
+     * previous rider, so a whole bunch shares the time of its first
+     * rider. There are no adjustments in time-trials, where the
+     * adjusted time is the rider's finish time.
+     * <p>
+     * The riders are visited once in rank order, so the whole stage
+     * costs a single sort.
+     *
+     * @return A map of every rider ID with a result in the stage
+     * to their adjusted finish time.
+     */
+    @Override
+    public Map<Integer, LocalTime> calculateAdjustedTimes() {
+        updateAdjustedTimes();
+        HashMap<Integer, LocalTime> adjustedTimes = new HashMap<>();
+        for (int row = 0; row < results.size(); row++) {
+            adjustedTimes.put(results.riderAt(row), Times.toLocalTime(results.adjustedTimeAt(row)));
+        }
+        return adjustedTimes;
+    }
+
+    /**
+     * Method that brings the adjusted times of every rider with a
+     * result in the stage up to date, in the same way as
+     * {@link #calculateAdjustedTimes()}, without creating any
+     * LocalTime objects. This is the form used inside the portal.
+     * Nothing is done if there are no results, or if the adjusted
+     * times have been worked out and kept up to date since.
+     */
+    public void updateAdjustedTimes() {
+        if (!results.isAdjusted() && results.size() > 0) {
+            results.updateAdjustedTimes(type == StageType.TT);
+        }
+    }
+
+    /**
+     * Method that builds the orders of the stage's results that are
+     * not saved with it, after the stage has been read back: the
+     * finishing order and the order each checkpoint was passed in.
+     * The orders are then kept up to date as results and passings
+     * are recorded and deleted, so reading the stage's results
+     * changes nothing and several threads can read them at once.
+     */
+    public void prepareResults() {
+        results.prepareOrders();
+        if (passings != null) {
+            passings.prepareOrders(results);
         }
-        return chosenRiderTime;
+    }
+
+    /**
+     * Method that awards the stage points and the mountain points
+     * of the stage's climbs to every rider with a result in the
+     * stage, based on their current ranks. From then on the points
+     * are kept up to date as results are added and deleted.
+     *
+     * @param checkpointPoints The points for each passing position
+     *                         of each checkpoint, in the order of
+     *                         {@link #getCheckpointIDs()}, or null
+     *                         for a checkpoint that gives no
+     *                         mountain points.
+     */
+    public void scoreResults(int[][] checkpointPoints) {
+        results.score(getStagePoints(), checkpointPoints);
     }
 
     /**
      * Methods that finds and calculates all of the riders'
      * ranks sorted based on their finish time in the stage, with the
-     * winner (1st place) being the fastest.
+     * winner (1st place) being the fastest. The ranks are read from
+     * the finishing order, which is kept in order as finish times are
+     * added and deleted.
      *
      * @return A sorted array of all the rider IDs based on
      * their finish time.
      */
     @Override
     public int[] calculateRidersRankInStage() {
-//        LinkedList<Map.Entry<Integer, LocalTime>> timeList = new LinkedList<Map.Entry<Integer, LocalTime>>(riderCompletionTimes.entrySet());
-//        Collections.sort(timeList, (i1, i2) -> i1.getValue().compareTo(i2.getValue())); //Lambda function
-//        Collections.sort(timeList, Collections.reverseOrder()); //Really needs to be tested
-//        ArrayList<Integer> idList = new ArrayList<>();
-//        for (Map.Entry<Integer, LocalTime> entry : timeList){
-//            idList.add(entry.getKey());
-//        }
-//        return idList.stream().mapToInt(i -> i).toArray();
+        int[] order = results.rankedRows();
+        int[] riderIds = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            riderIds[i] = results.riderAt(order[i]);
+        }
+        return riderIds;
+    }
+
+    /**
+     * Method that finds the leading riders of the stage, in the same
+     * order as {@link #calculateRidersRankInStage()}, without ranking the
+     * riders behind them.
+     *
+     * @param limit The maximum number of riders returned.
+     * @return An array of at most limit rider IDs, winner first.
+     */
+    public int[] getTopRiders(int limit) {
+        int[] order = results.topRows(limit);
+        int[] riderIds = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            riderIds[i] = results.riderAt(order[i]);
+        }
+        return riderIds;
+    }
+
+    /**
+     * Method that finds the riders who have passed one of the
+     * stage's checkpoints so far, in the order they passed it,
+     * including the riders still out on the stage. While no rider
+     * is out on the stage, this is the order of the results.
+     *
+     * @param checkpoint The position of the checkpoint in the
+     *                   stage, starting from 0.
+     * @return An array of rider IDs, earliest first.
+     */
+    public int[] getRidersRankAtCheckpoint(int checkpoint) {
+        if (passings != null) {
+            RankTree passingOrder = passings.passingOrder(checkpoint, results);
+            return passingOrder.getRiderIDs(passingOrder.size());
+        } else if (results.size() == 0) {
+            return new int[0];
+        }
+        int[] order = results.rankedRows(checkpoint);
+        int[] riderIds = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            riderIds[i] = results.riderAt(order[i]);
+        }
+        return riderIds;
+    }
+
+    /**
+     * Method that finds a rider's position at one of the stage's
+     * checkpoints, matching their place in
+     * {@link #getRidersRankAtCheckpoint(int)}, in O(log n) time.
+     *
+     * @param checkpoint The position of the checkpoint in the
+     *                   stage, starting from 0.
+     * @param riderId    The ID of the rider being enquired.
+     * @return The position, starting from 1, or -1 if the rider
+     * has not passed the checkpoint.
+     */
+    public int getRiderRankAtCheckpoint(int checkpoint, int riderId) {
+        if (passings == null) {
+            return results.positionOf(checkpoint, riderId);
+        }
+        long time = getRiderTimeAtCheckpoint(checkpoint, riderId);
+        if (time == StagePassings.NOT_PASSED) {
+            return -1;
+        }
+        return passings.passingOrder(checkpoint, results).countBefore(time, riderId) + 1;
+    }
 
-        LinkedHashMap<Integer, LocalTime> sortedMap = new LinkedHashMap<>();
-        riderCompletionTimes.entrySet().stream().sorted(Map.Entry.comparingByValue()).forEachOrdered(x -> sortedMap.put(x.getKey(), x.getValue()));
-        return sortedMap.keySet().stream().mapToInt(i -> i).toArray();
+    /**
+     * Method that finds the time at which a rider passed one of
+     * the stage's checkpoints, from their result or, if they are
+     * still out on the stage, from their passings.
+     *
+     * @param checkpoint The position of the checkpoint in the
+     *                   stage, starting from 0.
+     * @param riderId    The ID of the rider being enquired.
+     * @return The time, in nanoseconds of the day, or
+     * {@link StagePassings#NOT_PASSED} if the rider has not
+     * passed the checkpoint.
+     */
+    public long getRiderTimeAtCheckpoint(int checkpoint, int riderId) {
+        int row = results.rowOf(riderId);
+        if (row >= 0) {
+            return results.timeAt(row, checkpoint + 1);
+        }
+        long[] riderPassings = getRiderPassings(riderId);
+        return riderPassings == null ? StagePassings.NOT_PASSED : riderPassings[checkpoint + 1];
+    }
+
+    /**
+     * Method that finds the times at which the riders passed one
+     * of the stage's checkpoints, in the same order as
+     * {@link #getRidersRankAtCheckpoint(int)}.
+     *
+     * @param checkpoint The position of the checkpoint in the
+     *                   stage, starting from 0.
+     * @return An array of the riders' times at the checkpoint, in
+     * nanoseconds of the day, earliest first.
+     */
+    public long[] getTimesAtCheckpoint(int checkpoint) {
+        if (passings != null) {
+            RankTree passingOrder = passings.passingOrder(checkpoint, results);
+            return passingOrder.getKeys(passingOrder.size());
+        } else if (results.size() == 0) {
+            return new long[0];
+        }
+        int[] order = results.rankedRows(checkpoint);
+        long[] times = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            times[i] = results.timeAt(order[i], checkpoint + 1);
+        }
+        return times;
     }
 
     /**
@@ -413,21 +762,71 @@ public class Stage implements StageInterface, Serializable {
      */
     @Override
     public LocalTime[] getRankedAdjustedElapsedTimesInStage() {
-        int[] sortedRiderIds = calculateRidersRankInStage();
-        ArrayList<LocalTime> adjustedTimesList = new ArrayList<>();
-        for (int riderId : sortedRiderIds) {
-            adjustedTimesList.add(riderAdjustedTimes.get(riderId));
+        updateAdjustedTimes();
+        int[] order = results.rankedRows();
+        LocalTime[] adjustedTimes = new LocalTime[order.length];
+        for (int i = 0; i < order.length; i++) {
+            adjustedTimes[i] = Times.toLocalTime(results.adjustedTimeAt(order[i]));
         }
-        return adjustedTimesList.toArray(new LocalTime[adjustedTimesList.size()]);
+        return adjustedTimes;
+    }
 
+    /**
+     * Method that finds the points each rider scored in the stage,
+     * as awarded by {@link #scoreResults(int[][])} and kept up to
+     * date since, sorted based on their rank in the stage.
+     *
+     * @return An array of the riders' points, in rank order.
+     */
+    public int[] getRankedPoints() {
+        int[] order = results.rankedRows();
+        int[] points = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            points[i] = results.pointsAt(order[i]);
+        }
+        return points;
+    }
 
+    /**
+     * Method that finds the mountain points each rider scored in the
+     * stage's climbs, as awarded by {@link #scoreResults(int[][])}
+     * and kept up to date since, sorted based on their rank in the
+     * stage.
+     *
+     * @return An array of the riders' mountain points, in rank order.
+     */
+    public int[] getRankedMountainPoints() {
+        int[] order = results.rankedRows();
+        int[] mountainPoints = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            mountainPoints[i] = results.mountainPointsAt(order[i]);
+        }
+        return mountainPoints;
     }
 
     /**
-     * Method that resets the ID counter. The ID counter creates
-     * a new ID for every single new rider that is created.
+     * GETTER method for the stage's results columns.
+     *
+     * @return The results of the stage.
      */
-    static public void atomicReset() {
-        currentId.set(0);
+    StageResults getResults() {
+        return results;
+    }
+
+    /**
+     * Gets the results columns ready for a result with the given
+     * number of checkpoint times. While the stage has no results,
+     * the columns are made again if the number of checkpoints has
+     * changed.
+     *
+     * @param checkpointCount The number of checkpoint times in the
+     *                        result being added.
+     * @return The results of the stage.
+     */
+    private StageResults resultsFor(int checkpointCount) {
+        if (results.size() == 0 && results.getCheckpointCount() != checkpointCount) {
+            results = new StageResults(checkpointCount);
+        }
+        return results;
     }
 }
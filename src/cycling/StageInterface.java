@@ -1,6 +1,7 @@
 package cycling;
 
 import java.time.LocalTime;
+import java.util.Map;
 
 /**
  * The Stage Interface. This interface calculates methods for
@@ -15,11 +16,8 @@ public interface StageInterface {
 
     /**
      * Method that calculates the rider's adjusted time based on
-     * other rider finish times. This calculates the rider's adjusted
-     * time by checking each consecutive rider, who has a finish time
-     * within 1 second faster (smaller) than their previous rider.
-     * Both times will then be set to the smallest of the two (the
-     * fastest).
+     * other rider finish times. The adjusted time is taken from the
+     * stage-wide pass in {@link #calculateAdjustedTimes()}.
      *
      * @param riderId The ID of the rider, which there finish
      *                time is being adjusted.
@@ -27,6 +25,19 @@ public interface StageInterface {
      */
     LocalTime calculateRidersAdjustedTime(int riderId);
 
+    /**
+     * Method that calculates the adjusted times of every rider with
+     * a result in the stage. If a rider finishes less than one second
+     * after the previous rider, their adjusted time is that of the
+     * previous rider, so a whole bunch shares the time of its first
+     * rider. There are no adjustments in time-trials, where the
+     * adjusted time is the rider's finish time.
+     *
+     * @return A map of every rider ID with a result in the stage
+     * to their adjusted finish time.
+     */
+    Map<Integer, LocalTime> calculateAdjustedTimes();
+
     /**
      * Methods that finds and calculates all of the riders'
      * ranks sorted based on their finish time in the stage, with the
@@ -0,0 +1,221 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * StagePassings class. This class holds the times of the riders who are
+ * still out on a stage, recorded one point of the stage at a time as the
+ * riders pass it, until a rider has passed every point and their times
+ * become a result of the stage (see {@link StageResults}). The points of
+ * a stage are numbered as the times of a result are: 0 for the start,
+ * 1 to n for the n checkpoints and n + 1 for the finish line.
+ * <p>
+ * It also keeps the order the riders passed each checkpoint in, both the
+ * riders still out on the stage and those with a result, in one
+ * {@link RankTree} per checkpoint. A passing is put in its place in
+ * O(log n) time, so a checkpoint's ranking can be shown while the stage
+ * is still being raced, without sorting it again after every passing.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+final class StagePassings implements Serializable {
+
+    /**
+     * The time of a point that a rider has not passed yet.
+     */
+    static final long NOT_PASSED = -1;
+
+    private final int checkpointCount;
+    private final IntObjectMap<long[]> riderTimes = new IntObjectMap<>();
+    private transient RankTree[] passingOrders;
+
+    /**
+     * The constructor method of this class, with no riders out on the
+     * stage.
+     *
+     * @param checkpointCount The number of checkpoints in the stage.
+     */
+    StagePassings(int checkpointCount) {
+        this.checkpointCount = checkpointCount;
+    }
+
+    /**
+     * GETTER method for the IDs of the riders still out on the stage.
+     *
+     * @return An array of the IDs of the riders who have passed some, but
+     * not all, of the points of the stage.
+     */
+    int[] getRiderIDs() {
+        int[] riderIds = new int[riderTimes.size()];
+        int i = 0;
+        for (int slot = riderTimes.nextSlot(0); slot >= 0; slot = riderTimes.nextSlot(slot + 1)) {
+            riderIds[i++] = riderTimes.keyAt(slot);
+        }
+        return riderIds;
+    }
+
+    /**
+     * GETTER method for the times of a rider still out on the stage.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return A new array of the rider's times, from the start to the
+     * finish line, with {@link #NOT_PASSED} for the points they have not
+     * passed, or null if the rider is not out on the stage.
+     */
+    long[] getTimes(int riderId) {
+        long[] times = riderTimes.get(riderId);
+        return times == null ? null : times.clone();
+    }
+
+    /**
+     * Checks whether a rider still out on the stage has passed a point.
+     *
+     * @param riderId  The ID of the rider being enquired.
+     * @param position The point of the stage.
+     * @return true if the rider's time at the point has been recorded.
+     */
+    boolean hasPassed(int riderId, int position) {
+        long[] times = riderTimes.get(riderId);
+        return times != null && times[position] != NOT_PASSED;
+    }
+
+    /**
+     * Records a rider passing a point of the stage, putting them in their
+     * place in the checkpoint's passing order. The rider stays out on the
+     * stage until their result is added, even once every point is passed.
+     *
+     * @param riderId  The ID of the rider.
+     * @param position The point passed.
+     * @param time     The time the rider passed it, in nanoseconds of the
+     *                 day.
+     * @return A new array of the rider's times if they have now passed
+     * every point of the stage, or null otherwise.
+     */
+    long[] record(int riderId, int position, long time) {
+        long[] times = riderTimes.get(riderId);
+        if (times == null) {
+            times = new long[checkpointCount + 2];
+            Arrays.fill(times, NOT_PASSED);
+            riderTimes.put(riderId, times);
+        }
+        times[position] = time;
+        if (passingOrders != null && position >= 1 && position <= checkpointCount) {
+            passingOrders[position - 1].add(time, riderId);
+        }
+        for (long passed : times) {
+            if (passed == NOT_PASSED) {
+                return null;
+            }
+        }
+        return times.clone();
+    }
+
+    /**
+     * Brings the passing orders up to date after a rider's result has
+     * been added, replaced or deleted. Any points the rider passed while
+     * out on the stage are forgotten, as their result replaces them.
+     *
+     * @param riderId  The ID of the rider.
+     * @param previous The rider's times in their previous result, or null
+     *                 if they had no result.
+     * @param current  The rider's times in their new result, or null if
+     *                 the result has been deleted.
+     * @return true if the rider was out on the stage.
+     */
+    boolean resultChanged(int riderId, long[] previous, long[] current) {
+        boolean wasOut = remove(riderId);
+        if (previous != null) {
+            removePassings(riderId, previous);
+        }
+        if (current != null && passingOrders != null) {
+            for (int checkpoint = 0; checkpoint < checkpointCount; checkpoint++) {
+                passingOrders[checkpoint].add(current[checkpoint + 1], riderId);
+            }
+        }
+        return wasOut;
+    }
+
+    /**
+     * Forgets the points a rider still out on the stage has passed.
+     *
+     * @param riderId The ID of the rider.
+     * @return true if the rider was out on the stage.
+     */
+    boolean remove(int riderId) {
+        long[] times = riderTimes.get(riderId);
+        if (times == null) {
+            return false;
+        }
+        riderTimes.remove(riderId);
+        removePassings(riderId, times);
+        return true;
+    }
+
+    /**
+     * Builds the order the riders passed each checkpoint in so far, from
+     * the stage's results and the riders still out on the stage, if it
+     * has not been built since the passings were created or read back.
+     * The orders are not saved, and are kept up to date from then on.
+     *
+     * @param results The results of the stage.
+     */
+    void prepareOrders(StageResults results) {
+        if (passingOrders != null) {
+            return;
+        }
+        passingOrders = new RankTree[checkpointCount];
+        for (int c = 0; c < checkpointCount; c++) {
+            passingOrders[c] = new RankTree();
+        }
+        for (int row = 0; row < results.size(); row++) {
+            for (int c = 0; c < checkpointCount; c++) {
+                passingOrders[c].add(results.timeAt(row, c + 1), results.riderAt(row));
+            }
+        }
+        for (int slot = riderTimes.nextSlot(0); slot >= 0; slot = riderTimes.nextSlot(slot + 1)) {
+            long[] times = riderTimes.valueAt(slot);
+            for (int c = 0; c < checkpointCount; c++) {
+                if (times[c + 1] != NOT_PASSED) {
+                    passingOrders[c].add(times[c + 1], riderTimes.keyAt(slot));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the order the riders passed a checkpoint in so far, earliest
+     * first, with riders on the same time ordered by their ID, see
+     * {@link #prepareOrders(StageResults)}.
+     *
+     * @param checkpoint The position of the checkpoint in the stage,
+     *                   starting from 0.
+     * @param results    The results of the stage, from which the orders
+     *                   are built if they have not been.
+     * @return The riders who have passed the checkpoint, ordered by time.
+     */
+    RankTree passingOrder(int checkpoint, StageResults results) {
+        prepareOrders(results);
+        return passingOrders[checkpoint];
+    }
+
+    /**
+     * Takes a rider's passings of the checkpoints out of the passing
+     * orders, if they have been built.
+     *
+     * @param riderId The ID of the rider.
+     * @param times   The rider's times, with {@link #NOT_PASSED} for the
+     *                points they have not passed.
+     */
+    private void removePassings(int riderId, long[] times) {
+        if (passingOrders == null) {
+            return;
+        }
+        for (int checkpoint = 0; checkpoint < checkpointCount; checkpoint++) {
+            if (times[checkpoint + 1] != NOT_PASSED) {
+                passingOrders[checkpoint].remove(times[checkpoint + 1], riderId);
+            }
+        }
+    }
+}
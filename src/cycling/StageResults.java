@@ -0,0 +1,661 @@
+package cycling;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * StageResults class. This class holds every result of one stage in
+ * columns: one row per rider with a result, and one primitive array per
+ * value, so that all the riders' times at one checkpoint, or all their
+ * elapsed times, sit next to each other in memory. The columns are:
+ * <ul>
+ *     <li>the rider IDs;</li>
+ *     <li>one time column for the start, one per checkpoint and one for
+ *     the finish line, in nanoseconds of the day;</li>
+ *     <li>the elapsed and adjusted elapsed times, in nanoseconds;</li>
+ *     <li>the stage points and the mountain points scored in the stage.</li>
+ * </ul>
+ * A removed row is filled with the last row, so the rows stay packed
+ * together and are in no particular order. The finishing order and the
+ * order the riders passed each checkpoint are kept beside the columns in
+ * order-statistic trees, see {@link RankTree}, which are updated as
+ * results are added and removed, so ranking the stage never sorts.
+ * <p>
+ * Once the adjusted times and the points have been worked out, they are
+ * kept up to date as results are added and removed too: only the bunch
+ * the result finished in has its adjusted times worked out again, and
+ * only the riders in the scoring positions behind it, at the finish line
+ * or at a climb, gain or lose points. The riders whose adjusted time or
+ * points changed are remembered until they are taken, see
+ * {@link #takeChangedRiders()}. Registering a result therefore never
+ * costs a pass over the whole stage, and reading the results never
+ * changes them.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+final class StageResults implements Serializable {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private final IntIntMap rows = new IntIntMap();
+    private int size;
+    private int[] riderIds;
+    private final long[][] times;
+    private long[] elapsedTimes;
+    private long[] adjustedTimes;
+    private int[] points;
+    private int[] mountainPoints;
+    private transient RankTree finishOrder;
+    private transient RankTree[] checkpointOrders;
+    private transient boolean adjusted;
+    private transient boolean bunching;
+    private transient IntIntMap changedRiders;
+    private transient boolean scored;
+    private transient int[] stagePoints;
+    private transient int[][] checkpointPoints;
+
+    /**
+     * The constructor method of this class, creating empty columns for a
+     * stage with the given number of checkpoints.
+     *
+     * @param checkpointCount The number of checkpoints in the stage.
+     */
+    StageResults(int checkpointCount) {
+        riderIds = new int[INITIAL_CAPACITY];
+        times = new long[checkpointCount + 2][INITIAL_CAPACITY];
+        elapsedTimes = new long[INITIAL_CAPACITY];
+        adjustedTimes = new long[INITIAL_CAPACITY];
+        points = new int[INITIAL_CAPACITY];
+        mountainPoints = new int[INITIAL_CAPACITY];
+        finishOrder = new RankTree();
+        checkpointOrders = new RankTree[checkpointCount];
+        for (int checkpoint = 0; checkpoint < checkpointCount; checkpoint++) {
+            checkpointOrders[checkpoint] = new RankTree();
+        }
+    }
+
+    /**
+     * GETTER method for the number of riders with a result.
+     *
+     * @return The number of rows.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * GETTER method for the number of checkpoints the columns were made
+     * for.
+     *
+     * @return The number of checkpoint time columns.
+     */
+    int getCheckpointCount() {
+        return times.length - 2;
+    }
+
+    /**
+     * Finds the row holding a rider's result.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The row, or -1 if the rider has no result.
+     */
+    int rowOf(int riderId) {
+        return rows.getOrDefault(riderId, -1);
+    }
+
+    /**
+     * GETTER method for the rider in a row.
+     *
+     * @param row The row being enquired.
+     * @return The ID of the rider.
+     */
+    int riderAt(int row) {
+        return riderIds[row];
+    }
+
+    /**
+     * GETTER method for one of the times in a row.
+     *
+     * @param row    The row being enquired.
+     * @param column The time column: 0 for the start, 1 to n for the
+     *               checkpoints and n + 1 for the finish line.
+     * @return The time, in nanoseconds of the day.
+     */
+    long timeAt(int row, int column) {
+        return times[column][row];
+    }
+
+    /**
+     * GETTER method for the elapsed time in a row.
+     *
+     * @param row The row being enquired.
+     * @return The elapsed time, in nanoseconds.
+     */
+    long elapsedTimeAt(int row) {
+        return elapsedTimes[row];
+    }
+
+    /**
+     * GETTER method for the adjusted elapsed time in a row, see
+     * {@link #updateAdjustedTimes(boolean)}.
+     *
+     * @param row The row being enquired.
+     * @return The adjusted elapsed time, in nanoseconds.
+     */
+    long adjustedTimeAt(int row) {
+        return adjustedTimes[row];
+    }
+
+    /**
+     * GETTER method for the stage points in a row, see
+     * {@link #score(int[], int[][])}.
+     *
+     * @param row The row being enquired.
+     * @return The points scored in the stage.
+     */
+    int pointsAt(int row) {
+        return points[row];
+    }
+
+    /**
+     * GETTER method for the mountain points in a row, see
+     * {@link #score(int[], int[][])}.
+     *
+     * @param row The row being enquired.
+     * @return The mountain points scored in the stage's climbs.
+     */
+    int mountainPointsAt(int row) {
+        return mountainPoints[row];
+    }
+
+    /**
+     * GETTER method for the rider IDs, in row order.
+     *
+     * @return An array of the IDs of the riders with a result.
+     */
+    int[] getRiderIDs() {
+        return Arrays.copyOf(riderIds, size);
+    }
+
+    /**
+     * Gathers the times of a row, from the start time to the finish line.
+     *
+     * @param row The row being enquired.
+     * @return A new array of the times, in nanoseconds of the day.
+     */
+    long[] getTimes(int row) {
+        long[] rowTimes = new long[times.length];
+        for (int column = 0; column < times.length; column++) {
+            rowTimes[column] = times[column][row];
+        }
+        return rowTimes;
+    }
+
+    /**
+     * Adds a rider's result, replacing any result they already have. The
+     * times are copied into the time columns; if there are none, as when
+     * only a finish time is known, the time columns are left at zero. If
+     * the adjusted times and points are up to date, those of the rider
+     * and of the riders behind them that they affect are worked out
+     * again.
+     *
+     * @param riderId     The ID of the rider.
+     * @param riderTimes  The rider's times from the start to the finish
+     *                    line, in nanoseconds of the day, or null.
+     * @param elapsedTime The rider's elapsed time, in nanoseconds.
+     */
+    void add(int riderId, long[] riderTimes, long elapsedTime) {
+        remove(riderId);
+        if (size == riderIds.length) {
+            grow();
+        }
+        int row = size++;
+        rows.put(riderId, row);
+        riderIds[row] = riderId;
+        for (int column = 0; column < times.length; column++) {
+            times[column][row] = riderTimes == null ? 0 : riderTimes[column];
+        }
+        elapsedTimes[row] = elapsedTime;
+        adjustedTimes[row] = elapsedTime;
+        points[row] = 0;
+        mountainPoints[row] = 0;
+        finishOrder().add(elapsedTime, riderId);
+        for (int checkpoint = 0; checkpoint < checkpointOrders().length; checkpoint++) {
+            checkpointOrders[checkpoint].add(times[checkpoint + 1][row], riderId);
+        }
+        int position = finishOrder.countBefore(elapsedTime, riderId);
+        if (adjusted) {
+            readjustFrom(position, row);
+        }
+        if (scored) {
+            rescoreFrom(position);
+            for (int checkpoint = 0; checkpoint < checkpointPoints.length; checkpoint++) {
+                if (checkpointPoints[checkpoint] != null) {
+                    int passed = checkpointOrders[checkpoint].countBefore(times[checkpoint + 1][row], riderId);
+                    rescoreClimb(checkpoint, passed + 1, 1);
+                    mountainPoints[row] += pointsFor(checkpointPoints[checkpoint], passed);
+                }
+            }
+            changedRiders.put(riderId, riderId);
+        }
+    }
+
+    /**
+     * Removes a rider's result, moving the last row into its place. If
+     * the adjusted times and points are up to date, those of the riders
+     * behind the rider that they affected are worked out again.
+     *
+     * @param riderId The ID of the rider.
+     * @return true if the rider had a result.
+     */
+    boolean remove(int riderId) {
+        int row = rowOf(riderId);
+        if (row < 0) {
+            return false;
+        }
+        int position = finishOrder().countBefore(elapsedTimes[row], riderId);
+        finishOrder.remove(elapsedTimes[row], riderId);
+        int[] passed = new int[checkpointOrders().length];
+        for (int checkpoint = 0; checkpoint < passed.length; checkpoint++) {
+            passed[checkpoint] = checkpointOrders[checkpoint].countBefore(times[checkpoint + 1][row], riderId);
+            checkpointOrders[checkpoint].remove(times[checkpoint + 1][row], riderId);
+        }
+        rows.remove(riderId);
+        int last = --size;
+        if (row != last) {
+            riderIds[row] = riderIds[last];
+            for (long[] column : times) {
+                column[row] = column[last];
+            }
+            elapsedTimes[row] = elapsedTimes[last];
+            adjustedTimes[row] = adjustedTimes[last];
+            points[row] = points[last];
+            mountainPoints[row] = mountainPoints[last];
+            rows.put(riderIds[row], row);
+        }
+        if (adjusted || scored) {
+            changedRiders.put(riderId, riderId);
+        }
+        if (adjusted) {
+            readjustFrom(position, -1);
+        }
+        if (scored) {
+            rescoreFrom(position);
+            for (int checkpoint = 0; checkpoint < checkpointPoints.length; checkpoint++) {
+                if (checkpointPoints[checkpoint] != null) {
+                    rescoreClimb(checkpoint, passed[checkpoint], -1);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gets the rows in finishing order, fastest elapsed time first, with
+     * riders on the same time ordered by their ID. The order is read from
+     * the tree of elapsed times, without sorting.
+     *
+     * @return A new array of the rows in finishing order.
+     */
+    int[] rankedRows() {
+        return rowsOf(finishOrder().getRiderIDs(size));
+    }
+
+    /**
+     * Gets the leading rows in finishing order, in the same order as
+     * {@link #rankedRows()}, read from the start of the tree of elapsed
+     * times without going through the rest.
+     *
+     * @param limit The maximum number of rows returned.
+     * @return A new array of at most limit rows in finishing order.
+     */
+    int[] topRows(int limit) {
+        return rowsOf(finishOrder().getRiderIDs(limit));
+    }
+
+    /**
+     * Finds a rider's position in the finishing order in O(log n) time.
+     *
+     * @param riderId The ID of the rider being enquired.
+     * @return The position, starting from 1, or -1 if the rider has no
+     * result.
+     */
+    int positionOf(int riderId) {
+        int row = rowOf(riderId);
+        return row < 0 ? -1 : finishOrder().countBefore(elapsedTimes[row], riderId) + 1;
+    }
+
+    /**
+     * Finds the row of the stage winner, the rider with the fastest
+     * elapsed time.
+     *
+     * @return The winner's row, or -1 if there are no results.
+     */
+    int leaderRow() {
+        return size == 0 ? -1 : rowOf(finishOrder().riderAt(0));
+    }
+
+    /**
+     * Gets the rows in the order the riders passed a checkpoint, earliest
+     * first, with riders on the same time ordered by their ID. The order
+     * is read from the checkpoint's tree of times, without sorting.
+     *
+     * @param checkpoint The position of the checkpoint in the stage,
+     *                   starting from 0.
+     * @return A new array of the rows in passing order.
+     */
+    int[] rankedRows(int checkpoint) {
+        return rowsOf(checkpointOrders()[checkpoint].getRiderIDs(size));
+    }
+
+    /**
+     * Finds a rider's position in the order the riders passed a
+     * checkpoint in O(log n) time.
+     *
+     * @param checkpoint The position of the checkpoint in the stage,
+     *                   starting from 0.
+     * @param riderId    The ID of the rider being enquired.
+     * @return The position, starting from 1, or -1 if the rider has no
+     * result.
+     */
+    int positionOf(int checkpoint, int riderId) {
+        int row = rowOf(riderId);
+        return row < 0 ? -1 : checkpointOrders()[checkpoint].countBefore(times[checkpoint + 1][row], riderId) + 1;
+    }
+
+    /**
+     * GETTER method for the tree of elapsed times, which is kept up to
+     * date as results are added and removed. The tree is not saved, so
+     * after the results are read back with Java serialisation it is built
+     * again the first time it is needed.
+     *
+     * @return The riders ordered by elapsed time and then ID.
+     */
+    private RankTree finishOrder() {
+        if (finishOrder == null) {
+            finishOrder = new RankTree();
+            for (int row = 0; row < size; row++) {
+                finishOrder.add(elapsedTimes[row], riderIds[row]);
+            }
+        }
+        return finishOrder;
+    }
+
+    /**
+     * GETTER method for the trees of the times at each checkpoint, which
+     * are kept up to date and built again in the same way as the tree of
+     * elapsed times.
+     *
+     * @return The riders ordered by the time they passed each checkpoint
+     * and then ID.
+     */
+    private RankTree[] checkpointOrders() {
+        if (checkpointOrders == null) {
+            checkpointOrders = new RankTree[times.length - 2];
+            for (int checkpoint = 0; checkpoint < checkpointOrders.length; checkpoint++) {
+                checkpointOrders[checkpoint] = new RankTree();
+                for (int row = 0; row < size; row++) {
+                    checkpointOrders[checkpoint].add(times[checkpoint + 1][row], riderIds[row]);
+                }
+            }
+        }
+        return checkpointOrders;
+    }
+
+    /**
+     * Builds the trees of the finishing order and the passing orders if
+     * they have not been built since the results were read back, so that
+     * reading the results afterwards changes nothing.
+     */
+    void prepareOrders() {
+        finishOrder();
+        checkpointOrders();
+    }
+
+    /**
+     * Finds the rows of some riders.
+     *
+     * @param riderIds The IDs of riders with a result.
+     * @return The rows, in the same order.
+     */
+    private int[] rowsOf(int[] riderIds) {
+        int[] order = new int[riderIds.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = rowOf(riderIds[i]);
+        }
+        return order;
+    }
+
+    /**
+     * Checks whether the adjusted times are up to date, that is whether
+     * they have been worked out and kept up to date since.
+     *
+     * @return true if the adjusted times are up to date.
+     */
+    boolean isAdjusted() {
+        return adjusted;
+    }
+
+    /**
+     * Works out every rider's adjusted elapsed time in one pass down the
+     * finishing order. A rider finishing less than a second behind the
+     * rider in front is given the same adjusted time, unless the stage is
+     * a time trial. From then on the adjusted times are kept up to date
+     * as results are added and removed, and no riders are remembered as
+     * changed.
+     *
+     * @param timeTrial Whether the stage is a time trial.
+     */
+    void updateAdjustedTimes(boolean timeTrial) {
+        int[] order = rankedRows();
+        long previousTime = 0;
+        long adjustedTime = 0;
+        for (int i = 0; i < order.length; i++) {
+            long riderTime = elapsedTimes[order[i]];
+            adjustedTime = Times.adjustedTime(riderTime, previousTime, adjustedTime, !timeTrial && i > 0);
+            adjustedTimes[order[i]] = adjustedTime;
+            previousTime = riderTime;
+        }
+        bunching = !timeTrial;
+        changedRiders = new IntIntMap();
+        adjusted = true;
+    }
+
+    /**
+     * Stops keeping the adjusted times and points up to date, so that
+     * they are next worked out in one pass each by
+     * {@link #updateAdjustedTimes(boolean)} and
+     * {@link #score(int[], int[][])}. This is cheaper when many results
+     * are about to be added at once.
+     */
+    void invalidate() {
+        adjusted = false;
+        scored = false;
+        changedRiders = null;
+        stagePoints = null;
+        checkpointPoints = null;
+    }
+
+    /**
+     * Gets the riders whose adjusted time or points have changed, or
+     * whose result has been added or removed, since they were last worked
+     * out in one pass or the riders were last taken, and forgets them.
+     *
+     * @return The IDs of the riders, or an empty array if neither the
+     * adjusted times nor the points are up to date.
+     */
+    int[] takeChangedRiders() {
+        if (changedRiders == null) {
+            return new int[0];
+        }
+        int[] riderIds = changedRiders.keys();
+        changedRiders.clear();
+        return riderIds;
+    }
+
+    /**
+     * Works out the adjusted times again from a position in the finishing
+     * order, after a rider has been added in that position or removed
+     * from it. Each rider's adjusted time only depends on the rider in
+     * front, so the walk down the finishing order stops at the first
+     * rider, other than an added one, whose adjusted time is unchanged:
+     * only the bunch the position is in is gone through.
+     *
+     * @param position The position in the finishing order, starting from
+     *                 0.
+     * @param addedRow The row of the rider added in that position, or -1
+     *                 if a rider was removed from it.
+     */
+    private void readjustFrom(int position, int addedRow) {
+        long previousTime = 0;
+        long adjustedTime = 0;
+        if (position > 0) {
+            int previousRow = rowOf(finishOrder.riderAt(position - 1));
+            previousTime = elapsedTimes[previousRow];
+            adjustedTime = adjustedTimes[previousRow];
+        }
+        for (int i = position; i < size; i++) {
+            int row = rowOf(finishOrder.riderAt(i));
+            long riderTime = elapsedTimes[row];
+            adjustedTime = Times.adjustedTime(riderTime, previousTime, adjustedTime, bunching && i > 0);
+            if (row != addedRow && adjustedTime == adjustedTimes[row]) {
+                return;
+            }
+            adjustedTimes[row] = adjustedTime;
+            changedRiders.put(riderIds[row], riderIds[row]);
+            previousTime = riderTime;
+        }
+    }
+
+    /**
+     * Checks whether the points are up to date, that is whether they
+     * have been awarded and kept up to date since.
+     *
+     * @return true if the points are up to date.
+     */
+    boolean isScored() {
+        return scored;
+    }
+
+    /**
+     * Awards the stage points by finishing order and the mountain points
+     * of each climb by the order the riders passed it. Riders outside the
+     * scoring positions are given zero points. From then on the points
+     * are kept up to date as results are added and removed, and no
+     * riders are remembered as changed.
+     *
+     * @param stagePoints      The points for each finishing position.
+     * @param checkpointPoints The points for each passing position of each
+     *                         checkpoint, or null for a checkpoint that
+     *                         gives no mountain points.
+     */
+    void score(int[] stagePoints, int[][] checkpointPoints) {
+        int[] order = rankedRows();
+        for (int i = 0; i < order.length; i++) {
+            points[order[i]] = pointsFor(stagePoints, i);
+        }
+        Arrays.fill(mountainPoints, 0, size, 0);
+        this.checkpointPoints = Arrays.copyOf(checkpointPoints, Math.min(checkpointPoints.length, times.length - 2));
+        for (int checkpoint = 0; checkpoint < this.checkpointPoints.length; checkpoint++) {
+            if (checkpointPoints[checkpoint] == null) {
+                continue;
+            }
+            int[] passingOrder = rowsOf(checkpointOrders()[checkpoint].getRiderIDs(checkpointPoints[checkpoint].length));
+            for (int i = 0; i < passingOrder.length; i++) {
+                mountainPoints[passingOrder[i]] += checkpointPoints[checkpoint][i];
+            }
+        }
+        this.stagePoints = stagePoints;
+        changedRiders = new IntIntMap();
+        scored = true;
+    }
+
+    /**
+     * Awards the stage points again from a position in the finishing
+     * order, after a rider has been added in that position or removed
+     * from it. Every rider from there on has moved one place, so the
+     * riders down to the first place outside the points are gone through.
+     *
+     * @param position The position in the finishing order, starting from
+     *                 0.
+     */
+    private void rescoreFrom(int position) {
+        for (int i = position; i < size && i <= stagePoints.length; i++) {
+            int row = rowOf(finishOrder.riderAt(i));
+            int awarded = pointsFor(stagePoints, i);
+            if (points[row] != awarded) {
+                points[row] = awarded;
+                changedRiders.put(riderIds[row], riderIds[row]);
+            }
+        }
+    }
+
+    /**
+     * Moves the mountain points of a climb along after a rider has been
+     * added to or removed from the order the riders passed it. Each rider
+     * in the scoring positions from the given one on has moved one place,
+     * so loses the points of their old place and gains those of their new
+     * one.
+     *
+     * @param checkpoint The position of the climb in the stage, starting
+     *                   from 0.
+     * @param position   The first passing position whose rider has
+     *                   moved, starting from 0.
+     * @param moved      1 if the riders have moved back a place, or -1 if
+     *                   they have moved up one.
+     */
+    private void rescoreClimb(int checkpoint, int position, int moved) {
+        int[] climbPoints = checkpointPoints[checkpoint];
+        RankTree passingOrder = checkpointOrders[checkpoint];
+        for (int i = position; i < passingOrder.size() && i - Math.min(moved, 0) <= climbPoints.length; i++) {
+            int delta = pointsFor(climbPoints, i) - pointsFor(climbPoints, i - moved);
+            if (delta != 0) {
+                int row = rowOf(passingOrder.riderAt(i));
+                mountainPoints[row] += delta;
+                changedRiders.put(riderIds[row], riderIds[row]);
+            }
+        }
+    }
+
+    /**
+     * Finds the points awarded for a position.
+     *
+     * @param table    The points for each position.
+     * @param position The position, starting from 0.
+     * @return The points, or zero outside the scoring positions.
+     */
+    private static int pointsFor(int[] table, int position) {
+        return position < table.length ? table[position] : 0;
+    }
+
+    /**
+     * Adds up a rider's times in a stage, each counted in whole seconds,
+     * to give their elapsed time. The total is not limited to 24 hours.
+     *
+     * @param riderTimes The rider's times, in nanoseconds of the day.
+     * @return The elapsed time, in nanoseconds.
+     */
+    static long elapsedTime(long[] riderTimes) {
+        long totalTime = 0;
+        for (long time : riderTimes) {
+            totalTime += time - time % Times.NANOS_PER_SECOND;
+        }
+        return totalTime;
+    }
+
+    /**
+     * Doubles the number of rows every column can hold.
+     */
+    private void grow() {
+        int capacity = riderIds.length * 2;
+        riderIds = Arrays.copyOf(riderIds, capacity);
+        for (int column = 0; column < times.length; column++) {
+            times[column] = Arrays.copyOf(times[column], capacity);
+        }
+        elapsedTimes = Arrays.copyOf(elapsedTimes, capacity);
+        adjustedTimes = Arrays.copyOf(adjustedTimes, capacity);
+        points = Arrays.copyOf(points, capacity);
+        mountainPoints = Arrays.copyOf(mountainPoints, capacity);
+    }
+}
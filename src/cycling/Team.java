@@ -2,7 +2,6 @@ package cycling;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Team class. This class manages all the teams within CyclingPortal.
@@ -18,20 +17,19 @@ public class Team implements Serializable {
     private String teamDescription;
     private final ArrayList<Integer> riderIds;
 
-    static private final AtomicInteger currentId = new AtomicInteger(0);
-
     /**
      * The constructor method of this class, instantiates and initialises
      * the non-static variables of this class.
      *
+     * @param teamId          The ID of the team.
      * @param teamName        The name of the team.
      * @param teamDescription The description of the team.
      */
-    public Team(String teamName, String teamDescription) {
+    public Team(int teamId, String teamName, String teamDescription) {
         this.teamName = "";
         this.teamDescription = "";
         this.riderIds = new ArrayList<>();
-        this.teamId = currentId.getAndIncrement();
+        this.teamId = teamId;
         this.teamName = teamName;
         this.teamDescription = teamDescription;
 
@@ -124,14 +122,6 @@ public class Team implements Serializable {
      *                removed from the team.
      */
     public void deleteRider(int riderId) {
-        riderIds.remove(riderId);
-    }
-
-    /**
-     * Method that resets the ID counter. The ID counter creates
-     * a new ID for every single new rider that is created.
-     */
-    static public void atomicReset() {
-        currentId.set(0);
+        riderIds.remove(Integer.valueOf(riderId));
     }
 }
@@ -0,0 +1,79 @@
+package cycling;
+
+import java.time.LocalTime;
+
+/**
+ * Times class. Results are stored and added up inside the portal as
+ * nanoseconds in a long, so that totals can run past 24 hours and adding
+ * times does not create any objects. This class converts between those
+ * longs and the LocalTime values taken and returned by the CyclingPortal
+ * methods.
+ *
+ * @author Edward Pratt, Alexander Hay
+ * @version 1.0
+ */
+final class Times {
+
+    static final long NANOS_PER_SECOND = 1_000_000_000L;
+    static final long NANOS_PER_DAY = 86_400L * NANOS_PER_SECOND;
+
+    private Times() {
+    }
+
+    /**
+     * Converts a time in nanoseconds to a LocalTime. Times of 24 hours or
+     * more wrap around, as a LocalTime can only hold a time of day.
+     *
+     * @param nanos The time in nanoseconds.
+     * @return The time as a LocalTime.
+     */
+    static LocalTime toLocalTime(long nanos) {
+        return LocalTime.ofNanoOfDay(Math.floorMod(nanos, NANOS_PER_DAY));
+    }
+
+    /**
+     * Works out a rider's adjusted elapsed time from the rider finishing
+     * in front of them. A rider finishing less than a second behind the
+     * rider in front is given the same adjusted time, so a whole bunch
+     * shares the time of its first rider.
+     *
+     * @param riderTime            The rider's elapsed time, in nanoseconds.
+     * @param previousTime         The elapsed time of the rider in front.
+     * @param previousAdjustedTime The adjusted time of the rider in front.
+     * @param bunched              Whether the rider can be bunched with the
+     *                             rider in front, which is false for the
+     *                             stage winner and in time trials.
+     * @return The rider's adjusted elapsed time, in nanoseconds.
+     */
+    static long adjustedTime(long riderTime, long previousTime, long previousAdjustedTime, boolean bunched) {
+        return bunched && riderTime - previousTime < NANOS_PER_SECOND ? previousAdjustedTime : riderTime;
+    }
+
+    /**
+     * Converts an array of LocalTimes to nanoseconds of the day.
+     *
+     * @param times The times.
+     * @return The times in nanoseconds.
+     */
+    static long[] toNanos(LocalTime[] times) {
+        long[] nanos = new long[times.length];
+        for (int i = 0; i < times.length; i++) {
+            nanos[i] = times[i].toNanoOfDay();
+        }
+        return nanos;
+    }
+
+    /**
+     * Converts an array of times in nanoseconds to LocalTimes.
+     *
+     * @param nanos The times in nanoseconds.
+     * @return The times as LocalTimes.
+     */
+    static LocalTime[] toLocalTimes(long[] nanos) {
+        LocalTime[] times = new LocalTime[nanos.length];
+        for (int i = 0; i < nanos.length; i++) {
+            times[i] = toLocalTime(nanos[i]);
+        }
+        return times;
+    }
+}